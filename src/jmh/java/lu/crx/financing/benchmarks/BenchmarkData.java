@@ -0,0 +1,70 @@
+package lu.crx.financing.benchmarks;
+
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded synthetic creditors, purchasers and invoices for the benchmarks. Every purchaser has settings for a
+ * creditor with the probability given by the settings density, so the same parameters always yield the same data.
+ */
+final class BenchmarkData {
+
+    static final LocalDate FINANCING_DATE = LocalDate.of(2023, 5, 27);
+    static final int INVOICE_COUNT = 1024;
+
+    final List<Creditor> creditors = new ArrayList<>();
+    final List<Purchaser> purchasers = new ArrayList<>();
+    final List<Invoice> invoices = new ArrayList<>();
+
+    BenchmarkData(int purchaserCount, int creditorCount, double settingsDensity, long seed) {
+        Random random = new Random(seed);
+
+        for (long id = 1; id <= creditorCount; id++) {
+            creditors.add(Creditor.builder()
+                    .id(id)
+                    .name("Creditor" + id)
+                    .maxFinancingRateInBps(1 + random.nextInt(20))
+                    .build());
+        }
+
+        for (long id = 1; id <= purchaserCount; id++) {
+            List<PurchaserFinancingSettings> settings = new ArrayList<>();
+            for (Creditor creditor : creditors) {
+                if (random.nextDouble() < settingsDensity) {
+                    settings.add(PurchaserFinancingSettings.builder()
+                            .id(id * creditorCount + creditor.getId())
+                            .creditor(creditor)
+                            .annualRateInBps(10 + random.nextInt(90))
+                            .build());
+                }
+            }
+
+            Purchaser purchaser = Purchaser.builder()
+                    .id(id)
+                    .name("Purchaser" + id)
+                    .minimumFinancingTermInDays(random.nextInt(60))
+                    .purchaserFinancingSettings(settings)
+                    .build();
+            purchasers.add(purchaser);
+        }
+
+        Debtor debtor = Debtor.builder().id(1L).name("Debtor1").build();
+        for (long id = 1; id <= INVOICE_COUNT; id++) {
+            invoices.add(Invoice.builder()
+                    .id(id)
+                    .creditor(creditors.get(random.nextInt(creditorCount)))
+                    .debtor(debtor)
+                    .valueInCents(1000 + random.nextInt(1_000_000))
+                    .maturityDate(FINANCING_DATE.plusDays(1 + random.nextInt(120)))
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package lu.crx.financing.benchmarks;
+
+import lu.crx.financing.services.financing.FinancingCalculationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the rate and discount calculations, on valid inputs only so that no warning is logged.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FinancingCalculationBenchmark {
+
+    private static final int INPUT_COUNT = 1024;
+
+    private final FinancingCalculationService calculationService = new FinancingCalculationService();
+
+    private final int[] annualRatesInBps = new int[INPUT_COUNT];
+    private final int[] financingTermsInDays = new int[INPUT_COUNT];
+    private final long[] valuesInCents = new long[INPUT_COUNT];
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            annualRatesInBps[i] = 10 + random.nextInt(90);
+            financingTermsInDays[i] = 1 + random.nextInt(120);
+            valuesInCents[i] = 1000 + random.nextInt(1_000_000);
+        }
+    }
+
+    @Benchmark
+    public int calculateFinancingRate() {
+        int i = nextIndex();
+        return calculationService.calculateFinancingRate(annualRatesInBps[i], financingTermsInDays[i]);
+    }
+
+    @Benchmark
+    public long calculateDiscountAmount() {
+        int i = nextIndex();
+        return calculationService.calculateDiscountAmount(valuesInCents[i], annualRatesInBps[i]);
+    }
+
+    private int nextIndex() {
+        return cursor++ & (INPUT_COUNT - 1);
+    }
+}
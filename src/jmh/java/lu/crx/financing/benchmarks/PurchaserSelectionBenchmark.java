@@ -0,0 +1,124 @@
+package lu.crx.financing.benchmarks;
+
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.services.eligibility.PurchaserEligibilityService;
+import lu.crx.financing.services.financing.FinancingCalculationService;
+import lu.crx.financing.services.financing.FinancingKernel;
+import lu.crx.financing.services.financing.FinancingOfferTable;
+import lu.crx.financing.services.financing.FinancingResultColumns;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.InvoiceColumns;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
+import lu.crx.financing.services.financing.PurchaserSelectionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static lu.crx.financing.benchmarks.BenchmarkData.FINANCING_DATE;
+import static lu.crx.financing.benchmarks.BenchmarkData.INVOICE_COUNT;
+
+/**
+ * Throughput of the eligibility check and of every purchaser selection path, for one invoice per operation.
+ * The run context benchmark measures the steady state, where most decisions come from the run's cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PurchaserSelectionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int purchaserCount;
+
+    @Param({"10", "100"})
+    private int creditorCount;
+
+    @Param({"0.1", "0.5", "1.0"})
+    private double settingsDensity;
+
+    private final FinancingCalculationService calculationService = new FinancingCalculationService();
+    private final PurchaserEligibilityService eligibilityService = new PurchaserEligibilityService(calculationService);
+    private final PurchaserSelectionService selectionService =
+            new PurchaserSelectionService(calculationService, eligibilityService);
+    private final FinancingKernel kernel = new FinancingKernel();
+
+    private List<Invoice> invoices;
+    private List<Purchaser> purchasers;
+    private PurchaserOfferBook offerBook;
+    private FinancingRunContext runContext;
+    private FinancingOfferTable offerTable;
+    private InvoiceColumns invoiceColumns;
+    private FinancingResultColumns resultColumns;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData(purchaserCount, creditorCount, settingsDensity, 42);
+        invoices = data.invoices;
+        purchasers = data.purchasers;
+        offerBook = PurchaserOfferBook.build(purchasers);
+        runContext = new FinancingRunContext(FINANCING_DATE, offerBook);
+        offerTable = FinancingOfferTable.build(offerBook, data.creditors);
+
+        invoiceColumns = new InvoiceColumns(INVOICE_COUNT);
+        for (Invoice invoice : invoices) {
+            invoiceColumns.add(invoice.getId(), invoice.getValueInCents(),
+                    (int) invoice.getMaturityDate().toEpochDay(), offerTable.creditorIndexOf(invoice.getCreditor().getId()));
+        }
+        resultColumns = new FinancingResultColumns(INVOICE_COUNT);
+    }
+
+    @Benchmark
+    public boolean isPurchaserEligible() {
+        int i = cursor++;
+        Invoice invoice = invoices.get(i & (INVOICE_COUNT - 1));
+        Purchaser purchaser = purchasers.get(i % purchaserCount);
+        int financingTermInDays = calculationService.calculateFinancingTerm(FINANCING_DATE, invoice.getMaturityDate());
+
+        return eligibilityService.isPurchaserEligible(purchaser, invoice.getCreditor(), financingTermInDays,
+                invoice.getCreditor().getMaxFinancingRateInBps());
+    }
+
+    @Benchmark
+    public Optional<PurchaserFinancingResult> findBestPurchaserForInvoice() {
+        return selectionService.findBestPurchaserForInvoice(nextInvoice(), purchasers, FINANCING_DATE);
+    }
+
+    @Benchmark
+    public Optional<PurchaserFinancingResult> findBestPurchaserForInvoiceWithOfferBook() {
+        return selectionService.findBestPurchaserForInvoice(nextInvoice(), offerBook, FINANCING_DATE);
+    }
+
+    @Benchmark
+    public Optional<PurchaserFinancingResult> findBestPurchaserForInvoiceWithRunContext() {
+        return selectionService.findBestPurchaserForInvoice(nextInvoice(), runContext);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INVOICE_COUNT)
+    public FinancingResultColumns financeWithKernel() {
+        kernel.finance(invoiceColumns, offerTable, FINANCING_DATE.toEpochDay(), resultColumns);
+        return resultColumns;
+    }
+
+    private Invoice nextInvoice() {
+        return invoices.get(cursor++ & (INVOICE_COUNT - 1));
+    }
+}
@@ -2,8 +2,10 @@ package lu.crx.financing;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class AssignmentFinancingApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,310 @@
+package lu.crx.financing.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Tuning knobs of the financing run, bound from the {@code financing.*} properties.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "financing")
+public class FinancingProperties {
+
+    private final Run run = new Run();
+    private final Read read = new Read();
+    private final Write write = new Write();
+    private final Parallel parallel = new Parallel();
+    private final Pipeline pipeline = new Pipeline();
+    private final Lease lease = new Lease();
+    private final Flush flush = new Flush();
+    private final Snapshot snapshot = new Snapshot();
+    private final Quote quote = new Quote();
+    private final Cache cache = new Cache();
+    private final Archive archive = new Archive();
+    private final Export export = new Export();
+    private final Journal journal = new Journal();
+    private final Kernel kernel = new Kernel();
+
+    @Getter
+    @Setter
+    public static class Run {
+
+        /**
+         * How long a run may go without a heartbeat, recorded with every committed chunk, before it is taken to be
+         * dead and resumed by the next run of the same financing date. Must stay well above the time a chunk takes.
+         */
+        private Duration staleAfter = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Read {
+
+        /**
+         * Number of pending invoices read and processed per keyset page.
+         */
+        private int pageSize = 1000;
+
+        /**
+         * JDBC fetch size used when reading a page of pending invoices.
+         */
+        private int fetchSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class Write {
+
+        /**
+         * Number of statements sent to the database in one JDBC batch when writing financing results.
+         */
+        private int batchSize = 50;
+
+        /**
+         * How financed invoices are written, see {@link FinancingWriteMode}.
+         */
+        private FinancingWriteMode mode = FinancingWriteMode.BULK;
+    }
+
+    @Getter
+    @Setter
+    public static class Parallel {
+
+        /**
+         * Whether pending invoices are financed by creditor partitions running in parallel, each in its own
+         * transaction, instead of sequentially in the caller's transaction.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The pool running the partitions.
+         */
+        private ParallelPoolType poolType = ParallelPoolType.FORK_JOIN;
+
+        /**
+         * Parallelism of the fork-join pool. Virtual threads are only bounded by {@link #maxConcurrency}.
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Maximum number of partitions processed at the same time, whatever the pool. Every running partition holds
+         * a database connection for its chunk transaction, so this must stay below the size of the connection pool
+         * ({@code spring.datasource.hikari.maximum-pool-size}, 10 by default), leaving connections for the run's
+         * bookkeeping and the rest of the application.
+         */
+        private int maxConcurrency = 8;
+
+        /**
+         * Creditors with more pending invoices than this are split into several partitions by id range,
+         * so that a single large creditor does not keep one worker busy while the others are idle.
+         */
+        private int maxPartitionSize = 5000;
+    }
+
+    @Getter
+    @Setter
+    public static class Pipeline {
+
+        /**
+         * Whether a sequential run overlaps its stages: a reader thread prefetches the pages of pending invoices,
+         * compute workers select the purchasers, and the calling thread writes the results. Ignored when
+         * {@code financing.parallel.enabled} is set.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of workers selecting purchasers.
+         */
+        private int computeThreads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Number of pages read ahead of the writer. The reader blocks once that many pages wait to be written.
+         */
+        private int queueCapacity = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Lease {
+
+        /**
+         * Whether the run shares the pending invoices with the other instances running against the same database,
+         * by leasing them range by range. Takes precedence over {@code financing.parallel.enabled} and
+         * {@code financing.pipeline.enabled}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Creditors with more pending invoices than this are split into several leased ranges by id range.
+         */
+        private int maxRangeSize = 5000;
+
+        /**
+         * How long a lease is held without being renewed. Every committed chunk renews it, so it must be well above
+         * the time a chunk takes, and above the clock difference between the instances. An expired lease is taken
+         * over by another instance.
+         */
+        private Duration timeToLive = Duration.ofMinutes(1);
+
+        /**
+         * How long an instance that has nothing left to claim waits before looking again for expired leases, until
+         * the other instances completed their ranges.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Flush {
+
+        /**
+         * Number of invoices between two inspections of the persistence context.
+         */
+        private int checkInterval = 100;
+
+        /**
+         * The persistence context is flushed and cleared once it manages this many entities.
+         */
+        private int maxManagedEntities = 10_000;
+
+        /**
+         * The persistence context is flushed, without being cleared, once this many writes are queued.
+         */
+        private int maxPendingWrites = 1000;
+
+        /**
+         * The persistence context is flushed and cleared once the used heap exceeds this share of the maximum heap.
+         * Zero disables the check.
+         */
+        private double heapUsageThreshold = 0.85;
+    }
+
+    @Getter
+    @Setter
+    public static class Snapshot {
+
+        /**
+         * How long the in-memory purchaser snapshot used by the single-invoice financing and the quotes is reused
+         * before it is checked against the database again. Financing runs check it every time they start.
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Quote {
+
+        /**
+         * Batches with at least this many quote requests are evaluated in parallel on the common fork-join pool.
+         */
+        private int parallelThreshold = 2048;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+
+        /**
+         * Whether the creditors, the purchasers and their financing settings are kept in the second-level cache,
+         * see {@link ReferenceDataRegion}.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of entries of each reference data region; the least used entries are evicted beyond.
+         */
+        private long maxEntries = 10_000;
+
+        /**
+         * How long a cached entry is used before it is read again from the database, for changes made outside of
+         * the application.
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Archive {
+
+        /**
+         * Whether the financed invoices are moved to the archive at the end of every financing run.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of financed invoices moved to the archive per transaction.
+         */
+        private int batchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Export {
+
+        /**
+         * Size of the direct buffer the export files are written through; the file is written one full buffer at a
+         * time.
+         */
+        private DataSize bufferSize = DataSize.ofMegabytes(1);
+
+        /**
+         * JDBC fetch size of the cursor the financing results are exported from.
+         */
+        private int fetchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Journal {
+
+        /**
+         * Whether a sequential run records its financing decisions in a write-ahead journal and commits them to the
+         * database in batches, on another thread than the one selecting the purchasers. Takes precedence over
+         * {@code financing.pipeline.enabled}; ignored when {@code financing.lease.enabled} or
+         * {@code financing.parallel.enabled} is set.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The memory-mapped journal file.
+         */
+        private Path file = Path.of("financing-decisions.journal");
+
+        /**
+         * Size of the journal file. Once it is full, the selection waits for every journaled decision to be
+         * committed before the journal starts over.
+         */
+        private DataSize capacity = DataSize.ofMegabytes(64);
+
+        /**
+         * Maximum number of decisions committed per transaction.
+         */
+        private int commitBatchSize = 10_000;
+
+        /**
+         * Number of journaled pages waiting to be committed. The selection blocks once that many pages wait.
+         */
+        private int queueCapacity = 16;
+    }
+
+    @Getter
+    @Setter
+    public static class Kernel {
+
+        /**
+         * Whether a sequential run finances every page of pending invoices with the
+         * {@link lu.crx.financing.services.financing.FinancingKernel}, over columnar copies of the invoices and the
+         * offers, instead of invoice by invoice. Only for the {@code BULK} and {@code STATELESS} write modes, which
+         * read the invoices as projections; ignored in the {@code ENTITY} write mode. Takes precedence over
+         * {@code financing.pipeline.enabled}; ignored when {@code financing.lease.enabled},
+         * {@code financing.parallel.enabled} or {@code financing.journal.enabled} is set.
+         */
+        private boolean enabled = false;
+    }
+}
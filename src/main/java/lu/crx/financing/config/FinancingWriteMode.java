@@ -0,0 +1,26 @@
+package lu.crx.financing.config;
+
+/**
+ * How financing results are written to the database.
+ */
+public enum FinancingWriteMode {
+
+    /**
+     * Every financed invoice is updated through its managed entity and saved with the repository, so the pending
+     * invoices are read as entities.
+     */
+    ENTITY,
+
+    /**
+     * Only the financing details are persisted per invoice; the invoices of a chunk are then updated
+     * from those details with a single set-based UPDATE, without dirty checking or merging any invoice. The pending
+     * invoices are only read as projections of the columns the financing needs.
+     */
+    BULK,
+
+    /**
+     * Like {@link #BULK}, but the financing details are inserted through a Hibernate stateless session instead of
+     * the entity manager, so that the write side keeps no entity in the persistence context at all.
+     */
+    STATELESS
+}
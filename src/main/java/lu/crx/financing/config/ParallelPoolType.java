@@ -0,0 +1,17 @@
+package lu.crx.financing.config;
+
+/**
+ * Thread pool used by the parallel financing engine.
+ */
+public enum ParallelPoolType {
+
+    /**
+     * A work-stealing {@link java.util.concurrent.ForkJoinPool} with a fixed parallelism.
+     */
+    FORK_JOIN,
+
+    /**
+     * One virtual thread per partition, scheduled by the JVM's work-stealing carrier pool.
+     */
+    VIRTUAL_THREADS
+}
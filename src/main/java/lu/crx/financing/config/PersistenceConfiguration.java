@@ -0,0 +1,87 @@
+package lu.crx.financing.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+@Configuration
+public class PersistenceConfiguration {
+
+    /**
+     * Enables JDBC batching of the financing writes. Inserts and updates are ordered by entity, so that the statements
+     * of one flush end up in as few batches as possible.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer(FinancingProperties financingProperties) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.STATEMENT_BATCH_SIZE, financingProperties.getWrite().getBatchSize());
+            hibernateProperties.put(AvailableSettings.ORDER_INSERTS, true);
+            hibernateProperties.put(AvailableSettings.ORDER_UPDATES, true);
+        };
+    }
+
+    /**
+     * The caches backing the second-level cache: one bounded Caffeine cache per {@link ReferenceDataRegion}, holding
+     * the entries by reference instead of copying them on every access, and counting its hits, misses and puts in
+     * its JCache statistics. Every application context gets its own cache manager, so that contexts sharing a JVM,
+     * like the tests, do not share cached entities.
+     */
+    @Bean
+    public CacheManager referenceDataCacheManager(FinancingProperties financingProperties) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("financing-reference-data-" + UUID.randomUUID()),
+                        PersistenceConfiguration.class.getClassLoader());
+
+        FinancingProperties.Cache cache = financingProperties.getCache();
+        CaffeineConfiguration<Object, Object> regionConfiguration = new CaffeineConfiguration<>();
+        regionConfiguration.setStoreByValue(false);
+        regionConfiguration.setMaximumSize(OptionalLong.of(cache.getMaxEntries()));
+        regionConfiguration.setExpireAfterWrite(OptionalLong.of(cache.getTimeToLive().toNanos()));
+        regionConfiguration.setStatisticsEnabled(true);
+        for (ReferenceDataRegion region : ReferenceDataRegion.values()) {
+            cacheManager.createCache(region.getRegionName(), regionConfiguration);
+        }
+        // The default query region is not used, but is created by Hibernate whenever the query cache is on
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, regionConfiguration);
+
+        // The update timestamps tell whether a cached query result is stale, so they must never be evicted
+        CaffeineConfiguration<Object, Object> timestampsConfiguration = new CaffeineConfiguration<>();
+        timestampsConfiguration.setStoreByValue(false);
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                timestampsConfiguration);
+        return cacheManager;
+    }
+
+    /**
+     * Enables the second-level and query caches on the {@link #referenceDataCacheManager reference data caches}.
+     * A region without a cache fails the startup rather than getting an unbounded one. The Hibernate statistics stay
+     * off: the hit ratios are read from the statistics of the caches.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(FinancingProperties financingProperties,
+                                                                    CacheManager referenceDataCacheManager) {
+        return hibernateProperties -> {
+            boolean enabled = financingProperties.getCache().isEnabled();
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, enabled);
+            hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, enabled);
+            if (enabled) {
+                hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                hibernateProperties.put(ConfigSettings.CACHE_MANAGER, referenceDataCacheManager);
+                hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY,
+                        MissingCacheStrategy.FAIL.getExternalRepresentation());
+            }
+        };
+    }
+}
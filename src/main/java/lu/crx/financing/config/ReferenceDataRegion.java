@@ -0,0 +1,43 @@
+package lu.crx.financing.config;
+
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+
+/**
+ * The second-level cache regions holding the reference data of the financing: the creditors, the purchasers, their
+ * financing settings, and the result of the query loading the purchaser graph.
+ */
+public enum ReferenceDataRegion {
+    CREDITOR(Creditor.class.getName(), "creditor", false),
+    PURCHASER(Purchaser.class.getName(), "purchaser", false),
+    PURCHASER_FINANCING_SETTINGS(PurchaserFinancingSettings.class.getName(), "purchaser-financing-settings", false),
+    PURCHASER_SETTINGS_COLLECTION(Purchaser.class.getName() + ".purchaserFinancingSettings",
+            "purchaser-settings-collection", false),
+    PURCHASERS_QUERY("purchasers", "purchasers-query", true);
+
+    private final String regionName;
+    private final String tagValue;
+    private final boolean queryRegion;
+
+    ReferenceDataRegion(String regionName, String tagValue, boolean queryRegion) {
+        this.regionName = regionName;
+        this.tagValue = tagValue;
+        this.queryRegion = queryRegion;
+    }
+
+    /**
+     * The Hibernate region name: the entity name, the collection role, or the query cache region.
+     */
+    public String getRegionName() {
+        return regionName;
+    }
+
+    public String getTagValue() {
+        return tagValue;
+    }
+
+    public boolean isQueryRegion() {
+        return queryRegion;
+    }
+}
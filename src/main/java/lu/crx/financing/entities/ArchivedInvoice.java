@@ -0,0 +1,53 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A financed {@link Invoice} moved out of the invoice table by the archiving, with the same id. Only written by the
+ * archiving; the creditor and debtor are kept as ids, since archived invoices are read without them.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedInvoice implements Serializable {
+
+    @Id
+    private long id;
+
+    @Basic(optional = false)
+    private long creditorId;
+
+    @Basic
+    private Long debtorId;
+
+    @Basic(optional = false)
+    private LocalDate maturityDate;
+
+    @Basic(optional = false)
+    private long valueInCents;
+
+    @Basic(optional = false)
+    private long earlyPaymentAmountInCents;
+
+    @Basic(optional = false)
+    private long discountedAmountInCents;
+
+    @Basic(optional = false)
+    private Instant archivedAt;
+}
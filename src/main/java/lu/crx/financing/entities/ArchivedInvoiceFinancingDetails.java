@@ -0,0 +1,51 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * The {@link InvoiceFinancingDetails} of an {@link ArchivedInvoice}, moved together with it and with the same id.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedInvoiceFinancingDetails implements Serializable {
+
+    @Id
+    private long id;
+
+    @Basic(optional = false)
+    private long invoiceId;
+
+    @Basic(optional = false)
+    private long purchaserId;
+
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    @Basic(optional = false)
+    private int financingTermInDays;
+
+    @Basic(optional = false)
+    private int financingRateInBps;
+
+    @Basic(optional = false)
+    private long earlyPaymentAmountInCents;
+
+    @Basic(optional = false)
+    private long discountedAmountInCents;
+}
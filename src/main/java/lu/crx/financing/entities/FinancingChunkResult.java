@@ -0,0 +1,20 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of one committed chunk of a financing run. Quarantined invoices are part of the invoice count.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class FinancingChunkResult {
+    public static final FinancingChunkResult EMPTY = new FinancingChunkResult(0, 0, 0, 0);
+
+    private final int invoiceCount;
+    private final int financedCount;
+    private final int quarantinedCount;
+    private final long lastInvoiceId;
+}
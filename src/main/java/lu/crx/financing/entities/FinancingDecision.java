@@ -0,0 +1,27 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * The financing of an invoice as decided by a run, before it is written: the journal mode records it in the
+ * write-ahead journal and commits it later, with the values it was decided with.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class FinancingDecision {
+    private final long invoiceId;
+    private final long purchaserId;
+    private final long runId;
+    private final LocalDate financingDate;
+    private final int financingTermInDays;
+    private final int financingRateInBps;
+    private final long earlyPaymentAmountInCents;
+    private final long discountedAmountInCents;
+}
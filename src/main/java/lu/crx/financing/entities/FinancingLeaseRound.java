@@ -0,0 +1,41 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A round of work shared by the instances financing against the same database, split into
+ * {@link InvoiceRangeLease leased ranges}. Its id is assigned by the instance that plans it, the next one after the
+ * latest round, so that two instances planning at the same time collide on the primary key.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingLeaseRound implements Serializable {
+
+    @Id
+    private long id;
+
+    @Basic(optional = false)
+    private Instant startedAt;
+
+    /**
+     * Set once every range of the round is done; the next instance to start plans a new round.
+     */
+    @Basic
+    private Instant completedAt;
+}
@@ -0,0 +1,28 @@
+package lu.crx.financing.entities;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The financing a {@link FinancingQuoteRequest} would get today: the winning purchaser with the rate and amounts,
+ * or the reason why no purchaser would finance it.
+ */
+@Getter
+@Builder
+@ToString
+public class FinancingQuote {
+    private final FinancingQuoteRequest request;
+    private final boolean financed;
+    private final Long purchaserId;
+    private final String purchaserName;
+    private final int financingTermInDays;
+    private final int financingRateInBps;
+    private final long earlyPaymentAmountInCents;
+    private final long discountAmountInCents;
+
+    /**
+     * Null for a financed quote.
+     */
+    private final FinancingRejectionReason rejectionReason;
+}
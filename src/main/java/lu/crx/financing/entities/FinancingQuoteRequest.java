@@ -0,0 +1,21 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * A hypothetical invoice a creditor wants a financing quote for; nothing is stored.
+ */
+@Getter
+@Builder
+@ToString
+@AllArgsConstructor
+public class FinancingQuoteRequest {
+    private final long creditorId;
+    private final long valueInCents;
+    private final LocalDate maturityDate;
+}
@@ -0,0 +1,22 @@
+package lu.crx.financing.entities;
+
+/**
+ * Why no purchaser could finance an {@link Invoice}.
+ */
+public enum FinancingRejectionReason {
+
+    /**
+     * No purchaser has financing settings for the invoice's creditor.
+     */
+    NO_SETTINGS,
+
+    /**
+     * Purchasers have settings for the creditor, but the financing term is shorter than all their minimum terms.
+     */
+    TERM_TOO_SHORT,
+
+    /**
+     * Even the lowest financing rate on offer exceeds the creditor's maximum financing rate.
+     */
+    RATE_ABOVE_MAX
+}
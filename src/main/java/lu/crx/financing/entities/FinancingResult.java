@@ -0,0 +1,26 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * The financing of a financed invoice as it is exported for the settlement, read from the live or the archived
+ * financing details without loading their entities.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class FinancingResult {
+    private final long invoiceId;
+    private final long creditorId;
+    private final long purchaserId;
+    private final LocalDate financingDate;
+    private final int financingTermInDays;
+    private final int financingRateInBps;
+    private final long valueInCents;
+    private final long earlyPaymentAmountInCents;
+    private final long discountedAmountInCents;
+}
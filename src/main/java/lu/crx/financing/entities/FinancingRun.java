@@ -0,0 +1,96 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A financing run and its checkpoint. The counts and the last invoice id only cover committed chunks.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingRun implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Basic(optional = false)
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    private FinancingRunStatus status;
+
+    /**
+     * Version of the purchaser snapshot the run used; the version of the latest attempt for a resumed run.
+     */
+    @Basic(optional = false)
+    private long snapshotVersion;
+
+    /**
+     * The date the invoices are financed on. A run is only resumed on the same date, since its checkpoint and
+     * decisions do not hold for another one.
+     */
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    /**
+     * The process working on the run; the one that took it over for a resumed run.
+     */
+    @Basic(optional = false)
+    private String owner;
+
+    /**
+     * When the owner last showed that it is working on the run: at the start and with every committed chunk.
+     */
+    @Basic(optional = false)
+    private Instant heartbeatAt;
+
+    @Basic(optional = false)
+    private Instant startedAt;
+
+    @Basic
+    private Instant finishedAt;
+
+    /**
+     * The id of the last invoice of the last committed chunk of the sequential keyset scan. The parallel engine
+     * does not move it: its partitions resume from the invoices that are still pending.
+     */
+    @Basic(optional = false)
+    private long lastInvoiceId;
+
+    @Basic(optional = false)
+    private long processedCount;
+
+    @Basic(optional = false)
+    private long financedCount;
+
+    @Basic(optional = false)
+    private long quarantinedCount;
+
+    /**
+     * The error that made the run fail.
+     */
+    @Basic
+    private String error;
+}
@@ -0,0 +1,11 @@
+package lu.crx.financing.entities;
+
+/**
+ * State of a {@link FinancingRun}. A run that is still {@link #RUNNING} after its process died, or that
+ * {@link #FAILED}, is resumed from its checkpoint by the next run.
+ */
+public enum FinancingRunStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
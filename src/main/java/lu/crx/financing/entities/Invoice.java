@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.time.LocalDate;
 import jakarta.persistence.Basic;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -14,6 +16,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 /**
  * An invoice issued by the {@link Creditor} to the {@link Debtor} for shipped goods.
@@ -68,4 +72,14 @@ public class Invoice implements Serializable {
      */
     @Basic
     private Long discountedAmountInCents;
+
+    /**
+     * Whether the invoice is still waiting for financing. Indexed together with the id, so that the pending
+     * invoices can be read without scanning the financed ones.
+     */
+    @Basic(optional = false)
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Builder.Default
+    private InvoiceFinancingStatus financingStatus = InvoiceFinancingStatus.PENDING;
 }
@@ -0,0 +1,14 @@
+package lu.crx.financing.entities;
+
+/**
+ * Financing state of an {@link Invoice}. Only {@link #PENDING} invoices are picked up by a financing run.
+ */
+public enum InvoiceFinancingStatus {
+    PENDING,
+    FINANCED,
+
+    /**
+     * Financing failed with an error, see {@link QuarantinedInvoice}. Skipped until it is set back to pending.
+     */
+    QUARANTINED
+}
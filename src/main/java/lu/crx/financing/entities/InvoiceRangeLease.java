@@ -0,0 +1,70 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * The pending invoices of a creditor within an id range, planned for a {@link FinancingLeaseRound}, and the lease
+ * of the instance financing them. A lease that expired without being renewed can be claimed by another instance.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceRangeLease implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Basic(optional = false)
+    private long roundId;
+
+    @Basic(optional = false)
+    private long creditorId;
+
+    @Basic(optional = false)
+    private long firstInvoiceId;
+
+    @Basic(optional = false)
+    private long lastInvoiceId;
+
+    /**
+     * The number of pending invoices of the range when the round was planned.
+     */
+    @Basic(optional = false)
+    private long invoiceCount;
+
+    /**
+     * The instance holding the lease, null when the range was never claimed or was released.
+     */
+    @Basic
+    private String owner;
+
+    /**
+     * Incremented by every claim, so that an owner whose lease was stolen cannot renew or complete it anymore.
+     */
+    @Basic(optional = false)
+    private long leaseToken;
+
+    @Basic
+    private Instant expiresAt;
+
+    @Basic
+    private Instant completedAt;
+}
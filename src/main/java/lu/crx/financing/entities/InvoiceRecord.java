@@ -0,0 +1,34 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * An invoice with its financing, read the same way whether it is still in the invoice table or was archived.
+ * The financing columns are null when the invoice is not financed.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class InvoiceRecord {
+    private final long id;
+    private final long creditorId;
+    private final Long debtorId;
+    private final LocalDate maturityDate;
+    private final long valueInCents;
+    private final InvoiceFinancingStatus financingStatus;
+    private final Long earlyPaymentAmountInCents;
+    private final Long discountedAmountInCents;
+    private final Long purchaserId;
+    private final LocalDate financingDate;
+    private final Integer financingTermInDays;
+    private final Integer financingRateInBps;
+
+    /**
+     * Whether the invoice was read from the archive.
+     */
+    private final boolean archived;
+}
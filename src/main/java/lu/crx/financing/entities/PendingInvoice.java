@@ -0,0 +1,21 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/**
+ * The columns of a pending {@link Invoice} that the financing needs, read without loading the invoice entity and
+ * its creditor and debtor.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class PendingInvoice {
+    private final long id;
+    private final long creditorId;
+    private final LocalDate maturityDate;
+    private final long valueInCents;
+}
@@ -0,0 +1,18 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The pending invoices of a creditor within an id range, processed together by one worker of a parallel run.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class PendingInvoicePartition {
+    private final long creditorId;
+    private final long invoiceCount;
+    private final long firstInvoiceId;
+    private final long lastInvoiceId;
+}
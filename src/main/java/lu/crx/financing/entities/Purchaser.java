@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 import jakarta.persistence.Basic;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -17,12 +18,16 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.Singular;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Purchaser is an entity (usually a bank) that wants to purchase the invoices. I.e. it issues a loan
  * to the creditor for the term and the value of the invoice, according to the rate set up by this purchaser.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 @ToString
@@ -48,6 +53,7 @@ public class Purchaser implements Serializable {
      * The per-creditor settings for financing.
      */
     @Singular
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @OneToMany(cascade = CascadeType.PERSIST)
     private Set<PurchaserFinancingSettings> purchaserFinancingSettings = new HashSet<>();
 
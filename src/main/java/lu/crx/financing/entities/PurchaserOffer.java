@@ -0,0 +1,17 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A single purchaser's financing offer for a creditor: the annual rate from the purchaser's
+ * {@link PurchaserFinancingSettings} together with the purchaser's minimum financing term.
+ */
+@Getter
+@AllArgsConstructor
+public class PurchaserOffer {
+    private final Purchaser purchaser;
+    private final long creditorId;
+    private final int annualRateInBps;
+    private final int minimumFinancingTermInDays;
+}
@@ -0,0 +1,45 @@
+package lu.crx.financing.entities;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A version of the purchaser snapshot and the {@link ReferenceDataStamp state of the reference data} it was loaded
+ * from. Its version is assigned by the instance that first loads that state, the next one after the latest version,
+ * so that two instances doing so at the same time collide on the primary key.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaserSnapshotVersion implements Serializable {
+
+    @Id
+    private long version;
+
+    @Basic(optional = false)
+    private long rowCount;
+
+    @Basic(optional = false)
+    private long changeNumberSum;
+
+    @Basic(optional = false)
+    private Instant createdAt;
+
+    public boolean matches(ReferenceDataStamp stamp) {
+        return rowCount == stamp.getRowCount() && changeNumberSum == stamp.getChangeNumberSum();
+    }
+}
@@ -0,0 +1,20 @@
+package lu.crx.financing.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The state of the reference data a purchaser snapshot is built from: the row count and the sum of the change
+ * numbers of the creditors, purchasers and their financing settings. Every insert, update or delete of these rows
+ * changes it.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class ReferenceDataStamp {
+    private final long rowCount;
+    private final long changeNumberSum;
+}
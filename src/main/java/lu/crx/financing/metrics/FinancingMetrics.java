@@ -0,0 +1,218 @@
+package lu.crx.financing.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lu.crx.financing.config.ReferenceDataRegion;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of a financing run goes and what the runs decide:
+ * <ul>
+ *     <li>{@value #STAGE_TIMER}: one timer per {@link FinancingStage}, tagged {@code stage}</li>
+ *     <li>{@value #DECISION_TIMER}: latency of the purchaser selection for a single invoice, persistence
+ *     excluded, with a percentile histogram</li>
+ *     <li>{@value #INVOICE_COUNTER}: invoices by {@code outcome} ({@code financed} / {@code unfinanced}) and
+ *     rejection {@code reason} ({@code none} for financed invoices), counted once the transaction writing them
+ *     commits, so that a chunk rolled back and retried invoice by invoice is counted once</li>
+ *     <li>{@value #PIPELINE_UTILIZATION_GAUGE}: share of the last pipelined run each {@link PipelineStage}, tagged
+ *     {@code stage}, spent working rather than waiting on its queues; the busiest stage is the bottleneck</li>
+ *     <li>{@value #CACHE_HIT_RATIO_GAUGE}: share of the second-level cache lookups of each
+ *     {@link ReferenceDataRegion}, tagged {@code region}, answered by the cache, as of the end of the last run</li>
+ * </ul>
+ * The meters are registered up front, so that recording on the hot path is a plain field access.
+ */
+@Component
+public class FinancingMetrics {
+
+    public static final String STAGE_TIMER = "financing.stage";
+    public static final String DECISION_TIMER = "financing.decision";
+    public static final String INVOICE_COUNTER = "financing.invoices";
+    public static final String PIPELINE_UTILIZATION_GAUGE = "financing.pipeline.utilization";
+    public static final String CACHE_HIT_RATIO_GAUGE = "financing.cache.hit-ratio";
+
+    private final Map<FinancingStage, Timer> stageTimers = new EnumMap<>(FinancingStage.class);
+    private final Map<FinancingRejectionReason, Counter> unfinancedCounters =
+            new EnumMap<>(FinancingRejectionReason.class);
+    /**
+     * The last utilization of each pipeline stage, as the raw bits of a double.
+     */
+    private final Map<PipelineStage, AtomicLong> pipelineUtilizations = new EnumMap<>(PipelineStage.class);
+    /**
+     * The last hit ratio of each reference data cache region, as the raw bits of a double.
+     */
+    private final Map<ReferenceDataRegion, AtomicLong> cacheHitRatios = new EnumMap<>(ReferenceDataRegion.class);
+    private final Counter financedCounter;
+    private final Timer decisionTimer;
+
+    public FinancingMetrics(MeterRegistry meterRegistry) {
+        for (FinancingStage stage : FinancingStage.values()) {
+            stageTimers.put(stage, Timer.builder(STAGE_TIMER)
+                    .description("Time spent in a stage of the financing run")
+                    .tag("stage", stage.getTagValue())
+                    .register(meterRegistry));
+        }
+
+        decisionTimer = Timer.builder(DECISION_TIMER)
+                .description("Latency of the financing decision for a single invoice")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        financedCounter = Counter.builder(INVOICE_COUNTER)
+                .tag("outcome", "financed")
+                .tag("reason", "none")
+                .register(meterRegistry);
+        for (FinancingRejectionReason reason : FinancingRejectionReason.values()) {
+            unfinancedCounters.put(reason, Counter.builder(INVOICE_COUNTER)
+                    .tag("outcome", "unfinanced")
+                    .tag("reason", reasonTag(reason))
+                    .register(meterRegistry));
+        }
+        for (PipelineStage stage : PipelineStage.values()) {
+            AtomicLong utilization = new AtomicLong(Double.doubleToRawLongBits(0));
+            pipelineUtilizations.put(stage, utilization);
+            Gauge.builder(PIPELINE_UTILIZATION_GAUGE, utilization, bits -> Double.longBitsToDouble(bits.get()))
+                    .description("Share of the last pipelined financing run a stage spent working")
+                    .tag("stage", stage.getTagValue())
+                    .register(meterRegistry);
+        }
+        for (ReferenceDataRegion region : ReferenceDataRegion.values()) {
+            AtomicLong hitRatio = new AtomicLong(Double.doubleToRawLongBits(0));
+            cacheHitRatios.put(region, hitRatio);
+            Gauge.builder(CACHE_HIT_RATIO_GAUGE, hitRatio, bits -> Double.longBitsToDouble(bits.get()))
+                    .description("Share of the second-level cache lookups of a reference data region that hit")
+                    .tag("region", region.getTagValue())
+                    .register(meterRegistry);
+        }
+    }
+
+    public static String reasonTag(FinancingRejectionReason reason) {
+        return reason.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading, for the stage.
+     */
+    public void recordStage(FinancingStage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the latency of the purchaser selection for a single invoice, started at {@code decisionStartNanos}.
+     */
+    public void recordDecision(long decisionStartNanos) {
+        decisionTimer.record(System.nanoTime() - decisionStartNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts a financed invoice, see {@link #recordFinanced(int)}.
+     */
+    public void recordFinanced() {
+        recordFinanced(1);
+    }
+
+    /**
+     * Counts financed invoices once the current transaction commits, and not at all if it rolls back. Counted right
+     * away outside of a transaction.
+     */
+    public void recordFinanced(int count) {
+        InvoiceOutcomes outcomes = currentOutcomes();
+        if (outcomes == null) {
+            financedCounter.increment(count);
+        } else {
+            outcomes.financedCount += count;
+        }
+    }
+
+    /**
+     * Counts an invoice that could not be financed once the current transaction commits, and not at all if it rolls
+     * back. Counted right away outside of a transaction.
+     */
+    public void recordUnfinanced(FinancingRejectionReason reason) {
+        InvoiceOutcomes outcomes = currentOutcomes();
+        if (outcomes == null) {
+            unfinancedCounters.get(reason).increment();
+        } else {
+            outcomes.unfinancedCounts[reason.ordinal()]++;
+        }
+    }
+
+    /**
+     * Publishes the utilization, between 0 and 1, of a pipeline stage in the last pipelined run.
+     */
+    public void recordPipelineUtilization(PipelineStage stage, double utilization) {
+        pipelineUtilizations.get(stage).set(Double.doubleToRawLongBits(utilization));
+    }
+
+    /**
+     * Publishes the hit ratio, between 0 and 1, of a reference data cache region.
+     */
+    public void recordCacheHitRatio(ReferenceDataRegion region, double hitRatio) {
+        cacheHitRatios.get(region).set(Double.doubleToRawLongBits(hitRatio));
+    }
+
+    /**
+     * The outcomes counted so far in the current transaction, registered with it on first use; null outside of a
+     * transaction.
+     */
+    private InvoiceOutcomes currentOutcomes() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        InvoiceOutcomes outcomes = (InvoiceOutcomes) TransactionSynchronizationManager.getResource(this);
+        if (outcomes == null) {
+            outcomes = new InvoiceOutcomes();
+            TransactionSynchronizationManager.bindResource(this, outcomes);
+            TransactionSynchronizationManager.registerSynchronization(outcomes);
+        }
+        return outcomes;
+    }
+
+    /**
+     * The outcomes of a transaction, added to the counters when it commits. Bound to the transaction like its
+     * resources, so that a transaction started within it with {@code REQUIRES_NEW} counts its own outcomes.
+     */
+    private final class InvoiceOutcomes implements TransactionSynchronization {
+
+        private int financedCount;
+        private final int[] unfinancedCounts = new int[FinancingRejectionReason.values().length];
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(FinancingMetrics.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(FinancingMetrics.this, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            if (financedCount > 0) {
+                financedCounter.increment(financedCount);
+            }
+            for (FinancingRejectionReason reason : FinancingRejectionReason.values()) {
+                if (unfinancedCounts[reason.ordinal()] > 0) {
+                    unfinancedCounters.get(reason).increment(unfinancedCounts[reason.ordinal()]);
+                }
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(FinancingMetrics.this);
+        }
+    }
+}
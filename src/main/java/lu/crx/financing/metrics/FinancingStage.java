@@ -0,0 +1,22 @@
+package lu.crx.financing.metrics;
+
+/**
+ * The stages of a financing run that are timed by {@link FinancingMetrics}.
+ */
+public enum FinancingStage {
+    FETCH_PENDING("fetch-pending"),
+    FETCH_PURCHASERS("fetch-purchasers"),
+    SELECTION("selection"),
+    PERSISTENCE("persistence"),
+    FLUSH("flush");
+
+    private final String tagValue;
+
+    FinancingStage(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    public String getTagValue() {
+        return tagValue;
+    }
+}
@@ -0,0 +1,21 @@
+package lu.crx.financing.metrics;
+
+/**
+ * The stages of the {@link lu.crx.financing.services.batch.FinancingPipeline pipelined} financing run, whose
+ * utilization is published by {@link FinancingMetrics}.
+ */
+public enum PipelineStage {
+    READ("read"),
+    COMPUTE("compute"),
+    WRITE("write");
+
+    private final String tagValue;
+
+    PipelineStage(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    public String getTagValue() {
+        return tagValue;
+    }
+}
@@ -0,0 +1,27 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.ArchivedInvoiceFinancingDetails;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+@Repository
+public interface ArchivedInvoiceFinancingDetailsRepository
+        extends JpaRepository<ArchivedInvoiceFinancingDetails, Long>,
+        ArchivedInvoiceFinancingDetailsRepositoryCustom {
+
+    /**
+     * Copies the financing details of the given invoices, in a single set-based statement.
+     */
+    @Modifying
+    @Query("INSERT INTO ArchivedInvoiceFinancingDetails (id, invoiceId, purchaserId, financingDate, " +
+            "financingTermInDays, financingRateInBps, earlyPaymentAmountInCents, discountedAmountInCents) " +
+            "SELECT d.id, d.invoice.id, d.purchaser.id, d.financingDate, d.financingTermInDays, d.financingRateInBps, " +
+            "d.earlyPaymentAmountInCents, d.discountedAmountInCents " +
+            "FROM InvoiceFinancingDetails d WHERE d.invoice.id IN :invoiceIds")
+    int copyFinancingDetails(@Param("invoiceIds") Collection<Long> invoiceIds);
+}
@@ -0,0 +1,14 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.FinancingResult;
+
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+public interface ArchivedInvoiceFinancingDetailsRepositoryCustom {
+
+    /**
+     * Archive variant of {@link InvoiceFinancingDetailsRepositoryCustom#streamFinancingResults(LocalDate, LocalDate)}.
+     */
+    Stream<FinancingResult> streamFinancingResults(LocalDate fromDate, LocalDate toDate);
+}
@@ -0,0 +1,46 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.ArchivedInvoice;
+import lu.crx.financing.entities.InvoiceRecord;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ArchivedInvoiceRepository extends JpaRepository<ArchivedInvoice, Long> {
+
+    String SELECT_INVOICE_RECORD = "SELECT new lu.crx.financing.entities.InvoiceRecord(" +
+            "i.id, i.creditorId, i.debtorId, i.maturityDate, i.valueInCents, " +
+            "lu.crx.financing.entities.InvoiceFinancingStatus.FINANCED, " +
+            "i.earlyPaymentAmountInCents, i.discountedAmountInCents, d.purchaserId, d.financingDate, " +
+            "d.financingTermInDays, d.financingRateInBps, true) " +
+            "FROM ArchivedInvoice i LEFT JOIN ArchivedInvoiceFinancingDetails d ON d.invoiceId = i.id ";
+
+    /**
+     * Copies the given financed invoices from the invoice table, in a single set-based statement.
+     */
+    @Modifying
+    @Query("INSERT INTO ArchivedInvoice (id, creditorId, debtorId, maturityDate, valueInCents, " +
+            "earlyPaymentAmountInCents, discountedAmountInCents, archivedAt) " +
+            "SELECT i.id, i.creditor.id, i.debtor.id, i.maturityDate, i.valueInCents, " +
+            "i.earlyPaymentAmountInCents, i.discountedAmountInCents, :archivedAt " +
+            "FROM Invoice i WHERE i.id IN :invoiceIds " +
+            "AND i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.FINANCED")
+    int copyFinancedInvoices(@Param("invoiceIds") Collection<Long> invoiceIds,
+                             @Param("archivedAt") Instant archivedAt);
+
+    @Query(SELECT_INVOICE_RECORD + "WHERE i.id = :invoiceId")
+    Optional<InvoiceRecord> findRecordById(@Param("invoiceId") long invoiceId);
+
+    @Query(SELECT_INVOICE_RECORD + "WHERE i.creditorId = :creditorId AND i.id > :afterInvoiceId ORDER BY i.id")
+    List<InvoiceRecord> findRecordsOfCreditorAfter(@Param("creditorId") long creditorId,
+                                                   @Param("afterInvoiceId") long afterInvoiceId, Limit limit);
+}
@@ -0,0 +1,15 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.Creditor;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CreditorRepositoryCustom {
+
+    /**
+     * Loads the creditors with the given ids, taking those in the second-level cache from there and reading only
+     * the others, in one query. Unknown ids are skipped. Must be called in a transaction.
+     */
+    List<Creditor> findAllByIdCached(Collection<Long> creditorIds);
+}
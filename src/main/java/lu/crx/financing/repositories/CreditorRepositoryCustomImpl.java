@@ -0,0 +1,28 @@
+package lu.crx.financing.repositories;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.entities.Creditor;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+@RequiredArgsConstructor
+public class CreditorRepositoryCustomImpl implements CreditorRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<Creditor> findAllByIdCached(Collection<Long> creditorIds) {
+        List<Creditor> creditors = entityManager.unwrap(Session.class)
+                .byMultipleIds(Creditor.class)
+                // Without an explicit cache mode, the multi-load does not look up the second-level cache
+                .with(CacheMode.NORMAL)
+                .multiLoad(new ArrayList<>(creditorIds));
+        return creditors.stream().filter(Objects::nonNull).toList();
+    }
+}
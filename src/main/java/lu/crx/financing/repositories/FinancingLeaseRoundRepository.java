@@ -0,0 +1,34 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.FinancingLeaseRound;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface FinancingLeaseRoundRepository extends JpaRepository<FinancingLeaseRound, Long> {
+
+    Optional<FinancingLeaseRound> findFirstByOrderByIdDesc();
+
+    /**
+     * Inserts the round, failing on the primary key when another instance planned a round with the same id.
+     * Unlike {@code save()}, never merges into an existing round.
+     */
+    @Modifying
+    @Query("INSERT INTO FinancingLeaseRound (id, startedAt) VALUES (:roundId, :startedAt)")
+    int insert(@Param("roundId") long roundId, @Param("startedAt") Instant startedAt);
+
+    /**
+     * Completes the round when none of its ranges is left to do.
+     */
+    @Modifying
+    @Query("UPDATE FinancingLeaseRound r SET r.completedAt = :completedAt " +
+            "WHERE r.id = :roundId AND r.completedAt IS NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM InvoiceRangeLease l WHERE l.roundId = r.id AND l.completedAt IS NULL)")
+    int complete(@Param("roundId") long roundId, @Param("completedAt") Instant completedAt);
+}
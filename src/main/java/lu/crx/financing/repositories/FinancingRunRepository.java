@@ -0,0 +1,53 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface FinancingRunRepository extends JpaRepository<FinancingRun, Long> {
+
+    Optional<FinancingRun> findFirstByOrderByIdDesc();
+
+    Optional<FinancingRun> findFirstByFinancingDateOrderByIdDesc(LocalDate financingDate);
+
+    /**
+     * Takes over a run for a new attempt, provided that nobody touched it since it was read: the status and the
+     * heartbeat are those that made it resumable.
+     *
+     * @return 1 if the run was taken over, 0 if another process took it over or its owner recorded a chunk since
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE FinancingRun r SET r.status = :newStatus, r.owner = :owner, r.heartbeatAt = :now, " +
+            "r.snapshotVersion = :snapshotVersion, r.finishedAt = NULL, r.error = NULL " +
+            "WHERE r.id = :runId AND r.status = :status AND r.heartbeatAt = :heartbeatAt")
+    int takeOver(@Param("runId") long runId, @Param("status") FinancingRunStatus status,
+                 @Param("heartbeatAt") Instant heartbeatAt, @Param("newStatus") FinancingRunStatus newStatus,
+                 @Param("owner") String owner, @Param("snapshotVersion") long snapshotVersion,
+                 @Param("now") Instant now);
+
+    /**
+     * Adds a committed chunk to the run's checkpoint and records the heartbeat of its owner. The counts are
+     * incremented in place, so that the chunks of a parallel run can record themselves concurrently; a null last
+     * invoice id leaves it unchanged.
+     */
+    @Modifying
+    @Query("UPDATE FinancingRun r SET " +
+            "r.processedCount = r.processedCount + :processedCount, " +
+            "r.financedCount = r.financedCount + :financedCount, " +
+            "r.quarantinedCount = r.quarantinedCount + :quarantinedCount, " +
+            "r.lastInvoiceId = COALESCE(:lastInvoiceId, r.lastInvoiceId), " +
+            "r.heartbeatAt = :heartbeatAt " +
+            "WHERE r.id = :runId")
+    int recordChunk(@Param("runId") long runId, @Param("lastInvoiceId") Long lastInvoiceId,
+                    @Param("processedCount") long processedCount, @Param("financedCount") long financedCount,
+                    @Param("quarantinedCount") long quarantinedCount, @Param("heartbeatAt") Instant heartbeatAt);
+}
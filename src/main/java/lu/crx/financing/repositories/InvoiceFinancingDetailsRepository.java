@@ -2,8 +2,18 @@ package lu.crx.financing.repositories;
 
 import lu.crx.financing.entities.InvoiceFinancingDetails;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+
 @Repository
-public interface InvoiceFinancingDetailsRepository extends JpaRepository<InvoiceFinancingDetails, Long> {
-}
\ No newline at end of file
+public interface InvoiceFinancingDetailsRepository extends JpaRepository<InvoiceFinancingDetails, Long>,
+        InvoiceFinancingDetailsRepositoryCustom {
+
+    @Modifying
+    @Query("DELETE FROM InvoiceFinancingDetails d WHERE d.invoice.id IN :invoiceIds")
+    int deleteByInvoiceIds(@Param("invoiceIds") Collection<Long> invoiceIds);
+}
@@ -0,0 +1,15 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.FinancingResult;
+
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+public interface InvoiceFinancingDetailsRepositoryCustom {
+
+    /**
+     * Streams the financing results with a financing date in {@code [fromDate, toDate]}, in invoice id order, from a
+     * database cursor. Must be consumed and closed within a transaction.
+     */
+    Stream<FinancingResult> streamFinancingResults(LocalDate fromDate, LocalDate toDate);
+}
@@ -0,0 +1,33 @@
+package lu.crx.financing.repositories;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingResult;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class InvoiceFinancingDetailsRepositoryCustomImpl implements InvoiceFinancingDetailsRepositoryCustom {
+
+    private final EntityManager entityManager;
+    private final FinancingProperties financingProperties;
+
+    @Override
+    public Stream<FinancingResult> streamFinancingResults(LocalDate fromDate, LocalDate toDate) {
+        return entityManager.createQuery(
+                        "SELECT new lu.crx.financing.entities.FinancingResult(i.id, i.creditor.id, d.purchaser.id, " +
+                                "d.financingDate, d.financingTermInDays, d.financingRateInBps, i.valueInCents, " +
+                                "d.earlyPaymentAmountInCents, d.discountedAmountInCents) " +
+                                "FROM InvoiceFinancingDetails d JOIN d.invoice i " +
+                                "WHERE d.financingDate BETWEEN :fromDate AND :toDate ORDER BY i.id",
+                        FinancingResult.class)
+                .setParameter("fromDate", fromDate)
+                .setParameter("toDate", toDate)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, financingProperties.getExport().getFetchSize())
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+}
@@ -0,0 +1,53 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.InvoiceRangeLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The leases are only changed through conditional updates, so that two instances racing for a lease cannot both
+ * get it: the one whose update matches no row lost.
+ */
+@Repository
+public interface InvoiceRangeLeaseRepository extends JpaRepository<InvoiceRangeLease, Long> {
+
+    List<InvoiceRangeLease> findByRoundIdAndCompletedAtIsNullOrderByInvoiceCountDesc(long roundId);
+
+    /**
+     * Takes the lease of a range that is free, or whose lease expired, provided nobody claimed it since it was read
+     * with the given token.
+     */
+    @Modifying
+    @Query("UPDATE InvoiceRangeLease l SET l.owner = :owner, l.leaseToken = l.leaseToken + 1, " +
+            "l.expiresAt = :expiresAt " +
+            "WHERE l.id = :leaseId AND l.leaseToken = :leaseToken AND l.completedAt IS NULL " +
+            "AND (l.owner IS NULL OR l.expiresAt < :now)")
+    int claim(@Param("leaseId") long leaseId, @Param("leaseToken") long leaseToken, @Param("owner") String owner,
+              @Param("now") Instant now, @Param("expiresAt") Instant expiresAt);
+
+    @Modifying
+    @Query("UPDATE InvoiceRangeLease l SET l.expiresAt = :expiresAt " +
+            "WHERE l.id = :leaseId AND l.owner = :owner AND l.leaseToken = :leaseToken AND l.completedAt IS NULL")
+    int renew(@Param("leaseId") long leaseId, @Param("owner") String owner, @Param("leaseToken") long leaseToken,
+              @Param("expiresAt") Instant expiresAt);
+
+    @Modifying
+    @Query("UPDATE InvoiceRangeLease l SET l.completedAt = :completedAt, l.owner = NULL, l.expiresAt = NULL " +
+            "WHERE l.id = :leaseId AND l.owner = :owner AND l.leaseToken = :leaseToken AND l.completedAt IS NULL")
+    int complete(@Param("leaseId") long leaseId, @Param("owner") String owner, @Param("leaseToken") long leaseToken,
+                 @Param("completedAt") Instant completedAt);
+
+    /**
+     * Gives up a lease, so that another instance can claim the range right away instead of waiting for it to expire.
+     */
+    @Modifying
+    @Query("UPDATE InvoiceRangeLease l SET l.owner = NULL, l.expiresAt = NULL " +
+            "WHERE l.id = :leaseId AND l.owner = :owner AND l.leaseToken = :leaseToken AND l.completedAt IS NULL")
+    int release(@Param("leaseId") long leaseId, @Param("owner") String owner, @Param("leaseToken") long leaseToken);
+}
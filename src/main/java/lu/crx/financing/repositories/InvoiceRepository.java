@@ -1,15 +1,82 @@
 package lu.crx.financing.repositories;
 
 import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceRecord;
+import lu.crx.financing.entities.PendingInvoicePartition;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+public interface InvoiceRepository extends JpaRepository<Invoice, Long>, InvoiceRepositoryCustom {
 
-    @Query("SELECT i FROM Invoice i WHERE i.earlyPaymentAmountInCents IS NULL")
-    List<Invoice> findNonFinancedInvoices();
-}
\ No newline at end of file
+    String SELECT_INVOICE_RECORD = "SELECT new lu.crx.financing.entities.InvoiceRecord(" +
+            "i.id, i.creditor.id, i.debtor.id, i.maturityDate, i.valueInCents, i.financingStatus, " +
+            "i.earlyPaymentAmountInCents, i.discountedAmountInCents, d.purchaser.id, d.financingDate, " +
+            "d.financingTermInDays, d.financingRateInBps, false) " +
+            "FROM Invoice i LEFT JOIN InvoiceFinancingDetails d ON d.invoice = i ";
+
+    @Query("SELECT new lu.crx.financing.entities.PendingInvoicePartition(i.creditor.id, COUNT(i), MIN(i.id), MAX(i.id)) " +
+            "FROM Invoice i WHERE i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.PENDING " +
+            "GROUP BY i.creditor.id")
+    List<PendingInvoicePartition> findPendingInvoicePartitionsByCreditor();
+
+    /**
+     * Copies the amounts of the persisted financing details onto the given pending invoices and marks them as
+     * financed, in a single set-based statement. Only the rows of the given invoices are matched, so that the chunks
+     * written at the same time, e.g. by the parallel engine, do not lock each other's invoices.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Invoice i SET " +
+            "i.earlyPaymentAmountInCents = (SELECT d.earlyPaymentAmountInCents FROM InvoiceFinancingDetails d WHERE d.invoice.id = i.id), " +
+            "i.discountedAmountInCents = (SELECT d.discountedAmountInCents FROM InvoiceFinancingDetails d WHERE d.invoice.id = i.id), " +
+            "i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.FINANCED " +
+            "WHERE i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.PENDING " +
+            "AND i.id IN :invoiceIds " +
+            "AND EXISTS (SELECT 1 FROM InvoiceFinancingDetails d WHERE d.invoice.id = i.id)")
+    int markFinancedFromDetails(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+    /**
+     * Sets a pending invoice aside after its financing failed, so that the following runs skip it.
+     */
+    @Modifying
+    @Query("UPDATE Invoice i SET i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.QUARANTINED " +
+            "WHERE i.id = :invoiceId AND i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.PENDING")
+    int markQuarantined(@Param("invoiceId") long invoiceId);
+
+    /**
+     * Reads the ids, among the given ones, of the pending invoices that have no financing details yet.
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.id IN :invoiceIds " +
+            "AND i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.PENDING " +
+            "AND NOT EXISTS (SELECT 1 FROM InvoiceFinancingDetails d WHERE d.invoice.id = i.id)")
+    List<Long> findPendingIdsWithoutFinancingDetails(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+    /**
+     * Reads the ids of the next financed invoices to archive in id order, after the given id. Invoices with a
+     * quarantine record stay, since the record refers to them.
+     */
+    @Query("SELECT i.id FROM Invoice i " +
+            "WHERE i.financingStatus = lu.crx.financing.entities.InvoiceFinancingStatus.FINANCED " +
+            "AND i.id > :afterInvoiceId " +
+            "AND NOT EXISTS (SELECT 1 FROM QuarantinedInvoice q WHERE q.invoice.id = i.id) ORDER BY i.id")
+    List<Long> findArchivableInvoiceIds(@Param("afterInvoiceId") long afterInvoiceId, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM Invoice i WHERE i.id IN :invoiceIds")
+    int deleteByIds(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+    @Query(SELECT_INVOICE_RECORD + "WHERE i.id = :invoiceId")
+    Optional<InvoiceRecord> findRecordById(@Param("invoiceId") long invoiceId);
+
+    @Query(SELECT_INVOICE_RECORD + "WHERE i.creditor.id = :creditorId AND i.id > :afterInvoiceId ORDER BY i.id")
+    List<InvoiceRecord> findRecordsOfCreditorAfter(@Param("creditorId") long creditorId,
+                                                   @Param("afterInvoiceId") long afterInvoiceId, Limit limit);
+}
@@ -0,0 +1,46 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.PendingInvoice;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads the pending invoices, either as entities, with their creditor and debtor fetched in the same query, or as
+ * {@link PendingInvoice} projections of the columns the financing needs.
+ */
+public interface InvoiceRepositoryCustom {
+
+    /**
+     * Reads the next page of non-financed invoices in id order, starting after the given id (keyset pagination).
+     */
+    List<Invoice> findNonFinancedInvoicesAfter(long lastInvoiceId, int pageSize);
+
+    /**
+     * Reads the next page of a creditor's non-financed invoices with ids in {@code (lastInvoiceId, toInvoiceId]}.
+     */
+    List<Invoice> findNonFinancedInvoicesOfCreditorAfter(long creditorId, long lastInvoiceId, long toInvoiceId,
+                                                         int pageSize);
+
+    /**
+     * Reads the non-financed invoices among the given ids, in id order.
+     */
+    List<Invoice> findNonFinancedInvoicesByIds(Collection<Long> invoiceIds);
+
+    /**
+     * Projection variant of {@link #findNonFinancedInvoicesAfter(long, int)}.
+     */
+    List<PendingInvoice> findPendingInvoicesAfter(long lastInvoiceId, int pageSize);
+
+    /**
+     * Projection variant of {@link #findNonFinancedInvoicesOfCreditorAfter(long, long, long, int)}.
+     */
+    List<PendingInvoice> findPendingInvoicesOfCreditorAfter(long creditorId, long lastInvoiceId, long toInvoiceId,
+                                                            int pageSize);
+
+    /**
+     * Projection variant of {@link #findNonFinancedInvoicesByIds(Collection)}.
+     */
+    List<PendingInvoice> findPendingInvoicesByIds(Collection<Long> invoiceIds);
+}
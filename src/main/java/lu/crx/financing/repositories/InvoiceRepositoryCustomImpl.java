@@ -0,0 +1,101 @@
+package lu.crx.financing.repositories;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
+import lu.crx.financing.entities.PendingInvoice;
+import org.hibernate.jpa.HibernateHints;
+
+import java.util.Collection;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class InvoiceRepositoryCustomImpl implements InvoiceRepositoryCustom {
+
+    private static final String SELECT_INVOICE =
+            "SELECT i FROM Invoice i JOIN FETCH i.creditor LEFT JOIN FETCH i.debtor ";
+
+    private static final String SELECT_PENDING_INVOICE =
+            "SELECT new lu.crx.financing.entities.PendingInvoice(i.id, i.creditor.id, i.maturityDate, i.valueInCents) " +
+                    "FROM Invoice i ";
+
+    private final EntityManager entityManager;
+    private final FinancingProperties financingProperties;
+
+    @Override
+    public List<Invoice> findNonFinancedInvoicesAfter(long lastInvoiceId, int pageSize) {
+        return entityManager.createQuery(
+                        SELECT_INVOICE + "WHERE i.financingStatus = :status AND i.id > :lastInvoiceId " +
+                                "ORDER BY i.id", Invoice.class)
+                .setParameter("status", InvoiceFinancingStatus.PENDING)
+                .setParameter("lastInvoiceId", lastInvoiceId)
+                .setMaxResults(pageSize)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, financingProperties.getRead().getFetchSize())
+                .getResultList();
+    }
+
+    @Override
+    public List<Invoice> findNonFinancedInvoicesOfCreditorAfter(long creditorId, long lastInvoiceId, long toInvoiceId,
+                                                                int pageSize) {
+        return entityManager.createQuery(
+                        SELECT_INVOICE + "WHERE i.financingStatus = :status AND i.creditor.id = :creditorId " +
+                                "AND i.id > :lastInvoiceId AND i.id <= :toInvoiceId ORDER BY i.id", Invoice.class)
+                .setParameter("status", InvoiceFinancingStatus.PENDING)
+                .setParameter("creditorId", creditorId)
+                .setParameter("lastInvoiceId", lastInvoiceId)
+                .setParameter("toInvoiceId", toInvoiceId)
+                .setMaxResults(pageSize)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, financingProperties.getRead().getFetchSize())
+                .getResultList();
+    }
+
+    @Override
+    public List<Invoice> findNonFinancedInvoicesByIds(Collection<Long> invoiceIds) {
+        return entityManager.createQuery(
+                        SELECT_INVOICE + "WHERE i.financingStatus = :status AND i.id IN :invoiceIds " +
+                                "ORDER BY i.id", Invoice.class)
+                .setParameter("status", InvoiceFinancingStatus.PENDING)
+                .setParameter("invoiceIds", invoiceIds)
+                .getResultList();
+    }
+
+    @Override
+    public List<PendingInvoice> findPendingInvoicesAfter(long lastInvoiceId, int pageSize) {
+        return entityManager.createQuery(
+                        SELECT_PENDING_INVOICE + "WHERE i.financingStatus = :status AND i.id > :lastInvoiceId " +
+                                "ORDER BY i.id", PendingInvoice.class)
+                .setParameter("status", InvoiceFinancingStatus.PENDING)
+                .setParameter("lastInvoiceId", lastInvoiceId)
+                .setMaxResults(pageSize)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, financingProperties.getRead().getFetchSize())
+                .getResultList();
+    }
+
+    @Override
+    public List<PendingInvoice> findPendingInvoicesOfCreditorAfter(long creditorId, long lastInvoiceId,
+                                                                   long toInvoiceId, int pageSize) {
+        return entityManager.createQuery(
+                        SELECT_PENDING_INVOICE + "WHERE i.financingStatus = :status AND i.creditor.id = :creditorId " +
+                                "AND i.id > :lastInvoiceId AND i.id <= :toInvoiceId ORDER BY i.id",
+                        PendingInvoice.class)
+                .setParameter("status", InvoiceFinancingStatus.PENDING)
+                .setParameter("creditorId", creditorId)
+                .setParameter("lastInvoiceId", lastInvoiceId)
+                .setParameter("toInvoiceId", toInvoiceId)
+                .setMaxResults(pageSize)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, financingProperties.getRead().getFetchSize())
+                .getResultList();
+    }
+
+    @Override
+    public List<PendingInvoice> findPendingInvoicesByIds(Collection<Long> invoiceIds) {
+        return entityManager.createQuery(
+                        SELECT_PENDING_INVOICE + "WHERE i.financingStatus = :status AND i.id IN :invoiceIds " +
+                                "ORDER BY i.id", PendingInvoice.class)
+                .setParameter("status", InvoiceFinancingStatus.PENDING)
+                .setParameter("invoiceIds", invoiceIds)
+                .getResultList();
+    }
+}
@@ -1,8 +1,11 @@
 package lu.crx.financing.repositories;
 
 import lu.crx.financing.entities.Purchaser;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,6 +13,14 @@ import java.util.List;
 @Repository
 public interface PurchaserRepository extends JpaRepository<Purchaser, Long> {
 
+    /**
+     * Loads all the purchasers with their settings. The result is cached in the {@code purchasers} query region,
+     * which Hibernate invalidates when one of the tables is written through it.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "purchasers")
+    })
     @Query("SELECT DISTINCT p FROM Purchaser p LEFT JOIN FETCH p.purchaserFinancingSettings")
     List<Purchaser> findAllWithFinancingSettings();
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.PurchaserSnapshotVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface PurchaserSnapshotVersionRepository extends JpaRepository<PurchaserSnapshotVersion, Long>,
+        PurchaserSnapshotVersionRepositoryCustom {
+
+    Optional<PurchaserSnapshotVersion> findFirstByOrderByVersionDesc();
+
+    /**
+     * Inserts the version, failing on the primary key when another instance recorded the same version. Unlike
+     * {@code save()}, never merges into an existing version.
+     */
+    @Transactional
+    @Modifying
+    @Query("INSERT INTO PurchaserSnapshotVersion (version, rowCount, changeNumberSum, createdAt) " +
+            "VALUES (:version, :rowCount, :changeNumberSum, :createdAt)")
+    int insert(@Param("version") long version, @Param("rowCount") long rowCount,
+               @Param("changeNumberSum") long changeNumberSum, @Param("createdAt") Instant createdAt);
+}
@@ -0,0 +1,12 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.ReferenceDataStamp;
+
+public interface PurchaserSnapshotVersionRepositoryCustom {
+
+    /**
+     * Reads the current state of the reference data from the change numbers of its tables, in one query. Written
+     * in SQL, since the change numbers are maintained by the database and not mapped by the entities.
+     */
+    ReferenceDataStamp readReferenceDataStamp();
+}
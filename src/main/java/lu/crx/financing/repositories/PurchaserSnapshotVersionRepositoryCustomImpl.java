@@ -0,0 +1,26 @@
+package lu.crx.financing.repositories;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.entities.ReferenceDataStamp;
+
+@RequiredArgsConstructor
+public class PurchaserSnapshotVersionRepositoryCustomImpl implements PurchaserSnapshotVersionRepositoryCustom {
+
+    private static final String SELECT_REFERENCE_DATA_STAMP =
+            "SELECT SUM(row_count), SUM(change_number_sum) FROM (" +
+                    "SELECT COUNT(*) AS row_count, COALESCE(SUM(change_number), 0) AS change_number_sum " +
+                    "FROM creditor " +
+                    "UNION ALL SELECT COUNT(*), COALESCE(SUM(change_number), 0) FROM purchaser " +
+                    "UNION ALL SELECT COUNT(*), COALESCE(SUM(change_number), 0) FROM purchaser_financing_settings " +
+                    "UNION ALL SELECT COUNT(*), COALESCE(SUM(change_number), 0) " +
+                    "FROM purchaser_purchaser_financing_settings) reference_data";
+
+    private final EntityManager entityManager;
+
+    @Override
+    public ReferenceDataStamp readReferenceDataStamp() {
+        Object[] row = (Object[]) entityManager.createNativeQuery(SELECT_REFERENCE_DATA_STAMP).getSingleResult();
+        return new ReferenceDataStamp(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+    }
+}
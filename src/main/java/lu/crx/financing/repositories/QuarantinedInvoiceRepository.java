@@ -0,0 +1,13 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.QuarantinedInvoice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface QuarantinedInvoiceRepository extends JpaRepository<QuarantinedInvoice, Long> {
+
+    List<QuarantinedInvoice> findByFinancingRunId(long financingRunId);
+}
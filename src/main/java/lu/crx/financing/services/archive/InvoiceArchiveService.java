@@ -0,0 +1,88 @@
+package lu.crx.financing.services.archive;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.repositories.ArchivedInvoiceFinancingDetailsRepository;
+import lu.crx.financing.repositories.ArchivedInvoiceRepository;
+import lu.crx.financing.repositories.InvoiceFinancingDetailsRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Moves the financed invoices and their financing details from the invoice tables to the archive tables, so that
+ * the invoice table only holds the invoices still in progress. Financed invoices are never financed again, so
+ * they can move while financing runs are going on.
+ * <p>
+ * The invoices move in batches of {@code financing.archive.batch-size}, each copied and deleted with set-based
+ * statements in its own transaction: an interrupted archiving keeps the batches it committed, and the next one
+ * goes on with the financed invoices that are left. {@link InvoiceLookupService} reads both tables.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InvoiceArchiveService {
+
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceFinancingDetailsRepository financingDetailsRepository;
+    private final ArchivedInvoiceRepository archivedInvoiceRepository;
+    private final ArchivedInvoiceFinancingDetailsRepository archivedFinancingDetailsRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * @return the number of invoices archived
+     */
+    public long archiveFinancedInvoices() {
+        int batchSize = financingProperties.getArchive().getBatchSize();
+        long lastInvoiceId = 0;
+        long archivedCount = 0;
+        List<Long> batch;
+
+        do {
+            long afterInvoiceId = lastInvoiceId;
+            try {
+                batch = newTransaction().execute(status -> archiveBatch(afterInvoiceId, batchSize));
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Stopping the archiving after {} invoices, another instance is archiving the same invoices",
+                        archivedCount, e);
+                return archivedCount;
+            }
+            if (!batch.isEmpty()) {
+                archivedCount += batch.size();
+                lastInvoiceId = batch.get(batch.size() - 1);
+            }
+        } while (batch.size() == batchSize);
+
+        log.info("Archived {} financed invoices", archivedCount);
+        return archivedCount;
+    }
+
+    private List<Long> archiveBatch(long afterInvoiceId, int batchSize) {
+        List<Long> invoiceIds = invoiceRepository.findArchivableInvoiceIds(afterInvoiceId, Limit.of(batchSize));
+        if (invoiceIds.isEmpty()) {
+            return invoiceIds;
+        }
+
+        // The details refer to the invoice in both tables: the archived invoice goes first and the live one last
+        archivedInvoiceRepository.copyFinancedInvoices(invoiceIds, Instant.now());
+        archivedFinancingDetailsRepository.copyFinancingDetails(invoiceIds);
+        financingDetailsRepository.deleteByInvoiceIds(invoiceIds);
+        invoiceRepository.deleteByIds(invoiceIds);
+        return invoiceIds;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate batchTransaction = new TransactionTemplate(transactionManager);
+        batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return batchTransaction;
+    }
+}
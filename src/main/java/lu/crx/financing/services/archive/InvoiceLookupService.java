@@ -0,0 +1,53 @@
+package lu.crx.financing.services.archive;
+
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.entities.InvoiceRecord;
+import lu.crx.financing.repositories.ArchivedInvoiceRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads the invoices with their financing whether they are still in the invoice table or were moved to the archive
+ * by {@link InvoiceArchiveService}. An invoice is in exactly one of the two tables, with the same id.
+ */
+@Service
+@RequiredArgsConstructor
+public class InvoiceLookupService {
+
+    private final InvoiceRepository invoiceRepository;
+    private final ArchivedInvoiceRepository archivedInvoiceRepository;
+
+    public Optional<InvoiceRecord> findInvoice(long invoiceId) {
+        Optional<InvoiceRecord> invoice = invoiceRepository.findRecordById(invoiceId);
+        return invoice.isPresent() ? invoice : archivedInvoiceRepository.findRecordById(invoiceId);
+    }
+
+    /**
+     * Reads the next page of a creditor's invoices, live and archived, in id order, starting after the given id
+     * (keyset pagination).
+     */
+    public List<InvoiceRecord> findInvoicesOfCreditor(long creditorId, long afterInvoiceId, int pageSize) {
+        List<InvoiceRecord> liveInvoices =
+                invoiceRepository.findRecordsOfCreditorAfter(creditorId, afterInvoiceId, Limit.of(pageSize));
+        List<InvoiceRecord> archivedInvoices =
+                archivedInvoiceRepository.findRecordsOfCreditorAfter(creditorId, afterInvoiceId, Limit.of(pageSize));
+
+        List<InvoiceRecord> page = new ArrayList<>(pageSize);
+        int live = 0;
+        int archived = 0;
+        while (page.size() < pageSize && (live < liveInvoices.size() || archived < archivedInvoices.size())) {
+            if (archived == archivedInvoices.size() || (live < liveInvoices.size()
+                    && liveInvoices.get(live).getId() < archivedInvoices.get(archived).getId())) {
+                page.add(liveInvoices.get(live++));
+            } else {
+                page.add(archivedInvoices.get(archived++));
+            }
+        }
+        return page;
+    }
+}
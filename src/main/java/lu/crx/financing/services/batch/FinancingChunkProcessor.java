@@ -0,0 +1,170 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
+import lu.crx.financing.services.financing.FinancingLeaseLostException;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.FinancingRunService;
+import lu.crx.financing.utils.PersistenceContextFlushController;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Processes a financing run chunk by chunk. Every chunk is read, financed and added to the checkpoint of the run
+ * in its own transaction, so that a failure only rolls back the current chunk and the run resumes after the last
+ * committed one.
+ * <p>
+ * When a chunk fails, its invoices are retried one by one, each in its own transaction, and the invoices that fail
+ * on their own are quarantined with their error instead of failing the run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FinancingChunkProcessor {
+
+    private static final Runnable NO_GUARD = () -> {
+    };
+
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final InvoiceBatchProcessor invoiceBatchProcessor;
+    private final PersistenceContextFlushController flushController;
+    private final FinancingRunService financingRunService;
+    private final PlatformTransactionManager transactionManager;
+    private final FinancingMetrics financingMetrics;
+
+    /**
+     * @param chunkReader       reads the pending invoices of the chunk, called within the chunk transaction
+     * @param advanceCheckpoint whether the chunk moves the run's resume point, i.e. the chunks are read in id order
+     * @return the outcome of the chunk, {@link FinancingChunkResult#EMPTY} when there was nothing left to read
+     */
+    public FinancingChunkResult processChunk(Supplier<List<Invoice>> chunkReader, boolean advanceCheckpoint,
+                                             FinancingRunContext context) {
+        return processChunk(chunkReader, advanceCheckpoint, NO_GUARD, context);
+    }
+
+    /**
+     * @param chunkGuard runs first in every transaction of the chunk, including the retries invoice by invoice, and
+     *                   fails the chunk by throwing; a {@link FinancingLeaseLostException} is never quarantined
+     */
+    public FinancingChunkResult processChunk(Supplier<List<Invoice>> chunkReader, boolean advanceCheckpoint,
+                                             Runnable chunkGuard, FinancingRunContext context) {
+        List<Long> invoiceIds = new ArrayList<>();
+        try {
+            return newTransaction().execute(status -> {
+                chunkGuard.run();
+                return financeChunk(chunkReader, advanceCheckpoint, context, invoiceIds);
+            });
+        } catch (FinancingLeaseLostException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (invoiceIds.isEmpty()) {
+                throw e;
+            }
+            log.warn("Financing chunk of {} invoices starting at invoice {} failed, retrying invoice by invoice",
+                    invoiceIds.size(), invoiceIds.get(0), e);
+            return processInvoiceByInvoice(invoiceIds, advanceCheckpoint, chunkGuard, context);
+        }
+    }
+
+    /**
+     * Writes, in its own transaction, a chunk whose purchasers were already selected, and advances the run's
+     * resume point to its last invoice. Falls back to {@link #processInvoiceByInvoice} when the chunk fails.
+     *
+     * @param purchaserMatches the selected purchaser of each invoice, at the same index; null when none was found
+     */
+    public FinancingChunkResult writeDecidedChunk(List<Invoice> invoices,
+                                                  List<PurchaserFinancingResult> purchaserMatches,
+                                                  FinancingRunContext context) {
+        try {
+            return newTransaction().execute(status -> {
+                int financedCount = invoiceBatchProcessor.applyFinancingDecisions(invoices, purchaserMatches, context);
+                return completeChunk(invoices, financedCount, true, context);
+            });
+        } catch (RuntimeException e) {
+            List<Long> invoiceIds = invoices.stream().map(Invoice::getId).toList();
+            log.warn("Writing financing chunk of {} invoices starting at invoice {} failed, retrying invoice by invoice",
+                    invoiceIds.size(), invoiceIds.get(0), e);
+            return processInvoiceByInvoice(invoiceIds, true, context);
+        }
+    }
+
+    /**
+     * Finances the invoices one by one, each in its own transaction, and quarantines the ones that fail.
+     */
+    public FinancingChunkResult processInvoiceByInvoice(List<Long> invoiceIds, boolean advanceCheckpoint,
+                                                        FinancingRunContext context) {
+        return processInvoiceByInvoice(invoiceIds, advanceCheckpoint, NO_GUARD, context);
+    }
+
+    private FinancingChunkResult processInvoiceByInvoice(List<Long> invoiceIds, boolean advanceCheckpoint,
+                                                         Runnable chunkGuard, FinancingRunContext context) {
+        int financedCount = 0;
+        int quarantinedCount = 0;
+
+        for (long invoiceId : invoiceIds) {
+            try {
+                // An invoice that is no longer pending, e.g. financed by an instant financing meanwhile, is skipped
+                FinancingChunkResult single = newTransaction().execute(status -> {
+                    chunkGuard.run();
+                    return financeChunk(() -> pendingInvoiceReader.readByIds(List.of(invoiceId), context),
+                            advanceCheckpoint, context, new ArrayList<>());
+                });
+                financedCount += single.getFinancedCount();
+            } catch (FinancingLeaseLostException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                log.warn("Quarantining invoice {} of financing run {}", invoiceId, context.getRunId(), e);
+                if (financingRunService.quarantine(context.getRunId(), invoiceId, advanceCheckpoint, e)) {
+                    quarantinedCount++;
+                }
+            }
+        }
+
+        return new FinancingChunkResult(invoiceIds.size(), financedCount, quarantinedCount,
+                invoiceIds.get(invoiceIds.size() - 1));
+    }
+
+    private FinancingChunkResult financeChunk(Supplier<List<Invoice>> chunkReader, boolean advanceCheckpoint,
+                                              FinancingRunContext context, List<Long> invoiceIds) {
+        long fetchStart = System.nanoTime();
+        List<Invoice> pendingInvoices = chunkReader.get();
+        financingMetrics.recordStage(FinancingStage.FETCH_PENDING, fetchStart);
+        if (pendingInvoices.isEmpty()) {
+            return FinancingChunkResult.EMPTY;
+        }
+        for (Invoice invoice : pendingInvoices) {
+            invoiceIds.add(invoice.getId());
+        }
+
+        int financedCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, context);
+        return completeChunk(pendingInvoices, financedCount, advanceCheckpoint, context);
+    }
+
+    private FinancingChunkResult completeChunk(List<Invoice> invoices, int financedCount, boolean advanceCheckpoint,
+                                               FinancingRunContext context) {
+        // Detach the chunk before reading the next one, so that memory does not grow with the backlog
+        flushController.flushAndClear(context, (int) context.getProcessedInvoiceCount());
+
+        FinancingChunkResult chunk = new FinancingChunkResult(invoices.size(), financedCount, 0,
+                invoices.get(invoices.size() - 1).getId());
+        financingRunService.recordChunk(context.getRunId(), chunk, advanceCheckpoint);
+        return chunk;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return chunkTransaction;
+    }
+}
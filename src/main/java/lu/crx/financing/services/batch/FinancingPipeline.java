@@ -0,0 +1,222 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
+import lu.crx.financing.metrics.PipelineStage;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the sequential financing as a pipeline of three stages, so that reading, selecting and writing overlap
+ * instead of taking turns on one thread:
+ * <ul>
+ *     <li>a reader thread reads the pages of pending invoices in id order, each in a short read-only transaction,
+ *     and hands every page to the compute workers</li>
+ *     <li>compute workers select the purchasers of a page; they only read the run's offer book and decision
+ *     cache</li>
+ *     <li>the calling thread writes the pages in id order, every page in its own transaction together with the
+ *     run's checkpoint (see {@link FinancingChunkProcessor})</li>
+ * </ul>
+ * The reader puts the pages, with the pending selection of their purchasers, on a queue bounded by
+ * {@code financing.pipeline.queue-capacity}: when the writer falls behind, the reader blocks, so at most that many
+ * pages are held in memory. The utilization of every stage is logged and published at the end of the run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FinancingPipeline {
+
+    /**
+     * Put on the queue by the reader after the last page.
+     */
+    private static final ReadChunk END_OF_INPUT = new ReadChunk(List.of(), null);
+
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final InvoiceFinancingApplier invoiceFinancingApplier;
+    private final FinancingChunkProcessor chunkProcessor;
+    private final PlatformTransactionManager transactionManager;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
+
+    /**
+     * Finances the pending invoices with ids above {@code checkpointInvoiceId}.
+     */
+    public FinancingPipelineStats processPendingInvoices(long checkpointInvoiceId, FinancingRunContext context) {
+        FinancingProperties.Pipeline pipeline = financingProperties.getPipeline();
+        FinancingPipelineStats stats = new FinancingPipelineStats(pipeline.getComputeThreads());
+        BlockingQueue<ReadChunk> readChunks = new ArrayBlockingQueue<>(pipeline.getQueueCapacity());
+
+        ExecutorService readExecutor = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("financing-reader").factory());
+        ExecutorService computeExecutor = Executors.newFixedThreadPool(pipeline.getComputeThreads(),
+                Thread.ofPlatform().name("financing-compute-", 1).factory());
+        try {
+            Future<Void> reader = readExecutor.submit(() -> {
+                readPages(checkpointInvoiceId, readChunks, computeExecutor, stats, context);
+                return null;
+            });
+            writeChunks(readChunks, stats, context);
+            awaitReader(reader);
+        } finally {
+            // Stops a reader blocked on the full queue when the writer failed
+            readExecutor.shutdownNow();
+            computeExecutor.shutdownNow();
+        }
+
+        stats.finish();
+        logUtilization(stats);
+        return stats;
+    }
+
+    private void readPages(long checkpointInvoiceId, BlockingQueue<ReadChunk> readChunks,
+                           ExecutorService computeExecutor, FinancingPipelineStats stats,
+                           FinancingRunContext context) throws InterruptedException {
+        int pageSize = financingProperties.getRead().getPageSize();
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+
+        RuntimeException failure = null;
+        try {
+            long lastInvoiceId = checkpointInvoiceId;
+            List<Invoice> pendingInvoices;
+            do {
+                long afterInvoiceId = lastInvoiceId;
+                long readStart = System.nanoTime();
+                pendingInvoices = readTransaction.execute(
+                        status -> pendingInvoiceReader.readAfter(afterInvoiceId, pageSize, context));
+                financingMetrics.recordStage(FinancingStage.FETCH_PENDING, readStart);
+                stats.recordRead(System.nanoTime() - readStart);
+                if (pendingInvoices.isEmpty()) {
+                    break;
+                }
+
+                List<Invoice> page = pendingInvoices;
+                Future<List<PurchaserFinancingResult>> purchaserMatches =
+                        computeExecutor.submit(() -> selectPurchasers(page, stats, context));
+
+                long putStart = System.nanoTime();
+                readChunks.put(new ReadChunk(page, purchaserMatches));
+                stats.recordReaderBlocked(System.nanoTime() - putStart);
+
+                lastInvoiceId = page.get(page.size() - 1).getId();
+            } while (pendingInvoices.size() == pageSize);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        // The writer drains the queue up to here; if it failed instead, shutdownNow interrupts this put
+        readChunks.put(END_OF_INPUT);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private List<PurchaserFinancingResult> selectPurchasers(List<Invoice> invoices, FinancingPipelineStats stats,
+                                                            FinancingRunContext context) {
+        long computeStart = System.nanoTime();
+        List<PurchaserFinancingResult> purchaserMatches = new ArrayList<>(invoices.size());
+        for (Invoice invoice : invoices) {
+            purchaserMatches.add(invoiceFinancingApplier.selectPurchaser(invoice, context).orElse(null));
+        }
+        stats.recordCompute(System.nanoTime() - computeStart);
+        return purchaserMatches;
+    }
+
+    private void writeChunks(BlockingQueue<ReadChunk> readChunks, FinancingPipelineStats stats,
+                             FinancingRunContext context) {
+        while (true) {
+            long waitStart = System.nanoTime();
+            ReadChunk chunk = take(readChunks);
+            if (chunk == END_OF_INPUT) {
+                stats.recordWriterWaiting(System.nanoTime() - waitStart);
+                return;
+            }
+            List<PurchaserFinancingResult> purchaserMatches = awaitPurchaserMatches(chunk);
+            stats.recordWriterWaiting(System.nanoTime() - waitStart);
+
+            long writeStart = System.nanoTime();
+            if (purchaserMatches != null) {
+                chunkProcessor.writeDecidedChunk(chunk.invoices(), purchaserMatches, context);
+            } else {
+                chunkProcessor.processInvoiceByInvoice(
+                        chunk.invoices().stream().map(Invoice::getId).toList(), true, context);
+            }
+            stats.recordWrite(System.nanoTime() - writeStart);
+        }
+    }
+
+    /**
+     * @return the selected purchasers of the chunk, or null when the selection failed, so that the chunk is
+     * financed invoice by invoice and the failing invoices are quarantined
+     */
+    private static List<PurchaserFinancingResult> awaitPurchaserMatches(ReadChunk chunk) {
+        try {
+            return chunk.purchaserMatches().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the purchaser selection", e);
+        } catch (ExecutionException e) {
+            log.warn("Selecting the purchasers of {} invoices starting at invoice {} failed",
+                    chunk.invoices().size(), chunk.invoices().get(0).getId(), e.getCause());
+            return null;
+        }
+    }
+
+    private static ReadChunk take(BlockingQueue<ReadChunk> readChunks) {
+        try {
+            return readChunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pending invoices", e);
+        }
+    }
+
+    private static void awaitReader(Future<Void> reader) {
+        try {
+            reader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the invoice reader", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reading pending invoices failed", e.getCause());
+        }
+    }
+
+    private void logUtilization(FinancingPipelineStats stats) {
+        for (PipelineStage stage : PipelineStage.values()) {
+            financingMetrics.recordPipelineUtilization(stage, stats.getUtilization(stage));
+        }
+        log.info("Pipeline utilization: read {}%, compute {}% of {} workers, write {}%. " +
+                        "The reader waited {} ms for the writer, the writer {} ms for pages",
+                percent(stats.getUtilization(PipelineStage.READ)),
+                percent(stats.getUtilization(PipelineStage.COMPUTE)), stats.getComputeThreads(),
+                percent(stats.getUtilization(PipelineStage.WRITE)),
+                stats.getReaderBlockedMillis(), stats.getWriterWaitingMillis());
+    }
+
+    private static long percent(double utilization) {
+        return Math.round(utilization * 100);
+    }
+
+    /**
+     * A page of pending invoices and the pending selection of their purchasers.
+     */
+    private record ReadChunk(List<Invoice> invoices, Future<List<PurchaserFinancingResult>> purchaserMatches) {
+    }
+}
@@ -0,0 +1,83 @@
+package lu.crx.financing.services.batch;
+
+import lu.crx.financing.metrics.PipelineStage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time of a {@link FinancingPipeline pipelined} run went: per stage, the time spent working, and for the
+ * reader and the writer, the time spent waiting on the queue between them. The stage with the highest utilization
+ * is the bottleneck; the others wait for it.
+ */
+public class FinancingPipelineStats {
+
+    private final int computeThreads;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder readerBlockedNanos = new LongAdder();
+    private final LongAdder computeNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder writerWaitingNanos = new LongAdder();
+    private volatile long elapsedNanos;
+
+    public FinancingPipelineStats(int computeThreads) {
+        this.computeThreads = computeThreads;
+    }
+
+    void recordRead(long nanos) {
+        readNanos.add(nanos);
+    }
+
+    /**
+     * Time the reader waited for room in the full queue, i.e. for the writer.
+     */
+    void recordReaderBlocked(long nanos) {
+        readerBlockedNanos.add(nanos);
+    }
+
+    void recordCompute(long nanos) {
+        computeNanos.add(nanos);
+    }
+
+    void recordWrite(long nanos) {
+        writeNanos.add(nanos);
+    }
+
+    /**
+     * Time the writer waited for the next page to be read and its purchasers selected.
+     */
+    void recordWriterWaiting(long nanos) {
+        writerWaitingNanos.add(nanos);
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * The share of the run the stage spent working, between 0 and 1; for the compute stage, averaged over its
+     * workers.
+     */
+    public double getUtilization(PipelineStage stage) {
+        long elapsed = elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - startNanos;
+        double utilization = switch (stage) {
+            case READ -> (double) readNanos.sum() / elapsed;
+            case COMPUTE -> (double) computeNanos.sum() / ((double) elapsed * computeThreads);
+            case WRITE -> (double) writeNanos.sum() / elapsed;
+        };
+        return Math.min(1.0, utilization);
+    }
+
+    public long getReaderBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readerBlockedNanos.sum());
+    }
+
+    public long getWriterWaitingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writerWaitingNanos.sum());
+    }
+
+    public int getComputeThreads() {
+        return computeThreads;
+    }
+}
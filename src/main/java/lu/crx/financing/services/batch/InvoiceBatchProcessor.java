@@ -2,39 +2,71 @@ package lu.crx.financing.services.batch;
 
 import lombok.RequiredArgsConstructor;
 import lu.crx.financing.entities.Invoice;
-import lu.crx.financing.entities.Purchaser;
-import lu.crx.financing.utils.EntityManagerUtil;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.utils.PersistenceContextFlushController;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class InvoiceBatchProcessor {
 
-    private static final int MEMORY_FLUSH_BATCH_SIZE = 1000;
     private final InvoiceFinancingApplier invoiceFinancingApplier;
-    private final EntityManagerUtil entityManagerUtil;
+    private final PersistenceContextFlushController flushController;
 
-    public int processInvoiceBatch(List<Invoice> pendingInvoices, List<Purchaser> availablePurchasers, LocalDate financingDate) {
-        int financedInvoiceCount = 0;
+    public int processInvoiceBatch(List<Invoice> pendingInvoices, FinancingRunContext context) {
+        List<Long> financedInvoiceIds = new ArrayList<>();
+        int processedInvoiceCount = 0;
 
         for (Invoice invoice : pendingInvoices) {
-            boolean financingApplied = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, availablePurchasers, financingDate);
+            boolean financingApplied = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, context);
             if (financingApplied) {
-                financedInvoiceCount++;
+                financedInvoiceIds.add(invoice.getId());
             }
 
-            if (shouldFlushMemory(financedInvoiceCount)) {
-                entityManagerUtil.flushAndClearEntityManager(financedInvoiceCount);
-            }
+            flushController.onInvoiceProcessed(++processedInvoiceCount, context);
+        }
+
+        if (!financedInvoiceIds.isEmpty()) {
+            invoiceFinancingApplier.applyStagedFinancing(financedInvoiceIds);
         }
 
-        return financedInvoiceCount;
+        context.recordBatch(pendingInvoices.size(), financedInvoiceIds.size());
+
+        return financedInvoiceIds.size();
     }
 
-    private boolean shouldFlushMemory(int processedCount) {
-        return processedCount % MEMORY_FLUSH_BATCH_SIZE == 0 && processedCount > 0;
+    /**
+     * Writes a batch whose purchasers were already selected, see {@link FinancingPipeline}.
+     *
+     * @param purchaserMatches the selected purchaser of each invoice, at the same index; null when none was found
+     */
+    public int applyFinancingDecisions(List<Invoice> invoices, List<PurchaserFinancingResult> purchaserMatches,
+                                       FinancingRunContext context) {
+        List<Long> financedInvoiceIds = new ArrayList<>();
+
+        for (int i = 0; i < invoices.size(); i++) {
+            Invoice invoice = invoices.get(i);
+            PurchaserFinancingResult purchaserMatch = purchaserMatches.get(i);
+            if (purchaserMatch != null) {
+                invoiceFinancingApplier.applyFinancing(invoice, purchaserMatch);
+                financedInvoiceIds.add(invoice.getId());
+            } else {
+                invoiceFinancingApplier.recordRejection(invoice, context);
+            }
+
+            flushController.onInvoiceProcessed(i + 1, context);
+        }
+
+        if (!financedInvoiceIds.isEmpty()) {
+            invoiceFinancingApplier.applyStagedFinancing(financedInvoiceIds);
+        }
+
+        context.recordBatch(invoices.size(), financedInvoiceIds.size());
+
+        return financedInvoiceIds.size();
     }
-}
\ No newline at end of file
+}
@@ -2,73 +2,294 @@ package lu.crx.financing.services.batch;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
 import lu.crx.financing.entities.Invoice;
 import lu.crx.financing.entities.FinancingAmounts;
-import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.FinancingDecision;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
 import lu.crx.financing.entities.PurchaserFinancingResult;
 import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
 import lu.crx.financing.repositories.InvoiceFinancingDetailsRepository;
 import lu.crx.financing.repositories.InvoiceRepository;
 import lu.crx.financing.services.financing.FinancingCalculationService;
+import lu.crx.financing.services.financing.FinancingKernel;
+import lu.crx.financing.services.financing.FinancingOfferTable;
+import lu.crx.financing.services.financing.FinancingResultColumns;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.InvoiceColumns;
 import lu.crx.financing.services.financing.PurchaserSelectionService;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class InvoiceFinancingApplier {
 
+    /**
+     * Bounds the IN lists of the queries over the invoices of a chunk or of journaled decisions.
+     */
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     private final PurchaserSelectionService purchaserSelectionService;
     private final FinancingCalculationService calculationService;
     private final InvoiceRepository invoiceRepository;
     private final InvoiceFinancingDetailsRepository financingDetailsRepository;
+    private final StatelessFinancingDetailsWriter statelessFinancingDetailsWriter;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
 
     private static void logFinancingDetails(Invoice invoice, PurchaserFinancingResult purchaserMatch, FinancingAmounts amounts) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
         log.debug("Invoice {} financed by Purchaser {} with rate {} bps, early payment amount: {} cents",
                 invoice.getId(), purchaserMatch.getPurchaser().getName(),
                 purchaserMatch.getFinancingRateInBps(), amounts.getEarlyPaymentAmountInCents());
     }
 
-    public boolean attemptToFinanceInvoice(Invoice invoice, List<Purchaser> availablePurchasers, LocalDate financingDate) {
-        Optional<PurchaserFinancingResult> bestPurchaserMatch =
-                purchaserSelectionService.findBestPurchaserForInvoice(invoice, availablePurchasers, financingDate);
+    public boolean attemptToFinanceInvoice(Invoice invoice, FinancingRunContext context) {
+        Optional<PurchaserFinancingResult> bestPurchaserMatch = selectPurchaser(invoice, context);
 
         if (bestPurchaserMatch.isPresent()) {
             applyFinancing(invoice, bestPurchaserMatch.get());
             return true;
         } else {
-            log.debug("No eligible purchaser found for invoice {}", invoice.getId());
+            recordRejection(invoice, context);
             return false;
         }
     }
 
-    private void applyFinancing(Invoice invoice, PurchaserFinancingResult purchaserMatch) {
+    /**
+     * The decision half of {@link #attemptToFinanceInvoice}, for callers that write the financing later, on another
+     * thread: finds the best purchaser and times the decision, but writes and counts nothing. The outcome is counted
+     * by {@link #applyFinancing} or {@link #recordRejection} with the write.
+     */
+    public Optional<PurchaserFinancingResult> selectPurchaser(Invoice invoice, FinancingRunContext context) {
+        long decisionStart = System.nanoTime();
+        Optional<PurchaserFinancingResult> bestPurchaserMatch =
+                purchaserSelectionService.findBestPurchaserForInvoice(invoice, context);
+        financingMetrics.recordStage(FinancingStage.SELECTION, decisionStart);
+        financingMetrics.recordDecision(decisionStart);
+        return bestPurchaserMatch;
+    }
+
+    /**
+     * The write half of {@link #attemptToFinanceInvoice}: applies the financing by the selected purchaser, and
+     * counts the invoice as financed once the transaction commits.
+     */
+    public void applyFinancing(Invoice invoice, PurchaserFinancingResult purchaserMatch) {
+        long persistenceStart = System.nanoTime();
+        writeFinancing(invoice, purchaserMatch);
+        financingMetrics.recordStage(FinancingStage.PERSISTENCE, persistenceStart);
+        financingMetrics.recordFinanced();
+    }
+
+    /**
+     * Counts an invoice for which no purchaser was found as unfinanced once the transaction commits.
+     */
+    public void recordRejection(Invoice invoice, FinancingRunContext context) {
+        financingMetrics.recordUnfinanced(findRejectionReason(invoice, context));
+    }
+
+    /**
+     * Explains why no purchaser was found for the invoice.
+     */
+    public FinancingRejectionReason findRejectionReason(Invoice invoice, FinancingRunContext context) {
+        FinancingRejectionReason reason = purchaserSelectionService.findRejectionReason(invoice, context);
+        if (log.isDebugEnabled()) {
+            log.debug("No eligible purchaser found for invoice {}: {}", invoice.getId(), reason);
+        }
+        return reason;
+    }
+
+    /**
+     * The decision half of {@link #attemptToFinanceInvoice} for the journal mode: finds the best purchaser and
+     * calculates the amounts, but writes and counts nothing. The decision is written later by
+     * {@link #applyDecisions}.
+     */
+    public Optional<FinancingDecision> decideFinancing(Invoice invoice, FinancingRunContext context) {
+        return selectPurchaser(invoice, context).map(purchaserMatch -> {
+            FinancingAmounts amounts = calculateAmounts(invoice, purchaserMatch);
+            return new FinancingDecision(invoice.getId(), purchaserMatch.getPurchaser().getId(), context.getRunId(),
+                    purchaserMatch.getFinancingDate(), purchaserMatch.getFinancingTermInDays(),
+                    purchaserMatch.getFinancingRateInBps(), amounts.getEarlyPaymentAmountInCents(),
+                    amounts.getDiscountAmountInCents());
+        });
+    }
+
+    /**
+     * Writes journaled decisions, whatever the write mode, like the {@code STATELESS} write mode does. Idempotent:
+     * the decisions of invoices that are no longer pending or already have financing details are skipped, so the
+     * decisions can be applied again after a crash. The invoices financed are counted once the transaction commits.
+     * Must be called in a transaction.
+     *
+     * @return the number of invoices financed
+     */
+    public int applyDecisions(List<FinancingDecision> decisions) {
+        if (decisions.isEmpty()) {
+            return 0;
+        }
+
+        long persistenceStart = System.nanoTime();
+        Set<Long> pendingInvoiceIds = new HashSet<>(decisions.size());
+        for (int from = 0; from < decisions.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> invoiceIds = decisions.subList(from, Math.min(from + MAX_IDS_PER_QUERY, decisions.size()))
+                    .stream()
+                    .map(FinancingDecision::getInvoiceId)
+                    .toList();
+            pendingInvoiceIds.addAll(invoiceRepository.findPendingIdsWithoutFinancingDetails(invoiceIds));
+        }
+
+        List<Long> financedInvoiceIds = new ArrayList<>(pendingInvoiceIds.size());
+        for (FinancingDecision decision : decisions) {
+            // An invoice is written once, should it have several decisions
+            if (!pendingInvoiceIds.remove(decision.getInvoiceId())) {
+                continue;
+            }
+            financedInvoiceIds.add(decision.getInvoiceId());
+            statelessFinancingDetailsWriter.insert(InvoiceFinancingDetails.builder()
+                    .invoice(Invoice.builder().id(decision.getInvoiceId()).build())
+                    .purchaser(Purchaser.builder().id(decision.getPurchaserId()).build())
+                    .financingDate(decision.getFinancingDate())
+                    .financingTermInDays(decision.getFinancingTermInDays())
+                    .financingRateInBps(decision.getFinancingRateInBps())
+                    .earlyPaymentAmountInCents(decision.getEarlyPaymentAmountInCents())
+                    .discountedAmountInCents(decision.getDiscountedAmountInCents())
+                    .build());
+        }
+
+        int financedCount = 0;
+        if (!financedInvoiceIds.isEmpty()) {
+            statelessFinancingDetailsWriter.flush();
+            financedCount = markFinancedFromDetails(financedInvoiceIds);
+        }
+        financingMetrics.recordStage(FinancingStage.PERSISTENCE, persistenceStart);
+        financingMetrics.recordFinanced(financedCount);
+        log.debug("Applied {} of {} financing decisions", financedCount, decisions.size());
+        return financedCount;
+    }
+
+    /**
+     * Writes a batch financed by the {@link FinancingKernel}, in the {@code BULK} and {@code STATELESS} write modes:
+     * the financing details of the financed invoices are saved from the result columns, then the invoices are marked
+     * as financed from them like {@link #applyStagedFinancing} does. The outcomes are counted once the transaction
+     * commits.
+     *
+     * @return the number of invoices financed
+     */
+    public int applyKernelResults(InvoiceColumns invoices, FinancingResultColumns results, FinancingOfferTable offers,
+                                  LocalDate financingDate) {
+        if (!isSetBasedWriteMode()) {
+            throw new IllegalStateException("The financing kernel needs the BULK or STATELESS write mode");
+        }
+
+        long persistenceStart = System.nanoTime();
+        List<Long> financedInvoiceIds = new ArrayList<>(results.getFinancedCount());
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.isFinanced(i)) {
+                financingMetrics.recordUnfinanced(
+                        offers.findRejectionReason(invoices.creditorIndex(i), results.financingTermInDays(i)));
+                continue;
+            }
+            financedInvoiceIds.add(invoices.invoiceId(i));
+            insertFinancingDetails(InvoiceFinancingDetails.builder()
+                    .invoice(Invoice.builder().id(invoices.invoiceId(i)).build())
+                    .purchaser(offers.getPurchaser(results.purchaserIndex(i)))
+                    .financingDate(financingDate)
+                    .financingTermInDays(results.financingTermInDays(i))
+                    .financingRateInBps(results.financingRateInBps(i))
+                    .earlyPaymentAmountInCents(results.earlyPaymentAmountInCents(i))
+                    .discountedAmountInCents(results.discountAmountInCents(i))
+                    .build());
+        }
+        financingMetrics.recordStage(FinancingStage.PERSISTENCE, persistenceStart);
+
+        applyStagedFinancing(financedInvoiceIds);
+        financingMetrics.recordFinanced(financedInvoiceIds.size());
+        return financedInvoiceIds.size();
+    }
+
+    private FinancingAmounts calculateAmounts(Invoice invoice, PurchaserFinancingResult purchaserMatch) {
         long discountAmount = calculationService.calculateDiscountAmount(
                 invoice.getValueInCents(), purchaserMatch.getFinancingRateInBps());
 
         long earlyPaymentAmount = invoice.getValueInCents() - discountAmount;
 
-        FinancingAmounts amounts = FinancingAmounts.builder()
+        return FinancingAmounts.builder()
                 .earlyPaymentAmountInCents(earlyPaymentAmount)
                 .discountAmountInCents(discountAmount)
                 .build();
+    }
+
+    private void writeFinancing(Invoice invoice, PurchaserFinancingResult purchaserMatch) {
+        FinancingAmounts amounts = calculateAmounts(invoice, purchaserMatch);
 
-        updateInvoice(invoice, amounts);
+        if (isSetBasedWriteMode()) {
+            // The invoice itself is updated later by applyStagedFinancing, from the financing details saved here
+            saveFinancingDetails(invoice, purchaserMatch, amounts);
+        } else {
+            updateInvoice(invoice, amounts);
 
-        Invoice savedInvoice = invoiceRepository.save(invoice);
+            Invoice savedInvoice = invoiceRepository.save(invoice);
 
-        saveFinancingDetails(savedInvoice, purchaserMatch, amounts);
+            saveFinancingDetails(savedInvoice, purchaserMatch, amounts);
+        }
 
         logFinancingDetails(invoice, purchaserMatch, amounts);
     }
 
+    /**
+     * Completes a chunk of invoices in the bulk and stateless write modes: the financed invoices of the chunk are
+     * updated from their financing details with set-based statements. Does nothing in the entity write mode.
+     */
+    public void applyStagedFinancing(List<Long> financedInvoiceIds) {
+        if (!isSetBasedWriteMode() || financedInvoiceIds.isEmpty()) {
+            return;
+        }
+
+        long persistenceStart = System.nanoTime();
+        if (financingProperties.getWrite().getMode() == FinancingWriteMode.STATELESS) {
+            // The update reads the financing details, so their inserts must have been sent
+            statelessFinancingDetailsWriter.flush();
+        }
+        int updatedInvoiceCount = markFinancedFromDetails(financedInvoiceIds);
+        financingMetrics.recordStage(FinancingStage.PERSISTENCE, persistenceStart);
+        log.debug("Marked {} invoices starting at invoice {} as financed", updatedInvoiceCount,
+                financedInvoiceIds.get(0));
+    }
+
+    private int markFinancedFromDetails(List<Long> invoiceIds) {
+        int updatedInvoiceCount = 0;
+        for (int from = 0; from < invoiceIds.size(); from += MAX_IDS_PER_QUERY) {
+            updatedInvoiceCount += invoiceRepository.markFinancedFromDetails(
+                    invoiceIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, invoiceIds.size())));
+        }
+        return updatedInvoiceCount;
+    }
+
+    /**
+     * Whether the invoices are updated per chunk from their financing details rather than one by one.
+     */
+    private boolean isSetBasedWriteMode() {
+        return financingProperties.getWrite().getMode() != FinancingWriteMode.ENTITY;
+    }
+
     private void updateInvoice(Invoice invoice, FinancingAmounts amounts) {
         invoice.setEarlyPaymentAmountInCents(amounts.getEarlyPaymentAmountInCents());
         invoice.setDiscountedAmountInCents(amounts.getDiscountAmountInCents());
+        invoice.setFinancingStatus(InvoiceFinancingStatus.FINANCED);
     }
 
     private void saveFinancingDetails(Invoice invoice, PurchaserFinancingResult purchaserMatch, FinancingAmounts amounts) {
@@ -82,6 +303,14 @@ public class InvoiceFinancingApplier {
                 .discountedAmountInCents(amounts.getDiscountAmountInCents())
                 .build();
 
-        financingDetailsRepository.save(financingRecord);
+        insertFinancingDetails(financingRecord);
+    }
+
+    private void insertFinancingDetails(InvoiceFinancingDetails financingRecord) {
+        if (financingProperties.getWrite().getMode() == FinancingWriteMode.STATELESS) {
+            statelessFinancingDetailsWriter.insert(financingRecord);
+        } else {
+            financingDetailsRepository.save(financingRecord);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,303 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.FinancingDecision;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.FinancingRunService;
+import lu.crx.financing.services.journal.FinancingDecisionJournal;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the sequential financing with a write-ahead journal of its decisions (see {@link FinancingDecisionJournal}),
+ * so that selecting the purchasers does not wait for the database commits:
+ * <ul>
+ *     <li>a decider thread reads the pages of pending invoices in id order, each in a short read-only transaction,
+ *     selects their purchasers and appends the financing decisions to the journal, forced to disk, before it hands
+ *     the page over</li>
+ *     <li>the calling thread commits the pages in id order: the pages waiting at that time, up to
+ *     {@code financing.journal.commit-batch-size} decisions, in one transaction together with the run's checkpoint,
+ *     then marks their decisions as applied in the journal</li>
+ * </ul>
+ * A failed commit fails the run. The decisions journaled but not committed when a run failed or the process died are
+ * replayed at the start of the next run, before any invoice is read. Applying a decision is idempotent (see
+ * {@link InvoiceFinancingApplier#applyDecisions}), so a decision committed just before the crash is not written
+ * twice.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JournaledFinancingWorker {
+
+    /**
+     * Put on the queue by the decider after the last page.
+     */
+    private static final JournaledPage END_OF_INPUT = new JournaledPage(List.of(), List.of(), List.of(), 0, 0, 0);
+
+    /**
+     * Journal position of a page without journaled decisions: there is nothing to mark as applied.
+     */
+    private static final int NOTHING_JOURNALED = -1;
+
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final InvoiceFinancingApplier invoiceFinancingApplier;
+    private final FinancingChunkProcessor chunkProcessor;
+    private final FinancingRunService financingRunService;
+    private final FinancingDecisionJournal journal;
+    private final PlatformTransactionManager transactionManager;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
+
+    /**
+     * Finances the pending invoices with ids above {@code checkpointInvoiceId}, after replaying the journal.
+     */
+    public void processPendingInvoices(long checkpointInvoiceId, FinancingRunContext context) {
+        replayJournal();
+
+        BlockingQueue<JournaledPage> pages =
+                new ArrayBlockingQueue<>(financingProperties.getJournal().getQueueCapacity());
+        ExecutorService decideExecutor = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("financing-decider").factory());
+        try {
+            Future<Void> decider = decideExecutor.submit(() -> {
+                decidePages(checkpointInvoiceId, pages, context);
+                return null;
+            });
+            commitPages(pages, context);
+            awaitDecider(decider);
+        } finally {
+            // Stops a decider blocked on the full queue or the full journal when the commits failed
+            decideExecutor.shutdownNow();
+        }
+
+        journal.startOver();
+    }
+
+    /**
+     * Applies the decisions left in the journal by a run that did not commit them, and counts them in that run.
+     */
+    private void replayJournal() {
+        int commitBatchSize = financingProperties.getJournal().getCommitBatchSize();
+        long replayedCount = 0;
+        long financedCount = 0;
+        List<FinancingDecision> decisions;
+
+        while (!(decisions = journal.readUnapplied(commitBatchSize)).isEmpty()) {
+            List<FinancingDecision> batch = decisions;
+            financedCount += newTransaction().execute(status -> applyByRun(batch));
+            journal.markNextApplied(batch.size());
+            replayedCount += batch.size();
+        }
+
+        if (replayedCount > 0) {
+            log.info("Replayed {} journaled financing decisions, {} invoices were still to be financed",
+                    replayedCount, financedCount);
+        }
+        journal.startOver();
+    }
+
+    private int applyByRun(List<FinancingDecision> decisions) {
+        Map<Long, List<FinancingDecision>> decisionsByRun = decisions.stream()
+                .collect(Collectors.groupingBy(FinancingDecision::getRunId, LinkedHashMap::new, Collectors.toList()));
+        int financedCount = 0;
+        for (Map.Entry<Long, List<FinancingDecision>> runDecisions : decisionsByRun.entrySet()) {
+            int runFinancedCount = invoiceFinancingApplier.applyDecisions(runDecisions.getValue());
+            if (runFinancedCount > 0) {
+                // The invoices of the uncommitted pages were not counted by their run yet
+                financingRunService.recordChunk(runDecisions.getKey(),
+                        new FinancingChunkResult(runFinancedCount, runFinancedCount, 0, 0), false);
+            }
+            financedCount += runFinancedCount;
+        }
+        return financedCount;
+    }
+
+    private void decidePages(long checkpointInvoiceId, BlockingQueue<JournaledPage> pages,
+                             FinancingRunContext context) throws InterruptedException {
+        int pageSize = financingProperties.getRead().getPageSize();
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+
+        RuntimeException failure = null;
+        try {
+            long lastInvoiceId = checkpointInvoiceId;
+            List<Invoice> pendingInvoices;
+            do {
+                long afterInvoiceId = lastInvoiceId;
+                long readStart = System.nanoTime();
+                pendingInvoices = readTransaction.execute(
+                        status -> pendingInvoiceReader.readAfter(afterInvoiceId, pageSize, context));
+                financingMetrics.recordStage(FinancingStage.FETCH_PENDING, readStart);
+                if (pendingInvoices.isEmpty()) {
+                    break;
+                }
+
+                pages.put(decide(pendingInvoices, context));
+                lastInvoiceId = pendingInvoices.get(pendingInvoices.size() - 1).getId();
+            } while (pendingInvoices.size() == pageSize);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        // The commits drain the queue up to here; if they failed instead, shutdownNow interrupts this put
+        pages.put(END_OF_INPUT);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the page with its journaled decisions, or without decisions when the selection failed, so that the
+     * page is financed invoice by invoice and the failing invoices are quarantined
+     */
+    private JournaledPage decide(List<Invoice> invoices, FinancingRunContext context) throws InterruptedException {
+        List<Long> invoiceIds = invoices.stream().map(Invoice::getId).toList();
+        long lastInvoiceId = invoiceIds.get(invoiceIds.size() - 1);
+
+        List<FinancingDecision> decisions = new ArrayList<>();
+        List<FinancingRejectionReason> rejections = new ArrayList<>();
+        try {
+            for (Invoice invoice : invoices) {
+                Optional<FinancingDecision> decision = invoiceFinancingApplier.decideFinancing(invoice, context);
+                if (decision.isPresent()) {
+                    decisions.add(decision.get());
+                } else {
+                    rejections.add(invoiceFinancingApplier.findRejectionReason(invoice, context));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Selecting the purchasers of {} invoices starting at invoice {} failed",
+                    invoices.size(), invoiceIds.get(0), e);
+            return new JournaledPage(invoiceIds, null, null, invoices.size(), lastInvoiceId, NOTHING_JOURNALED);
+        }
+        context.recordBatch(invoices.size(), decisions.size());
+
+        if (decisions.isEmpty()) {
+            return new JournaledPage(invoiceIds, decisions, rejections, invoices.size(), lastInvoiceId,
+                    NOTHING_JOURNALED);
+        }
+        if (!journal.hasRoomFor(decisions.size())) {
+            // The journal starts over once everything in it is committed
+            journal.awaitApplied();
+            journal.startOver();
+        }
+        int journalPosition = journal.append(decisions);
+        return new JournaledPage(invoiceIds, decisions, rejections, invoices.size(), lastInvoiceId, journalPosition);
+    }
+
+    private void commitPages(BlockingQueue<JournaledPage> pages, FinancingRunContext context) {
+        int commitBatchSize = financingProperties.getJournal().getCommitBatchSize();
+        JournaledPage page = take(pages);
+
+        while (page != END_OF_INPUT) {
+            if (page.decisions() == null) {
+                chunkProcessor.processInvoiceByInvoice(page.invoiceIds(), true, context);
+                page = take(pages);
+                continue;
+            }
+
+            // Every page already waiting joins the batch, so the batches grow when the commits fall behind
+            List<JournaledPage> batch = new ArrayList<>();
+            int decisionCount = 0;
+            do {
+                batch.add(page);
+                decisionCount += page.decisions().size();
+                page = pages.poll();
+            } while (page != null && page != END_OF_INPUT && page.decisions() != null
+                    && decisionCount + page.decisions().size() <= commitBatchSize);
+
+            commit(batch, context);
+            if (page == null) {
+                page = take(pages);
+            }
+        }
+    }
+
+    private void commit(List<JournaledPage> batch, FinancingRunContext context) {
+        List<FinancingDecision> decisions = new ArrayList<>();
+        List<FinancingRejectionReason> rejections = new ArrayList<>();
+        int invoiceCount = 0;
+        int journalPosition = NOTHING_JOURNALED;
+        for (JournaledPage page : batch) {
+            decisions.addAll(page.decisions());
+            rejections.addAll(page.rejections());
+            invoiceCount += page.invoiceCount();
+            journalPosition = Math.max(journalPosition, page.journalPosition());
+        }
+        int batchInvoiceCount = invoiceCount;
+        long lastInvoiceId = batch.get(batch.size() - 1).lastInvoiceId();
+
+        newTransaction().executeWithoutResult(status -> {
+            int financedCount = invoiceFinancingApplier.applyDecisions(decisions);
+            // Counted with the commit, like the financed invoices
+            rejections.forEach(financingMetrics::recordUnfinanced);
+            financingRunService.recordChunk(context.getRunId(),
+                    new FinancingChunkResult(batchInvoiceCount, financedCount, 0, lastInvoiceId), true);
+        });
+        if (journalPosition != NOTHING_JOURNALED) {
+            journal.markApplied(journalPosition);
+        }
+        log.debug("Committed {} financing decisions of {} invoices up to invoice {}", decisions.size(),
+                batchInvoiceCount, lastInvoiceId);
+    }
+
+    private static JournaledPage take(BlockingQueue<JournaledPage> pages) {
+        try {
+            return pages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for financing decisions", e);
+        }
+    }
+
+    private static void awaitDecider(Future<Void> decider) {
+        try {
+            decider.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the financing decider", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Deciding the financing of pending invoices failed", e.getCause());
+        }
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate commitTransaction = new TransactionTemplate(transactionManager);
+        commitTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return commitTransaction;
+    }
+
+    /**
+     * A page of pending invoices and its financing decisions.
+     *
+     * @param decisions       null when the selection failed
+     * @param rejections      why the invoices without a decision were not financed, null when the selection failed
+     * @param journalPosition the journal position after the decisions of the page, or {@link #NOTHING_JOURNALED}
+     */
+    private record JournaledPage(List<Long> invoiceIds, List<FinancingDecision> decisions,
+                                 List<FinancingRejectionReason> rejections, int invoiceCount, long lastInvoiceId,
+                                 int journalPosition) {
+    }
+}
@@ -0,0 +1,112 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
+import lu.crx.financing.services.financing.FinancingKernel;
+import lu.crx.financing.services.financing.FinancingOfferTable;
+import lu.crx.financing.services.financing.FinancingResultColumns;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.FinancingRunService;
+import lu.crx.financing.services.financing.InvoiceColumns;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the sequential financing with the {@link FinancingKernel}. Every page of pending invoices is read as
+ * projections straight into {@link InvoiceColumns}, financed by the kernel in one pass over primitive arrays, and its
+ * {@link FinancingResultColumns} are written as financing details, from which the invoices are then marked as
+ * financed (see {@link InvoiceFinancingApplier#applyKernelResults}).
+ * <p>
+ * Like the other sequential runs, every page is committed together with the run's checkpoint in its own transaction,
+ * and a page that fails is financed invoice by invoice by the {@link FinancingChunkProcessor}, which quarantines the
+ * invoices that fail on their own. The columns are allocated once per run and reused by every page.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KernelFinancingWorker {
+
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final FinancingKernel financingKernel;
+    private final InvoiceFinancingApplier invoiceFinancingApplier;
+    private final FinancingChunkProcessor chunkProcessor;
+    private final FinancingRunService financingRunService;
+    private final PlatformTransactionManager transactionManager;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
+
+    /**
+     * Finances the pending invoices with ids above {@code checkpointInvoiceId}, in id order.
+     */
+    public void processPendingInvoices(long checkpointInvoiceId, FinancingRunContext context) {
+        int pageSize = financingProperties.getRead().getPageSize();
+        InvoiceColumns invoices = new InvoiceColumns(pageSize);
+        FinancingResultColumns results = new FinancingResultColumns(pageSize);
+        long lastInvoiceId = checkpointInvoiceId;
+        FinancingChunkResult chunk;
+
+        do {
+            chunk = processPage(lastInvoiceId, invoices, results, context);
+            lastInvoiceId = chunk.getLastInvoiceId();
+        } while (chunk.getInvoiceCount() == pageSize);
+    }
+
+    private FinancingChunkResult processPage(long afterInvoiceId, InvoiceColumns invoices,
+                                             FinancingResultColumns results, FinancingRunContext context) {
+        invoices.clear();
+        try {
+            return newTransaction().execute(status -> financePage(afterInvoiceId, invoices, results, context));
+        } catch (RuntimeException e) {
+            if (invoices.size() == 0) {
+                throw e;
+            }
+            List<Long> invoiceIds = new ArrayList<>(invoices.size());
+            for (int i = 0; i < invoices.size(); i++) {
+                invoiceIds.add(invoices.invoiceId(i));
+            }
+            log.warn("Financing page of {} invoices starting at invoice {} failed, retrying invoice by invoice",
+                    invoiceIds.size(), invoiceIds.get(0), e);
+            return chunkProcessor.processInvoiceByInvoice(invoiceIds, true, context);
+        }
+    }
+
+    private FinancingChunkResult financePage(long afterInvoiceId, InvoiceColumns invoices,
+                                             FinancingResultColumns results, FinancingRunContext context) {
+        FinancingOfferTable offers = context.getOfferTable();
+
+        long fetchStart = System.nanoTime();
+        int invoiceCount = pendingInvoiceReader.readColumnsAfter(afterInvoiceId, invoices, offers);
+        financingMetrics.recordStage(FinancingStage.FETCH_PENDING, fetchStart);
+        if (invoiceCount == 0) {
+            return FinancingChunkResult.EMPTY;
+        }
+
+        long selectionStart = System.nanoTime();
+        financingKernel.finance(invoices, offers, context.getFinancingDate().toEpochDay(), results);
+        financingMetrics.recordStage(FinancingStage.SELECTION, selectionStart);
+
+        int financedCount = invoiceFinancingApplier.applyKernelResults(
+                invoices, results, offers, context.getFinancingDate());
+        context.recordBatch(invoiceCount, financedCount);
+
+        FinancingChunkResult chunk = new FinancingChunkResult(invoiceCount, financedCount, 0,
+                invoices.invoiceId(invoiceCount - 1));
+        financingRunService.recordChunk(context.getRunId(), chunk, true);
+        return chunk;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate pageTransaction = new TransactionTemplate(transactionManager);
+        pageTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return pageTransaction;
+    }
+}
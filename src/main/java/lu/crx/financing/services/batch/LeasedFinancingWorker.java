@@ -0,0 +1,128 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.InvoiceRangeLease;
+import lu.crx.financing.services.financing.FinancingLeaseLostException;
+import lu.crx.financing.services.financing.FinancingLeaseService;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Finances the pending invoices together with the other instances running against the same database. The work of a
+ * round is planned once, as creditor partitions split by id range like the ones of the {@link ParallelFinancingEngine},
+ * and every instance claims the ranges one at a time by taking their lease (see {@link FinancingLeaseService}).
+ * <p>
+ * The lease is renewed at the start of every chunk transaction and its row stays locked until the chunk commits, so
+ * the invoices of a range are only written while the instance holds its lease: an instance that stalls or dies loses
+ * the range to another one once the lease expires, and its next chunk is rolled back. An instance leaves once every
+ * range of the round is done, and waits meanwhile for the leases of the others, to take them over if they expire.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LeasedFinancingWorker {
+
+    private final FinancingLeaseService leaseService;
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final FinancingChunkProcessor chunkProcessor;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * The chunks do not advance the run's resume point: the ranges left by a failed or interrupted run are claimed
+     * again through their leases.
+     */
+    public void processPendingInvoices(FinancingRunContext context) {
+        String owner = ManagementFactory.getRuntimeMXBean().getName() + "/run-" + context.getRunId();
+        long roundId = joinOrPlanRound();
+        int rangeCount = 0;
+
+        while (true) {
+            Optional<InvoiceRangeLease> lease = claimNextRange(roundId, owner);
+            if (lease.isPresent()) {
+                if (processRange(lease.get(), context)) {
+                    rangeCount++;
+                }
+            } else if (leaseService.completeRound(roundId)) {
+                break;
+            } else {
+                awaitLeasesOfOthers();
+            }
+        }
+
+        log.info("{} financed {} ranges of financing round {}", owner, rangeCount, roundId);
+    }
+
+    private long joinOrPlanRound() {
+        try {
+            return leaseService.joinOrPlanRound();
+        } catch (DataIntegrityViolationException e) {
+            log.info("Another instance planned the financing round meanwhile, joining it");
+            return leaseService.joinOrPlanRound();
+        }
+    }
+
+    private Optional<InvoiceRangeLease> claimNextRange(long roundId, String owner) {
+        Instant now = Instant.now();
+
+        for (InvoiceRangeLease lease : leaseService.findOpenLeases(roundId)) {
+            if (lease.getOwner() != null && !lease.getExpiresAt().isBefore(now)) {
+                continue;
+            }
+            try {
+                if (leaseService.tryClaim(lease, owner)) {
+                    return Optional.of(lease);
+                }
+            } catch (ConcurrencyFailureException e) {
+                log.debug("Range {} is locked by another instance", lease.getId(), e);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return whether the range was completed by this instance, {@code false} when its lease was taken over
+     */
+    private boolean processRange(InvoiceRangeLease lease, FinancingRunContext context) {
+        int pageSize = financingProperties.getRead().getPageSize();
+        long lastInvoiceId = lease.getFirstInvoiceId() - 1;
+        FinancingChunkResult chunk;
+
+        try {
+            do {
+                long afterInvoiceId = lastInvoiceId;
+                chunk = chunkProcessor.processChunk(() -> pendingInvoiceReader.readOfCreditorAfter(
+                                lease.getCreditorId(), afterInvoiceId, lease.getLastInvoiceId(), pageSize, context),
+                        false, () -> leaseService.renew(lease), context);
+                lastInvoiceId = chunk.getLastInvoiceId();
+            } while (chunk.getInvoiceCount() == pageSize);
+
+            leaseService.complete(lease);
+            return true;
+        } catch (FinancingLeaseLostException e) {
+            log.warn("{}, leaving the rest of the range to the new owner", e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            leaseService.release(lease);
+            throw e;
+        }
+    }
+
+    private void awaitLeasesOfOthers() {
+        try {
+            Thread.sleep(financingProperties.getLease().getPollInterval());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the leases of the other instances", e);
+        }
+    }
+}
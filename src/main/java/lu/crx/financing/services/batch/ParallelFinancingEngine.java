@@ -0,0 +1,156 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.ParallelPoolType;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.PendingInvoicePartition;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Finances the pending invoices in parallel. Invoices of different creditors are independent, so the backlog is
+ * partitioned by creditor and every partition is processed by one worker, chunk by chunk, every chunk in its own
+ * transaction (see {@link FinancingChunkProcessor}). Creditors with
+ * a large backlog are split further by id range, and the partitions are submitted largest first, so that idle
+ * workers pick up the remaining small partitions while the large ones are still running.
+ * <p>
+ * At most {@code financing.parallel.max-concurrency} partitions run at the same time, whatever the pool: a virtual
+ * thread per partition would otherwise open as many transactions at once and wait on the connection pool until
+ * they time out.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParallelFinancingEngine {
+
+    private final InvoiceRepository invoiceRepository;
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final FinancingChunkProcessor chunkProcessor;
+    private final FinancingProperties financingProperties;
+
+    public void processPendingInvoices(FinancingRunContext context) {
+        List<PendingInvoicePartition> partitions = splitPartitions(
+                invoiceRepository.findPendingInvoicePartitionsByCreditor(),
+                financingProperties.getParallel().getMaxPartitionSize());
+        partitions.sort(Comparator.comparingLong(PendingInvoicePartition::getInvoiceCount).reversed());
+
+        log.info("Financing {} partitions on a {} pool", partitions.size(),
+                financingProperties.getParallel().getPoolType());
+
+        Semaphore runningPartitions = new Semaphore(financingProperties.getParallel().getMaxConcurrency());
+        ExecutorService executor = createExecutor();
+        try {
+            List<Future<?>> results = new ArrayList<>(partitions.size());
+            for (PendingInvoicePartition partition : partitions) {
+                results.add(executor.submit(() -> processPartition(partition, runningPartitions, context)));
+            }
+            awaitAll(results);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Splits the creditor partitions larger than the maximum size into id ranges of roughly equal size.
+     */
+    public static List<PendingInvoicePartition> splitPartitions(List<PendingInvoicePartition> partitions, int maxPartitionSize) {
+        List<PendingInvoicePartition> result = new ArrayList<>();
+
+        for (PendingInvoicePartition partition : partitions) {
+            long splitCount = Math.max(1, (partition.getInvoiceCount() + maxPartitionSize - 1) / maxPartitionSize);
+            long idSpan = partition.getLastInvoiceId() - partition.getFirstInvoiceId() + 1;
+            splitCount = Math.min(splitCount, idSpan);
+
+            long rangeStart = partition.getFirstInvoiceId();
+            for (long i = 1; i <= splitCount; i++) {
+                long rangeEnd = i == splitCount
+                        ? partition.getLastInvoiceId()
+                        : partition.getFirstInvoiceId() + idSpan * i / splitCount - 1;
+                result.add(new PendingInvoicePartition(partition.getCreditorId(),
+                        partition.getInvoiceCount() / splitCount, rangeStart, rangeEnd));
+                rangeStart = rangeEnd + 1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Processes the partition once fewer than the maximum number of partitions are running.
+     */
+    private void processPartition(PendingInvoicePartition partition, Semaphore runningPartitions,
+                                  FinancingRunContext context) {
+        try {
+            runningPartitions.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to finance a partition", e);
+        }
+        try {
+            processPartition(partition, context);
+        } finally {
+            runningPartitions.release();
+        }
+    }
+
+    /**
+     * The chunks of a partition do not advance the run's resume point: a resumed parallel run partitions the
+     * invoices that are still pending.
+     */
+    private void processPartition(PendingInvoicePartition partition, FinancingRunContext context) {
+        int pageSize = financingProperties.getRead().getPageSize();
+        long lastInvoiceId = partition.getFirstInvoiceId() - 1;
+        FinancingChunkResult chunk;
+
+        do {
+            long afterInvoiceId = lastInvoiceId;
+            chunk = chunkProcessor.processChunk(() -> pendingInvoiceReader.readOfCreditorAfter(
+                    partition.getCreditorId(), afterInvoiceId, partition.getLastInvoiceId(), pageSize, context),
+                    false, context);
+            lastInvoiceId = chunk.getLastInvoiceId();
+        } while (chunk.getInvoiceCount() == pageSize);
+    }
+
+    private ExecutorService createExecutor() {
+        if (financingProperties.getParallel().getPoolType() == ParallelPoolType.VIRTUAL_THREADS) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return new ForkJoinPool(financingProperties.getParallel().getThreads());
+    }
+
+    private static void awaitAll(List<Future<?>> results) {
+        RuntimeException failure = null;
+
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for financing partitions", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Financing partition failed", e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
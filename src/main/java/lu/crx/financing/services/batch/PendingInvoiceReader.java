@@ -0,0 +1,129 @@
+package lu.crx.financing.services.batch;
+
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.PendingInvoice;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.services.financing.FinancingOfferTable;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.InvoiceColumns;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the pending invoices of a financing run.
+ * <p>
+ * In the {@code BULK} and {@code STATELESS} write modes the invoices are read as {@link PendingInvoice} projections
+ * (id, creditor id, maturity date and value, all in the pending index) and turned into transient {@link Invoice}
+ * instances whose creditor comes from the run's creditor map; the creditors missing from the map are taken from the
+ * second-level cache, or loaded with one query per page. So a page costs the same one or two statements however many
+ * invoices, creditors and debtors it holds. These invoices carry no debtor and must never be merged; these write
+ * modes only reference them by id.
+ * <p>
+ * The {@code ENTITY} write mode updates the invoice entities themselves, so it reads them, with their creditor and
+ * debtor fetched in the same query.
+ */
+@Component
+@RequiredArgsConstructor
+public class PendingInvoiceReader {
+
+    private final InvoiceRepository invoiceRepository;
+    private final CreditorRepository creditorRepository;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Reads the next page of pending invoices in id order, starting after the given id.
+     */
+    public List<Invoice> readAfter(long lastInvoiceId, int pageSize, FinancingRunContext context) {
+        if (isEntityWriteMode()) {
+            return invoiceRepository.findNonFinancedInvoicesAfter(lastInvoiceId, pageSize);
+        }
+        return toInvoices(invoiceRepository.findPendingInvoicesAfter(lastInvoiceId, pageSize), context);
+    }
+
+    /**
+     * Reads the next page of a creditor's pending invoices with ids in {@code (lastInvoiceId, toInvoiceId]}.
+     */
+    public List<Invoice> readOfCreditorAfter(long creditorId, long lastInvoiceId, long toInvoiceId, int pageSize,
+                                             FinancingRunContext context) {
+        if (isEntityWriteMode()) {
+            return invoiceRepository.findNonFinancedInvoicesOfCreditorAfter(
+                    creditorId, lastInvoiceId, toInvoiceId, pageSize);
+        }
+        return toInvoices(invoiceRepository.findPendingInvoicesOfCreditorAfter(
+                creditorId, lastInvoiceId, toInvoiceId, pageSize), context);
+    }
+
+    /**
+     * Reads the pending invoices among the given ids, in id order.
+     */
+    public List<Invoice> readByIds(Collection<Long> invoiceIds, FinancingRunContext context) {
+        if (isEntityWriteMode()) {
+            return invoiceRepository.findNonFinancedInvoicesByIds(invoiceIds);
+        }
+        return toInvoices(invoiceRepository.findPendingInvoicesByIds(invoiceIds), context);
+    }
+
+    /**
+     * Reads the next page of pending invoices in id order, starting after the given id, into the columns of the
+     * {@link lu.crx.financing.services.financing.FinancingKernel}, replacing their content. The invoices are read as
+     * {@link PendingInvoice} projections whatever the write mode, and their creditors are only looked up in the offer
+     * table.
+     *
+     * @return the number of invoices read
+     */
+    public int readColumnsAfter(long lastInvoiceId, InvoiceColumns invoices, FinancingOfferTable offers) {
+        invoices.clear();
+        for (PendingInvoice pendingInvoice : invoiceRepository.findPendingInvoicesAfter(
+                lastInvoiceId, invoices.capacity())) {
+            invoices.add(pendingInvoice.getId(), pendingInvoice.getValueInCents(),
+                    (int) pendingInvoice.getMaturityDate().toEpochDay(),
+                    offers.creditorIndexOf(pendingInvoice.getCreditorId()));
+        }
+        return invoices.size();
+    }
+
+    private List<Invoice> toInvoices(List<PendingInvoice> pendingInvoices, FinancingRunContext context) {
+        Map<Long, Creditor> creditorsById = context.getCreditorsById();
+        loadMissingCreditors(pendingInvoices, creditorsById);
+
+        List<Invoice> invoices = new ArrayList<>(pendingInvoices.size());
+        for (PendingInvoice pendingInvoice : pendingInvoices) {
+            invoices.add(Invoice.builder()
+                    .id(pendingInvoice.getId())
+                    .creditor(creditorsById.get(pendingInvoice.getCreditorId()))
+                    .maturityDate(pendingInvoice.getMaturityDate())
+                    .valueInCents(pendingInvoice.getValueInCents())
+                    .build());
+        }
+        return invoices;
+    }
+
+    private void loadMissingCreditors(List<PendingInvoice> pendingInvoices, Map<Long, Creditor> creditorsById) {
+        Set<Long> missingCreditorIds = new HashSet<>();
+        for (PendingInvoice pendingInvoice : pendingInvoices) {
+            if (!creditorsById.containsKey(pendingInvoice.getCreditorId())) {
+                missingCreditorIds.add(pendingInvoice.getCreditorId());
+            }
+        }
+        if (!missingCreditorIds.isEmpty()) {
+            for (Creditor creditor : creditorRepository.findAllByIdCached(missingCreditorIds)) {
+                creditorsById.put(creditor.getId(), creditor);
+            }
+        }
+    }
+
+    private boolean isEntityWriteMode() {
+        return financingProperties.getWrite().getMode() == FinancingWriteMode.ENTITY;
+    }
+}
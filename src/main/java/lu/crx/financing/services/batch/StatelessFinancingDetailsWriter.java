@@ -0,0 +1,111 @@
+package lu.crx.financing.services.batch;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.ResourceHolderSupport;
+import org.springframework.transaction.support.ResourceHolderSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+
+/**
+ * Inserts the financing details of the {@code STATELESS} write mode through a Hibernate {@link StatelessSession}:
+ * no persistence context, no dirty checking and nothing for the flush controller to clear. The ids still come from
+ * the entity's pooled sequence generator and the inserts are sent in JDBC batches.
+ * <p>
+ * One stateless session is opened per transaction, on the connection of the transaction's entity manager, so its
+ * inserts commit or roll back with the chunk. It is closed when the transaction completes; its pending batch must be
+ * sent with {@link #flush()} before anything reads the inserted rows.
+ */
+@Component
+@RequiredArgsConstructor
+public class StatelessFinancingDetailsWriter {
+
+    private final EntityManager entityManager;
+
+    /**
+     * Queues the insert of the financing details. Must be called in a transaction.
+     */
+    public void insert(InvoiceFinancingDetails financingDetails) {
+        currentSession().insert(financingDetails);
+    }
+
+    /**
+     * Sends the inserts queued in the current transaction, if any.
+     */
+    public void flush() {
+        StatelessSessionHolder holder = (StatelessSessionHolder) TransactionSynchronizationManager.getResource(this);
+        if (holder != null) {
+            executeBatch(holder.session);
+        }
+    }
+
+    private static void executeBatch(StatelessSession session) {
+        ((SharedSessionContractImplementor) session).getJdbcCoordinator().executeBatch();
+    }
+
+    private StatelessSession currentSession() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("The financing details can only be written in a transaction");
+        }
+        StatelessSessionHolder holder = (StatelessSessionHolder) TransactionSynchronizationManager.getResource(this);
+        if (holder == null) {
+            Session session = entityManager.unwrap(Session.class);
+            Connection connection = session.doReturningWork(transactionConnection -> transactionConnection);
+            StatelessSession statelessSession = session.getSessionFactory()
+                    .withStatelessOptions()
+                    .connection(connection)
+                    .openStatelessSession();
+            // Hibernate only batches the inserts of a session whose own transaction is active. The connection is
+            // already in the chunk's transaction, so this only marks it active: the session never commits or rolls
+            // back, the chunk's transaction does, and closing the session leaves the connection as it is.
+            statelessSession.getTransaction().begin();
+            holder = new StatelessSessionHolder(statelessSession);
+            TransactionSynchronizationManager.bindResource(this, holder);
+            TransactionSynchronizationManager.registerSynchronization(new StatelessSessionSynchronization(holder, this));
+        }
+        return holder.session;
+    }
+
+    private static class StatelessSessionHolder extends ResourceHolderSupport {
+
+        private final StatelessSession session;
+
+        StatelessSessionHolder(StatelessSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * Sends the last batch before the commit, and unbinds and closes the session when the transaction completes;
+     * the session is unbound as well while the transaction is suspended.
+     */
+    private static class StatelessSessionSynchronization
+            extends ResourceHolderSynchronization<StatelessSessionHolder, Object> {
+
+        StatelessSessionSynchronization(StatelessSessionHolder holder, Object key) {
+            super(holder, key);
+        }
+
+        @Override
+        protected void flushResource(StatelessSessionHolder holder) {
+            executeBatch(holder.session);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            flush();
+        }
+
+        @Override
+        protected void releaseResource(StatelessSessionHolder holder, Object key) {
+            holder.session.close();
+        }
+    }
+}
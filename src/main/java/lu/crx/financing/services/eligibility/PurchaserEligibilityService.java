@@ -18,6 +18,11 @@ import java.util.function.Predicate;
 @RequiredArgsConstructor
 public class PurchaserEligibilityService {
 
+    /**
+     * Returned by {@link #findAnnualRateInBps(Purchaser, long)} when the purchaser has no settings for the creditor.
+     */
+    public static final int NO_SETTINGS = Integer.MIN_VALUE;
+
     private final FinancingCalculationService calculationService;
 
     public boolean isPurchaserEligible(
@@ -26,12 +31,11 @@ public class PurchaserEligibilityService {
             int financingTermInDays,
             int maxFinancingRateInBps) {
 
-        return findSettingsForCreditor(purchaser, creditor)
-                .filter(settings -> meetsMinimumFinancingTerm(purchaser, financingTermInDays))
-                .map(settings -> calculationService.calculateFinancingRate(
-                        settings.getAnnualRateInBps(), financingTermInDays))
-                .filter(rate -> !exceedsMaxRate(rate, maxFinancingRateInBps))
-                .isPresent();
+        int annualRateInBps = findAnnualRateInBps(purchaser, creditor.getId());
+        return annualRateInBps != NO_SETTINGS
+                && meetsMinimumFinancingTerm(purchaser, financingTermInDays)
+                && !exceedsMaxRate(calculationService.calculateFinancingRate(annualRateInBps, financingTermInDays),
+                maxFinancingRateInBps);
     }
 
     public PurchaserFinancingResult createFinancingResult(
@@ -56,6 +60,23 @@ public class PurchaserEligibilityService {
     }
 
 
+    /**
+     * The annual rate of the purchaser's settings for the creditor, or {@link #NO_SETTINGS}. Unlike
+     * {@link #findSettingsForCreditor(Purchaser, Creditor)} it allocates nothing, for use on the selection hot path.
+     */
+    public int findAnnualRateInBps(Purchaser purchaser, long creditorId) {
+        for (PurchaserFinancingSettings settings : purchaser.getPurchaserFinancingSettings()) {
+            if (settings.getCreditor().getId() == creditorId) {
+                return settings.getAnnualRateInBps();
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Purchaser {} rejected: no settings for creditor {}", purchaser.getName(), creditorId);
+        }
+        return NO_SETTINGS;
+    }
+
     public Optional<PurchaserFinancingSettings> findSettingsForCreditor(Purchaser purchaser, Creditor creditor) {
         Predicate<PurchaserFinancingSettings> matchesCreditor =
                 settings -> settings.getCreditor().getId() == creditor.getId();
@@ -64,7 +85,7 @@ public class PurchaserEligibilityService {
                 .filter(matchesCreditor)
                 .findFirst();
 
-        if (settings.isEmpty()) {
+        if (settings.isEmpty() && log.isDebugEnabled()) {
             log.debug("Purchaser {} rejected: no settings for creditor {}",
                     purchaser.getName(), creditor.getId());
         }
@@ -75,7 +96,7 @@ public class PurchaserEligibilityService {
     public boolean meetsMinimumFinancingTerm(Purchaser purchaser, int financingTermInDays) {
         boolean isValid = financingTermInDays >= purchaser.getMinimumFinancingTermInDays();
 
-        if (!isValid) {
+        if (!isValid && log.isDebugEnabled()) {
             log.debug("Purchaser {} rejected: term {} days < minimum {} days",
                     purchaser.getName(), financingTermInDays, purchaser.getMinimumFinancingTermInDays());
         }
@@ -86,7 +107,7 @@ public class PurchaserEligibilityService {
     public boolean exceedsMaxRate(int rateInBps, int maxRateInBps) {
         boolean exceeds = rateInBps > maxRateInBps;
 
-        if (exceeds) {
+        if (exceeds && log.isDebugEnabled()) {
             log.debug("Purchaser rejected: rate {} bps > maximum {} bps", rateInBps, maxRateInBps);
         }
 
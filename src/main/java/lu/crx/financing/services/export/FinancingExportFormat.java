@@ -0,0 +1,26 @@
+package lu.crx.financing.services.export;
+
+/**
+ * File formats of the financing result export. Every format has one record per financed invoice, in invoice id
+ * order, with the invoice id, creditor id, purchaser id, financing date, financing term in days, financing rate in
+ * bps, invoice value, early payment amount and discounted amount in cents.
+ */
+public enum FinancingExportFormat {
+
+    /**
+     * Comma-separated values with a header line, the dates in ISO format.
+     */
+    CSV,
+
+    /**
+     * One JSON object per line, the dates in ISO format.
+     */
+    NDJSON,
+
+    /**
+     * Big-endian fixed-size records after an 8-byte header (the magic number {@code FRES} and the format version as
+     * two ints): the ids as longs, the financing date as an int epoch day, the term and rate as ints and the amounts
+     * as longs, 60 bytes per record.
+     */
+    BINARY
+}
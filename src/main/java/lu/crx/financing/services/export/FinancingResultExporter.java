@@ -0,0 +1,143 @@
+package lu.crx.financing.services.export;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingResult;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.repositories.ArchivedInvoiceFinancingDetailsRepository;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.InvoiceFinancingDetailsRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exports the financing results, live and archived, to a file for the settlement. The results are read from two
+ * database cursors, merged in invoice id order, and encoded into a direct buffer that is written to a file channel
+ * (see {@link FinancingResultFileWriter}), so the memory used stays the same whatever the number of results.
+ * <p>
+ * The file is written next to the target with a {@code .part} suffix and only moved to the target once complete,
+ * so that a reader of the target never sees a partial export.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FinancingResultExporter {
+
+    private final FinancingRunRepository financingRunRepository;
+    private final InvoiceFinancingDetailsRepository financingDetailsRepository;
+    private final ArchivedInvoiceFinancingDetailsRepository archivedFinancingDetailsRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Exports the financing results of the dates the run spans. The financing details do not record the run that
+     * wrote them, so the results of other runs on the same dates are exported as well.
+     *
+     * @return the number of results exported
+     */
+    public long exportRun(long runId, FinancingExportFormat format, Path target) {
+        FinancingRun run = financingRunRepository.findById(runId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown financing run " + runId));
+        // The runs use the financing date of the system time zone, see InvoiceFinancingService
+        Instant finishedAt = run.getFinishedAt() != null ? run.getFinishedAt() : Instant.now();
+        return exportFinancingDates(LocalDate.ofInstant(run.getStartedAt(), ZoneId.systemDefault()),
+                LocalDate.ofInstant(finishedAt, ZoneId.systemDefault()), format, target);
+    }
+
+    /**
+     * Exports the financing results with a financing date in {@code [fromDate, toDate]}.
+     *
+     * @return the number of results exported
+     */
+    public long exportFinancingDates(LocalDate fromDate, LocalDate toDate, FinancingExportFormat format,
+                                     Path target) {
+        long exportStart = System.nanoTime();
+        Path partFile = target.resolveSibling(target.getFileName() + ".part");
+        int bufferSize = (int) financingProperties.getExport().getBufferSize().toBytes();
+
+        try {
+            ExportedFile exported = readOnlyTransaction().execute(status -> {
+                try (FinancingResultFileWriter writer = new FinancingResultFileWriter(partFile, format, bufferSize);
+                     Stream<FinancingResult> liveResults =
+                             financingDetailsRepository.streamFinancingResults(fromDate, toDate);
+                     Stream<FinancingResult> archivedResults =
+                             archivedFinancingDetailsRepository.streamFinancingResults(fromDate, toDate)) {
+                    long resultCount = writeInInvoiceOrder(liveResults.iterator(), archivedResults.iterator(), writer);
+                    return new ExportedFile(resultCount, writer.finish());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.info("Exported {} financing results of {}..{} to {} as {}, {} bytes in {} ms",
+                    exported.resultCount(), fromDate, toDate, target, format, exported.byteCount(),
+                    (System.nanoTime() - exportStart) / 1_000_000);
+            return exported.resultCount();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to export the financing results to " + target, e);
+        } finally {
+            deletePartFile(partFile);
+        }
+    }
+
+    /**
+     * Merges the two cursors, both in invoice id order. An invoice archived between the opening of the two cursors
+     * can be read by both, and is only written once.
+     */
+    private long writeInInvoiceOrder(Iterator<FinancingResult> liveResults, Iterator<FinancingResult> archivedResults,
+                                     FinancingResultFileWriter writer) {
+        FinancingResult live = next(liveResults);
+        FinancingResult archived = next(archivedResults);
+        long resultCount = 0;
+
+        while (live != null || archived != null) {
+            if (archived == null || (live != null && live.getInvoiceId() < archived.getInvoiceId())) {
+                writer.write(live);
+                live = next(liveResults);
+            } else {
+                if (live != null && live.getInvoiceId() == archived.getInvoiceId()) {
+                    live = next(liveResults);
+                }
+                writer.write(archived);
+                archived = next(archivedResults);
+            }
+            resultCount++;
+        }
+        return resultCount;
+    }
+
+    private static FinancingResult next(Iterator<FinancingResult> results) {
+        return results.hasNext() ? results.next() : null;
+    }
+
+    private static void deletePartFile(Path partFile) {
+        try {
+            Files.deleteIfExists(partFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete the partial export {}", partFile, e);
+        }
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate exportTransaction = new TransactionTemplate(transactionManager);
+        exportTransaction.setReadOnly(true);
+        return exportTransaction;
+    }
+
+    private record ExportedFile(long resultCount, long byteCount) {
+    }
+}
@@ -0,0 +1,199 @@
+package lu.crx.financing.services.export;
+
+import lu.crx.financing.entities.FinancingResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * Encodes the financing results straight into a direct buffer, which is written to the file channel whenever it
+ * cannot hold another record: the memory used does not depend on the number of results, and no string is created
+ * per record.
+ */
+class FinancingResultFileWriter implements AutoCloseable {
+
+    static final int BINARY_MAGIC = 0x46524553;
+    static final int BINARY_VERSION = 1;
+    static final int BINARY_RECORD_SIZE = 60;
+
+    /**
+     * Upper bound of the encoded size of a record in any format.
+     */
+    static final int MAX_RECORD_SIZE = 512;
+
+    private static final byte[] CSV_HEADER = ascii("invoice_id,creditor_id,purchaser_id,financing_date," +
+            "financing_term_in_days,financing_rate_in_bps,value_in_cents,early_payment_amount_in_cents," +
+            "discounted_amount_in_cents\n");
+
+    private static final byte[][] JSON_KEYS = {
+            ascii("{\"invoiceId\":"), ascii(",\"creditorId\":"), ascii(",\"purchaserId\":"),
+            ascii(",\"financingDate\":\""), ascii("\",\"financingTermInDays\":"), ascii(",\"financingRateInBps\":"),
+            ascii(",\"valueInCents\":"), ascii(",\"earlyPaymentAmountInCents\":"),
+            ascii(",\"discountedAmountInCents\":")
+    };
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final FinancingExportFormat format;
+    private final byte[] digits = new byte[20];
+    private long bytesWritten;
+
+    FinancingResultFileWriter(Path file, FinancingExportFormat format, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, MAX_RECORD_SIZE));
+        this.format = format;
+        writeHeader();
+    }
+
+    void write(FinancingResult result) {
+        if (buffer.remaining() < MAX_RECORD_SIZE) {
+            drain();
+        }
+        switch (format) {
+            case CSV -> putCsv(result);
+            case NDJSON -> putJson(result);
+            case BINARY -> putBinary(result);
+        }
+    }
+
+    /**
+     * Writes what is left in the buffer and forces the file to the disk.
+     *
+     * @return the size of the file
+     */
+    long finish() {
+        drain();
+        try {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeHeader() {
+        switch (format) {
+            case CSV -> buffer.put(CSV_HEADER);
+            case NDJSON -> {
+                // No header, every line stands on its own
+            }
+            case BINARY -> buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION);
+        }
+    }
+
+    private void putCsv(FinancingResult result) {
+        putDecimal(result.getInvoiceId());
+        buffer.put((byte) ',');
+        putDecimal(result.getCreditorId());
+        buffer.put((byte) ',');
+        putDecimal(result.getPurchaserId());
+        buffer.put((byte) ',');
+        putDate(result.getFinancingDate());
+        buffer.put((byte) ',');
+        putDecimal(result.getFinancingTermInDays());
+        buffer.put((byte) ',');
+        putDecimal(result.getFinancingRateInBps());
+        buffer.put((byte) ',');
+        putDecimal(result.getValueInCents());
+        buffer.put((byte) ',');
+        putDecimal(result.getEarlyPaymentAmountInCents());
+        buffer.put((byte) ',');
+        putDecimal(result.getDiscountedAmountInCents());
+        buffer.put((byte) '\n');
+    }
+
+    private void putJson(FinancingResult result) {
+        buffer.put(JSON_KEYS[0]);
+        putDecimal(result.getInvoiceId());
+        buffer.put(JSON_KEYS[1]);
+        putDecimal(result.getCreditorId());
+        buffer.put(JSON_KEYS[2]);
+        putDecimal(result.getPurchaserId());
+        buffer.put(JSON_KEYS[3]);
+        putDate(result.getFinancingDate());
+        buffer.put(JSON_KEYS[4]);
+        putDecimal(result.getFinancingTermInDays());
+        buffer.put(JSON_KEYS[5]);
+        putDecimal(result.getFinancingRateInBps());
+        buffer.put(JSON_KEYS[6]);
+        putDecimal(result.getValueInCents());
+        buffer.put(JSON_KEYS[7]);
+        putDecimal(result.getEarlyPaymentAmountInCents());
+        buffer.put(JSON_KEYS[8]);
+        putDecimal(result.getDiscountedAmountInCents());
+        buffer.put((byte) '}').put((byte) '\n');
+    }
+
+    private void putBinary(FinancingResult result) {
+        buffer.putLong(result.getInvoiceId())
+                .putLong(result.getCreditorId())
+                .putLong(result.getPurchaserId())
+                .putInt((int) result.getFinancingDate().toEpochDay())
+                .putInt(result.getFinancingTermInDays())
+                .putInt(result.getFinancingRateInBps())
+                .putLong(result.getValueInCents())
+                .putLong(result.getEarlyPaymentAmountInCents())
+                .putLong(result.getDiscountedAmountInCents());
+    }
+
+    private void putDate(LocalDate date) {
+        putPadded(date.getYear(), 4);
+        buffer.put((byte) '-');
+        putPadded(date.getMonthValue(), 2);
+        buffer.put((byte) '-');
+        putPadded(date.getDayOfMonth(), 2);
+    }
+
+    private void putPadded(int value, int width) {
+        for (int position = width - 1; position >= 0; position--) {
+            digits[position] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        buffer.put(digits, 0, width);
+    }
+
+    private void putDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put(ascii(Long.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, start, digits.length - start);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -12,8 +12,8 @@ import java.time.temporal.ChronoUnit;
 @RequiredArgsConstructor
 public class FinancingCalculationService {
 
-    private static final int DAYS_IN_FINANCIAL_YEAR = 360;
-    private static final int BPS_DIVISOR = 10000;
+    static final int DAYS_IN_FINANCIAL_YEAR = 360;
+    static final int BPS_DIVISOR = 10000;
 
     public int calculateFinancingTerm(LocalDate currentDate, LocalDate maturityDate) {
         return (int) ChronoUnit.DAYS.between(currentDate, maturityDate);
@@ -23,10 +23,9 @@ public class FinancingCalculationService {
         if (annualRateInBps <= 0 || financingTermInDays <= 0) {
             log.warn("Invalid input for financing rate calculation: rate={}, term={}",
                     annualRateInBps, financingTermInDays);
-            return 0;
         }
 
-        return (int) Math.round((double) annualRateInBps * financingTermInDays / DAYS_IN_FINANCIAL_YEAR);
+        return financingRate(annualRateInBps, financingTermInDays);
     }
 
     public double calculateExactFinancingRate(int annualRateInBps, int financingTermInDays) {
@@ -43,9 +42,28 @@ public class FinancingCalculationService {
         if (invoiceValueInCents <= 0 || financingRateInBps <= 0) {
             log.warn("Invalid input for discount calculation: value={}, rate={}",
                     invoiceValueInCents, financingRateInBps);
+        }
+
+        return discountAmount(invoiceValueInCents, financingRateInBps);
+    }
+
+    /**
+     * The financing rate formula, without logging, for the callers computing rates in a loop.
+     */
+    static int financingRate(int annualRateInBps, int financingTermInDays) {
+        if (annualRateInBps <= 0 || financingTermInDays <= 0) {
             return 0;
         }
+        return (int) Math.round((double) annualRateInBps * financingTermInDays / DAYS_IN_FINANCIAL_YEAR);
+    }
 
+    /**
+     * The discount amount formula, without logging, for the callers computing amounts in a loop.
+     */
+    static long discountAmount(long invoiceValueInCents, int financingRateInBps) {
+        if (invoiceValueInCents <= 0 || financingRateInBps <= 0) {
+            return 0;
+        }
         return invoiceValueInCents * financingRateInBps / BPS_DIVISOR;
     }
 }
\ No newline at end of file
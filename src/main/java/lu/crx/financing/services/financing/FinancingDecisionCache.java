@@ -0,0 +1,172 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.PurchaserFinancingResult;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Run-scoped memo of purchaser selections. The winning purchaser and its rate depend only on the invoice's
+ * creditor and financing term, so every invoice sharing a (creditor, term) pair reuses the same decision,
+ * including the decision that no purchaser is eligible.
+ * <p>
+ * The decisions are kept in an open-addressing table keyed by {@code creditorId << 32 | term} as a primitive
+ * {@code long}, and a lookup reads it under an optimistic {@link StampedLock} read, so looking a decision up
+ * allocates nothing. A creditor id that does not fit in 32 bits is not cached.
+ * <p>
+ * Safe for use by the partitions of a parallel run. Two threads missing the same key at once may both compute
+ * the selection; it is deterministic, so either result can be kept.
+ */
+public class FinancingDecisionCache {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /**
+     * The decision of the key in the same slot, {@code null} for a free slot.
+     */
+    private Optional<?>[] decisions = new Optional<?>[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @return the decision taken for the creditor and term, or {@code null} if none was taken yet
+     */
+    public Optional<PurchaserFinancingResult> get(long creditorId, int financingTermInDays) {
+        if (!isCacheable(creditorId)) {
+            missCount.increment();
+            return null;
+        }
+
+        long key = key(creditorId, financingTermInDays);
+        long stamp = lock.tryOptimisticRead();
+        Optional<PurchaserFinancingResult> decision = find(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                decision = find(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (decision != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return decision;
+    }
+
+    /**
+     * Keeps the decision for the creditor and term, unless another thread kept one first.
+     *
+     * @return the decision that is kept
+     */
+    public Optional<PurchaserFinancingResult> putIfAbsent(
+            long creditorId, int financingTermInDays, Optional<PurchaserFinancingResult> decision) {
+
+        if (!isCacheable(creditorId)) {
+            return decision;
+        }
+
+        long key = key(creditorId, financingTermInDays);
+        long stamp = lock.writeLock();
+        try {
+            Optional<PurchaserFinancingResult> concurrentDecision = find(key);
+            if (concurrentDecision != null) {
+                return concurrentDecision;
+            }
+            if (2 * (size + 1) > keys.length) {
+                resize();
+            }
+            insert(keys, decisions, key, decision);
+            size++;
+            return decision;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Also called under an optimistic read, where the table may be replaced concurrently: the result is then
+     * discarded, it only must not fail or loop forever.
+     */
+    @SuppressWarnings("unchecked")
+    private Optional<PurchaserFinancingResult> find(long key) {
+        long[] tableKeys = keys;
+        Optional<?>[] tableDecisions = decisions;
+        if (tableKeys.length != tableDecisions.length) {
+            return null;
+        }
+
+        int mask = tableKeys.length - 1;
+        for (int slot = slot(key, mask), probes = 0; probes < tableKeys.length; slot = (slot + 1) & mask, probes++) {
+            Optional<?> decision = tableDecisions[slot];
+            if (decision == null) {
+                return null;
+            }
+            if (tableKeys[slot] == key) {
+                return (Optional<PurchaserFinancingResult>) decision;
+            }
+        }
+        return null;
+    }
+
+    private void resize() {
+        long[] resizedKeys = new long[keys.length * 2];
+        Optional<?>[] resizedDecisions = new Optional<?>[resizedKeys.length];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (decisions[slot] != null) {
+                insert(resizedKeys, resizedDecisions, keys[slot], decisions[slot]);
+            }
+        }
+        keys = resizedKeys;
+        decisions = resizedDecisions;
+    }
+
+    private static void insert(long[] tableKeys, Optional<?>[] tableDecisions, long key, Optional<?> decision) {
+        int mask = tableKeys.length - 1;
+        int slot = slot(key, mask);
+        while (tableDecisions[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        tableKeys[slot] = key;
+        tableDecisions[slot] = decision;
+    }
+
+    private static boolean isCacheable(long creditorId) {
+        return creditorId >>> 32 == 0;
+    }
+
+    private static long key(long creditorId, int financingTermInDays) {
+        return creditorId << 32 | (financingTermInDays & 0xFFFF_FFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E37_79B9_7F4A_7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+}
@@ -0,0 +1,61 @@
+package lu.crx.financing.services.financing;
+
+import org.springframework.stereotype.Service;
+
+import static lu.crx.financing.services.financing.FinancingCalculationService.discountAmount;
+import static lu.crx.financing.services.financing.FinancingCalculationService.financingRate;
+
+/**
+ * Finances a batch of invoices held in primitive arrays, without entities, collections or logging in the loop.
+ * <p>
+ * The kernel makes the same decisions and computes the same amounts as {@link PurchaserSelectionService} and
+ * {@link FinancingCalculationService}: for every invoice the lowest-rate offer whose minimum term is met is looked
+ * up in the {@link FinancingOfferTable}, rejected if its rate exceeds the creditor's maximum, and otherwise used
+ * to compute the discount and the early payment, with the formulas of {@link FinancingCalculationService}. Loading
+ * the inputs and writing the outputs is left to the caller.
+ * <p>
+ * Used by the sequential runs with {@code financing.kernel.enabled}, see
+ * {@link lu.crx.financing.services.batch.KernelFinancingWorker}.
+ */
+@Service
+public class FinancingKernel {
+
+    /**
+     * Computes the financing of every invoice of the batch into the result columns.
+     *
+     * @param financingEpochDay the financing date as {@link java.time.LocalDate#toEpochDay()}
+     */
+    public void finance(InvoiceColumns invoices, FinancingOfferTable offers, long financingEpochDay,
+                        FinancingResultColumns results) {
+        int size = invoices.size();
+        results.reset(size);
+
+        for (int i = 0; i < size; i++) {
+            int financingTermInDays = (int) (invoices.maturityEpochDay(i) - financingEpochDay);
+            int creditorIndex = invoices.creditorIndex(i);
+            int slot = creditorIndex < 0
+                    ? -1
+                    : offers.lastSlotWithMinimumTermAtMost(creditorIndex, financingTermInDays);
+            if (slot < 0) {
+                results.setNotFinanced(i, financingTermInDays);
+                continue;
+            }
+
+            // A non-positive term yields a zero financing rate for every purchaser, so the first listed one wins
+            boolean positiveTerm = financingTermInDays > 0;
+            int annualRateInBps = positiveTerm ? offers.lowestAnnualRate(slot) : offers.firstListedAnnualRate(slot);
+            int purchaserIndex = positiveTerm ? offers.lowestRatePurchaser(slot) : offers.firstListedPurchaser(slot);
+
+            int financingRateInBps = financingRate(annualRateInBps, financingTermInDays);
+            if (financingRateInBps > offers.maxFinancingRateInBps(creditorIndex)) {
+                results.setNotFinanced(i, financingTermInDays);
+                continue;
+            }
+
+            long valueInCents = invoices.valueInCents(i);
+            long discountAmountInCents = discountAmount(valueInCents, financingRateInBps);
+            results.setFinanced(i, purchaserIndex, financingTermInDays, financingRateInBps,
+                    discountAmountInCents, valueInCents - discountAmountInCents);
+        }
+    }
+}
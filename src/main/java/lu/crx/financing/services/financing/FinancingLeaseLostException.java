@@ -0,0 +1,15 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.InvoiceRangeLease;
+
+/**
+ * The lease of an invoice range expired and was taken over by another instance, which finances the rest of the range.
+ * The chunk that found out is rolled back.
+ */
+public class FinancingLeaseLostException extends IllegalStateException {
+
+    public FinancingLeaseLostException(InvoiceRangeLease lease) {
+        super("Lost the lease of range " + lease.getId() + " (invoices " + lease.getFirstInvoiceId() + " to "
+                + lease.getLastInvoiceId() + " of creditor " + lease.getCreditorId() + ") held by " + lease.getOwner());
+    }
+}
@@ -0,0 +1,149 @@
+package lu.crx.financing.services.financing;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingLeaseRound;
+import lu.crx.financing.entities.InvoiceRangeLease;
+import lu.crx.financing.entities.PendingInvoicePartition;
+import lu.crx.financing.repositories.FinancingLeaseRoundRepository;
+import lu.crx.financing.repositories.InvoiceRangeLeaseRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.services.batch.ParallelFinancingEngine;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps the rounds of work shared by the instances financing against the same database, and the leases of their
+ * invoice ranges. Every change of a lease is a conditional update of its row, see {@link InvoiceRangeLeaseRepository}.
+ * <p>
+ * The lease expiry is compared with the clock of the instance, so the clocks of the instances are expected to differ
+ * by much less than {@code financing.lease.time-to-live}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FinancingLeaseService {
+
+    private final FinancingLeaseRoundRepository roundRepository;
+    private final InvoiceRangeLeaseRepository leaseRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Joins the round that is not completed yet, or plans a new one from the invoices pending now. The invoices
+     * that become pending later are left to the next round.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException when another instance planned the same round
+     *                                                                  meanwhile; joining again finds that round
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public long joinOrPlanRound() {
+        Optional<FinancingLeaseRound> latestRound = roundRepository.findFirstByOrderByIdDesc();
+        if (latestRound.isPresent() && latestRound.get().getCompletedAt() == null) {
+            log.info("Joining financing round {}", latestRound.get().getId());
+            return latestRound.get().getId();
+        }
+
+        long roundId = latestRound.map(round -> round.getId() + 1).orElse(1L);
+        roundRepository.insert(roundId, Instant.now());
+
+        List<PendingInvoicePartition> ranges = ParallelFinancingEngine.splitPartitions(
+                invoiceRepository.findPendingInvoicePartitionsByCreditor(),
+                financingProperties.getLease().getMaxRangeSize());
+        leaseRepository.saveAll(ranges.stream()
+                .map(range -> InvoiceRangeLease.builder()
+                        .roundId(roundId)
+                        .creditorId(range.getCreditorId())
+                        .firstInvoiceId(range.getFirstInvoiceId())
+                        .lastInvoiceId(range.getLastInvoiceId())
+                        .invoiceCount(range.getInvoiceCount())
+                        .build())
+                .toList());
+        log.info("Planned financing round {} with {} invoice ranges", roundId, ranges.size());
+        return roundId;
+    }
+
+    /**
+     * @return the ranges of the round that are not done yet, largest first
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public List<InvoiceRangeLease> findOpenLeases(long roundId) {
+        return leaseRepository.findByRoundIdAndCompletedAtIsNullOrderByInvoiceCountDesc(roundId);
+    }
+
+    /**
+     * Takes the lease of a range read by {@link #findOpenLeases}, when it is free or expired and nobody claimed it
+     * since. The lease is updated with the new owner, token and expiry on success.
+     *
+     * @return whether the lease was taken
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public boolean tryClaim(InvoiceRangeLease lease, String owner) {
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(financingProperties.getLease().getTimeToLive());
+        if (leaseRepository.claim(lease.getId(), lease.getLeaseToken(), owner, now, expiresAt) == 0) {
+            return false;
+        }
+
+        if (lease.getOwner() != null) {
+            log.warn("{} takes over range {} from {}, whose lease expired at {}",
+                    owner, lease.getId(), lease.getOwner(), lease.getExpiresAt());
+        }
+        lease.setOwner(owner);
+        lease.setLeaseToken(lease.getLeaseToken() + 1);
+        lease.setExpiresAt(expiresAt);
+        return true;
+    }
+
+    /**
+     * Extends the lease in the caller's transaction. The lease row stays locked until that transaction ends, so
+     * the lease cannot be taken over while the transaction writes the invoices of the range.
+     *
+     * @throws FinancingLeaseLostException when the lease was taken over by another instance
+     */
+    @Transactional
+    public void renew(InvoiceRangeLease lease) {
+        Instant expiresAt = Instant.now().plus(financingProperties.getLease().getTimeToLive());
+        if (leaseRepository.renew(lease.getId(), lease.getOwner(), lease.getLeaseToken(), expiresAt) == 0) {
+            throw new FinancingLeaseLostException(lease);
+        }
+        lease.setExpiresAt(expiresAt);
+    }
+
+    /**
+     * @throws FinancingLeaseLostException when the lease was taken over by another instance
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void complete(InvoiceRangeLease lease) {
+        if (leaseRepository.complete(lease.getId(), lease.getOwner(), lease.getLeaseToken(), Instant.now()) == 0) {
+            throw new FinancingLeaseLostException(lease);
+        }
+    }
+
+    /**
+     * Gives the range up, e.g. after its financing failed, so that another instance can claim it right away.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void release(InvoiceRangeLease lease) {
+        leaseRepository.release(lease.getId(), lease.getOwner(), lease.getLeaseToken());
+    }
+
+    /**
+     * Completes the round when all of its ranges are done.
+     *
+     * @return whether the round is completed, by this call or an earlier one
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public boolean completeRound(long roundId) {
+        if (roundRepository.complete(roundId, Instant.now()) == 1) {
+            log.info("Completed financing round {}", roundId);
+            return true;
+        }
+        return roundRepository.findById(roundId).orElseThrow().getCompletedAt() != null;
+    }
+}
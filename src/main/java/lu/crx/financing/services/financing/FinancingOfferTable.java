@@ -0,0 +1,188 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserOffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar copy of a {@link PurchaserOfferBook} for the {@link FinancingKernel}.
+ * <p>
+ * Creditors and purchasers are replaced by dense indexes, and the sorted offers of all creditors are stored
+ * back to back in flat int arrays: the offers of the creditor with index {@code c} occupy the slots from
+ * {@code offerStart[c]} (inclusive) to {@code offerStart[c + 1]} (exclusive).
+ */
+public final class FinancingOfferTable {
+
+    private final Map<Long, Integer> creditorIndexById;
+    private final int[] maxFinancingRateInBps;
+    private final int[] offerStart;
+    private final int[] minimumTerms;
+    private final int[] lowestAnnualRates;
+    private final int[] lowestRatePurchasers;
+    private final int[] firstListedAnnualRates;
+    private final int[] firstListedPurchasers;
+    private final Purchaser[] purchasers;
+
+    private FinancingOfferTable(Map<Long, Integer> creditorIndexById, int[] maxFinancingRateInBps, int[] offerStart,
+                                int[] minimumTerms, int[] lowestAnnualRates, int[] lowestRatePurchasers,
+                                int[] firstListedAnnualRates, int[] firstListedPurchasers, Purchaser[] purchasers) {
+        this.creditorIndexById = creditorIndexById;
+        this.maxFinancingRateInBps = maxFinancingRateInBps;
+        this.offerStart = offerStart;
+        this.minimumTerms = minimumTerms;
+        this.lowestAnnualRates = lowestAnnualRates;
+        this.lowestRatePurchasers = lowestRatePurchasers;
+        this.firstListedAnnualRates = firstListedAnnualRates;
+        this.firstListedPurchasers = firstListedPurchasers;
+        this.purchasers = purchasers;
+    }
+
+    /**
+     * Builds the table for every creditor some purchaser has settings for, as loaded with the book. The invoices of
+     * the other creditors get the creditor index -1.
+     */
+    public static FinancingOfferTable build(PurchaserOfferBook offerBook) {
+        return build(offerBook, offerBook.getCreditors());
+    }
+
+    /**
+     * Builds the table for the given creditors. The creditor index is the position of the creditor in the list.
+     */
+    public static FinancingOfferTable build(PurchaserOfferBook offerBook, List<Creditor> creditors) {
+        int creditorCount = creditors.size();
+        Map<Long, Integer> creditorIndexById = new HashMap<>(creditorCount * 2);
+        int[] maxFinancingRateInBps = new int[creditorCount];
+        int[] offerStart = new int[creditorCount + 1];
+
+        int offerCount = 0;
+        for (int c = 0; c < creditorCount; c++) {
+            Creditor creditor = creditors.get(c);
+            creditorIndexById.put(creditor.getId(), c);
+            maxFinancingRateInBps[c] = creditor.getMaxFinancingRateInBps();
+            offerStart[c] = offerCount;
+
+            PurchaserOfferBook.CreditorOffers offers = offerBook.offersOf(creditor.getId());
+            offerCount += offers == null ? 0 : offers.size();
+        }
+        offerStart[creditorCount] = offerCount;
+
+        int[] minimumTerms = new int[offerCount];
+        int[] lowestAnnualRates = new int[offerCount];
+        int[] lowestRatePurchasers = new int[offerCount];
+        int[] firstListedAnnualRates = new int[offerCount];
+        int[] firstListedPurchasers = new int[offerCount];
+        Map<Purchaser, Integer> purchaserIndex = new IdentityHashMap<>();
+        List<Purchaser> purchasers = new ArrayList<>();
+
+        for (int c = 0; c < creditorCount; c++) {
+            PurchaserOfferBook.CreditorOffers offers = offerBook.offersOf(creditors.get(c).getId());
+            for (int i = 0; offers != null && i < offers.size(); i++) {
+                int slot = offerStart[c] + i;
+                PurchaserOffer lowestRate = offers.lowestRateOfPrefix(i);
+                PurchaserOffer firstListed = offers.firstListedOfPrefix(i);
+
+                minimumTerms[slot] = offers.minimumTermAt(i);
+                lowestAnnualRates[slot] = lowestRate.getAnnualRateInBps();
+                lowestRatePurchasers[slot] = indexOf(lowestRate.getPurchaser(), purchaserIndex, purchasers);
+                firstListedAnnualRates[slot] = firstListed.getAnnualRateInBps();
+                firstListedPurchasers[slot] = indexOf(firstListed.getPurchaser(), purchaserIndex, purchasers);
+            }
+        }
+
+        return new FinancingOfferTable(creditorIndexById, maxFinancingRateInBps, offerStart, minimumTerms,
+                lowestAnnualRates, lowestRatePurchasers, firstListedAnnualRates, firstListedPurchasers,
+                purchasers.toArray(new Purchaser[0]));
+    }
+
+    private static int indexOf(Purchaser purchaser, Map<Purchaser, Integer> purchaserIndex, List<Purchaser> purchasers) {
+        return purchaserIndex.computeIfAbsent(purchaser, p -> {
+            purchasers.add(p);
+            return purchasers.size() - 1;
+        });
+    }
+
+    /**
+     * The dense index of the creditor, or -1 if the table was not built for it.
+     */
+    public int creditorIndexOf(long creditorId) {
+        Integer index = creditorIndexById.get(creditorId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Explains why the kernel financed no invoice of the creditor with the given term.
+     *
+     * @param creditorIndex the index of the creditor, or -1 if the table was not built for it
+     */
+    public FinancingRejectionReason findRejectionReason(int creditorIndex, int financingTermInDays) {
+        if (creditorIndex < 0 || offerStart[creditorIndex] == offerStart[creditorIndex + 1]) {
+            return FinancingRejectionReason.NO_SETTINGS;
+        }
+        if (lastSlotWithMinimumTermAtMost(creditorIndex, financingTermInDays) < 0) {
+            return FinancingRejectionReason.TERM_TOO_SHORT;
+        }
+        return FinancingRejectionReason.RATE_ABOVE_MAX;
+    }
+
+    public Purchaser getPurchaser(int purchaserIndex) {
+        return purchasers[purchaserIndex];
+    }
+
+    public int getCreditorCount() {
+        return maxFinancingRateInBps.length;
+    }
+
+    public int getPurchaserCount() {
+        return purchasers.length;
+    }
+
+    public int getOfferCount() {
+        return minimumTerms.length;
+    }
+
+    int maxFinancingRateInBps(int creditorIndex) {
+        return maxFinancingRateInBps[creditorIndex];
+    }
+
+    int lowestAnnualRate(int slot) {
+        return lowestAnnualRates[slot];
+    }
+
+    int lowestRatePurchaser(int slot) {
+        return lowestRatePurchasers[slot];
+    }
+
+    int firstListedAnnualRate(int slot) {
+        return firstListedAnnualRates[slot];
+    }
+
+    int firstListedPurchaser(int slot) {
+        return firstListedPurchasers[slot];
+    }
+
+    /**
+     * The last offer slot of the creditor whose minimum term does not exceed the financing term, or -1 if there is
+     * none. The slots of a creditor are sorted by minimum term, so it is found with a binary search.
+     */
+    int lastSlotWithMinimumTermAtMost(int creditorIndex, int financingTermInDays) {
+        int start = offerStart[creditorIndex];
+        int low = start;
+        int high = offerStart[creditorIndex + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (minimumTerms[middle] <= financingTermInDays) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low > start ? low - 1 : -1;
+    }
+}
@@ -0,0 +1,99 @@
+package lu.crx.financing.services.financing;
+
+import lombok.RequiredArgsConstructor;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingQuote;
+import lu.crx.financing.entities.FinancingQuoteRequest;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Answers "which purchaser would finance this invoice, and at what rate" for invoices that do not exist yet.
+ * <p>
+ * Quotes use the same selection and calculation as the financing run, against the in-memory
+ * {@link PurchaserSnapshotService snapshot}. Nothing is read from or written to the database apart from an expired
+ * snapshot being reloaded, and no transaction is opened. The quotes of a batch share one decision cache, and batches
+ * of {@code financing.quote.parallel-threshold} requests or more are evaluated in parallel.
+ */
+@Service
+@RequiredArgsConstructor
+public class FinancingQuoteService {
+
+    private final PurchaserSnapshotService purchaserSnapshotService;
+    private final PurchaserSelectionService purchaserSelectionService;
+    private final FinancingCalculationService calculationService;
+    private final FinancingProperties financingProperties;
+
+    public FinancingQuote quote(FinancingQuoteRequest request) {
+        return quote(List.of(request)).get(0);
+    }
+
+    /**
+     * @return one quote per request, in the order of the requests
+     */
+    public List<FinancingQuote> quote(List<FinancingQuoteRequest> requests) {
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), purchaserSnapshotService.getSnapshot());
+        FinancingQuote[] quotes = new FinancingQuote[requests.size()];
+
+        IntStream indexes = IntStream.range(0, quotes.length);
+        if (quotes.length >= financingProperties.getQuote().getParallelThreshold()) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> quotes[i] = quote(requests.get(i), context));
+
+        return Arrays.asList(quotes);
+    }
+
+    private FinancingQuote quote(FinancingQuoteRequest request, FinancingRunContext context) {
+        Optional<Creditor> creditor = context.getOfferBook().findCreditor(request.getCreditorId());
+        if (creditor.isEmpty()) {
+            return rejected(request, FinancingRejectionReason.NO_SETTINGS);
+        }
+
+        Invoice invoice = Invoice.builder()
+                .creditor(creditor.get())
+                .valueInCents(request.getValueInCents())
+                .maturityDate(request.getMaturityDate())
+                .build();
+
+        Optional<PurchaserFinancingResult> bestPurchaserMatch =
+                purchaserSelectionService.findBestPurchaserForInvoice(invoice, context);
+        if (bestPurchaserMatch.isEmpty()) {
+            return rejected(request, purchaserSelectionService.findRejectionReason(invoice, context));
+        }
+
+        PurchaserFinancingResult purchaserMatch = bestPurchaserMatch.get();
+        Purchaser purchaser = purchaserMatch.getPurchaser();
+        long discountAmount = calculationService.calculateDiscountAmount(
+                request.getValueInCents(), purchaserMatch.getFinancingRateInBps());
+
+        return FinancingQuote.builder()
+                .request(request)
+                .financed(true)
+                .purchaserId(purchaser.getId())
+                .purchaserName(purchaser.getName())
+                .financingTermInDays(purchaserMatch.getFinancingTermInDays())
+                .financingRateInBps(purchaserMatch.getFinancingRateInBps())
+                .earlyPaymentAmountInCents(request.getValueInCents() - discountAmount)
+                .discountAmountInCents(discountAmount)
+                .build();
+    }
+
+    private static FinancingQuote rejected(FinancingQuoteRequest request, FinancingRejectionReason reason) {
+        return FinancingQuote.builder()
+                .request(request)
+                .financed(false)
+                .rejectionReason(reason)
+                .build();
+    }
+}
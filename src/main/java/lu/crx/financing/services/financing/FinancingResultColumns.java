@@ -0,0 +1,91 @@
+package lu.crx.financing.services.financing;
+
+/**
+ * The kernel outputs for a batch of {@link InvoiceColumns}, one array per attribute. The amounts of an invoice
+ * without a winning purchaser are left at zero.
+ */
+public final class FinancingResultColumns {
+
+    /**
+     * Marks an invoice that no purchaser can finance.
+     */
+    public static final int NO_PURCHASER = -1;
+
+    private final int[] purchaserIndexes;
+    private final int[] financingTermsInDays;
+    private final int[] financingRatesInBps;
+    private final long[] discountAmountsInCents;
+    private final long[] earlyPaymentAmountsInCents;
+    private int size;
+    private int financedCount;
+
+    public FinancingResultColumns(int capacity) {
+        this.purchaserIndexes = new int[capacity];
+        this.financingTermsInDays = new int[capacity];
+        this.financingRatesInBps = new int[capacity];
+        this.discountAmountsInCents = new long[capacity];
+        this.earlyPaymentAmountsInCents = new long[capacity];
+    }
+
+    void reset(int size) {
+        if (size > purchaserIndexes.length) {
+            throw new IllegalArgumentException(
+                    "Result columns too small: capacity=" + purchaserIndexes.length + ", size=" + size);
+        }
+        this.size = size;
+        this.financedCount = 0;
+    }
+
+    void setNotFinanced(int index, int financingTermInDays) {
+        purchaserIndexes[index] = NO_PURCHASER;
+        financingTermsInDays[index] = financingTermInDays;
+        financingRatesInBps[index] = 0;
+        discountAmountsInCents[index] = 0;
+        earlyPaymentAmountsInCents[index] = 0;
+    }
+
+    void setFinanced(int index, int purchaserIndex, int financingTermInDays, int financingRateInBps,
+                     long discountAmountInCents, long earlyPaymentAmountInCents) {
+        purchaserIndexes[index] = purchaserIndex;
+        financingTermsInDays[index] = financingTermInDays;
+        financingRatesInBps[index] = financingRateInBps;
+        discountAmountsInCents[index] = discountAmountInCents;
+        earlyPaymentAmountsInCents[index] = earlyPaymentAmountInCents;
+        financedCount++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getFinancedCount() {
+        return financedCount;
+    }
+
+    public boolean isFinanced(int index) {
+        return purchaserIndexes[index] != NO_PURCHASER;
+    }
+
+    /**
+     * The index of the winning purchaser in the {@link FinancingOfferTable}, or {@link #NO_PURCHASER}.
+     */
+    public int purchaserIndex(int index) {
+        return purchaserIndexes[index];
+    }
+
+    public int financingTermInDays(int index) {
+        return financingTermsInDays[index];
+    }
+
+    public int financingRateInBps(int index) {
+        return financingRatesInBps[index];
+    }
+
+    public long discountAmountInCents(int index) {
+        return discountAmountsInCents[index];
+    }
+
+    public long earlyPaymentAmountInCents(int index) {
+        return earlyPaymentAmountsInCents[index];
+    }
+}
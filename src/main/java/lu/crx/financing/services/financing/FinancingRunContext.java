@@ -0,0 +1,110 @@
+package lu.crx.financing.services.financing;
+
+import lombok.Getter;
+import lu.crx.financing.entities.Creditor;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * State shared by all invoices of a single financing run: the financing date, the purchaser offers, as an offer book
+ * and as the {@link FinancingOfferTable} of the kernel, and the version of the {@link PurchaserSnapshot} they come
+ * from, the persisted run, the decisions already taken for a (creditor, term) pair and the running totals.
+ * Safe to share between the partitions of a parallel run.
+ * <p>
+ * The totals count every attempt of this process, including chunks that were rolled back and retried; the committed
+ * totals of the run are kept by its {@link lu.crx.financing.entities.FinancingRun record}.
+ */
+@Getter
+public class FinancingRunContext {
+
+    private final LocalDate financingDate;
+    private final PurchaserOfferBook offerBook;
+    private final long snapshotVersion;
+
+    /**
+     * Id of the persisted {@link lu.crx.financing.entities.FinancingRun}, 0 when the work is not part of one.
+     */
+    private final long runId;
+    private final FinancingDecisionCache decisionCache;
+
+    /**
+     * The creditors of the invoices read so far, so that every creditor is loaded once per run.
+     */
+    private final Map<Long, Creditor> creditorsById = new ConcurrentHashMap<>();
+    private final LongAdder processedInvoiceCount = new LongAdder();
+    private final LongAdder financedInvoiceCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+
+    /**
+     * The offer book as read by the {@link FinancingKernel}, built on first use.
+     */
+    private volatile FinancingOfferTable offerTable;
+
+    public FinancingRunContext(LocalDate financingDate, PurchaserSnapshot snapshot) {
+        this(financingDate, snapshot, 0);
+    }
+
+    public FinancingRunContext(LocalDate financingDate, PurchaserSnapshot snapshot, long runId) {
+        this(financingDate, snapshot.getOfferBook(), snapshot.getVersion(), runId);
+    }
+
+    /**
+     * A run over an offer book built outside of a {@link PurchaserSnapshot}, with snapshot version 0.
+     */
+    public FinancingRunContext(LocalDate financingDate, PurchaserOfferBook offerBook) {
+        this(financingDate, offerBook, 0, 0);
+    }
+
+    private FinancingRunContext(LocalDate financingDate, PurchaserOfferBook offerBook, long snapshotVersion,
+                                long runId) {
+        this.financingDate = financingDate;
+        this.offerBook = offerBook;
+        this.snapshotVersion = snapshotVersion;
+        this.runId = runId;
+        this.decisionCache = new FinancingDecisionCache();
+    }
+
+    public FinancingOfferTable getOfferTable() {
+        FinancingOfferTable table = offerTable;
+        if (table == null) {
+            synchronized (this) {
+                table = offerTable;
+                if (table == null) {
+                    table = FinancingOfferTable.build(offerBook);
+                    offerTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    public void recordBatch(int processedCount, int financedCount) {
+        processedInvoiceCount.add(processedCount);
+        financedInvoiceCount.add(financedCount);
+    }
+
+    public void recordFlush(long durationNanos) {
+        flushCount.increment();
+        flushNanos.add(durationNanos);
+    }
+
+    public long getProcessedInvoiceCount() {
+        return processedInvoiceCount.sum();
+    }
+
+    public long getFinancedInvoiceCount() {
+        return financedInvoiceCount.sum();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    public long getFlushTimeMillis() {
+        return flushNanos.sum() / 1_000_000;
+    }
+}
@@ -0,0 +1,164 @@
+package lu.crx.financing.services.financing;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import lu.crx.financing.entities.QuarantinedInvoice;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.QuarantinedInvoiceRepository;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * Keeps the persisted record of the financing runs: the run status, its owner's heartbeat, and the checkpoint that
+ * the chunks of a run advance in their own transactions.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FinancingRunService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final FinancingRunRepository financingRunRepository;
+    private final QuarantinedInvoiceRepository quarantinedInvoiceRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final FinancingProperties financingProperties;
+
+    /**
+     * This process, as the owner of the runs it starts or takes over.
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+
+    /**
+     * Resumes the latest run of the financing date when its owner is gone: the run failed, or it is still marked
+     * as running but its heartbeat is older than {@code financing.run.stale-after}, i.e. its process died. Starts a
+     * new run when the latest run of the date completed or there is none yet: the latest run of an earlier financing
+     * date is not resumed, its checkpoint would skip invoices that are still pending.
+     *
+     * @return the run to continue, or empty while a live owner still holds the run of the date, which would
+     * otherwise be financed twice
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Optional<FinancingRun> startOrResume(long snapshotVersion, LocalDate financingDate) {
+        while (true) {
+            Optional<FinancingRun> latestRun =
+                    financingRunRepository.findFirstByFinancingDateOrderByIdDesc(financingDate);
+            if (latestRun.isEmpty() || latestRun.get().getStatus() == FinancingRunStatus.COMPLETED) {
+                return Optional.of(newRun(snapshotVersion, financingDate));
+            }
+
+            FinancingRun run = latestRun.get();
+            Instant now = Instant.now();
+            if (!isResumable(run, now)) {
+                log.warn("Financing run {} of {} is still running, last heartbeat at {}, not starting another run",
+                        run.getId(), run.getOwner(), run.getHeartbeatAt());
+                return Optional.empty();
+            }
+
+            // Losing the take-over to another process changed the run, which is read again to decide once more
+            if (financingRunRepository.takeOver(run.getId(), run.getStatus(), run.getHeartbeatAt(),
+                    FinancingRunStatus.RUNNING, owner, snapshotVersion, now) == 1) {
+                log.info("Resuming {} financing run {} of {} after invoice {}, {} invoices already processed",
+                        run.getStatus(), run.getId(), run.getOwner(), run.getLastInvoiceId(), run.getProcessedCount());
+                return financingRunRepository.findById(run.getId());
+            }
+            log.info("Financing run {} was taken over by another process meanwhile", run.getId());
+        }
+    }
+
+    /**
+     * Starts a new run whatever the state of the latest one. The instances sharing the invoices through leases each
+     * keep a run of their own, and resume the work of each other through the leases instead.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public FinancingRun start(long snapshotVersion, LocalDate financingDate) {
+        return newRun(snapshotVersion, financingDate);
+    }
+
+    /**
+     * Adds a chunk to the checkpoint of the run, in the transaction of the chunk.
+     *
+     * @param advanceCheckpoint whether the last invoice id of the chunk becomes the run's resume point
+     */
+    @Transactional
+    public void recordChunk(long runId, FinancingChunkResult chunk, boolean advanceCheckpoint) {
+        financingRunRepository.recordChunk(runId, advanceCheckpoint ? chunk.getLastInvoiceId() : null,
+                chunk.getInvoiceCount(), chunk.getFinancedCount(), chunk.getQuarantinedCount(), Instant.now());
+    }
+
+    /**
+     * Sets an invoice aside with the error its financing failed with, and counts it in the checkpoint of the run.
+     * An invoice that is no longer pending, e.g. financed by an instant financing meanwhile, is only counted as
+     * processed: a quarantine record would keep it from being archived.
+     *
+     * @return whether the invoice was quarantined
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public boolean quarantine(long runId, long invoiceId, boolean advanceCheckpoint, Exception error) {
+        if (invoiceRepository.markQuarantined(invoiceId) == 0) {
+            log.info("Invoice {} is no longer pending, it is not quarantined", invoiceId);
+            recordChunk(runId, new FinancingChunkResult(1, 0, 0, invoiceId), advanceCheckpoint);
+            return false;
+        }
+
+        quarantinedInvoiceRepository.save(QuarantinedInvoice.builder()
+                .invoice(invoiceRepository.getReferenceById(invoiceId))
+                .financingRun(financingRunRepository.getReferenceById(runId))
+                .quarantinedAt(Instant.now())
+                .error(describe(error))
+                .build());
+        recordChunk(runId, new FinancingChunkResult(1, 0, 1, invoiceId), advanceCheckpoint);
+        return true;
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public FinancingRun complete(long runId) {
+        FinancingRun run = financingRunRepository.findById(runId).orElseThrow();
+        run.setStatus(FinancingRunStatus.COMPLETED);
+        run.setFinishedAt(Instant.now());
+        return run;
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void fail(long runId, Exception error) {
+        FinancingRun run = financingRunRepository.findById(runId).orElseThrow();
+        run.setStatus(FinancingRunStatus.FAILED);
+        run.setFinishedAt(Instant.now());
+        run.setError(describe(error));
+    }
+
+    private boolean isResumable(FinancingRun run, Instant now) {
+        return switch (run.getStatus()) {
+            case FAILED -> true;
+            case RUNNING -> run.getHeartbeatAt().plus(financingProperties.getRun().getStaleAfter()).isBefore(now);
+            case COMPLETED -> false;
+        };
+    }
+
+    private FinancingRun newRun(long snapshotVersion, LocalDate financingDate) {
+        Instant now = Instant.now();
+        return financingRunRepository.save(FinancingRun.builder()
+                .status(FinancingRunStatus.RUNNING)
+                .snapshotVersion(snapshotVersion)
+                .financingDate(financingDate)
+                .owner(owner)
+                .startedAt(now)
+                .heartbeatAt(now)
+                .build());
+    }
+
+    private static String describe(Exception error) {
+        String description = String.valueOf(error);
+        return description.length() > MAX_ERROR_LENGTH ? description.substring(0, MAX_ERROR_LENGTH) : description;
+    }
+}
@@ -0,0 +1,71 @@
+package lu.crx.financing.services.financing;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
+import lu.crx.financing.services.batch.InvoiceBatchProcessor;
+import lu.crx.financing.services.batch.PendingInvoiceReader;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finances a single invoice, or a handful of them, right after they were created, instead of waiting for the next
+ * {@link InvoiceFinancingService#processInvoiceFinancing() full run}. The purchasers come from the in-memory
+ * {@link PurchaserSnapshotService snapshot}, so a call costs one read of the invoices and the financing writes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InstantFinancingService {
+
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final PurchaserSnapshotService purchaserSnapshotService;
+    private final InvoiceBatchProcessor invoiceBatchProcessor;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
+
+    /**
+     * @return whether the invoice was financed; {@code false} as well when it does not exist or is already financed
+     */
+    @Transactional
+    public boolean financeInvoice(long invoiceId) {
+        return financeInvoices(List.of(invoiceId)) == 1;
+    }
+
+    /**
+     * Finances the pending invoices among the given ids. Meant for small lists: at most
+     * {@code financing.read.page-size} ids per call, the backlog goes through the full run.
+     *
+     * @return the number of invoices financed
+     */
+    @Transactional
+    public int financeInvoices(Collection<Long> invoiceIds) {
+        if (invoiceIds.isEmpty()) {
+            return 0;
+        }
+        int maxInvoiceCount = financingProperties.getRead().getPageSize();
+        if (invoiceIds.size() > maxInvoiceCount) {
+            throw new IllegalArgumentException("Cannot finance more than " + maxInvoiceCount
+                    + " invoices at once, got " + invoiceIds.size());
+        }
+
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), purchaserSnapshotService.getSnapshot());
+
+        long fetchStart = System.nanoTime();
+        List<Invoice> pendingInvoices = pendingInvoiceReader.readByIds(invoiceIds, context);
+        financingMetrics.recordStage(FinancingStage.FETCH_PENDING, fetchStart);
+        if (pendingInvoices.isEmpty()) {
+            log.debug("None of the invoices {} is pending", invoiceIds);
+            return 0;
+        }
+
+        return invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, context);
+    }
+}
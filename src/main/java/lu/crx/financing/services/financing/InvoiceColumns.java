@@ -0,0 +1,65 @@
+package lu.crx.financing.services.financing;
+
+/**
+ * The kernel inputs of a batch of invoices, one array per attribute. Invoice {@code i} of the batch is described
+ * by the {@code i}-th element of every array.
+ */
+public final class InvoiceColumns {
+
+    private final long[] invoiceIds;
+    private final long[] valuesInCents;
+    private final int[] maturityEpochDays;
+    private final int[] creditorIndexes;
+    private int size;
+
+    public InvoiceColumns(int capacity) {
+        this.invoiceIds = new long[capacity];
+        this.valuesInCents = new long[capacity];
+        this.maturityEpochDays = new int[capacity];
+        this.creditorIndexes = new int[capacity];
+    }
+
+    /**
+     * Appends an invoice.
+     *
+     * @param creditorIndex the index of the creditor in the {@link FinancingOfferTable}, or -1 if it has none
+     */
+    public void add(long invoiceId, long valueInCents, int maturityEpochDay, int creditorIndex) {
+        if (size == invoiceIds.length) {
+            throw new IllegalStateException("Invoice columns are full: capacity=" + invoiceIds.length);
+        }
+        invoiceIds[size] = invoiceId;
+        valuesInCents[size] = valueInCents;
+        maturityEpochDays[size] = maturityEpochDay;
+        creditorIndexes[size] = creditorIndex;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return invoiceIds.length;
+    }
+
+    public long invoiceId(int index) {
+        return invoiceIds[index];
+    }
+
+    public long valueInCents(int index) {
+        return valuesInCents[index];
+    }
+
+    public int maturityEpochDay(int index) {
+        return maturityEpochDays[index];
+    }
+
+    public int creditorIndex(int index) {
+        return creditorIndexes[index];
+    }
+}
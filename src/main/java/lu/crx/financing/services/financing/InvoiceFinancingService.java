@@ -1,50 +1,129 @@
 package lu.crx.financing.services.financing;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import lu.crx.financing.entities.Invoice;
-import lu.crx.financing.entities.Purchaser;
-import lu.crx.financing.repositories.InvoiceRepository;
-import lu.crx.financing.repositories.PurchaserRepository;
-import lu.crx.financing.services.batch.InvoiceBatchProcessor;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.services.archive.InvoiceArchiveService;
+import lu.crx.financing.services.batch.FinancingChunkProcessor;
+import lu.crx.financing.services.batch.FinancingPipeline;
+import lu.crx.financing.services.batch.JournaledFinancingWorker;
+import lu.crx.financing.services.batch.KernelFinancingWorker;
+import lu.crx.financing.services.batch.LeasedFinancingWorker;
+import lu.crx.financing.services.batch.ParallelFinancingEngine;
+import lu.crx.financing.services.batch.PendingInvoiceReader;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.util.Optional;
 
+/**
+ * Finances the pending invoices. A run is not one transaction: it is committed chunk by chunk together with its
+ * checkpoint (see {@link FinancingRunService}), and a run that failed or was interrupted is resumed by the next one.
+ * With {@code financing.lease.enabled}, several instances can run at the same time and share the invoices through
+ * leases instead, see {@link LeasedFinancingWorker}. With {@code financing.journal.enabled}, the decisions are
+ * committed in batches behind a write-ahead journal, see {@link JournaledFinancingWorker}. With
+ * {@code financing.kernel.enabled}, the pages are financed by the {@link FinancingKernel}, see
+ * {@link KernelFinancingWorker}.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class InvoiceFinancingService {
 
-    private final InvoiceRepository invoiceRepository;
-    private final PurchaserRepository purchaserRepository;
-    private final InvoiceBatchProcessor invoiceBatchProcessor;
+    private final PendingInvoiceReader pendingInvoiceReader;
+    private final PurchaserSnapshotService purchaserSnapshotService;
+    private final FinancingRunService financingRunService;
+    private final FinancingChunkProcessor chunkProcessor;
+    private final ParallelFinancingEngine parallelFinancingEngine;
+    private final FinancingPipeline financingPipeline;
+    private final LeasedFinancingWorker leasedFinancingWorker;
+    private final JournaledFinancingWorker journaledFinancingWorker;
+    private final KernelFinancingWorker kernelFinancingWorker;
+    private final ReferenceDataCache referenceDataCache;
+    private final InvoiceArchiveService invoiceArchiveService;
+    private final FinancingProperties financingProperties;
 
-    @Transactional
     public void processInvoiceFinancing() {
-        log.info("Financing started");
+        PurchaserSnapshot snapshot = purchaserSnapshotService.getCurrentSnapshot();
+        PurchaserOfferBook offerBook = snapshot.getOfferBook();
+        log.info("Financing started with purchaser snapshot version {}: {} purchasers with {} offers for {} creditors",
+                snapshot.getVersion(), offerBook.getPurchaserCount(), offerBook.getOfferCount(),
+                offerBook.getCreditorCount());
 
-        List<Invoice> pendingInvoices = fetchPendingInvoices();
-        List<Purchaser> availablePurchasers = fetchAvailablePurchasersWithSettings();
         LocalDate financingDate = LocalDate.now();
+        boolean leased = financingProperties.getLease().isEnabled();
+        Optional<FinancingRun> startedRun = leased
+                ? Optional.of(financingRunService.start(snapshot.getVersion(), financingDate))
+                : financingRunService.startOrResume(snapshot.getVersion(), financingDate);
+        if (startedRun.isEmpty()) {
+            return;
+        }
+        FinancingRun run = startedRun.get();
+        FinancingRunContext context = new FinancingRunContext(financingDate, snapshot, run.getId());
 
-        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, availablePurchasers, financingDate);
+        try {
+            if (leased) {
+                leasedFinancingWorker.processPendingInvoices(context);
+            } else if (financingProperties.getParallel().isEnabled()) {
+                parallelFinancingEngine.processPendingInvoices(context);
+            } else if (financingProperties.getJournal().isEnabled()) {
+                journaledFinancingWorker.processPendingInvoices(run.getLastInvoiceId(), context);
+            } else if (isKernelEnabled()) {
+                kernelFinancingWorker.processPendingInvoices(run.getLastInvoiceId(), context);
+            } else if (financingProperties.getPipeline().isEnabled()) {
+                financingPipeline.processPendingInvoices(run.getLastInvoiceId(), context);
+            } else {
+                processPendingInvoicesSequentially(run.getLastInvoiceId(), context);
+            }
+        } catch (RuntimeException e) {
+            log.error("Financing run {} failed, it resumes from its checkpoint on the next run", run.getId(), e);
+            financingRunService.fail(run.getId(), e);
+            throw e;
+        }
 
-        log.info("Financing completed. Financed {} invoices out of {}",
-                financedInvoiceCount, pendingInvoices.size());
+        run = financingRunService.complete(run.getId());
+        log.info("Financing run {} completed. Financed {} invoices out of {}, quarantined {}, " +
+                        "with purchaser snapshot version {}", run.getId(), run.getFinancedCount(),
+                run.getProcessedCount(), run.getQuarantinedCount(), context.getSnapshotVersion());
+        logDecisionCacheStatistics(context.getDecisionCache());
+        referenceDataCache.publishStatistics();
+        log.info("Flushed the persistence context {} times in {} ms",
+                context.getFlushCount(), context.getFlushTimeMillis());
+
+        if (financingProperties.getArchive().isEnabled()) {
+            invoiceArchiveService.archiveFinancedInvoices();
+        }
+    }
+
+    /**
+     * Reads the pending invoices in id order, one chunk per page, starting after the checkpoint of the run.
+     */
+    private void processPendingInvoicesSequentially(long checkpointInvoiceId, FinancingRunContext context) {
+        int pageSize = financingProperties.getRead().getPageSize();
+        long lastInvoiceId = checkpointInvoiceId;
+        FinancingChunkResult chunk;
+
+        do {
+            long afterInvoiceId = lastInvoiceId;
+            chunk = chunkProcessor.processChunk(
+                    () -> pendingInvoiceReader.readAfter(afterInvoiceId, pageSize, context), true, context);
+            lastInvoiceId = chunk.getLastInvoiceId();
+        } while (chunk.getInvoiceCount() == pageSize);
     }
 
-    private List<Invoice> fetchPendingInvoices() {
-        List<Invoice> invoices = invoiceRepository.findNonFinancedInvoices();
-        log.info("Found {} non-financed invoices", invoices.size());
-        return invoices;
+    /**
+     * The kernel reads the invoices as projections, so the {@code ENTITY} write mode ignores it.
+     */
+    private boolean isKernelEnabled() {
+        return financingProperties.getKernel().isEnabled()
+                && financingProperties.getWrite().getMode() != FinancingWriteMode.ENTITY;
     }
 
-    private List<Purchaser> fetchAvailablePurchasersWithSettings() {
-        List<Purchaser> purchasers = purchaserRepository.findAllWithFinancingSettings();
-        log.info("Found {} purchasers", purchasers.size());
-        return purchasers;
+    private void logDecisionCacheStatistics(FinancingDecisionCache decisionCache) {
+        log.info("Decision cache: {} hits, {} misses, {} distinct (creditor, term) decisions",
+                decisionCache.getHitCount(), decisionCache.getMissCount(), decisionCache.size());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,219 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.entities.PurchaserOffer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable, creditor-indexed view of the purchasers' financing settings, built once per financing run.
+ * <p>
+ * The offers of every creditor are sorted by the purchasers' minimum financing term, and the lowest-rate offer
+ * of every prefix is precomputed. The lowest-rate offer available for a given financing term is then the
+ * precomputed best offer of the longest prefix whose minimum term does not exceed the financing term, which is
+ * found with a binary search.
+ * <p>
+ * The financing rate grows with the annual rate for a fixed term, so the selected offer is also the one with the
+ * lowest financing rate. Ties are resolved in favour of the purchaser that comes first in the list the book was
+ * built from, like the stream-based selection in {@link PurchaserSelectionService}.
+ */
+public final class PurchaserOfferBook {
+
+    private final Map<Long, CreditorOffers> offersByCreditorId;
+    private final int purchaserCount;
+    private final int offerCount;
+
+    private PurchaserOfferBook(Map<Long, CreditorOffers> offersByCreditorId, int purchaserCount, int offerCount) {
+        this.offersByCreditorId = offersByCreditorId;
+        this.purchaserCount = purchaserCount;
+        this.offerCount = offerCount;
+    }
+
+    public static PurchaserOfferBook build(List<Purchaser> purchasers) {
+        Map<Long, List<RankedOffer>> offersByCreditorId = new HashMap<>();
+        Map<Long, Creditor> creditorsById = new HashMap<>();
+        int offerCount = 0;
+
+        for (int position = 0; position < purchasers.size(); position++) {
+            Purchaser purchaser = purchasers.get(position);
+            Set<Long> seenCreditorIds = new HashSet<>();
+
+            for (PurchaserFinancingSettings settings : purchaser.getPurchaserFinancingSettings()) {
+                long creditorId = settings.getCreditor().getId();
+                if (!seenCreditorIds.add(creditorId)) {
+                    continue;
+                }
+
+                creditorsById.putIfAbsent(creditorId, settings.getCreditor());
+                PurchaserOffer offer = new PurchaserOffer(purchaser, creditorId,
+                        settings.getAnnualRateInBps(), purchaser.getMinimumFinancingTermInDays());
+                offersByCreditorId.computeIfAbsent(creditorId, id -> new ArrayList<>())
+                        .add(new RankedOffer(offer, position));
+                offerCount++;
+            }
+        }
+
+        Map<Long, CreditorOffers> index = new HashMap<>(offersByCreditorId.size() * 2);
+        offersByCreditorId.forEach((creditorId, offers) -> index.put(creditorId,
+                CreditorOffers.of(creditorsById.get(creditorId), offers)));
+
+        return new PurchaserOfferBook(index, purchasers.size(), offerCount);
+    }
+
+    /**
+     * Finds the offer with the lowest financing rate among the offers for the creditor whose minimum financing term
+     * does not exceed the given term.
+     */
+    public Optional<PurchaserOffer> findLowestRateOffer(long creditorId, int financingTermInDays) {
+        CreditorOffers offers = offersByCreditorId.get(creditorId);
+        if (offers == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(offers.findLowestRateOffer(financingTermInDays));
+    }
+
+    /**
+     * The sorted offers of the creditor, or null if no purchaser has settings for it.
+     */
+    CreditorOffers offersOf(long creditorId) {
+        return offersByCreditorId.get(creditorId);
+    }
+
+    /**
+     * The creditor as it was loaded with the purchasers' settings, if any purchaser has settings for it.
+     */
+    public Optional<Creditor> findCreditor(long creditorId) {
+        CreditorOffers offers = offersByCreditorId.get(creditorId);
+        return offers == null ? Optional.empty() : Optional.of(offers.creditor);
+    }
+
+    /**
+     * The creditors some purchaser has settings for, as they were loaded with the purchasers' settings.
+     */
+    public List<Creditor> getCreditors() {
+        List<Creditor> creditors = new ArrayList<>(offersByCreditorId.size());
+        for (CreditorOffers offers : offersByCreditorId.values()) {
+            creditors.add(offers.creditor);
+        }
+        return creditors;
+    }
+
+    public boolean hasOffersForCreditor(long creditorId) {
+        return offersByCreditorId.containsKey(creditorId);
+    }
+
+    public int getPurchaserCount() {
+        return purchaserCount;
+    }
+
+    public int getCreditorCount() {
+        return offersByCreditorId.size();
+    }
+
+    public int getOfferCount() {
+        return offerCount;
+    }
+
+    private record RankedOffer(PurchaserOffer offer, int position) {
+
+        /**
+         * Annual rates at or below zero all yield a zero financing rate, so they rank equally.
+         */
+        int effectiveAnnualRate() {
+            return Math.max(offer.getAnnualRateInBps(), 0);
+        }
+    }
+
+    static final class CreditorOffers {
+
+        private static final Comparator<RankedOffer> BY_RATE_THEN_POSITION =
+                Comparator.comparingInt(RankedOffer::effectiveAnnualRate).thenComparingInt(RankedOffer::position);
+
+        private final Creditor creditor;
+        private final int[] minimumTerms;
+        private final PurchaserOffer[] lowestRateOfPrefix;
+        private final PurchaserOffer[] firstListedOfPrefix;
+
+        private CreditorOffers(Creditor creditor, int[] minimumTerms, PurchaserOffer[] lowestRateOfPrefix,
+                               PurchaserOffer[] firstListedOfPrefix) {
+            this.creditor = creditor;
+            this.minimumTerms = minimumTerms;
+            this.lowestRateOfPrefix = lowestRateOfPrefix;
+            this.firstListedOfPrefix = firstListedOfPrefix;
+        }
+
+        static CreditorOffers of(Creditor creditor, List<RankedOffer> offers) {
+            offers.sort(Comparator.comparingInt(ranked -> ranked.offer().getMinimumFinancingTermInDays()));
+
+            int size = offers.size();
+            int[] minimumTerms = new int[size];
+            PurchaserOffer[] lowestRateOfPrefix = new PurchaserOffer[size];
+            PurchaserOffer[] firstListedOfPrefix = new PurchaserOffer[size];
+
+            RankedOffer lowestRate = null;
+            RankedOffer firstListed = null;
+            for (int i = 0; i < size; i++) {
+                RankedOffer current = offers.get(i);
+                if (lowestRate == null || BY_RATE_THEN_POSITION.compare(current, lowestRate) < 0) {
+                    lowestRate = current;
+                }
+                if (firstListed == null || current.position() < firstListed.position()) {
+                    firstListed = current;
+                }
+                minimumTerms[i] = current.offer().getMinimumFinancingTermInDays();
+                lowestRateOfPrefix[i] = lowestRate.offer();
+                firstListedOfPrefix[i] = firstListed.offer();
+            }
+
+            return new CreditorOffers(creditor, minimumTerms, lowestRateOfPrefix, firstListedOfPrefix);
+        }
+
+        int size() {
+            return minimumTerms.length;
+        }
+
+        int minimumTermAt(int index) {
+            return minimumTerms[index];
+        }
+
+        PurchaserOffer lowestRateOfPrefix(int index) {
+            return lowestRateOfPrefix[index];
+        }
+
+        PurchaserOffer firstListedOfPrefix(int index) {
+            return firstListedOfPrefix[index];
+        }
+
+        PurchaserOffer findLowestRateOffer(int financingTermInDays) {
+            int lastEligible = lastIndexWithMinimumTermAtMost(financingTermInDays);
+            if (lastEligible < 0) {
+                return null;
+            }
+            // A non-positive term yields a zero financing rate for every purchaser, so the first listed one wins
+            return financingTermInDays > 0 ? lowestRateOfPrefix[lastEligible] : firstListedOfPrefix[lastEligible];
+        }
+
+        private int lastIndexWithMinimumTermAtMost(int financingTermInDays) {
+            int low = 0;
+            int high = minimumTerms.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (minimumTerms[middle] <= financingTermInDays) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+        }
+    }
+}
@@ -5,15 +5,15 @@ import lombok.extern.slf4j.Slf4j;
 import lu.crx.financing.entities.Invoice;
 import lu.crx.financing.entities.Purchaser;
 import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingRejectionReason;
 import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.entities.PurchaserOffer;
 import lu.crx.financing.services.eligibility.PurchaserEligibilityService;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -23,26 +23,133 @@ public class PurchaserSelectionService {
     private final FinancingCalculationService calculationService;
     private final PurchaserEligibilityService eligibilityService;
 
+    /**
+     * Evaluates every purchaser as a candidate for the invoice. The loop allocates nothing per candidate: only the
+     * winner gets a {@link PurchaserFinancingResult}. Among the purchasers with the lowest financing rate in bps,
+     * the one with the lowest {@code annualRateInBps * financingTermInDays} (the exact rate scaled by the days of
+     * the financial year) wins, and the first listed one on a complete tie.
+     */
     public Optional<PurchaserFinancingResult> findBestPurchaserForInvoice(
             Invoice invoice, List<Purchaser> purchasers, LocalDate financingDate) {
 
         Creditor creditor = invoice.getCreditor();
+        long creditorId = creditor.getId();
+        int maxFinancingRateInBps = creditor.getMaxFinancingRateInBps();
         int financingTermInDays = calculationService.calculateFinancingTerm(financingDate, invoice.getMaturityDate());
 
-        return purchasers.stream()
-                .filter(purchaser -> eligibilityService.isPurchaserEligible(
-                        purchaser, creditor, financingTermInDays, creditor.getMaxFinancingRateInBps()))
-                .map(purchaser -> eligibilityService.createFinancingResult(
-                        purchaser, creditor, financingTermInDays, financingDate))
-                .collect(Collectors.collectingAndThen(
-                        Collectors.toList(),
-                        this::selectPurchaserWithLowestRate
-                ));
+        Purchaser bestPurchaser = null;
+        int bestRateInBps = 0;
+        long bestScaledExactRate = 0;
+        int bestAnnualRateInBps = 0;
+
+        for (int i = 0, size = purchasers.size(); i < size; i++) {
+            Purchaser purchaser = purchasers.get(i);
+            int annualRateInBps = eligibilityService.findAnnualRateInBps(purchaser, creditorId);
+            if (annualRateInBps == PurchaserEligibilityService.NO_SETTINGS
+                    || !eligibilityService.meetsMinimumFinancingTerm(purchaser, financingTermInDays)) {
+                continue;
+            }
+
+            int rateInBps = calculationService.calculateFinancingRate(annualRateInBps, financingTermInDays);
+            if (eligibilityService.exceedsMaxRate(rateInBps, maxFinancingRateInBps)) {
+                continue;
+            }
+
+            // calculateExactFinancingRate is zero for a non-positive rate or term, and annualRate * term / 360 otherwise
+            long scaledExactRate = annualRateInBps > 0 && financingTermInDays > 0
+                    ? (long) annualRateInBps * financingTermInDays
+                    : 0;
+            if (bestPurchaser == null || rateInBps < bestRateInBps
+                    || (rateInBps == bestRateInBps && scaledExactRate < bestScaledExactRate)) {
+                bestPurchaser = purchaser;
+                bestRateInBps = rateInBps;
+                bestScaledExactRate = scaledExactRate;
+                bestAnnualRateInBps = annualRateInBps;
+            }
+        }
+
+        if (bestPurchaser == null) {
+            return Optional.empty();
+        }
+        double exactRate = calculationService.calculateExactFinancingRate(bestAnnualRateInBps, financingTermInDays);
+        return Optional.of(new PurchaserFinancingResult(
+                bestPurchaser, bestRateInBps, financingTermInDays, financingDate, exactRate));
+    }
+
+    /**
+     * Finds the best purchaser for the invoice within a financing run. The selection is computed once per
+     * (creditor, financing term) pair and reused from the run's {@link FinancingDecisionCache} afterwards, so
+     * an invoice whose decision was already taken allocates nothing.
+     */
+    public Optional<PurchaserFinancingResult> findBestPurchaserForInvoice(Invoice invoice, FinancingRunContext context) {
+        Creditor creditor = invoice.getCreditor();
+        long creditorId = creditor.getId();
+        LocalDate financingDate = context.getFinancingDate();
+        int financingTermInDays = calculationService.calculateFinancingTerm(financingDate, invoice.getMaturityDate());
+
+        FinancingDecisionCache decisionCache = context.getDecisionCache();
+        Optional<PurchaserFinancingResult> decision = decisionCache.get(creditorId, financingTermInDays);
+        if (decision == null) {
+            decision = decisionCache.putIfAbsent(creditorId, financingTermInDays,
+                    findBestPurchaser(creditor, financingTermInDays, context.getOfferBook(), financingDate));
+        }
+        return decision;
+    }
+
+    /**
+     * Explains why {@link #findBestPurchaserForInvoice(Invoice, FinancingRunContext)} found no purchaser for the
+     * invoice. Only meaningful for an invoice that was not financed.
+     */
+    public FinancingRejectionReason findRejectionReason(Invoice invoice, FinancingRunContext context) {
+        long creditorId = invoice.getCreditor().getId();
+        int financingTermInDays = calculationService.calculateFinancingTerm(
+                context.getFinancingDate(), invoice.getMaturityDate());
+
+        if (!context.getOfferBook().hasOffersForCreditor(creditorId)) {
+            return FinancingRejectionReason.NO_SETTINGS;
+        }
+        if (context.getOfferBook().findLowestRateOffer(creditorId, financingTermInDays).isEmpty()) {
+            return FinancingRejectionReason.TERM_TOO_SHORT;
+        }
+        return FinancingRejectionReason.RATE_ABOVE_MAX;
     }
 
-    private Optional<PurchaserFinancingResult> selectPurchaserWithLowestRate(List<PurchaserFinancingResult> eligiblePurchasers) {
-        return eligiblePurchasers.stream()
-                .min(Comparator.comparing(PurchaserFinancingResult::getFinancingRateInBps)
-                        .thenComparing(PurchaserFinancingResult::getExactFinancingRate));
+    /**
+     * Finds the best purchaser using the per-run {@link PurchaserOfferBook}.
+     */
+    public Optional<PurchaserFinancingResult> findBestPurchaserForInvoice(
+            Invoice invoice, PurchaserOfferBook offerBook, LocalDate financingDate) {
+
+        Creditor creditor = invoice.getCreditor();
+        int financingTermInDays = calculationService.calculateFinancingTerm(financingDate, invoice.getMaturityDate());
+
+        return findBestPurchaser(creditor, financingTermInDays, offerBook, financingDate);
+    }
+
+    /**
+     * The book yields the lowest-rate offer whose minimum term is met, so the creditor's maximum rate only has to be
+     * checked for that single offer: if it is exceeded, every other offer exceeds it as well.
+     */
+    private Optional<PurchaserFinancingResult> findBestPurchaser(
+            Creditor creditor, int financingTermInDays, PurchaserOfferBook offerBook, LocalDate financingDate) {
+
+        Optional<PurchaserOffer> lowestRateOffer = offerBook.findLowestRateOffer(creditor.getId(), financingTermInDays);
+        if (lowestRateOffer.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("No purchaser offers creditor {} a financing term of {} days",
+                        creditor.getId(), financingTermInDays);
+            }
+            return Optional.empty();
+        }
+
+        PurchaserOffer offer = lowestRateOffer.get();
+        int rateInBps = calculationService.calculateFinancingRate(offer.getAnnualRateInBps(), financingTermInDays);
+        if (eligibilityService.exceedsMaxRate(rateInBps, creditor.getMaxFinancingRateInBps())) {
+            return Optional.empty();
+        }
+
+        double exactRate = calculationService.calculateExactFinancingRate(offer.getAnnualRateInBps(), financingTermInDays);
+        return Optional.of(new PurchaserFinancingResult(
+                offer.getPurchaser(), rateInBps, financingTermInDays, financingDate, exactRate));
     }
-}
\ No newline at end of file
+}
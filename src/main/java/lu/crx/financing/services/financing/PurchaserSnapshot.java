@@ -0,0 +1,31 @@
+package lu.crx.financing.services.financing;
+
+import lombok.Getter;
+import lu.crx.financing.entities.ReferenceDataStamp;
+
+import java.time.Instant;
+
+/**
+ * One immutable version of the purchasers, their financing settings and the creditors' rate limits, as indexed by
+ * a {@link PurchaserOfferBook}. A change of the settings produces a new snapshot with a higher version instead of
+ * modifying this one, so a run or a reader holding a snapshot sees the same offers until it is done.
+ */
+@Getter
+public final class PurchaserSnapshot {
+
+    private final long version;
+    private final PurchaserOfferBook offerBook;
+
+    /**
+     * The state of the reference data the snapshot was loaded from.
+     */
+    private final ReferenceDataStamp stamp;
+    private final Instant loadedAt;
+
+    PurchaserSnapshot(long version, PurchaserOfferBook offerBook, ReferenceDataStamp stamp) {
+        this.version = version;
+        this.offerBook = offerBook;
+        this.stamp = stamp;
+        this.loadedAt = Instant.now();
+    }
+}
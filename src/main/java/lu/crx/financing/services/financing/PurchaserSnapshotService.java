@@ -0,0 +1,146 @@
+package lu.crx.financing.services.financing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserSnapshotVersion;
+import lu.crx.financing.entities.ReferenceDataStamp;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
+import lu.crx.financing.repositories.PurchaserRepository;
+import lu.crx.financing.repositories.PurchaserSnapshotVersionRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Holds the current {@link PurchaserSnapshot}, so that financing runs, single-invoice financing and quotes do not
+ * reload the whole purchaser graph.
+ * <p>
+ * Readers get the current snapshot with a volatile read and no locking. Whether it is still current is checked
+ * against the database with one query (see {@link ReferenceDataStamp}): at the start of every financing run
+ * ({@link #getCurrentSnapshot()}), and for the other readers once the last check is older than
+ * {@code financing.snapshot.time-to-live}. A new snapshot is only loaded when the reference data changed, through
+ * the application or around it, or on {@link #refresh()}.
+ * <p>
+ * The versions are numbered in the database, one per state of the reference data (see
+ * {@link PurchaserSnapshotVersion}), so the version a run records names the same offers after a restart and on
+ * every instance.
+ * <p>
+ * The purchasers in a snapshot are detached entities; they are only used as references for the financing details.
+ * The second-level cache is evicted before a new snapshot is loaded, so that the changes made around Hibernate are
+ * seen.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PurchaserSnapshotService {
+
+    private final PurchaserRepository purchaserRepository;
+    private final PurchaserSnapshotVersionRepository snapshotVersionRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
+
+    private volatile PurchaserSnapshot snapshot;
+    private volatile long checkedAtNanos;
+
+    /**
+     * @return the current snapshot, checked against the database at most once per time-to-live
+     */
+    public PurchaserSnapshot getSnapshot() {
+        PurchaserSnapshot current = snapshot;
+        if (current == null || isCheckExpired()) {
+            current = getCurrentSnapshot();
+        }
+        return current;
+    }
+
+    public PurchaserOfferBook getOfferBook() {
+        return getSnapshot().getOfferBook();
+    }
+
+    /**
+     * @return the snapshot of the reference data as it is in the database now; a new one is only loaded when the
+     * data changed since the current snapshot was loaded
+     */
+    public PurchaserSnapshot getCurrentSnapshot() {
+        ReferenceDataStamp stamp = snapshotVersionRepository.readReferenceDataStamp();
+        PurchaserSnapshot current = snapshot;
+        if (current != null && current.getStamp().equals(stamp)) {
+            checkedAtNanos = System.nanoTime();
+            return current;
+        }
+        return reload(current, stamp);
+    }
+
+    /**
+     * Loads a new snapshot now, whether the reference data changed or not.
+     */
+    public synchronized PurchaserSnapshot refresh() {
+        snapshot = load(snapshotVersionRepository.readReferenceDataStamp());
+        checkedAtNanos = System.nanoTime();
+        return snapshot;
+    }
+
+    private synchronized PurchaserSnapshot reload(PurchaserSnapshot stale, ReferenceDataStamp stamp) {
+        // Another thread may have replaced the snapshot while this one was waiting for the lock
+        if (snapshot == stale) {
+            snapshot = load(stamp);
+        }
+        checkedAtNanos = System.nanoTime();
+        return snapshot;
+    }
+
+    private PurchaserSnapshot load(ReferenceDataStamp stamp) {
+        long fetchStart = System.nanoTime();
+        referenceDataCache.evictAll();
+        List<Purchaser> purchasers = purchaserRepository.findAllWithFinancingSettings();
+        ReferenceDataStamp loadedStamp = snapshotVersionRepository.readReferenceDataStamp();
+        while (!loadedStamp.equals(stamp)) {
+            // The data changed while it was loaded: load it again, so that the version names the loaded offers
+            stamp = loadedStamp;
+            referenceDataCache.evictAll();
+            purchasers = purchaserRepository.findAllWithFinancingSettings();
+            loadedStamp = snapshotVersionRepository.readReferenceDataStamp();
+        }
+        financingMetrics.recordStage(FinancingStage.FETCH_PURCHASERS, fetchStart);
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(purchasers);
+        PurchaserSnapshot loaded = new PurchaserSnapshot(versionOf(stamp), offerBook, stamp);
+        log.info("Loaded purchaser snapshot version {} with {} purchasers and {} offers for {} creditors",
+                loaded.getVersion(), offerBook.getPurchaserCount(), offerBook.getOfferCount(),
+                offerBook.getCreditorCount());
+        return loaded;
+    }
+
+    /**
+     * @return the version of the latest state of the reference data if it is this one, otherwise the next version,
+     * recorded for this state
+     */
+    private long versionOf(ReferenceDataStamp stamp) {
+        while (true) {
+            Optional<PurchaserSnapshotVersion> latest = snapshotVersionRepository.findFirstByOrderByVersionDesc();
+            if (latest.isPresent() && latest.get().matches(stamp)) {
+                return latest.get().getVersion();
+            }
+
+            long version = latest.map(latestVersion -> latestVersion.getVersion() + 1).orElse(1L);
+            try {
+                snapshotVersionRepository.insert(version, stamp.getRowCount(), stamp.getChangeNumberSum(),
+                        Instant.now());
+                return version;
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Purchaser snapshot version {} was recorded by another instance", version);
+            }
+        }
+    }
+
+    private boolean isCheckExpired() {
+        return System.nanoTime() - checkedAtNanos >= financingProperties.getSnapshot().getTimeToLive().toNanos();
+    }
+}
@@ -0,0 +1,111 @@
+package lu.crx.financing.services.financing;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.ReferenceDataRegion;
+import lu.crx.financing.metrics.FinancingMetrics;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The second-level cache of the reference data: creditors, purchasers and their financing settings, see
+ * {@link ReferenceDataRegion}.
+ * <p>
+ * Hibernate keeps the cache up to date with the writes made through it. The writes made around it, with plain JDBC
+ * or by another application, are only seen once the entries expire, or after {@link #evictAll()}, which the
+ * {@link PurchaserSnapshotService} calls before loading a new snapshot.
+ * <p>
+ * The hit ratios come from the JCache statistics of the region caches, which they register as
+ * {@link CacheStatisticsMXBean}s, so the Hibernate statistics do not have to be generated for every session.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCache {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final CacheManager referenceDataCacheManager;
+    private final FinancingProperties financingProperties;
+    private final FinancingMetrics financingMetrics;
+
+    /**
+     * Evicts all the reference data, so that it is read again from the database.
+     */
+    public void evictAll() {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        for (ReferenceDataRegion region : ReferenceDataRegion.values()) {
+            if (region.isQueryRegion()) {
+                cache.evictQueryRegion(region.getRegionName());
+            } else {
+                cache.evictRegion(region.getRegionName());
+            }
+        }
+        log.debug("Evicted the reference data from the second-level cache");
+    }
+
+    /**
+     * @return the statistics of the regions, none when the cache is disabled
+     */
+    public List<ReferenceDataCacheStatistics> getStatistics() {
+        List<ReferenceDataCacheStatistics> regionStatistics = new ArrayList<>();
+        if (!financingProperties.getCache().isEnabled()) {
+            return regionStatistics;
+        }
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ReferenceDataRegion region : ReferenceDataRegion.values()) {
+            ObjectName statisticsName = statisticsName(region);
+            if (mBeanServer.isRegistered(statisticsName)) {
+                CacheStatisticsMXBean cacheStatistics =
+                        JMX.newMXBeanProxy(mBeanServer, statisticsName, CacheStatisticsMXBean.class);
+                regionStatistics.add(new ReferenceDataCacheStatistics(region, cacheStatistics.getCacheHits(),
+                        cacheStatistics.getCacheMisses(), cacheStatistics.getCachePuts()));
+            }
+        }
+        return regionStatistics;
+    }
+
+    /**
+     * Logs the statistics of the regions and publishes their hit ratios.
+     */
+    public void publishStatistics() {
+        for (ReferenceDataCacheStatistics regionStatistics : getStatistics()) {
+            financingMetrics.recordCacheHitRatio(regionStatistics.region(), regionStatistics.hitRatio());
+            log.info("Reference data cache {}: {} hits, {} misses, {} puts, hit ratio {}",
+                    regionStatistics.region().getTagValue(), regionStatistics.hitCount(),
+                    regionStatistics.missCount(), regionStatistics.putCount(),
+                    String.format("%.3f", regionStatistics.hitRatio()));
+        }
+    }
+
+    /**
+     * The name JCache registers the statistics of a cache under, with the characters reserved in object names
+     * replaced by dots.
+     */
+    private ObjectName statisticsName(ReferenceDataRegion region) {
+        String name = String.format("javax.cache:type=CacheStatistics,CacheManager=%s,Cache=%s",
+                objectNameSafe(referenceDataCacheManager.getURI().toString()),
+                objectNameSafe(region.getRegionName()));
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException("Invalid cache statistics name " + name, e);
+        }
+    }
+
+    private static String objectNameSafe(String value) {
+        return value.replaceAll("[,:=\n]", ".");
+    }
+}
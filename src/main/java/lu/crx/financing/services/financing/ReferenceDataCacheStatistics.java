@@ -0,0 +1,17 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.config.ReferenceDataRegion;
+
+/**
+ * The second-level cache lookups of a {@link ReferenceDataRegion} since the start of the application.
+ */
+public record ReferenceDataCacheStatistics(ReferenceDataRegion region, long hitCount, long missCount, long putCount) {
+
+    /**
+     * @return the share of the lookups answered by the cache, zero when there was none
+     */
+    public double hitRatio() {
+        long lookupCount = hitCount + missCount;
+        return lookupCount == 0 ? 0 : (double) hitCount / lookupCount;
+    }
+}
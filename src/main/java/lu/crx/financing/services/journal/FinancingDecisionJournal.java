@@ -0,0 +1,243 @@
+package lu.crx.financing.services.journal;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingDecision;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal of financing decisions in a memory-mapped file. The decisions are appended and
+ * forced to disk before they are written to the database, and the journal keeps the position up to which they were
+ * committed: the decisions after it are replayed after a crash (see
+ * {@link lu.crx.financing.services.batch.JournaledFinancingWorker}).
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes (magic number, format version, epoch and applied
+ * position) followed by fixed-size records of {@value #RECORD_SIZE} bytes. Every record holds the epoch of the
+ * journal and a CRC32C of its content, so that a record torn by a crash, or left over from before the journal
+ * started over, ends the journal instead of being replayed. Starting over only bumps the epoch, the file is not
+ * cleared.
+ * <p>
+ * All methods are synchronized: one thread appends while another one marks the committed decisions as applied.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FinancingDecisionJournal {
+
+    static final int MAGIC = 0x464A524E;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+
+    private static final int EPOCH_OFFSET = 8;
+    private static final int APPLIED_POSITION_OFFSET = 16;
+
+    /**
+     * Length of the checksummed content of a record, followed by the checksum.
+     */
+    private static final int RECORD_CONTENT_SIZE = 56;
+
+    private final FinancingProperties financingProperties;
+    private final CRC32C checksum = new CRC32C();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int epoch;
+    private int appliedPosition;
+    private int writePosition;
+
+    /**
+     * Appends the decisions and forces them to disk.
+     *
+     * @return the position after the decisions, to mark them as applied once they are committed
+     * @throws IllegalStateException when the journal has no room left for the decisions, see {@link #hasRoomFor}
+     */
+    public synchronized int append(List<FinancingDecision> decisions) {
+        open();
+        if (!hasRoomFor(decisions.size())) {
+            throw new IllegalStateException("The financing decision journal is full");
+        }
+
+        int start = writePosition;
+        for (FinancingDecision decision : decisions) {
+            putRecord(writePosition, decision);
+            writePosition += RECORD_SIZE;
+        }
+        if (writePosition > start) {
+            buffer.force(start, writePosition - start);
+        }
+        return writePosition;
+    }
+
+    public synchronized boolean hasRoomFor(int decisionCount) {
+        open();
+        return writePosition + (long) decisionCount * RECORD_SIZE <= buffer.capacity();
+    }
+
+    /**
+     * Records that the decisions up to the given position are committed to the database.
+     */
+    public synchronized void markApplied(int position) {
+        open();
+        if (position > appliedPosition) {
+            appliedPosition = position;
+            buffer.putInt(APPLIED_POSITION_OFFSET, appliedPosition);
+            buffer.force(0, HEADER_SIZE);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until every appended decision is committed, e.g. before {@link #startOver()} when the journal is full.
+     */
+    public synchronized void awaitApplied() throws InterruptedException {
+        open();
+        while (appliedPosition < writePosition) {
+            wait();
+        }
+    }
+
+    /**
+     * @return up to {@code maxCount} of the decisions appended but not marked as applied, in the order they were
+     * appended
+     */
+    public synchronized List<FinancingDecision> readUnapplied(int maxCount) {
+        open();
+        int count = Math.min(maxCount, (writePosition - appliedPosition) / RECORD_SIZE);
+        List<FinancingDecision> decisions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            decisions.add(getRecord(appliedPosition + i * RECORD_SIZE));
+        }
+        return decisions;
+    }
+
+    /**
+     * Records that the first {@code decisionCount} decisions returned by {@link #readUnapplied} are committed.
+     */
+    public synchronized void markNextApplied(int decisionCount) {
+        markApplied(appliedPosition + decisionCount * RECORD_SIZE);
+    }
+
+    public synchronized int getUnappliedCount() {
+        open();
+        return (writePosition - appliedPosition) / RECORD_SIZE;
+    }
+
+    /**
+     * Empties the journal, once all its decisions are applied.
+     */
+    public synchronized void startOver() {
+        open();
+        if (appliedPosition < writePosition) {
+            throw new IllegalStateException("The financing decision journal still holds unapplied decisions");
+        }
+        epoch++;
+        appliedPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE;
+        buffer.putInt(EPOCH_OFFSET, epoch);
+        buffer.putInt(APPLIED_POSITION_OFFSET, appliedPosition);
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    private void open() {
+        if (buffer != null) {
+            return;
+        }
+        FinancingProperties.Journal journal = financingProperties.getJournal();
+        Path file = journal.getFile();
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            boolean created = channel.size() == 0;
+            // A journal left by a run with another capacity keeps its size, so that its decisions can be replayed
+            long size = created ? journal.getCapacity().toBytes() : channel.size();
+            if (size > Integer.MAX_VALUE || size < HEADER_SIZE + RECORD_SIZE) {
+                throw new IllegalStateException("Unsupported financing decision journal size " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the financing decision journal " + file, e);
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(EPOCH_OFFSET, 1)
+                    .putInt(APPLIED_POSITION_OFFSET, HEADER_SIZE);
+            buffer.force(0, HEADER_SIZE);
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Unsupported financing decision journal version " + buffer.getInt(4));
+        }
+        epoch = buffer.getInt(EPOCH_OFFSET);
+        appliedPosition = buffer.getInt(APPLIED_POSITION_OFFSET);
+        writePosition = appliedPosition;
+        while (writePosition + RECORD_SIZE <= buffer.capacity() && isValidRecord(writePosition)) {
+            writePosition += RECORD_SIZE;
+        }
+        if (writePosition > appliedPosition) {
+            log.info("Financing decision journal {} holds {} unapplied decisions", file,
+                    (writePosition - appliedPosition) / RECORD_SIZE);
+        }
+    }
+
+    private void putRecord(int position, FinancingDecision decision) {
+        buffer.putLong(position, decision.getInvoiceId())
+                .putLong(position + 8, decision.getPurchaserId())
+                .putLong(position + 16, decision.getRunId())
+                .putInt(position + 24, epoch)
+                .putInt(position + 28, (int) decision.getFinancingDate().toEpochDay())
+                .putInt(position + 32, decision.getFinancingTermInDays())
+                .putInt(position + 36, decision.getFinancingRateInBps())
+                .putLong(position + 40, decision.getEarlyPaymentAmountInCents())
+                .putLong(position + 48, decision.getDiscountedAmountInCents())
+                .putInt(position + RECORD_CONTENT_SIZE, checksum(position));
+    }
+
+    private FinancingDecision getRecord(int position) {
+        return new FinancingDecision(
+                buffer.getLong(position),
+                buffer.getLong(position + 8),
+                buffer.getLong(position + 16),
+                LocalDate.ofEpochDay(buffer.getInt(position + 28)),
+                buffer.getInt(position + 32),
+                buffer.getInt(position + 36),
+                buffer.getLong(position + 40),
+                buffer.getLong(position + 48));
+    }
+
+    private boolean isValidRecord(int position) {
+        return buffer.getInt(position + 24) == epoch
+                && buffer.getInt(position + RECORD_CONTENT_SIZE) == checksum(position);
+    }
+
+    private int checksum(int position) {
+        checksum.reset();
+        checksum.update(buffer.slice(position, RECORD_CONTENT_SIZE));
+        return (int) checksum.getValue();
+    }
+}
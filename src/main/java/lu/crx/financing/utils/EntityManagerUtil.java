@@ -3,6 +3,8 @@ package lu.crx.financing.utils;
 import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.FinancingStage;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -11,10 +13,19 @@ import org.springframework.stereotype.Component;
 public class EntityManagerUtil {
 
     private final EntityManager entityManager;
+    private final FinancingMetrics financingMetrics;
 
     public void flushAndClearEntityManager(int processedCount) {
+        long flushStart = System.nanoTime();
         entityManager.flush();
         entityManager.clear();
+        financingMetrics.recordStage(FinancingStage.FLUSH, flushStart);
         log.info("Processed {} invoices so far", processedCount);
     }
+
+    public void flushEntityManager() {
+        long flushStart = System.nanoTime();
+        entityManager.flush();
+        financingMetrics.recordStage(FinancingStage.FLUSH, flushStart);
+    }
 }
\ No newline at end of file
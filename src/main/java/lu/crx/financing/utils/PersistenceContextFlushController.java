@@ -0,0 +1,89 @@
+package lu.crx.financing.utils;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Decides when the persistence context of a financing run is flushed and cleared.
+ * <p>
+ * Every {@code financing.flush.check-interval} invoices the controller looks at the state of the current session:
+ * <ul>
+ *     <li>too many managed entities, or a heap above the usage threshold: flush and clear, to release memory</li>
+ *     <li>too many queued inserts, updates and deletes: flush only, so that the managed invoices of the current
+ *     page stay attached</li>
+ * </ul>
+ * At the end of every page the context is flushed and cleared unconditionally. The flushes are counted and timed
+ * in the {@link FinancingRunContext}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PersistenceContextFlushController {
+
+    private final EntityManager entityManager;
+    private final EntityManagerUtil entityManagerUtil;
+    private final FinancingProperties financingProperties;
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Called after each invoice of a batch.
+     *
+     * @param processedInBatch the number of invoices of the batch processed so far
+     */
+    public void onInvoiceProcessed(int processedInBatch, FinancingRunContext context) {
+        FinancingProperties.Flush flush = financingProperties.getFlush();
+        if (processedInBatch % flush.getCheckInterval() != 0) {
+            return;
+        }
+
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        int managedEntityCount = session.getPersistenceContextInternal().getNumberOfManagedEntities();
+
+        if (managedEntityCount >= flush.getMaxManagedEntities() || isHeapAboveThreshold(flush)) {
+            log.debug("Clearing the persistence context with {} managed entities", managedEntityCount);
+            long start = System.nanoTime();
+            entityManagerUtil.flushAndClearEntityManager((int) context.getProcessedInvoiceCount() + processedInBatch);
+            context.recordFlush(System.nanoTime() - start);
+            return;
+        }
+
+        int pendingWriteCount = countPendingWrites(session.getActionQueue());
+        if (pendingWriteCount >= flush.getMaxPendingWrites()) {
+            log.debug("Flushing {} pending writes", pendingWriteCount);
+            long start = System.nanoTime();
+            entityManagerUtil.flushEntityManager();
+            context.recordFlush(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Flushes and clears the persistence context at the end of a page.
+     */
+    public void flushAndClear(FinancingRunContext context, int processedCount) {
+        long start = System.nanoTime();
+        entityManagerUtil.flushAndClearEntityManager(processedCount);
+        context.recordFlush(System.nanoTime() - start);
+    }
+
+    private boolean isHeapAboveThreshold(FinancingProperties.Flush flush) {
+        if (flush.getHeapUsageThreshold() <= 0) {
+            return false;
+        }
+        MemoryUsage heapUsage = memoryBean.getHeapMemoryUsage();
+        return heapUsage.getMax() > 0 && heapUsage.getUsed() > flush.getHeapUsageThreshold() * heapUsage.getMax();
+    }
+
+    private static int countPendingWrites(ActionQueue actionQueue) {
+        return actionQueue.numberOfInsertions() + actionQueue.numberOfUpdates() + actionQueue.numberOfDeletions();
+    }
+}
@@ -0,0 +1,17 @@
+-- A run is only resumed on the financing date it was started for, and only once its owner stopped working on it:
+-- the owner records a heartbeat with every chunk it commits, and a RUNNING run whose heartbeat is older than
+-- financing.run.stale-after is taken to be dead.
+ALTER TABLE financing_run ADD COLUMN financing_date DATE;
+ALTER TABLE financing_run ADD COLUMN owner VARCHAR(255);
+ALTER TABLE financing_run ADD COLUMN heartbeat_at TIMESTAMP;
+
+UPDATE financing_run
+SET financing_date = CAST(started_at AS DATE),
+    owner          = 'unknown',
+    heartbeat_at   = COALESCE(finished_at, started_at);
+
+ALTER TABLE financing_run ALTER COLUMN financing_date SET NOT NULL;
+ALTER TABLE financing_run ALTER COLUMN owner SET NOT NULL;
+ALTER TABLE financing_run ALTER COLUMN heartbeat_at SET NOT NULL;
+
+CREATE INDEX idx_financing_run_date ON financing_run (financing_date, id);
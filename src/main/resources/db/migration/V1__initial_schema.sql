@@ -0,0 +1,57 @@
+CREATE TABLE creditor (
+    id                        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name                      VARCHAR(255) NOT NULL,
+    max_financing_rate_in_bps INTEGER      NOT NULL
+);
+
+CREATE TABLE debtor (
+    id   BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE purchaser (
+    id                             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name                           VARCHAR(255) NOT NULL,
+    minimum_financing_term_in_days INTEGER      NOT NULL
+);
+
+CREATE TABLE purchaser_financing_settings (
+    id                 BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    creditor_id        BIGINT  NOT NULL,
+    annual_rate_in_bps INTEGER NOT NULL,
+    CONSTRAINT fk_purchaser_financing_settings_creditor FOREIGN KEY (creditor_id) REFERENCES creditor (id)
+);
+
+CREATE TABLE purchaser_purchaser_financing_settings (
+    purchaser_id                    BIGINT NOT NULL,
+    purchaser_financing_settings_id BIGINT NOT NULL UNIQUE,
+    PRIMARY KEY (purchaser_financing_settings_id, purchaser_id),
+    CONSTRAINT fk_purchaser_settings_purchaser FOREIGN KEY (purchaser_id) REFERENCES purchaser (id),
+    CONSTRAINT fk_purchaser_settings_settings FOREIGN KEY (purchaser_financing_settings_id)
+        REFERENCES purchaser_financing_settings (id)
+);
+
+CREATE TABLE invoice (
+    id                            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    creditor_id                   BIGINT NOT NULL,
+    debtor_id                     BIGINT,
+    maturity_date                 DATE   NOT NULL,
+    value_in_cents                BIGINT NOT NULL,
+    early_payment_amount_in_cents BIGINT,
+    discounted_amount_in_cents    BIGINT,
+    CONSTRAINT fk_invoice_creditor FOREIGN KEY (creditor_id) REFERENCES creditor (id),
+    CONSTRAINT fk_invoice_debtor FOREIGN KEY (debtor_id) REFERENCES debtor (id)
+);
+
+CREATE TABLE invoice_financing_details (
+    id                            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    invoice_id                    BIGINT  NOT NULL UNIQUE,
+    purchaser_id                  BIGINT  NOT NULL,
+    financing_date                DATE    NOT NULL,
+    financing_term_in_days        INTEGER NOT NULL,
+    financing_rate_in_bps         INTEGER NOT NULL,
+    early_payment_amount_in_cents BIGINT  NOT NULL,
+    discounted_amount_in_cents    BIGINT  NOT NULL,
+    CONSTRAINT fk_invoice_financing_details_invoice FOREIGN KEY (invoice_id) REFERENCES invoice (id),
+    CONSTRAINT fk_invoice_financing_details_purchaser FOREIGN KEY (purchaser_id) REFERENCES purchaser (id)
+);
@@ -0,0 +1,9 @@
+-- Explicit financing status, so that pending invoices are found through an index instead of a full scan
+-- over the ever-growing set of financed ones.
+ALTER TABLE invoice ADD COLUMN financing_status VARCHAR(16) DEFAULT 'PENDING' NOT NULL;
+
+UPDATE invoice SET financing_status = 'FINANCED' WHERE early_payment_amount_in_cents IS NOT NULL;
+
+-- Serves the keyset scan over pending invoices (status, id) and carries the columns financing needs,
+-- so the creditor, maturity and value can be read from the index entry.
+CREATE INDEX idx_invoice_pending ON invoice (financing_status, id, creditor_id, maturity_date, value_in_cents);
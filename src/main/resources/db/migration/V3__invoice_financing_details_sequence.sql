@@ -0,0 +1,8 @@
+-- Identity columns force Hibernate to insert rows one at a time to learn the generated id.
+-- A pooled sequence hands out ids in blocks of 50, which lets financing details be inserted in JDBC batches.
+CREATE SEQUENCE invoice_financing_details_seq START WITH 1 INCREMENT BY 50;
+
+-- The pooled optimizer treats a sequence value as the upper bound of its block, so start one block past
+-- the highest existing id.
+ALTER SEQUENCE invoice_financing_details_seq
+    RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM invoice_financing_details);
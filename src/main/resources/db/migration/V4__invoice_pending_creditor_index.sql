@@ -0,0 +1,2 @@
+-- Serves the per-creditor keyset scans of the parallel financing engine.
+CREATE INDEX idx_invoice_pending_creditor ON invoice (financing_status, creditor_id, id);
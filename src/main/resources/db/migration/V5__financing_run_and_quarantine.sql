@@ -0,0 +1,29 @@
+-- One row per financing run. The run is committed chunk by chunk; the checkpoint (last invoice id of the
+-- sequential keyset scan and the running counts) is updated in the transaction of every chunk, so that an
+-- interrupted run resumes after its last committed chunk.
+CREATE TABLE financing_run (
+    id                 BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    status             VARCHAR(16) NOT NULL,
+    snapshot_version   BIGINT      NOT NULL,
+    started_at         TIMESTAMP   NOT NULL,
+    finished_at        TIMESTAMP,
+    last_invoice_id    BIGINT      NOT NULL,
+    processed_count    BIGINT      NOT NULL,
+    financed_count     BIGINT      NOT NULL,
+    quarantined_count  BIGINT      NOT NULL,
+    error              VARCHAR(1000)
+);
+
+-- Invoices whose financing failed, with the error. The invoice itself is set to QUARANTINED, so that later
+-- runs skip it until it is set back to PENDING.
+CREATE TABLE quarantined_invoice (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    invoice_id       BIGINT        NOT NULL,
+    financing_run_id BIGINT        NOT NULL,
+    quarantined_at   TIMESTAMP     NOT NULL,
+    error            VARCHAR(1000) NOT NULL,
+    CONSTRAINT fk_quarantined_invoice_invoice FOREIGN KEY (invoice_id) REFERENCES invoice (id),
+    CONSTRAINT fk_quarantined_invoice_run FOREIGN KEY (financing_run_id) REFERENCES financing_run (id)
+);
+
+CREATE INDEX idx_financing_run_status ON financing_run (status, id);
@@ -0,0 +1,27 @@
+-- Rounds of work shared by the instances running against this database. A round is planned by the first instance
+-- that finds no open round, and is completed once every one of its ranges is done.
+CREATE TABLE financing_lease_round (
+    id           BIGINT    PRIMARY KEY,
+    started_at   TIMESTAMP NOT NULL,
+    completed_at TIMESTAMP
+);
+
+-- The pending invoices of a creditor within an id range, as planned for a round. An instance claims a range by
+-- taking its lease, renews the lease with every chunk it commits and completes the range at the end; a lease that
+-- expired is claimed again by another instance. The token grows with every claim, so that the previous owner of a
+-- stolen lease can tell that it lost it.
+CREATE TABLE invoice_range_lease (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    round_id         BIGINT      NOT NULL,
+    creditor_id      BIGINT      NOT NULL,
+    first_invoice_id BIGINT      NOT NULL,
+    last_invoice_id  BIGINT      NOT NULL,
+    invoice_count    BIGINT      NOT NULL,
+    owner            VARCHAR(255),
+    lease_token      BIGINT      NOT NULL,
+    expires_at       TIMESTAMP,
+    completed_at     TIMESTAMP,
+    CONSTRAINT fk_invoice_range_lease_round FOREIGN KEY (round_id) REFERENCES financing_lease_round (id)
+);
+
+CREATE INDEX idx_invoice_range_lease_open ON invoice_range_lease (round_id, completed_at);
@@ -0,0 +1,31 @@
+-- History tables of the financed invoices and their financing details. The archiving moves them here in batches,
+-- so that the invoice table only holds the invoices still in progress and its scans do not grow with the history.
+-- The rows keep their ids; the identity of the invoice table never hands them out again.
+CREATE TABLE archived_invoice (
+    id                            BIGINT    PRIMARY KEY,
+    creditor_id                   BIGINT    NOT NULL,
+    debtor_id                     BIGINT,
+    maturity_date                 DATE      NOT NULL,
+    value_in_cents                BIGINT    NOT NULL,
+    early_payment_amount_in_cents BIGINT    NOT NULL,
+    discounted_amount_in_cents    BIGINT    NOT NULL,
+    archived_at                   TIMESTAMP NOT NULL,
+    CONSTRAINT fk_archived_invoice_creditor FOREIGN KEY (creditor_id) REFERENCES creditor (id),
+    CONSTRAINT fk_archived_invoice_debtor FOREIGN KEY (debtor_id) REFERENCES debtor (id)
+);
+
+CREATE TABLE archived_invoice_financing_details (
+    id                            BIGINT  PRIMARY KEY,
+    invoice_id                    BIGINT  NOT NULL UNIQUE,
+    purchaser_id                  BIGINT  NOT NULL,
+    financing_date                DATE    NOT NULL,
+    financing_term_in_days        INTEGER NOT NULL,
+    financing_rate_in_bps         INTEGER NOT NULL,
+    early_payment_amount_in_cents BIGINT  NOT NULL,
+    discounted_amount_in_cents    BIGINT  NOT NULL,
+    CONSTRAINT fk_archived_financing_details_invoice FOREIGN KEY (invoice_id) REFERENCES archived_invoice (id),
+    CONSTRAINT fk_archived_financing_details_purchaser FOREIGN KEY (purchaser_id) REFERENCES purchaser (id)
+);
+
+-- Serves the reads of the invoices of a creditor in id order.
+CREATE INDEX idx_archived_invoice_creditor ON archived_invoice (creditor_id, id);
@@ -0,0 +1,3 @@
+-- Serves the exports of the financing results of a range of financing dates, live and archived.
+CREATE INDEX idx_financing_details_date ON invoice_financing_details (financing_date, invoice_id);
+CREATE INDEX idx_archived_financing_details_date ON archived_invoice_financing_details (financing_date, invoice_id);
@@ -0,0 +1,23 @@
+-- Every row of the reference data the purchaser snapshot is built from takes a new change number when it is
+-- inserted or updated, also by a write made around the application. The row count and the sum of the change
+-- numbers of these tables change with every write, so a run can tell whether its snapshot is still current with
+-- one query, without reloading the purchasers.
+CREATE SEQUENCE reference_data_change_seq;
+
+ALTER TABLE creditor ADD COLUMN change_number BIGINT DEFAULT NEXT VALUE FOR reference_data_change_seq
+    ON UPDATE NEXT VALUE FOR reference_data_change_seq NOT NULL;
+ALTER TABLE purchaser ADD COLUMN change_number BIGINT DEFAULT NEXT VALUE FOR reference_data_change_seq
+    ON UPDATE NEXT VALUE FOR reference_data_change_seq NOT NULL;
+ALTER TABLE purchaser_financing_settings ADD COLUMN change_number BIGINT
+    DEFAULT NEXT VALUE FOR reference_data_change_seq ON UPDATE NEXT VALUE FOR reference_data_change_seq NOT NULL;
+ALTER TABLE purchaser_purchaser_financing_settings ADD COLUMN change_number BIGINT
+    DEFAULT NEXT VALUE FOR reference_data_change_seq ON UPDATE NEXT VALUE FOR reference_data_change_seq NOT NULL;
+
+-- One version of the purchaser snapshot per state of the reference data, numbered in the order the states were
+-- first loaded. The version recorded by a financing run keeps its meaning across restarts and instances.
+CREATE TABLE purchaser_snapshot_version (
+    version           BIGINT    PRIMARY KEY,
+    row_count         BIGINT    NOT NULL,
+    change_number_sum BIGINT    NOT NULL,
+    created_at        TIMESTAMP NOT NULL
+);
@@ -0,0 +1,131 @@
+package lu.crx.financing.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FinancingMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private FinancingMetrics financingMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        financingMetrics = new FinancingMetrics(meterRegistry);
+    }
+
+    @Test
+    void shouldRegisterAllMetersUpFront() {
+        // When / Then
+        for (FinancingStage stage : FinancingStage.values()) {
+            assertEquals(0, stageTimer(stage).count());
+        }
+        for (FinancingRejectionReason reason : FinancingRejectionReason.values()) {
+            assertEquals(0, invoiceCount("unfinanced", FinancingMetrics.reasonTag(reason)));
+        }
+        assertEquals(0, invoiceCount("financed", "none"));
+    }
+
+    @Test
+    void shouldRecordStageTime() {
+        // Given
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+
+        // When
+        financingMetrics.recordStage(FinancingStage.FETCH_PENDING, start);
+
+        // Then
+        assertEquals(1, stageTimer(FinancingStage.FETCH_PENDING).count());
+        assertTrue(stageTimer(FinancingStage.FETCH_PENDING).totalTime(TimeUnit.MILLISECONDS) >= 5);
+        assertEquals(0, stageTimer(FinancingStage.FLUSH).count());
+    }
+
+    @Test
+    void shouldCountOutcomesAndRecordDecisionLatency() {
+        // Given
+        long start = System.nanoTime();
+
+        // When
+        financingMetrics.recordDecision(start);
+        financingMetrics.recordDecision(start);
+        financingMetrics.recordFinanced();
+        financingMetrics.recordFinanced(2);
+        financingMetrics.recordUnfinanced(FinancingRejectionReason.NO_SETTINGS);
+        financingMetrics.recordUnfinanced(FinancingRejectionReason.RATE_ABOVE_MAX);
+
+        // Then
+        assertEquals(3, invoiceCount("financed", "none"));
+        assertEquals(1, invoiceCount("unfinanced", "no-settings"));
+        assertEquals(0, invoiceCount("unfinanced", "term-too-short"));
+        assertEquals(1, invoiceCount("unfinanced", "rate-above-max"));
+
+        Timer decisionTimer = meterRegistry.get(FinancingMetrics.DECISION_TIMER).timer();
+        assertEquals(2, decisionTimer.count());
+        assertEquals(3, decisionTimer.takeSnapshot().percentileValues().length);
+    }
+
+    @Test
+    void shouldCountOutcomesOnceTransactionCommits() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When
+            financingMetrics.recordFinanced();
+            financingMetrics.recordFinanced(2);
+            financingMetrics.recordUnfinanced(FinancingRejectionReason.TERM_TOO_SHORT);
+
+            // Then
+            assertEquals(0, invoiceCount("financed", "none"));
+            assertEquals(0, invoiceCount("unfinanced", "term-too-short"));
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            assertEquals(3, invoiceCount("financed", "none"));
+            assertEquals(1, invoiceCount("unfinanced", "term-too-short"));
+            assertFalse(TransactionSynchronizationManager.hasResource(financingMetrics));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldNotCountOutcomesOfRolledBackTransaction() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When
+            financingMetrics.recordFinanced();
+            financingMetrics.recordUnfinanced(FinancingRejectionReason.NO_SETTINGS);
+            TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+            // Then
+            assertEquals(0, invoiceCount("financed", "none"));
+            assertEquals(0, invoiceCount("unfinanced", "no-settings"));
+            assertFalse(TransactionSynchronizationManager.hasResource(financingMetrics));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Timer stageTimer(FinancingStage stage) {
+        return meterRegistry.get(FinancingMetrics.STAGE_TIMER).tag("stage", stage.getTagValue()).timer();
+    }
+
+    private double invoiceCount(String outcome, String reason) {
+        return meterRegistry.get(FinancingMetrics.INVOICE_COUNTER).tag("outcome", outcome).tag("reason", reason)
+                .counter().count();
+    }
+}
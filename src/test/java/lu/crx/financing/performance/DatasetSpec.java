@@ -0,0 +1,85 @@
+package lu.crx.financing.performance;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Volumes and value distributions of a synthetic dataset. The defaults are the target volumes from the README:
+ * 10,000 pending invoices of 100 creditors, 100 purchasers and 1,000,000 previously financed invoices.
+ */
+@Getter
+@Builder
+@ToString
+public class DatasetSpec {
+
+    @Builder.Default
+    private final long seed = 20230527L;
+
+    @Builder.Default
+    private final int creditorCount = 100;
+
+    @Builder.Default
+    private final int debtorCount = 100;
+
+    @Builder.Default
+    private final int purchaserCount = 100;
+
+    @Builder.Default
+    private final int pendingInvoiceCount = 10_000;
+
+    @Builder.Default
+    private final int financedInvoiceCount = 1_000_000;
+
+    /**
+     * Pending invoices mature between these two offsets from today, in days.
+     */
+    @Builder.Default
+    private final int minMaturityInDays = -5;
+
+    @Builder.Default
+    private final int maxMaturityInDays = 120;
+
+    /**
+     * Purchasers offer annual rates between these two bounds.
+     */
+    @Builder.Default
+    private final int minAnnualRateInBps = 10;
+
+    @Builder.Default
+    private final int maxAnnualRateInBps = 120;
+
+    @Builder.Default
+    private final int maxMinimumFinancingTermInDays = 60;
+
+    @Builder.Default
+    private final int maxCreditorFinancingRateInBps = 10;
+
+    /**
+     * Probability that a purchaser has settings for a creditor that receives offers at all.
+     */
+    @Builder.Default
+    private final double settingsDensity = 0.5;
+
+    /**
+     * Share of the creditors that no purchaser has settings for.
+     */
+    @Builder.Default
+    private final double creditorsWithoutOffersShare = 0.1;
+
+    /**
+     * The default spec with the volumes and seed overridden by the {@code performance.*} system properties.
+     */
+    public static DatasetSpec fromSystemProperties() {
+        DatasetSpec defaults = DatasetSpec.builder().build();
+        return DatasetSpec.builder()
+                .seed(Long.getLong("performance.seed", defaults.getSeed()))
+                .creditorCount(Integer.getInteger("performance.creditors", defaults.getCreditorCount()))
+                .purchaserCount(Integer.getInteger("performance.purchasers", defaults.getPurchaserCount()))
+                .pendingInvoiceCount(Integer.getInteger("performance.pendingInvoices",
+                        defaults.getPendingInvoiceCount()))
+                .financedInvoiceCount(Integer.getInteger("performance.financedInvoices",
+                        defaults.getFinancedInvoiceCount()))
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package lu.crx.financing.performance;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.services.financing.InvoiceFinancingService;
+import lu.crx.financing.services.financing.PurchaserSnapshotService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end run over the README's target volumes on a file-based H2 database. Only runs with the
+ * {@code performance} profile: {@code mvn -Pperformance verify}. The volumes, seed, time limit and report path
+ * can be changed with the {@code performance.*} system properties.
+ */
+@Tag("performance")
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/performance/financing;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.flyway.clean-disabled=false"
+})
+class FinancingPerformanceIT {
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private FinancingRunRepository financingRunRepository;
+
+    @Autowired
+    private InvoiceFinancingService financingService;
+
+    @Autowired
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @Test
+    void shouldFinancePendingInvoicesWithinTarget() throws IOException {
+        // Given
+        flyway.clean();
+        flyway.migrate();
+
+        DatasetSpec spec = DatasetSpec.fromSystemProperties();
+        long loadStart = System.nanoTime();
+        new SyntheticDataGenerator(jdbcTemplate).generate(spec);
+        long loadTimeMillis = (System.nanoTime() - loadStart) / 1_000_000;
+        assertEquals(spec.getPendingInvoiceCount(), countInvoices("PENDING"));
+        purchaserSnapshotService.refresh();
+
+        // When
+        System.gc();
+        long wallTimeMillis;
+        long peakHeapBytes;
+        try (PeakHeapSampler heapSampler = new PeakHeapSampler()) {
+            long start = System.nanoTime();
+            financingService.processInvoiceFinancing();
+            wallTimeMillis = (System.nanoTime() - start) / 1_000_000;
+            peakHeapBytes = heapSampler.getPeakHeapBytes();
+        }
+
+        // Then
+        FinancingRun run = financingRunRepository.findFirstByOrderByIdDesc().orElseThrow();
+        PerformanceReport report = PerformanceReport.builder()
+                .scenario(scenario())
+                .dataset(spec)
+                .loadTimeMillis(loadTimeMillis)
+                .wallTimeMillis(wallTimeMillis)
+                .processedInvoiceCount(run.getProcessedCount())
+                .financedInvoiceCount(countInvoices("FINANCED") - spec.getFinancedInvoiceCount())
+                .peakHeapBytes(peakHeapBytes)
+                .maxHeapBytes(Runtime.getRuntime().maxMemory())
+                .availableProcessors(Runtime.getRuntime().availableProcessors())
+                .build();
+        report.writeTo(Path.of(System.getProperty("performance.report", "target/performance/financing-performance.json")));
+
+        assertEquals(FinancingRunStatus.COMPLETED, run.getStatus());
+        assertEquals(spec.getPendingInvoiceCount(), report.getProcessedInvoiceCount());
+        assertEquals(report.getFinancedInvoiceCount(), run.getFinancedCount());
+        assertTrue(report.getFinancedInvoiceCount() > 0);
+        long maxWallTimeMillis = Long.getLong("performance.maxWallTimeSeconds", 30) * 1000;
+        assertTrue(wallTimeMillis < maxWallTimeMillis,
+                "Financing took " + wallTimeMillis + " ms, the target is " + maxWallTimeMillis + " ms");
+    }
+
+    private String scenario() {
+        String engine;
+        if (financingProperties.getParallel().isEnabled()) {
+            engine = "parallel-" + financingProperties.getParallel().getPoolType();
+        } else if (financingProperties.getPipeline().isEnabled()) {
+            engine = "pipeline";
+        } else {
+            engine = "sequential";
+        }
+        return engine + "/" + financingProperties.getWrite().getMode();
+    }
+
+    private long countInvoices(String financingStatus) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoice WHERE financing_status = ?",
+                Long.class, financingStatus);
+    }
+}
@@ -0,0 +1,48 @@
+package lu.crx.financing.performance;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Samples the used heap on a daemon thread and keeps the highest value seen until closed.
+ */
+public class PeakHeapSampler implements AutoCloseable {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 5;
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final Thread samplerThread;
+    private volatile boolean running = true;
+    private volatile long peakHeapBytes;
+
+    public PeakHeapSampler() {
+        peakHeapBytes = memoryBean.getHeapMemoryUsage().getUsed();
+        samplerThread = Thread.ofPlatform().daemon().name("peak-heap-sampler").start(this::sample);
+    }
+
+    private void sample() {
+        while (running) {
+            peakHeapBytes = Math.max(peakHeapBytes, memoryBean.getHeapMemoryUsage().getUsed());
+            try {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    public long getPeakHeapBytes() {
+        return Math.max(peakHeapBytes, memoryBean.getHeapMemoryUsage().getUsed());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        samplerThread.interrupt();
+        try {
+            samplerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package lu.crx.financing.performance;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Outcome of a performance run, written as a flat JSON object so that runs can be compared by scripts.
+ */
+@Getter
+@Builder
+public class PerformanceReport {
+
+    private final String scenario;
+    private final DatasetSpec dataset;
+    private final long loadTimeMillis;
+    private final long wallTimeMillis;
+    private final long processedInvoiceCount;
+    private final long financedInvoiceCount;
+    private final long peakHeapBytes;
+    private final long maxHeapBytes;
+    private final int availableProcessors;
+
+    public double getThroughputInvoicesPerSecond() {
+        return wallTimeMillis == 0 ? 0 : processedInvoiceCount * 1000.0 / wallTimeMillis;
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT, """
+                        {
+                          "scenario": "%s",
+                          "seed": %d,
+                          "creditors": %d,
+                          "purchasers": %d,
+                          "pendingInvoices": %d,
+                          "previouslyFinancedInvoices": %d,
+                          "loadTimeMillis": %d,
+                          "wallTimeMillis": %d,
+                          "processedInvoices": %d,
+                          "financedInvoices": %d,
+                          "throughputInvoicesPerSecond": %.1f,
+                          "peakHeapBytes": %d,
+                          "maxHeapBytes": %d,
+                          "availableProcessors": %d
+                        }
+                        """,
+                scenario, dataset.getSeed(), dataset.getCreditorCount(), dataset.getPurchaserCount(),
+                dataset.getPendingInvoiceCount(), dataset.getFinancedInvoiceCount(), loadTimeMillis, wallTimeMillis,
+                processedInvoiceCount, financedInvoiceCount, getThroughputInvoicesPerSecond(), peakHeapBytes,
+                maxHeapBytes, availableProcessors);
+    }
+
+    public void writeTo(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.writeString(path, toJson(), StandardCharsets.UTF_8);
+    }
+}
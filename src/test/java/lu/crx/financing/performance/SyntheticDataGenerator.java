@@ -0,0 +1,176 @@
+package lu.crx.financing.performance;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bulk-loads a seeded synthetic dataset through plain JDBC, bypassing JPA. The same {@link DatasetSpec} always
+ * yields the same rows, apart from the dates, which are relative to today.
+ * <p>
+ * Creditors, purchasers, their settings and the pending invoices are drawn from a {@link Random} seeded with the
+ * spec's seed and inserted in JDBC batches. The previously financed invoices and their financing details only
+ * fill the tables, so they are derived from the row number in single {@code INSERT ... SELECT} statements, which
+ * loads a million rows in seconds.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SyntheticDataGenerator {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Generates the dataset. The tables are expected to be empty.
+     */
+    public void generate(DatasetSpec spec) {
+        Random random = new Random(spec.getSeed());
+        LocalDate today = LocalDate.now();
+
+        List<Long> creditorIds = insertCreditors(spec, random);
+        List<Long> debtorIds = insertDebtors(spec);
+        List<Long> purchaserIds = insertPurchasers(spec, random, creditorIds);
+
+        insertFinancedInvoices(spec, creditorIds, debtorIds, purchaserIds);
+        insertPendingInvoices(spec, random, creditorIds, debtorIds, today);
+
+        log.info("Generated dataset {}", spec);
+    }
+
+    private List<Long> insertCreditors(DatasetSpec spec, Random random) {
+        long lastId = maxId("creditor");
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < spec.getCreditorCount(); i++) {
+            rows.add(new Object[]{"Creditor" + i, 1 + random.nextInt(spec.getMaxCreditorFinancingRateInBps())});
+        }
+        batchInsert("INSERT INTO creditor (name, max_financing_rate_in_bps) VALUES (?, ?)", rows);
+        return idsAfter("creditor", lastId);
+    }
+
+    private List<Long> insertDebtors(DatasetSpec spec) {
+        long lastId = maxId("debtor");
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < spec.getDebtorCount(); i++) {
+            rows.add(new Object[]{"Debtor" + i});
+        }
+        batchInsert("INSERT INTO debtor (name) VALUES (?)", rows);
+        return idsAfter("debtor", lastId);
+    }
+
+    private List<Long> insertPurchasers(DatasetSpec spec, Random random, List<Long> creditorIds) {
+        List<Long> creditorsWithOffers = new ArrayList<>(creditorIds);
+        Collections.shuffle(creditorsWithOffers, random);
+        int withoutOffersCount = (int) Math.round(spec.getCreditorsWithoutOffersShare() * creditorIds.size());
+        creditorsWithOffers = creditorsWithOffers.subList(withoutOffersCount, creditorsWithOffers.size());
+        Collections.sort(creditorsWithOffers);
+
+        long lastPurchaserId = maxId("purchaser");
+        List<Object[]> purchaserRows = new ArrayList<>();
+        List<Integer> settingsOwners = new ArrayList<>();
+        List<Object[]> settingsRows = new ArrayList<>();
+        int rateSpread = spec.getMaxAnnualRateInBps() - spec.getMinAnnualRateInBps() + 1;
+
+        for (int i = 0; i < spec.getPurchaserCount(); i++) {
+            purchaserRows.add(new Object[]{"Purchaser" + i, random.nextInt(spec.getMaxMinimumFinancingTermInDays() + 1)});
+            for (Long creditorId : creditorsWithOffers) {
+                if (random.nextDouble() < spec.getSettingsDensity()) {
+                    settingsOwners.add(i);
+                    settingsRows.add(new Object[]{creditorId, spec.getMinAnnualRateInBps() + random.nextInt(rateSpread)});
+                }
+            }
+        }
+
+        batchInsert("INSERT INTO purchaser (name, minimum_financing_term_in_days) VALUES (?, ?)", purchaserRows);
+        List<Long> purchaserIds = idsAfter("purchaser", lastPurchaserId);
+
+        long lastSettingsId = maxId("purchaser_financing_settings");
+        batchInsert("INSERT INTO purchaser_financing_settings (creditor_id, annual_rate_in_bps) VALUES (?, ?)",
+                settingsRows);
+        List<Long> settingsIds = idsAfter("purchaser_financing_settings", lastSettingsId);
+
+        List<Object[]> ownerRows = new ArrayList<>(settingsIds.size());
+        for (int i = 0; i < settingsIds.size(); i++) {
+            ownerRows.add(new Object[]{purchaserIds.get(settingsOwners.get(i)), settingsIds.get(i)});
+        }
+        batchInsert("INSERT INTO purchaser_purchaser_financing_settings " +
+                "(purchaser_id, purchaser_financing_settings_id) VALUES (?, ?)", ownerRows);
+
+        return purchaserIds;
+    }
+
+    private void insertFinancedInvoices(DatasetSpec spec, List<Long> creditorIds, List<Long> debtorIds,
+                                        List<Long> purchaserIds) {
+        if (spec.getFinancedInvoiceCount() == 0) {
+            return;
+        }
+        long lastInvoiceId = maxId("invoice");
+
+        jdbcTemplate.update("INSERT INTO invoice (creditor_id, debtor_id, maturity_date, value_in_cents, " +
+                        "early_payment_amount_in_cents, discounted_amount_in_cents, financing_status) " +
+                        "SELECT ? + MOD(X, ?), ? + MOD(X, ?), DATEADD('DAY', -1 - MOD(X * 31 + ?, 730), CURRENT_DATE), " +
+                        "v, v - v * 3 / 10000, v * 3 / 10000, 'FINANCED' " +
+                        "FROM (SELECT X, 1000 + MOD(X * 7919 + ?, 1000000) AS v FROM SYSTEM_RANGE(1, ?))",
+                firstOfContiguous(creditorIds), creditorIds.size(),
+                firstOfContiguous(debtorIds), debtorIds.size(),
+                spec.getSeed(), spec.getSeed(), spec.getFinancedInvoiceCount());
+
+        jdbcTemplate.update("INSERT INTO invoice_financing_details (id, invoice_id, purchaser_id, financing_date, " +
+                        "financing_term_in_days, financing_rate_in_bps, early_payment_amount_in_cents, " +
+                        "discounted_amount_in_cents) " +
+                        "SELECT NEXT VALUE FOR invoice_financing_details_seq, id, ? + MOD(id, ?), " +
+                        "DATEADD('DAY', -30, maturity_date), 30, 3, early_payment_amount_in_cents, " +
+                        "discounted_amount_in_cents FROM invoice WHERE id > ? ORDER BY id",
+                firstOfContiguous(purchaserIds), purchaserIds.size(), lastInvoiceId);
+    }
+
+    private void insertPendingInvoices(DatasetSpec spec, Random random, List<Long> creditorIds,
+                                       List<Long> debtorIds, LocalDate today) {
+        int maturitySpread = spec.getMaxMaturityInDays() - spec.getMinMaturityInDays() + 1;
+        List<Object[]> rows = new ArrayList<>(spec.getPendingInvoiceCount());
+
+        for (int i = 0; i < spec.getPendingInvoiceCount(); i++) {
+            LocalDate maturityDate = today.plusDays(spec.getMinMaturityInDays() + random.nextInt(maturitySpread));
+            rows.add(new Object[]{
+                    creditorIds.get(random.nextInt(creditorIds.size())),
+                    debtorIds.get(random.nextInt(debtorIds.size())),
+                    Date.valueOf(maturityDate),
+                    1_00L + random.nextInt(100_000_00)});
+        }
+
+        batchInsert("INSERT INTO invoice (creditor_id, debtor_id, maturity_date, value_in_cents) " +
+                "VALUES (?, ?, ?, ?)", rows);
+    }
+
+    private void batchInsert(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    private long maxId(String table) {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+    }
+
+    private List<Long> idsAfter(String table, long lastId) {
+        return jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE id > ? ORDER BY id", Long.class, lastId);
+    }
+
+    /**
+     * The set-based inserts address the rows by offset from the first id, so the ids must have no gaps.
+     */
+    private static long firstOfContiguous(List<Long> ids) {
+        if (ids.get(ids.size() - 1) - ids.get(0) != ids.size() - 1) {
+            throw new IllegalStateException("Expected contiguous ids, got " + ids.get(0) + ".." + ids.get(ids.size() - 1)
+                    + " for " + ids.size() + " rows");
+        }
+        return ids.get(0);
+    }
+}
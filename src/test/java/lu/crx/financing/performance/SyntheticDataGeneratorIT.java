@@ -0,0 +1,111 @@
+package lu.crx.financing.performance;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class SyntheticDataGeneratorIT {
+
+    private static final DatasetSpec SMALL_DATASET = DatasetSpec.builder()
+            .creditorCount(10)
+            .debtorCount(5)
+            .purchaserCount(8)
+            .pendingInvoiceCount(300)
+            .financedInvoiceCount(2000)
+            .creditorsWithoutOffersShare(0.2)
+            .build();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteAll();
+    }
+
+    @Test
+    void shouldGenerateRequestedVolumes() {
+        // When
+        new SyntheticDataGenerator(jdbcTemplate).generate(SMALL_DATASET);
+
+        // Then
+        assertEquals(10, count("SELECT COUNT(*) FROM creditor"));
+        assertEquals(8, count("SELECT COUNT(*) FROM purchaser"));
+        assertEquals(300, count("SELECT COUNT(*) FROM invoice WHERE financing_status = 'PENDING'"));
+        assertEquals(2000, count("SELECT COUNT(*) FROM invoice WHERE financing_status = 'FINANCED'"));
+        assertEquals(2000, count("SELECT COUNT(*) FROM invoice_financing_details"));
+        assertEquals(2, count("SELECT COUNT(*) FROM creditor c WHERE NOT EXISTS " +
+                "(SELECT 1 FROM purchaser_financing_settings s WHERE s.creditor_id = c.id)"));
+    }
+
+    @Test
+    void shouldGenerateSameDataForSameSeed() {
+        // Given
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(jdbcTemplate);
+
+        generator.generate(SMALL_DATASET);
+        List<String> firstRun = readContent();
+        deleteAll();
+
+        // When
+        generator.generate(SMALL_DATASET);
+        List<String> secondRun = readContent();
+        deleteAll();
+        generator.generate(DatasetSpec.builder().seed(1L).creditorCount(10).debtorCount(5).purchaserCount(8)
+                .pendingInvoiceCount(300).financedInvoiceCount(2000).build());
+        List<String> otherSeedRun = readContent();
+
+        // Then
+        assertEquals(firstRun, secondRun);
+        assertNotEquals(firstRun, otherSeedRun);
+    }
+
+    /**
+     * The rows by their content; ids are left out because the identity columns keep counting after a delete.
+     */
+    private List<String> readContent() {
+        List<String> content = jdbcTemplate.queryForList(
+                "SELECT p.name || ':' || p.minimum_financing_term_in_days || ':' || c.name || ':' || " +
+                        "c.max_financing_rate_in_bps || ':' || s.annual_rate_in_bps " +
+                        "FROM purchaser p " +
+                        "JOIN purchaser_purchaser_financing_settings ps ON ps.purchaser_id = p.id " +
+                        "JOIN purchaser_financing_settings s ON s.id = ps.purchaser_financing_settings_id " +
+                        "JOIN creditor c ON c.id = s.creditor_id ORDER BY p.name, c.name", String.class);
+        content.addAll(jdbcTemplate.queryForList(
+                "SELECT c.name || ':' || i.maturity_date || ':' || i.value_in_cents || ':' || i.financing_status " +
+                        "FROM invoice i JOIN creditor c ON c.id = i.creditor_id ORDER BY i.id", String.class));
+        return content;
+    }
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    private void deleteAll() {
+        jdbcTemplate.update("DELETE FROM quarantined_invoice");
+        jdbcTemplate.update("DELETE FROM financing_run");
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser_purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM debtor");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+}
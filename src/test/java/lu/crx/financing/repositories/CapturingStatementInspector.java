@@ -0,0 +1,30 @@
+package lu.crx.financing.repositories;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the SQL Hibernate generates, for the tests checking the plans of the repository queries. Registered with
+ * {@code spring.jpa.properties.hibernate.session_factory.statement_inspector}, which instantiates it by class name,
+ * hence the static list.
+ */
+public class CapturingStatementInspector implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    static void clear() {
+        STATEMENTS.clear();
+    }
+
+    static List<String> getStatements() {
+        return List.copyOf(STATEMENTS);
+    }
+}
@@ -0,0 +1,77 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.PersistenceConfiguration;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.Purchaser;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(PersistenceConfiguration.class)
+@EnableConfigurationProperties(FinancingProperties.class)
+class InvoiceFinancingDetailsRepositoryTest {
+
+    private static final int INVOICE_COUNT = 200;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private InvoiceFinancingDetailsRepository financingDetailsRepository;
+
+    @Test
+    void shouldInsertFinancingDetailsInJdbcBatches() {
+        // Given
+        Creditor creditor = entityManager.persist(Creditor.builder().name("Creditor1").maxFinancingRateInBps(3).build());
+        Purchaser purchaser = entityManager.persist(Purchaser.builder().name("Purchaser1").minimumFinancingTermInDays(20).build());
+
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < INVOICE_COUNT; i++) {
+            invoices.add(entityManager.persist(Invoice.builder()
+                    .creditor(creditor)
+                    .maturityDate(LocalDate.now().plusDays(30))
+                    .valueInCents(10_000_00L)
+                    .build()));
+        }
+        entityManager.flush();
+
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // When
+        for (Invoice invoice : invoices) {
+            financingDetailsRepository.save(InvoiceFinancingDetails.builder()
+                    .invoice(invoice)
+                    .purchaser(purchaser)
+                    .financingDate(LocalDate.now())
+                    .financingTermInDays(30)
+                    .financingRateInBps(3)
+                    .earlyPaymentAmountInCents(9_997_00L)
+                    .discountedAmountInCents(3_00L)
+                    .build());
+        }
+        entityManager.flush();
+
+        // Then
+        assertEquals(INVOICE_COUNT, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() < 20,
+                "Expected batched inserts, but " + statistics.getPrepareStatementCount() + " statements were prepared");
+    }
+}
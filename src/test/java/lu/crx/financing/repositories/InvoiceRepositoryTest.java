@@ -0,0 +1,141 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
+import lu.crx.financing.entities.Purchaser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+        "lu.crx.financing.repositories.CapturingStatementInspector")
+@EnableConfigurationProperties(FinancingProperties.class)
+class InvoiceRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Creditor creditor;
+
+    @BeforeEach
+    void setUp() {
+        creditor = entityManager.persist(Creditor.builder()
+                .name("Creditor1")
+                .maxFinancingRateInBps(3)
+                .build());
+    }
+
+    @Test
+    void shouldReadPendingInvoicesInKeysetPages() {
+        // Given
+        Invoice pending1 = persistInvoice(InvoiceFinancingStatus.PENDING);
+        persistInvoice(InvoiceFinancingStatus.FINANCED);
+        Invoice pending2 = persistInvoice(InvoiceFinancingStatus.PENDING);
+        Invoice pending3 = persistInvoice(InvoiceFinancingStatus.PENDING);
+        entityManager.flush();
+        entityManager.clear();
+
+        // When
+        List<Invoice> firstPage = invoiceRepository.findNonFinancedInvoicesAfter(0L, 2);
+        List<Invoice> secondPage = invoiceRepository.findNonFinancedInvoicesAfter(firstPage.get(1).getId(), 2);
+
+        // Then
+        assertEquals(List.of(pending1.getId(), pending2.getId()), firstPage.stream().map(Invoice::getId).toList());
+        assertEquals(List.of(pending3.getId()), secondPage.stream().map(Invoice::getId).toList());
+    }
+
+    @Test
+    void shouldUsePendingIndexForPendingInvoiceQuery() {
+        // Given
+        CapturingStatementInspector.clear();
+        invoiceRepository.findPendingInvoicesAfter(0L, 1000);
+        List<String> statements = CapturingStatementInspector.getStatements();
+        assertEquals(1, statements.size(), statements::toString);
+        String sql = statements.get(0);
+
+        // When
+        // The parameters in the order of the generated statement: status, last invoice id, page size
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class,
+                InvoiceFinancingStatus.PENDING.name(), 0L, 1000);
+
+        // Then
+        assertTrue(plan.toUpperCase().contains("PUBLIC.IDX_INVOICE_PENDING:"), plan);
+    }
+
+    @Test
+    void shouldMarkInvoicesWithFinancingDetailsAsFinanced() {
+        // Given
+        Purchaser purchaser = entityManager.persist(Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .build());
+
+        Invoice financed = persistInvoice(InvoiceFinancingStatus.PENDING);
+        Invoice otherChunk = persistInvoice(InvoiceFinancingStatus.PENDING);
+        Invoice unfinanced = persistInvoice(InvoiceFinancingStatus.PENDING);
+        persistFinancingDetails(financed, purchaser);
+        persistFinancingDetails(otherChunk, purchaser);
+
+        // When
+        int updatedInvoiceCount = invoiceRepository.markFinancedFromDetails(
+                List.of(financed.getId(), unfinanced.getId()));
+        entityManager.clear();
+
+        // Then
+        assertEquals(1, updatedInvoiceCount);
+
+        Invoice updatedFinanced = entityManager.find(Invoice.class, financed.getId());
+        assertEquals(InvoiceFinancingStatus.FINANCED, updatedFinanced.getFinancingStatus());
+        assertEquals(9_997_00L, updatedFinanced.getEarlyPaymentAmountInCents());
+        assertEquals(3_00L, updatedFinanced.getDiscountedAmountInCents());
+
+        Invoice updatedUnfinanced = entityManager.find(Invoice.class, unfinanced.getId());
+        assertEquals(InvoiceFinancingStatus.PENDING, updatedUnfinanced.getFinancingStatus());
+        assertNull(updatedUnfinanced.getEarlyPaymentAmountInCents());
+
+        // The invoices of another chunk are left to it, even within the id range
+        assertEquals(InvoiceFinancingStatus.PENDING,
+                entityManager.find(Invoice.class, otherChunk.getId()).getFinancingStatus());
+    }
+
+    private void persistFinancingDetails(Invoice invoice, Purchaser purchaser) {
+        entityManager.persist(InvoiceFinancingDetails.builder()
+                .invoice(invoice)
+                .purchaser(purchaser)
+                .financingDate(LocalDate.now())
+                .financingTermInDays(30)
+                .financingRateInBps(3)
+                .earlyPaymentAmountInCents(9_997_00L)
+                .discountedAmountInCents(3_00L)
+                .build());
+    }
+
+    private Invoice persistInvoice(InvoiceFinancingStatus status) {
+        return entityManager.persist(Invoice.builder()
+                .creditor(creditor)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .valueInCents(10_000_00L)
+                .financingStatus(status)
+                .build());
+    }
+}
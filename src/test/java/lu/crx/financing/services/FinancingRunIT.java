@@ -0,0 +1,363 @@
+package lu.crx.financing.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.entities.QuarantinedInvoice;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.QuarantinedInvoiceRepository;
+import lu.crx.financing.services.batch.InvoiceFinancingApplier;
+import lu.crx.financing.services.financing.InvoiceFinancingService;
+import lu.crx.financing.services.financing.PurchaserSnapshotService;
+import lu.crx.financing.services.journal.FinancingDecisionJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Verifies that financing runs resume from their checkpoint and set failing invoices aside, and that the journaled
+ * decisions of a failed run are replayed exactly once.
+ */
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = "financing.journal.file=target/journal/financing-run-it.journal")
+class FinancingRunIT {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private InvoiceFinancingService financingService;
+
+    @Autowired
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @Autowired
+    private FinancingRunRepository financingRunRepository;
+
+    @Autowired
+    private QuarantinedInvoiceRepository quarantinedInvoiceRepository;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @SpyBean
+    private InvoiceFinancingApplier invoiceFinancingApplier;
+
+    @SpyBean
+    private FinancingDecisionJournal financingDecisionJournal;
+
+    @BeforeEach
+    void setUp() {
+        deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        financingProperties.getJournal().setEnabled(false);
+        deleteAll();
+    }
+
+    @Test
+    void shouldResumeInterruptedRunAfterCheckpoint() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        FinancingRun interruptedRun = financingRunRepository.save(interruptedRun(FinancingRunStatus.RUNNING,
+                LocalDate.now(), staleHeartbeat(), invoices.get(0).getId()));
+
+        // When
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(InvoiceFinancingStatus.PENDING, InvoiceFinancingStatus.FINANCED,
+                InvoiceFinancingStatus.FINANCED), readFinancingStatuses(invoices));
+
+        assertEquals(1, financingRunRepository.count());
+        FinancingRun resumedRun = financingRunRepository.findById(interruptedRun.getId()).orElseThrow();
+        assertEquals(FinancingRunStatus.COMPLETED, resumedRun.getStatus());
+        assertEquals(3, resumedRun.getProcessedCount());
+        assertEquals(3, resumedRun.getFinancedCount());
+        assertEquals(invoices.get(2).getId(), resumedRun.getLastInvoiceId());
+        assertTrue(resumedRun.getHeartbeatAt().isAfter(interruptedRun.getHeartbeatAt()));
+    }
+
+    @Test
+    void shouldNotStartAnotherRunWhileLatestRunIsAlive() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        FinancingRun liveRun = financingRunRepository.save(interruptedRun(FinancingRunStatus.RUNNING,
+                LocalDate.now(), Instant.now(), invoices.get(0).getId()));
+
+        // When
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(InvoiceFinancingStatus.PENDING, InvoiceFinancingStatus.PENDING,
+                InvoiceFinancingStatus.PENDING), readFinancingStatuses(invoices));
+
+        List<FinancingRun> runs = financingRunRepository.findAll();
+        assertEquals(1, runs.size());
+        assertEquals(FinancingRunStatus.RUNNING, runs.get(0).getStatus());
+        assertEquals(liveRun.getOwner(), runs.get(0).getOwner());
+        assertEquals(1, runs.get(0).getProcessedCount());
+    }
+
+    @Test
+    void shouldNotResumeRunOfEarlierFinancingDate() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        financingRunRepository.save(interruptedRun(FinancingRunStatus.FAILED,
+                LocalDate.now().minusDays(1), staleHeartbeat(), invoices.get(1).getId()));
+
+        // When
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(InvoiceFinancingStatus.FINANCED, InvoiceFinancingStatus.FINANCED,
+                InvoiceFinancingStatus.FINANCED), readFinancingStatuses(invoices));
+
+        List<FinancingRun> runs = financingRunRepository.findAll();
+        assertEquals(2, runs.size());
+        assertEquals(FinancingRunStatus.FAILED, runs.get(0).getStatus());
+        assertEquals(FinancingRunStatus.COMPLETED, runs.get(1).getStatus());
+        assertEquals(LocalDate.now(), runs.get(1).getFinancingDate());
+        assertEquals(3, runs.get(1).getProcessedCount());
+    }
+
+    @Test
+    void shouldQuarantineFailingInvoiceAndCompleteRun() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        long failingInvoiceId = invoices.get(1).getId();
+        doThrow(new IllegalStateException("Invoice " + failingInvoiceId + " is broken"))
+                .when(invoiceFinancingApplier)
+                .attemptToFinanceInvoice(argThat(invoice -> invoice.getId() == failingInvoiceId), any());
+        double financedCountBefore = financedInvoiceCount();
+
+        // When
+        financingService.processInvoiceFinancing();
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(InvoiceFinancingStatus.FINANCED, InvoiceFinancingStatus.QUARANTINED,
+                InvoiceFinancingStatus.FINANCED), readFinancingStatuses(invoices));
+
+        List<FinancingRun> runs = financingRunRepository.findAll();
+        assertEquals(2, runs.size());
+        FinancingRun firstRun = runs.get(0);
+        assertEquals(FinancingRunStatus.COMPLETED, firstRun.getStatus());
+        assertEquals(3, firstRun.getProcessedCount());
+        assertEquals(2, firstRun.getFinancedCount());
+        assertEquals(1, firstRun.getQuarantinedCount());
+        // The quarantined invoice is not picked up again by the next run
+        assertEquals(0, runs.get(1).getProcessedCount());
+        // The first invoice is counted by the retry only, not by the chunk that rolled back
+        assertEquals(2, financedInvoiceCount() - financedCountBefore);
+
+        List<QuarantinedInvoice> quarantinedInvoices = quarantinedInvoiceRepository.findByFinancingRunId(firstRun.getId());
+        assertEquals(1, quarantinedInvoices.size());
+        assertTrue(quarantinedInvoices.get(0).getError().contains("Invoice " + failingInvoiceId + " is broken"));
+    }
+
+    @Test
+    void shouldNotQuarantineRetriedInvoiceFinancedMeanwhile() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        long failingInvoiceId = invoices.get(1).getId();
+        TransactionTemplate otherTransaction = new TransactionTemplate(template.getTransactionManager());
+        otherTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        AtomicInteger attemptCount = new AtomicInteger();
+        // The chunk fails on the invoice, and it is financed elsewhere before its retry fails as well
+        doAnswer(invocation -> {
+            if (attemptCount.incrementAndGet() == 2) {
+                otherTransaction.executeWithoutResult(transactionStatus -> jdbcTemplate.update(
+                        "UPDATE invoice SET financing_status = 'FINANCED' WHERE id = ?", failingInvoiceId));
+            }
+            throw new IllegalStateException("Invoice " + failingInvoiceId + " is broken");
+        }).when(invoiceFinancingApplier)
+                .attemptToFinanceInvoice(argThat(invoice -> invoice.getId() == failingInvoiceId), any());
+
+        // When
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(2, attemptCount.get());
+        assertEquals(List.of(InvoiceFinancingStatus.FINANCED, InvoiceFinancingStatus.FINANCED,
+                InvoiceFinancingStatus.FINANCED), readFinancingStatuses(invoices));
+
+        FinancingRun run = financingRunRepository.findAll().get(0);
+        assertEquals(FinancingRunStatus.COMPLETED, run.getStatus());
+        assertEquals(3, run.getProcessedCount());
+        assertEquals(2, run.getFinancedCount());
+        assertEquals(0, run.getQuarantinedCount());
+        assertEquals(invoices.get(2).getId(), run.getLastInvoiceId());
+        assertEquals(0, quarantinedInvoiceRepository.count());
+    }
+
+    @Test
+    void shouldReplayJournaledDecisionsOfFailedCommit() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        financingProperties.getJournal().setEnabled(true);
+        doThrow(new IllegalStateException("Lost the database connection"))
+                .doCallRealMethod()
+                .when(invoiceFinancingApplier).applyDecisions(any());
+        assertThrows(IllegalStateException.class, () -> financingService.processInvoiceFinancing());
+        assertEquals(3, financingDecisionJournal.getUnappliedCount());
+
+        // When
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(InvoiceFinancingStatus.FINANCED, InvoiceFinancingStatus.FINANCED,
+                InvoiceFinancingStatus.FINANCED), readFinancingStatuses(invoices));
+        assertEquals(0, financingDecisionJournal.getUnappliedCount());
+
+        List<FinancingRun> runs = financingRunRepository.findAll();
+        assertEquals(1, runs.size());
+        assertEquals(FinancingRunStatus.COMPLETED, runs.get(0).getStatus());
+        assertEquals(3, runs.get(0).getProcessedCount());
+        assertEquals(3, runs.get(0).getFinancedCount());
+    }
+
+    @Test
+    void shouldNotApplyJournaledDecisionsTwiceWhenCommittedBeforeFailure() {
+        // Given
+        List<Invoice> invoices = seedFinanceableInvoices(3);
+        financingProperties.getJournal().setEnabled(true);
+        // The batch is committed, but the journal does not record it
+        doThrow(new IllegalStateException("Disk full"))
+                .doCallRealMethod()
+                .when(financingDecisionJournal).markApplied(anyInt());
+        assertThrows(IllegalStateException.class, () -> financingService.processInvoiceFinancing());
+        assertEquals(3, financingDecisionJournal.getUnappliedCount());
+
+        // When
+        financingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(InvoiceFinancingStatus.FINANCED, InvoiceFinancingStatus.FINANCED,
+                InvoiceFinancingStatus.FINANCED), readFinancingStatuses(invoices));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoice_financing_details", Integer.class));
+        assertEquals(0, financingDecisionJournal.getUnappliedCount());
+
+        List<FinancingRun> runs = financingRunRepository.findAll();
+        assertEquals(1, runs.size());
+        assertEquals(3, runs.get(0).getProcessedCount());
+        assertEquals(3, runs.get(0).getFinancedCount());
+    }
+
+    private List<Invoice> seedFinanceableInvoices(int invoiceCount) {
+        List<Invoice> invoices = new ArrayList<>();
+        template.executeWithoutResult(transactionStatus -> {
+            Creditor creditor = entityManager.persist(Creditor.builder()
+                    .name("Creditor1")
+                    .maxFinancingRateInBps(3)
+                    .build());
+            entityManager.persist(Purchaser.builder()
+                    .name("Purchaser1")
+                    .minimumFinancingTermInDays(20)
+                    .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                            .annualRateInBps(40)
+                            .creditor(creditor)
+                            .build())
+                    .build());
+            for (int i = 0; i < invoiceCount; i++) {
+                invoices.add(entityManager.persist(Invoice.builder()
+                        .creditor(creditor)
+                        .valueInCents(10_000_00L)
+                        .maturityDate(LocalDate.now().plusDays(30))
+                        .build()));
+            }
+        });
+        purchaserSnapshotService.refresh();
+        return invoices;
+    }
+
+    /**
+     * A run of another process that processed one invoice up to its checkpoint.
+     */
+    private static FinancingRun interruptedRun(FinancingRunStatus status, LocalDate financingDate,
+                                               Instant heartbeatAt, long lastInvoiceId) {
+        return FinancingRun.builder()
+                .status(status)
+                .snapshotVersion(1)
+                .financingDate(financingDate)
+                .owner("other-instance")
+                .startedAt(heartbeatAt.minus(Duration.ofMinutes(1)))
+                .heartbeatAt(heartbeatAt)
+                .lastInvoiceId(lastInvoiceId)
+                .processedCount(1)
+                .financedCount(1)
+                .build();
+    }
+
+    private Instant staleHeartbeat() {
+        return Instant.now().minus(financingProperties.getRun().getStaleAfter()).minusSeconds(1);
+    }
+
+    private List<InvoiceFinancingStatus> readFinancingStatuses(List<Invoice> invoices) {
+        return invoices.stream()
+                .map(invoice -> InvoiceFinancingStatus.valueOf(jdbcTemplate.queryForObject(
+                        "SELECT financing_status FROM invoice WHERE id = ?", String.class, invoice.getId())))
+                .toList();
+    }
+
+    private double financedInvoiceCount() {
+        return meterRegistry.get(FinancingMetrics.INVOICE_COUNTER).tag("outcome", "financed").counter().count();
+    }
+
+    private void deleteAll() {
+        jdbcTemplate.update("DELETE FROM quarantined_invoice");
+        jdbcTemplate.update("DELETE FROM financing_run");
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser_purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM debtor");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+}
@@ -1,11 +1,16 @@
 package lu.crx.financing.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lu.crx.financing.entities.Creditor;
 import lu.crx.financing.entities.Debtor;
 import lu.crx.financing.entities.Purchaser;
 import lu.crx.financing.entities.PurchaserFinancingSettings;
 import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.services.financing.InstantFinancingService;
 import lu.crx.financing.services.financing.InvoiceFinancingService;
+import lu.crx.financing.services.financing.PurchaserSnapshotService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
@@ -17,6 +22,8 @@ import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDate;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestEntityManager
@@ -32,6 +39,15 @@ class FinancingServiceIT {
     @Autowired
     private InvoiceFinancingService financingService;
 
+    @Autowired
+    private InstantFinancingService instantFinancingService;
+
+    @Autowired
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     /**
      * The test case based on example from README.md
      */
@@ -79,14 +95,64 @@ class FinancingServiceIT {
             entityManager.persist(purchaser2);
         });
 
+        double financedBefore = financedInvoiceCount();
+
         financingService.processInvoiceFinancing();
 
+        assertEquals(financedBefore + 1, financedInvoiceCount());
+
         template.executeWithoutResult(transactionStatus -> {
             Invoice updatedInvoice = entityManager.find(Invoice.class, invoice.getId());
 
             assertEquals(9_997_00, updatedInvoice.getEarlyPaymentAmountInCents());
             assertEquals(300, updatedInvoice.getDiscountedAmountInCents());
             assertEquals(10_000_00, updatedInvoice.getEarlyPaymentAmountInCents() + updatedInvoice.getDiscountedAmountInCents());
+            assertEquals(InvoiceFinancingStatus.FINANCED, updatedInvoice.getFinancingStatus());
+        });
+    }
+
+    @Test
+    void testInstantFinancing() {
+        Creditor creditor = Creditor.builder()
+                .maxFinancingRateInBps(3)
+                .name("Creditor2")
+                .build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .name("Purchaser2")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .annualRateInBps(40)
+                        .creditor(creditor)
+                        .build())
+                .build();
+
+        Invoice invoice = Invoice.builder()
+                .creditor(creditor)
+                .valueInCents(10_000_00L)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+
+        template.executeWithoutResult(transactionStatus -> {
+            entityManager.persist(creditor);
+            entityManager.persist(purchaser);
+            entityManager.persist(invoice);
         });
+        purchaserSnapshotService.refresh();
+
+        assertTrue(instantFinancingService.financeInvoice(invoice.getId()));
+        assertFalse(instantFinancingService.financeInvoice(invoice.getId()));
+
+        template.executeWithoutResult(transactionStatus -> {
+            Invoice updatedInvoice = entityManager.find(Invoice.class, invoice.getId());
+
+            assertEquals(9_997_00, updatedInvoice.getEarlyPaymentAmountInCents());
+            assertEquals(300, updatedInvoice.getDiscountedAmountInCents());
+            assertEquals(InvoiceFinancingStatus.FINANCED, updatedInvoice.getFinancingStatus());
+        });
+    }
+
+    private double financedInvoiceCount() {
+        return meterRegistry.get(FinancingMetrics.INVOICE_COUNTER).tag("outcome", "financed").counter().count();
     }
 }
@@ -0,0 +1,288 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceRangeLease;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.repositories.FinancingLeaseRoundRepository;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.InvoiceRangeLeaseRepository;
+import lu.crx.financing.services.financing.FinancingLeaseLostException;
+import lu.crx.financing.services.financing.FinancingLeaseService;
+import lu.crx.financing.services.financing.InvoiceFinancingService;
+import lu.crx.financing.services.financing.PurchaserSnapshotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs several financing workers at the same time against one H2 file database, as several instances would, and
+ * verifies that they share the invoices through their leases: every invoice is processed by exactly one of them and
+ * financed at most once.
+ */
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/h2/leased-financing-it;LOCK_TIMEOUT=10000",
+        "financing.lease.max-range-size=100",
+        "financing.lease.poll-interval=50ms",
+        "financing.read.page-size=50"
+})
+class LeasedFinancingIT {
+
+    private static final int CREDITOR_COUNT = 20;
+    private static final int PURCHASER_COUNT = 10;
+    private static final int INVOICE_COUNT = 2000;
+    private static final int WORKER_COUNT = 4;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private InvoiceFinancingService financingService;
+
+    @Autowired
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @Autowired
+    private FinancingLeaseService leaseService;
+
+    @Autowired
+    private FinancingRunRepository financingRunRepository;
+
+    @Autowired
+    private FinancingLeaseRoundRepository roundRepository;
+
+    @Autowired
+    private InvoiceRangeLeaseRepository leaseRepository;
+
+    @BeforeEach
+    void setUp() {
+        deleteAll();
+        seedRandomData(new Random(42));
+        purchaserSnapshotService.refresh();
+    }
+
+    @AfterEach
+    void tearDown() {
+        financingProperties.getLease().setEnabled(false);
+        financingProperties.getLease().setTimeToLive(new FinancingProperties.Lease().getTimeToLive());
+        deleteAll();
+    }
+
+    @Test
+    void shouldFinanceEveryInvoiceExactlyOnceWithConcurrentWorkers() throws Exception {
+        // Given
+        financingService.processInvoiceFinancing();
+        List<String> sequentialResults = readFinancingResults();
+        resetFinancingResults();
+
+        // When
+        financingProperties.getLease().setEnabled(true);
+        runWorkers(WORKER_COUNT);
+
+        // Then
+        assertEquals(sequentialResults, readFinancingResults());
+        assertEveryInvoiceProcessedOnce(WORKER_COUNT);
+        assertTrue(latestRuns(WORKER_COUNT).stream().filter(run -> run.getProcessedCount() > 0).count() > 1,
+                "The ranges were not shared between the workers");
+        assertTrue(leaseRepository.findAll().stream().allMatch(lease -> lease.getCompletedAt() != null));
+    }
+
+    @Test
+    void shouldTakeOverExpiredLeaseOfDeadInstance() throws Exception {
+        // Given
+        financingProperties.getLease().setEnabled(true);
+        financingProperties.getLease().setTimeToLive(Duration.ofMillis(500));
+        long roundId = leaseService.joinOrPlanRound();
+        InvoiceRangeLease abandoned = leaseService.findOpenLeases(roundId).get(0);
+        assertTrue(leaseService.tryClaim(abandoned, "dead-instance"));
+
+        // When
+        runWorkers(2);
+
+        // Then
+        assertEveryInvoiceProcessedOnce(2);
+        InvoiceRangeLease takenOver = leaseRepository.findById(abandoned.getId()).orElseThrow();
+        assertNotNull(takenOver.getCompletedAt());
+        assertEquals(2, takenOver.getLeaseToken());
+        assertNotNull(roundRepository.findById(roundId).orElseThrow().getCompletedAt());
+    }
+
+    @Test
+    void shouldRejectOwnerWhoseLeaseWasTakenOver() throws Exception {
+        // Given
+        financingProperties.getLease().setTimeToLive(Duration.ofMillis(1));
+        long roundId = leaseService.joinOrPlanRound();
+        InvoiceRangeLease stalled = leaseService.findOpenLeases(roundId).get(0);
+        assertTrue(leaseService.tryClaim(stalled, "stalled-instance"));
+        Thread.sleep(10);
+
+        // When
+        InvoiceRangeLease takenOver = leaseRepository.findById(stalled.getId()).orElseThrow();
+        assertTrue(leaseService.tryClaim(takenOver, "other-instance"));
+
+        // Then
+        assertThrows(FinancingLeaseLostException.class,
+                () -> template.executeWithoutResult(status -> leaseService.renew(stalled)));
+        assertThrows(FinancingLeaseLostException.class, () -> leaseService.complete(stalled));
+        leaseService.complete(takenOver);
+        assertNotNull(leaseRepository.findById(stalled.getId()).orElseThrow().getCompletedAt());
+    }
+
+    /**
+     * Starts the workers at the same time, each as the financing run of its own instance.
+     */
+    private void runWorkers(int workerCount) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    financingService.processInvoiceFinancing();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The runs only count committed chunks, so an invoice processed by two workers would be counted twice.
+     */
+    private void assertEveryInvoiceProcessedOnce(int workerCount) {
+        List<FinancingRun> runs = latestRuns(workerCount);
+        long financedInvoiceCount = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM invoice WHERE financing_status = 'FINANCED'", Long.class);
+        long financingDetailsCount = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM invoice_financing_details", Long.class);
+
+        assertTrue(financedInvoiceCount > 0 && financedInvoiceCount < INVOICE_COUNT);
+        assertEquals(financedInvoiceCount, financingDetailsCount);
+        assertEquals(INVOICE_COUNT, runs.stream().mapToLong(FinancingRun::getProcessedCount).sum());
+        assertEquals(financedInvoiceCount, runs.stream().mapToLong(FinancingRun::getFinancedCount).sum());
+        assertEquals(0, runs.stream().mapToLong(FinancingRun::getQuarantinedCount).sum());
+    }
+
+    private List<FinancingRun> latestRuns(int count) {
+        return financingRunRepository.findAll().stream()
+                .sorted(Comparator.comparingLong(FinancingRun::getId).reversed())
+                .limit(count)
+                .toList();
+    }
+
+    private void seedRandomData(Random random) {
+        template.executeWithoutResult(transactionStatus -> {
+            Debtor debtor = entityManager.persist(Debtor.builder().name("Debtor").build());
+
+            List<Creditor> creditors = new ArrayList<>();
+            for (int i = 0; i < CREDITOR_COUNT; i++) {
+                creditors.add(entityManager.persist(Creditor.builder()
+                        .name("Creditor" + i)
+                        .maxFinancingRateInBps(1 + random.nextInt(10))
+                        .build()));
+            }
+
+            for (int i = 0; i < PURCHASER_COUNT; i++) {
+                List<PurchaserFinancingSettings> settings = new ArrayList<>();
+                for (Creditor creditor : creditors) {
+                    if (random.nextInt(3) == 0) {
+                        settings.add(PurchaserFinancingSettings.builder()
+                                .creditor(creditor)
+                                .annualRateInBps(10 + random.nextInt(110))
+                                .build());
+                    }
+                }
+                entityManager.persist(Purchaser.builder()
+                        .name("Purchaser" + i)
+                        .minimumFinancingTermInDays(random.nextInt(60))
+                        .purchaserFinancingSettings(settings)
+                        .build());
+            }
+
+            for (int i = 0; i < INVOICE_COUNT; i++) {
+                entityManager.persist(Invoice.builder()
+                        .creditor(creditors.get(random.nextInt(CREDITOR_COUNT)))
+                        .debtor(debtor)
+                        .maturityDate(LocalDate.now().plusDays(random.nextInt(120) - 5))
+                        .valueInCents(1_00L + random.nextInt(100_000_00))
+                        .build());
+            }
+        });
+    }
+
+    private List<String> readFinancingResults() {
+        return jdbcTemplate.query(
+                "SELECT i.id, i.financing_status, i.early_payment_amount_in_cents, i.discounted_amount_in_cents, " +
+                        "d.purchaser_id, d.financing_term_in_days, d.financing_rate_in_bps " +
+                        "FROM invoice i LEFT JOIN invoice_financing_details d ON d.invoice_id = i.id ORDER BY i.id",
+                (resultSet, rowNum) -> String.join("|",
+                        resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getString(4), resultSet.getString(5), resultSet.getString(6),
+                        resultSet.getString(7)));
+    }
+
+    private void resetFinancingResults() {
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("UPDATE invoice SET financing_status = 'PENDING', " +
+                "early_payment_amount_in_cents = NULL, discounted_amount_in_cents = NULL");
+    }
+
+    private void deleteAll() {
+        jdbcTemplate.update("DELETE FROM invoice_range_lease");
+        jdbcTemplate.update("DELETE FROM financing_lease_round");
+        jdbcTemplate.update("DELETE FROM quarantined_invoice");
+        jdbcTemplate.update("DELETE FROM financing_run");
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser_purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM debtor");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+}
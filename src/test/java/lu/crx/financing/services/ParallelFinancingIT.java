@@ -0,0 +1,231 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
+import lu.crx.financing.config.ParallelPoolType;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.services.financing.InvoiceFinancingService;
+import lu.crx.financing.services.financing.PurchaserSnapshotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureTestEntityManager;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies on randomized data that the parallel, creditor-partitioned engine, the pipelined, the journaled and the
+ * kernel runs finance exactly the same invoices, with the same purchasers and amounts, as the sequential path, whatever
+ * the write mode.
+ */
+@SpringBootTest
+@AutoConfigureTestEntityManager
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"financing.journal.file=target/journal/parallel-financing-it.journal",
+                // Small enough for the journaled runs to fill it and start over
+                "financing.journal.capacity=16KB"})
+class ParallelFinancingIT {
+
+    private static final int CREDITOR_COUNT = 30;
+    private static final int PURCHASER_COUNT = 20;
+    private static final int INVOICE_COUNT = 3000;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate template;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private InvoiceFinancingService financingService;
+
+    @Autowired
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @BeforeEach
+    void setUp() {
+        deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        financingProperties.getParallel().setEnabled(false);
+        financingProperties.getParallel().setPoolType(ParallelPoolType.FORK_JOIN);
+        financingProperties.getParallel().setMaxPartitionSize(new FinancingProperties.Parallel().getMaxPartitionSize());
+        financingProperties.getPipeline().setEnabled(false);
+        financingProperties.getPipeline().setQueueCapacity(new FinancingProperties.Pipeline().getQueueCapacity());
+        financingProperties.getJournal().setEnabled(false);
+        financingProperties.getJournal().setCommitBatchSize(new FinancingProperties.Journal().getCommitBatchSize());
+        financingProperties.getKernel().setEnabled(false);
+        financingProperties.getRead().setPageSize(new FinancingProperties.Read().getPageSize());
+        financingProperties.getWrite().setMode(new FinancingProperties.Write().getMode());
+        deleteAll();
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1L, 42L, 20230527L})
+    void shouldFinanceExactlyLikeSequentialRun(long seed) {
+        // Given
+        seedRandomData(new Random(seed));
+        purchaserSnapshotService.refresh();
+
+        financingProperties.getParallel().setEnabled(false);
+        financingService.processInvoiceFinancing();
+        List<String> sequentialResults = readFinancingResults();
+
+        // When
+        resetFinancingResults();
+        financingProperties.getParallel().setEnabled(true);
+        financingProperties.getParallel().setPoolType(ParallelPoolType.FORK_JOIN);
+        financingProperties.getParallel().setMaxPartitionSize(100);
+        financingService.processInvoiceFinancing();
+        List<String> forkJoinResults = readFinancingResults();
+
+        resetFinancingResults();
+        financingProperties.getParallel().setPoolType(ParallelPoolType.VIRTUAL_THREADS);
+        financingService.processInvoiceFinancing();
+        List<String> virtualThreadResults = readFinancingResults();
+
+        resetFinancingResults();
+        financingProperties.getParallel().setEnabled(false);
+        financingProperties.getPipeline().setEnabled(true);
+        financingProperties.getPipeline().setQueueCapacity(2);
+        financingProperties.getRead().setPageSize(100);
+        financingService.processInvoiceFinancing();
+        List<String> pipelineResults = readFinancingResults();
+
+        resetFinancingResults();
+        financingProperties.getPipeline().setEnabled(false);
+        financingProperties.getParallel().setEnabled(true);
+        financingProperties.getParallel().setPoolType(ParallelPoolType.FORK_JOIN);
+        financingProperties.getWrite().setMode(FinancingWriteMode.STATELESS);
+        financingService.processInvoiceFinancing();
+        List<String> statelessResults = readFinancingResults();
+
+        resetFinancingResults();
+        financingProperties.getParallel().setEnabled(false);
+        financingProperties.getWrite().setMode(new FinancingProperties.Write().getMode());
+        financingProperties.getJournal().setEnabled(true);
+        financingProperties.getJournal().setCommitBatchSize(250);
+        financingService.processInvoiceFinancing();
+        List<String> journalResults = readFinancingResults();
+
+        resetFinancingResults();
+        financingProperties.getJournal().setEnabled(false);
+        financingProperties.getKernel().setEnabled(true);
+        financingService.processInvoiceFinancing();
+        List<String> kernelResults = readFinancingResults();
+
+        resetFinancingResults();
+        financingProperties.getWrite().setMode(FinancingWriteMode.STATELESS);
+        financingService.processInvoiceFinancing();
+        List<String> statelessKernelResults = readFinancingResults();
+
+        // Then
+        long financedCount = sequentialResults.stream().filter(result -> result.contains("FINANCED")).count();
+        assertTrue(financedCount > 0 && financedCount < INVOICE_COUNT, "Seed " + seed + " financed " + financedCount);
+        assertEquals(sequentialResults, forkJoinResults, "Fork-join results differ for seed " + seed);
+        assertEquals(sequentialResults, virtualThreadResults, "Virtual thread results differ for seed " + seed);
+        assertEquals(sequentialResults, pipelineResults, "Pipeline results differ for seed " + seed);
+        assertEquals(sequentialResults, statelessResults, "Stateless write results differ for seed " + seed);
+        assertEquals(sequentialResults, journalResults, "Journaled results differ for seed " + seed);
+        assertEquals(sequentialResults, kernelResults, "Kernel results differ for seed " + seed);
+        assertEquals(sequentialResults, statelessKernelResults, "Stateless kernel results differ for seed " + seed);
+    }
+
+    private void seedRandomData(Random random) {
+        template.executeWithoutResult(transactionStatus -> {
+            Debtor debtor = entityManager.persist(Debtor.builder().name("Debtor").build());
+
+            List<Creditor> creditors = new ArrayList<>();
+            for (int i = 0; i < CREDITOR_COUNT; i++) {
+                creditors.add(entityManager.persist(Creditor.builder()
+                        .name("Creditor" + i)
+                        .maxFinancingRateInBps(1 + random.nextInt(10))
+                        .build()));
+            }
+
+            for (int i = 0; i < PURCHASER_COUNT; i++) {
+                List<PurchaserFinancingSettings> settings = new ArrayList<>();
+                for (Creditor creditor : creditors) {
+                    if (random.nextInt(3) == 0) {
+                        settings.add(PurchaserFinancingSettings.builder()
+                                .creditor(creditor)
+                                .annualRateInBps(10 + random.nextInt(110))
+                                .build());
+                    }
+                }
+                entityManager.persist(Purchaser.builder()
+                        .name("Purchaser" + i)
+                        .minimumFinancingTermInDays(random.nextInt(60))
+                        .purchaserFinancingSettings(settings)
+                        .build());
+            }
+
+            for (int i = 0; i < INVOICE_COUNT; i++) {
+                // A third of the invoices belong to the first creditor, to exercise the splitting of skewed creditors
+                Creditor creditor = random.nextInt(3) == 0
+                        ? creditors.get(0)
+                        : creditors.get(random.nextInt(CREDITOR_COUNT));
+                entityManager.persist(Invoice.builder()
+                        .creditor(creditor)
+                        .debtor(debtor)
+                        .maturityDate(LocalDate.now().plusDays(random.nextInt(120) - 5))
+                        .valueInCents(1_00L + random.nextInt(100_000_00))
+                        .build());
+            }
+        });
+    }
+
+    private List<String> readFinancingResults() {
+        return jdbcTemplate.query(
+                "SELECT i.id, i.financing_status, i.early_payment_amount_in_cents, i.discounted_amount_in_cents, " +
+                        "d.purchaser_id, d.financing_term_in_days, d.financing_rate_in_bps, d.financing_date " +
+                        "FROM invoice i LEFT JOIN invoice_financing_details d ON d.invoice_id = i.id ORDER BY i.id",
+                (resultSet, rowNum) -> String.join("|",
+                        resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getString(4), resultSet.getString(5), resultSet.getString(6),
+                        resultSet.getString(7), resultSet.getString(8)));
+    }
+
+    private void resetFinancingResults() {
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("UPDATE invoice SET financing_status = 'PENDING', " +
+                "early_payment_amount_in_cents = NULL, discounted_amount_in_cents = NULL");
+    }
+
+    private void deleteAll() {
+        jdbcTemplate.update("DELETE FROM quarantined_invoice");
+        jdbcTemplate.update("DELETE FROM financing_run");
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser_purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM debtor");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+}
@@ -0,0 +1,267 @@
+package lu.crx.financing.services.archive;
+
+import jakarta.persistence.EntityManager;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
+import lu.crx.financing.entities.InvoiceRecord;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.QuarantinedInvoice;
+import lu.crx.financing.repositories.ArchivedInvoiceFinancingDetailsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+/**
+ * Runs outside of a test transaction: every batch is archived in a transaction of its own.
+ */
+@DataJpaTest(properties = "financing.archive.batch-size=2")
+@Import({InvoiceArchiveService.class, InvoiceLookupService.class})
+@EnableConfigurationProperties(FinancingProperties.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InvoiceArchiveServiceTest {
+
+    @Autowired
+    private InvoiceArchiveService invoiceArchiveService;
+
+    @Autowired
+    private InvoiceLookupService invoiceLookupService;
+
+    @SpyBean
+    private ArchivedInvoiceFinancingDetailsRepository archivedFinancingDetailsRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Creditor creditor;
+
+    private Debtor debtor;
+
+    private Purchaser purchaser;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            creditor = Creditor.builder().name("Creditor1").maxFinancingRateInBps(5).build();
+            entityManager.persist(creditor);
+            debtor = Debtor.builder().name("Debtor1").build();
+            entityManager.persist(debtor);
+            purchaser = Purchaser.builder().name("Purchaser1").minimumFinancingTermInDays(10).build();
+            entityManager.persist(purchaser);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM archived_invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM archived_invoice");
+        jdbcTemplate.update("DELETE FROM quarantined_invoice");
+        jdbcTemplate.update("DELETE FROM financing_run");
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM debtor");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+
+    @Test
+    void shouldMoveFinancedInvoicesWithTheirDetailsInBatches() {
+        // Given
+        List<Long> financedIds = createFinancedInvoices(5);
+        List<Long> pendingIds = createPendingInvoices(2);
+
+        // When
+        long archivedCount = invoiceArchiveService.archiveFinancedInvoices();
+
+        // Then
+        assertEquals(5, archivedCount);
+        assertEquals(pendingIds, queryIds("SELECT id FROM invoice ORDER BY id"));
+        assertEquals(0, count("invoice_financing_details"));
+        assertEquals(financedIds, queryIds("SELECT id FROM archived_invoice ORDER BY id"));
+        assertEquals(financedIds,
+                queryIds("SELECT invoice_id FROM archived_invoice_financing_details ORDER BY invoice_id"));
+    }
+
+    @Test
+    void shouldResumeAfterInterruptedArchiving() {
+        // Given
+        List<Long> financedIds = createFinancedInvoices(5);
+        doThrow(new IllegalStateException("Connection lost"))
+                .when(archivedFinancingDetailsRepository).copyFinancingDetails(financedIds.subList(2, 4));
+        assertThrows(IllegalStateException.class, () -> invoiceArchiveService.archiveFinancedInvoices());
+        assertEquals(financedIds.subList(0, 2), queryIds("SELECT id FROM archived_invoice ORDER BY id"));
+        assertEquals(financedIds.subList(2, 5), queryIds("SELECT id FROM invoice ORDER BY id"));
+        reset(archivedFinancingDetailsRepository);
+
+        // When
+        long archivedCount = invoiceArchiveService.archiveFinancedInvoices();
+
+        // Then
+        assertEquals(3, archivedCount);
+        assertEquals(0, count("invoice"));
+        assertEquals(financedIds, queryIds("SELECT id FROM archived_invoice ORDER BY id"));
+        assertEquals(5, count("archived_invoice_financing_details"));
+    }
+
+    @Test
+    void shouldKeepFinancedInvoiceReferencedByQuarantineRecord() {
+        // Given
+        long quarantinedId = createFinancedInvoices(1).get(0);
+        transactionTemplate.executeWithoutResult(status -> {
+            FinancingRun run = FinancingRun.builder()
+                    .status(FinancingRunStatus.COMPLETED)
+                    .financingDate(LocalDate.now())
+                    .owner("archive-test")
+                    .startedAt(Instant.now())
+                    .heartbeatAt(Instant.now())
+                    .build();
+            entityManager.persist(run);
+            entityManager.persist(QuarantinedInvoice.builder()
+                    .invoice(entityManager.getReference(Invoice.class, quarantinedId))
+                    .financingRun(run)
+                    .quarantinedAt(Instant.now())
+                    .error("Timeout")
+                    .build());
+        });
+
+        // When
+        long archivedCount = invoiceArchiveService.archiveFinancedInvoices();
+
+        // Then
+        assertEquals(0, archivedCount);
+        assertEquals(List.of(quarantinedId), queryIds("SELECT id FROM invoice"));
+    }
+
+    @Test
+    void shouldFindInvoiceWhetherLiveOrArchived() {
+        // Given
+        long archivedId = createFinancedInvoices(1).get(0);
+        long pendingId = createPendingInvoices(1).get(0);
+        invoiceArchiveService.archiveFinancedInvoices();
+
+        // When
+        InvoiceRecord archivedInvoice = invoiceLookupService.findInvoice(archivedId).orElseThrow();
+        InvoiceRecord pendingInvoice = invoiceLookupService.findInvoice(pendingId).orElseThrow();
+
+        // Then
+        assertTrue(archivedInvoice.isArchived());
+        assertEquals(InvoiceFinancingStatus.FINANCED, archivedInvoice.getFinancingStatus());
+        assertEquals(debtor.getId(), archivedInvoice.getDebtorId());
+        assertEquals(9_900L, archivedInvoice.getEarlyPaymentAmountInCents());
+        assertEquals(purchaser.getId(), archivedInvoice.getPurchaserId());
+        assertEquals(30, archivedInvoice.getFinancingTermInDays());
+
+        assertFalse(pendingInvoice.isArchived());
+        assertEquals(InvoiceFinancingStatus.PENDING, pendingInvoice.getFinancingStatus());
+        assertNull(pendingInvoice.getPurchaserId());
+        assertTrue(invoiceLookupService.findInvoice(pendingId + 1000).isEmpty());
+    }
+
+    @Test
+    void shouldPageThroughLiveAndArchivedInvoicesOfCreditorInIdOrder() {
+        // Given
+        List<Long> ids = new ArrayList<>();
+        ids.addAll(createFinancedInvoices(2));
+        ids.addAll(createPendingInvoices(1));
+        ids.addAll(createFinancedInvoices(1));
+        ids.addAll(createPendingInvoices(1));
+        invoiceArchiveService.archiveFinancedInvoices();
+
+        // When
+        List<InvoiceRecord> firstPage = invoiceLookupService.findInvoicesOfCreditor(creditor.getId(), 0, 3);
+        List<InvoiceRecord> secondPage = invoiceLookupService.findInvoicesOfCreditor(
+                creditor.getId(), firstPage.get(2).getId(), 3);
+
+        // Then
+        assertEquals(ids.subList(0, 3), firstPage.stream().map(InvoiceRecord::getId).toList());
+        assertEquals(List.of(true, true, false), firstPage.stream().map(InvoiceRecord::isArchived).toList());
+        assertEquals(ids.subList(3, 5), secondPage.stream().map(InvoiceRecord::getId).toList());
+        assertEquals(List.of(true, false), secondPage.stream().map(InvoiceRecord::isArchived).toList());
+    }
+
+    private List<Long> createFinancedInvoices(int count) {
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Invoice invoice = Invoice.builder()
+                        .creditor(creditor)
+                        .debtor(debtor)
+                        .maturityDate(LocalDate.now().plusDays(30))
+                        .valueInCents(10_000L)
+                        .earlyPaymentAmountInCents(9_900L)
+                        .discountedAmountInCents(100L)
+                        .financingStatus(InvoiceFinancingStatus.FINANCED)
+                        .build();
+                entityManager.persist(invoice);
+                entityManager.persist(InvoiceFinancingDetails.builder()
+                        .invoice(invoice)
+                        .purchaser(purchaser)
+                        .financingDate(LocalDate.now())
+                        .financingTermInDays(30)
+                        .financingRateInBps(1)
+                        .earlyPaymentAmountInCents(9_900L)
+                        .discountedAmountInCents(100L)
+                        .build());
+                ids.add(invoice.getId());
+            }
+            return ids;
+        });
+    }
+
+    private List<Long> createPendingInvoices(int count) {
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Invoice invoice = Invoice.builder()
+                        .creditor(creditor)
+                        .maturityDate(LocalDate.now().plusDays(30))
+                        .valueInCents(10_000L)
+                        .build();
+                entityManager.persist(invoice);
+                ids.add(invoice.getId());
+            }
+            return ids;
+        });
+    }
+
+    private List<Long> queryIds(String sql) {
+        return jdbcTemplate.queryForList(sql, Long.class);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+}
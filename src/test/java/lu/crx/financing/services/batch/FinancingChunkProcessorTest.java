@@ -0,0 +1,191 @@
+package lu.crx.financing.services.batch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceRangeLease;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.services.financing.FinancingLeaseLostException;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.FinancingRunService;
+import lu.crx.financing.services.financing.PurchaserSnapshot;
+import lu.crx.financing.utils.PersistenceContextFlushController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FinancingChunkProcessorTest {
+
+    private static final long RUN_ID = 3L;
+
+    @Mock
+    private PendingInvoiceReader pendingInvoiceReader;
+
+    @Mock
+    private InvoiceBatchProcessor invoiceBatchProcessor;
+
+    @Mock
+    private PersistenceContextFlushController flushController;
+
+    @Mock
+    private FinancingRunService financingRunService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FinancingChunkProcessor chunkProcessor;
+
+    private FinancingRunContext context;
+
+    @BeforeEach
+    void setUp() {
+        chunkProcessor = new FinancingChunkProcessor(pendingInvoiceReader, invoiceBatchProcessor, flushController,
+                financingRunService, transactionManager, new FinancingMetrics(new SimpleMeterRegistry()));
+        context = new FinancingRunContext(LocalDate.now(), mock(PurchaserSnapshot.class), RUN_ID);
+    }
+
+    @Test
+    void shouldCommitChunkTogetherWithCheckpoint() {
+        // Given
+        List<Invoice> pendingInvoices = List.of(Invoice.builder().id(4L).build(), Invoice.builder().id(9L).build());
+        when(invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, context)).thenReturn(1);
+
+        // When
+        FinancingChunkResult chunk = chunkProcessor.processChunk(() -> pendingInvoices, true, context);
+
+        // Then
+        assertEquals(2, chunk.getInvoiceCount());
+        assertEquals(1, chunk.getFinancedCount());
+        assertEquals(9L, chunk.getLastInvoiceId());
+        verify(flushController).flushAndClear(eq(context), any(Integer.class));
+        verify(financingRunService).recordChunk(RUN_ID, chunk, true);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void shouldReturnEmptyChunkWhenNothingIsPending() {
+        // When
+        FinancingChunkResult chunk = chunkProcessor.processChunk(Collections::emptyList, true, context);
+
+        // Then
+        assertSame(FinancingChunkResult.EMPTY, chunk);
+        verify(financingRunService, never()).recordChunk(anyLong(), any(), anyBoolean());
+    }
+
+    @Test
+    void shouldRetryFailedChunkInvoiceByInvoiceAndQuarantineFailingInvoice() {
+        // Given
+        Invoice invoice1 = Invoice.builder().id(1L).build();
+        Invoice invoice2 = Invoice.builder().id(2L).build();
+        IllegalStateException failure = new IllegalStateException("Invoice 2 cannot be financed");
+
+        when(invoiceBatchProcessor.processInvoiceBatch(List.of(invoice1, invoice2), context)).thenThrow(failure);
+        when(pendingInvoiceReader.readByIds(List.of(1L), context)).thenReturn(List.of(invoice1));
+        when(pendingInvoiceReader.readByIds(List.of(2L), context)).thenReturn(List.of(invoice2));
+        when(invoiceBatchProcessor.processInvoiceBatch(List.of(invoice1), context)).thenReturn(1);
+        when(invoiceBatchProcessor.processInvoiceBatch(List.of(invoice2), context)).thenThrow(failure);
+        when(financingRunService.quarantine(RUN_ID, 2L, true, failure)).thenReturn(true);
+
+        // When
+        FinancingChunkResult chunk = chunkProcessor.processChunk(() -> List.of(invoice1, invoice2), true, context);
+
+        // Then
+        assertEquals(2, chunk.getInvoiceCount());
+        assertEquals(1, chunk.getFinancedCount());
+        assertEquals(1, chunk.getQuarantinedCount());
+        assertEquals(2L, chunk.getLastInvoiceId());
+
+        ArgumentCaptor<FinancingChunkResult> recorded = ArgumentCaptor.forClass(FinancingChunkResult.class);
+        verify(financingRunService).recordChunk(eq(RUN_ID), recorded.capture(), eq(true));
+        assertEquals(1L, recorded.getValue().getLastInvoiceId());
+        assertEquals(1, recorded.getValue().getFinancedCount());
+        verify(financingRunService).quarantine(RUN_ID, 2L, true, failure);
+        verify(transactionManager, times(2)).rollback(any());
+    }
+
+    @Test
+    void shouldRunGuardInEveryTransactionAndNeverQuarantineWhenLeaseIsLost() {
+        // Given
+        Invoice invoice1 = Invoice.builder().id(1L).build();
+        Invoice invoice2 = Invoice.builder().id(2L).build();
+        FinancingLeaseLostException leaseLost = new FinancingLeaseLostException(InvoiceRangeLease.builder().build());
+        AtomicInteger guardCalls = new AtomicInteger();
+        Runnable guard = () -> {
+            if (guardCalls.incrementAndGet() > 1) {
+                throw leaseLost;
+            }
+        };
+
+        when(invoiceBatchProcessor.processInvoiceBatch(List.of(invoice1, invoice2), context))
+                .thenThrow(new IllegalStateException("Constraint violation"));
+
+        // When / Then
+        assertSame(leaseLost, assertThrows(FinancingLeaseLostException.class,
+                () -> chunkProcessor.processChunk(() -> List.of(invoice1, invoice2), false, guard, context)));
+        assertEquals(2, guardCalls.get());
+        verify(pendingInvoiceReader, never()).readByIds(any(), any());
+        verify(financingRunService, never()).quarantine(anyLong(), anyLong(), anyBoolean(), any());
+    }
+
+    @Test
+    void shouldWriteDecidedChunkAndFallBackToInvoiceByInvoiceWhenItFails() {
+        // Given
+        Invoice invoice1 = Invoice.builder().id(1L).build();
+        Invoice invoice2 = Invoice.builder().id(2L).build();
+        List<Invoice> invoices = List.of(invoice1, invoice2);
+        List<PurchaserFinancingResult> purchaserMatches = Arrays.asList(null, null);
+
+        when(invoiceBatchProcessor.applyFinancingDecisions(invoices, purchaserMatches, context))
+                .thenThrow(new IllegalStateException("Constraint violation"));
+        when(pendingInvoiceReader.readByIds(List.of(1L), context)).thenReturn(List.of(invoice1));
+        when(pendingInvoiceReader.readByIds(List.of(2L), context)).thenReturn(List.of(invoice2));
+
+        // When
+        FinancingChunkResult chunk = chunkProcessor.writeDecidedChunk(invoices, purchaserMatches, context);
+
+        // Then
+        assertEquals(2, chunk.getInvoiceCount());
+        assertEquals(2L, chunk.getLastInvoiceId());
+        verify(invoiceBatchProcessor).processInvoiceBatch(List.of(invoice1), context);
+        verify(invoiceBatchProcessor).processInvoiceBatch(List.of(invoice2), context);
+        verify(financingRunService, times(2)).recordChunk(eq(RUN_ID), any(), eq(true));
+    }
+
+    @Test
+    void shouldRethrowWhenChunkCannotBeRead() {
+        // Given
+        IllegalStateException failure = new IllegalStateException("Database unavailable");
+
+        // When / Then
+        assertSame(failure, assertThrows(IllegalStateException.class,
+                () -> chunkProcessor.processChunk(() -> {
+                    throw failure;
+                }, true, context)));
+        verify(financingRunService, never()).quarantine(anyLong(), anyLong(), anyBoolean(), any());
+    }
+}
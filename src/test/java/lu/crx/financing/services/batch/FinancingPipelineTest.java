@@ -0,0 +1,180 @@
+package lu.crx.financing.services.batch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.metrics.PipelineStage;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FinancingPipelineTest {
+
+    @Mock
+    private PendingInvoiceReader pendingInvoiceReader;
+
+    @Mock
+    private InvoiceFinancingApplier invoiceFinancingApplier;
+
+    @Mock
+    private FinancingChunkProcessor chunkProcessor;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FinancingProperties financingProperties;
+
+    private FinancingPipeline financingPipeline;
+
+    private FinancingRunContext context;
+
+    @BeforeEach
+    void setUp() {
+        financingProperties = new FinancingProperties();
+        financingProperties.getRead().setPageSize(2);
+        financingProperties.getPipeline().setComputeThreads(2);
+        financingPipeline = new FinancingPipeline(pendingInvoiceReader, invoiceFinancingApplier, chunkProcessor,
+                transactionManager, financingProperties, new FinancingMetrics(new SimpleMeterRegistry()));
+        context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
+    }
+
+    @Test
+    void shouldWriteSelectedPagesInIdOrderAfterCheckpoint() {
+        // Given
+        Invoice invoice1 = Invoice.builder().id(6L).build();
+        Invoice invoice2 = Invoice.builder().id(7L).build();
+        Invoice invoice3 = Invoice.builder().id(9L).build();
+        PurchaserFinancingResult purchaserMatch = mock(PurchaserFinancingResult.class);
+
+        when(pendingInvoiceReader.readAfter(5L, 2, context)).thenReturn(List.of(invoice1, invoice2));
+        when(pendingInvoiceReader.readAfter(7L, 2, context)).thenReturn(List.of(invoice3));
+        when(invoiceFinancingApplier.selectPurchaser(invoice1, context)).thenReturn(Optional.of(purchaserMatch));
+        when(invoiceFinancingApplier.selectPurchaser(invoice2, context)).thenReturn(Optional.empty());
+        when(invoiceFinancingApplier.selectPurchaser(invoice3, context)).thenReturn(Optional.empty());
+
+        // When
+        FinancingPipelineStats stats = financingPipeline.processPendingInvoices(5L, context);
+
+        // Then
+        InOrder writes = inOrder(chunkProcessor);
+        writes.verify(chunkProcessor).writeDecidedChunk(
+                List.of(invoice1, invoice2), Arrays.asList(purchaserMatch, null), context);
+        writes.verify(chunkProcessor).writeDecidedChunk(
+                List.of(invoice3), Collections.singletonList(null), context);
+        verify(pendingInvoiceReader, never()).readAfter(eq(9L), anyInt(), any());
+        for (PipelineStage stage : PipelineStage.values()) {
+            assertTrue(stats.getUtilization(stage) >= 0 && stats.getUtilization(stage) <= 1);
+        }
+    }
+
+    @Test
+    void shouldFinanceInvoiceByInvoiceWhenSelectionFails() {
+        // Given
+        Invoice invoice1 = Invoice.builder().id(1L).build();
+        Invoice invoice2 = Invoice.builder().id(2L).build();
+
+        when(pendingInvoiceReader.readAfter(0L, 2, context)).thenReturn(List.of(invoice1, invoice2));
+        when(pendingInvoiceReader.readAfter(2L, 2, context)).thenReturn(List.of());
+        when(invoiceFinancingApplier.selectPurchaser(invoice1, context)).thenReturn(Optional.empty());
+        when(invoiceFinancingApplier.selectPurchaser(invoice2, context)).thenThrow(new IllegalStateException());
+
+        // When
+        financingPipeline.processPendingInvoices(0L, context);
+
+        // Then
+        verify(chunkProcessor).processInvoiceByInvoice(List.of(1L, 2L), true, context);
+        verify(chunkProcessor, never()).writeDecidedChunk(any(), any(), any());
+    }
+
+    @Test
+    void shouldNotReadMoreThanQueueCapacityAheadOfWriter() {
+        // Given
+        financingProperties.getPipeline().setQueueCapacity(1);
+        AtomicInteger readCount = new AtomicInteger();
+        List<Integer> readsAheadOfWriter = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger writeCount = new AtomicInteger();
+
+        when(pendingInvoiceReader.readAfter(anyLong(), eq(2), eq(context))).thenAnswer(invocation -> {
+            long afterInvoiceId = invocation.getArgument(0);
+            readCount.incrementAndGet();
+            return afterInvoiceId >= 40 ? List.of() : LongStream.of(afterInvoiceId + 1, afterInvoiceId + 2)
+                    .mapToObj(id -> Invoice.builder().id(id).build())
+                    .toList();
+        });
+        when(invoiceFinancingApplier.selectPurchaser(any(), eq(context))).thenReturn(Optional.empty());
+        when(chunkProcessor.writeDecidedChunk(any(), any(), eq(context))).thenAnswer(invocation -> {
+            readsAheadOfWriter.add(readCount.get() - writeCount.incrementAndGet());
+            Thread.sleep(5);
+            return FinancingChunkResult.EMPTY;
+        });
+
+        // When
+        financingPipeline.processPendingInvoices(0L, context);
+
+        // Then
+        assertEquals(20, writeCount.get());
+        // One page on the queue and one in the hands of the blocked reader
+        readsAheadOfWriter.forEach(readsAhead -> assertTrue(readsAhead <= 2, "Read " + readsAhead + " pages ahead"));
+    }
+
+    @Test
+    void shouldFailWhenReadingFails() {
+        // Given
+        IllegalStateException failure = new IllegalStateException("Database unavailable");
+        when(pendingInvoiceReader.readAfter(0L, 2, context)).thenThrow(failure);
+
+        // When / Then
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> financingPipeline.processPendingInvoices(0L, context));
+        assertSame(failure, exception.getCause());
+        verify(chunkProcessor, never()).writeDecidedChunk(any(), any(), any());
+    }
+
+    @Test
+    void shouldFailWhenWritingFails() {
+        // Given
+        Invoice invoice = Invoice.builder().id(1L).build();
+        IllegalStateException failure = new IllegalStateException("Database unavailable");
+
+        when(pendingInvoiceReader.readAfter(anyLong(), eq(2), eq(context))).thenReturn(List.of(invoice, invoice));
+        when(invoiceFinancingApplier.selectPurchaser(invoice, context)).thenReturn(Optional.empty());
+        when(chunkProcessor.writeDecidedChunk(any(), any(), eq(context))).thenThrow(failure);
+
+        // When / Then
+        assertSame(failure, assertThrows(IllegalStateException.class,
+                () -> financingPipeline.processPendingInvoices(0L, context)));
+    }
+}
@@ -1,8 +1,10 @@
 package lu.crx.financing.services.batch;
 
 import lu.crx.financing.entities.Invoice;
-import lu.crx.financing.entities.Purchaser;
-import lu.crx.financing.utils.EntityManagerUtil;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
+import lu.crx.financing.utils.PersistenceContextFlushController;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,11 +18,12 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,13 +33,13 @@ class InvoiceBatchProcessorTest {
     private InvoiceFinancingApplier invoiceFinancingApplier;
 
     @Mock
-    private EntityManagerUtil entityManagerUtil;
+    private PersistenceContextFlushController flushController;
 
     private InvoiceBatchProcessor invoiceBatchProcessor;
 
     @BeforeEach
     void setUp() {
-        invoiceBatchProcessor = new InvoiceBatchProcessor(invoiceFinancingApplier, entityManagerUtil);
+        invoiceBatchProcessor = new InvoiceBatchProcessor(invoiceFinancingApplier, flushController);
     }
 
     @Test
@@ -45,18 +48,19 @@ class InvoiceBatchProcessorTest {
         Invoice invoice1 = Invoice.builder().id(1L).build();
         Invoice invoice2 = Invoice.builder().id(2L).build();
         List<Invoice> pendingInvoices = Arrays.asList(invoice1, invoice2);
-        List<Purchaser> availablePurchasers = Collections.singletonList(Purchaser.builder().build());
-        LocalDate financingDate = LocalDate.now();
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
 
-        when(invoiceFinancingApplier.attemptToFinanceInvoice(any(Invoice.class), anyList(), any(LocalDate.class)))
+        when(invoiceFinancingApplier.attemptToFinanceInvoice(any(Invoice.class), any(FinancingRunContext.class)))
                 .thenReturn(true);
 
         // When
-        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, availablePurchasers, financingDate);
+        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, context);
 
         // Then
-        verify(invoiceFinancingApplier, times(2)).attemptToFinanceInvoice(any(Invoice.class), anyList(), any(LocalDate.class));
-        verify(entityManagerUtil, never()).flushAndClearEntityManager(anyInt()); // No flush for small batch
+        verify(invoiceFinancingApplier, times(2)).attemptToFinanceInvoice(any(Invoice.class), any(FinancingRunContext.class));
+        verify(flushController).onInvoiceProcessed(1, context);
+        verify(flushController).onInvoiceProcessed(2, context);
+        verify(invoiceFinancingApplier).applyStagedFinancing(List.of(1L, 2L));
         assert financedInvoiceCount == 2;
     }
 
@@ -65,18 +69,18 @@ class InvoiceBatchProcessorTest {
         // Given
         Invoice invoice1 = Invoice.builder().id(1L).build();
         List<Invoice> pendingInvoices = Collections.singletonList(invoice1);
-        List<Purchaser> availablePurchasers = Collections.singletonList(Purchaser.builder().build());
-        LocalDate financingDate = LocalDate.now();
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
 
-        when(invoiceFinancingApplier.attemptToFinanceInvoice(any(Invoice.class), anyList(), any(LocalDate.class)))
+        when(invoiceFinancingApplier.attemptToFinanceInvoice(any(Invoice.class), any(FinancingRunContext.class)))
                 .thenReturn(false);
 
         // When
-        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, availablePurchasers, financingDate);
+        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, context);
 
         // Then
-        verify(invoiceFinancingApplier).attemptToFinanceInvoice(any(Invoice.class), anyList(), any(LocalDate.class));
-        verify(entityManagerUtil, never()).flushAndClearEntityManager(anyInt()); // No flush for small batch
+        verify(invoiceFinancingApplier).attemptToFinanceInvoice(any(Invoice.class), any(FinancingRunContext.class));
+        verify(flushController).onInvoiceProcessed(1, context);
+        verify(invoiceFinancingApplier, never()).applyStagedFinancing(any());
         assert financedInvoiceCount == 0;
     }
 
@@ -85,37 +89,59 @@ class InvoiceBatchProcessorTest {
     void shouldHandleEmptyInvoiceBatch() {
         // Given
         List<Invoice> pendingInvoices = Collections.emptyList();
-        List<Purchaser> availablePurchasers = Collections.singletonList(Purchaser.builder().build());
-        LocalDate financingDate = LocalDate.now();
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
 
         // When
-        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, availablePurchasers, financingDate);
+        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, context);
 
         // Then
-        verify(invoiceFinancingApplier, never()).attemptToFinanceInvoice(any(Invoice.class), anyList(), any(LocalDate.class));
-        verify(entityManagerUtil, never()).flushAndClearEntityManager(anyInt());
+        verify(invoiceFinancingApplier, never()).attemptToFinanceInvoice(any(Invoice.class), any(FinancingRunContext.class));
+        verify(flushController, never()).onInvoiceProcessed(anyInt(), any(FinancingRunContext.class));
         assert financedInvoiceCount == 0;
     }
 
     @Test
-    void shouldFlushAndClearEntityManagerForLargeBatches() {
+    void shouldConsultFlushControllerAfterEveryInvoiceRegardlessOfOutcome() {
         // Given
         List<Invoice> invoices = new ArrayList<>();
-        for (int i = 0; i < 2000; i++) {
-            invoices.add(Invoice.builder().build());
+        for (long i = 1; i <= 2000; i++) {
+            invoices.add(Invoice.builder().id(i).build());
         }
 
-        List<Purchaser> availablePurchasers = Collections.singletonList(Purchaser.builder().build());
-        LocalDate financingDate = LocalDate.now();
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
 
-        when(invoiceFinancingApplier.attemptToFinanceInvoice(any(Invoice.class), anyList(), any(LocalDate.class)))
-                .thenReturn(true);
+        when(invoiceFinancingApplier.attemptToFinanceInvoice(any(Invoice.class), any(FinancingRunContext.class)))
+                .thenAnswer(invocation -> invocation.<Invoice>getArgument(0).getId() % 4 == 0);
+
+        // When
+        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(invoices, context);
+
+        // Then
+        verify(flushController, times(2000)).onInvoiceProcessed(anyInt(), eq(context));
+        verify(flushController).onInvoiceProcessed(1, context);
+        verify(flushController).onInvoiceProcessed(2000, context);
+        assert financedInvoiceCount == 500;
+    }
+
+    @Test
+    void shouldApplyOnlySelectedFinancingDecisions() {
+        // Given
+        Invoice invoice1 = Invoice.builder().id(4L).build();
+        Invoice invoice2 = Invoice.builder().id(8L).build();
+        PurchaserFinancingResult purchaserMatch = mock(PurchaserFinancingResult.class);
+        FinancingRunContext context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
 
         // When
-        int financedInvoiceCount = invoiceBatchProcessor.processInvoiceBatch(invoices, availablePurchasers, financingDate);
+        int financedInvoiceCount = invoiceBatchProcessor.applyFinancingDecisions(
+                Arrays.asList(invoice1, invoice2), Arrays.asList(null, purchaserMatch), context);
 
         // Then
-        verify(entityManagerUtil, times(2)).flushAndClearEntityManager(anyInt());
-        assert financedInvoiceCount == 2000;
+        verify(invoiceFinancingApplier).applyFinancing(invoice2, purchaserMatch);
+        verify(invoiceFinancingApplier, never()).applyFinancing(eq(invoice1), any());
+        verify(invoiceFinancingApplier, never()).attemptToFinanceInvoice(any(), any());
+        verify(flushController).onInvoiceProcessed(2, context);
+        verify(invoiceFinancingApplier).applyStagedFinancing(List.of(8L));
+        assert financedInvoiceCount == 1;
+        assert context.getProcessedInvoiceCount() == 2;
     }
-}
\ No newline at end of file
+}
@@ -1,31 +1,53 @@
 package lu.crx.financing.services.batch;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingDecision;
+import lu.crx.financing.entities.FinancingRejectionReason;
 import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
 import lu.crx.financing.entities.Purchaser;
 import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
 import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.metrics.FinancingMetrics;
 import lu.crx.financing.repositories.InvoiceFinancingDetailsRepository;
 import lu.crx.financing.repositories.InvoiceRepository;
 import lu.crx.financing.services.financing.FinancingCalculationService;
+import lu.crx.financing.services.financing.FinancingKernel;
+import lu.crx.financing.services.financing.FinancingOfferTable;
+import lu.crx.financing.services.financing.FinancingResultColumns;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.InvoiceColumns;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
 import lu.crx.financing.services.financing.PurchaserSelectionService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDate;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.anyList;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.mock;
 
@@ -44,24 +66,36 @@ class InvoiceFinancingApplierTest {
     @Mock
     private InvoiceFinancingDetailsRepository financingDetailsRepository;
 
+    @Mock
+    private StatelessFinancingDetailsWriter statelessFinancingDetailsWriter;
+
+    private FinancingProperties financingProperties;
+
+    private SimpleMeterRegistry meterRegistry;
 
     private InvoiceFinancingApplier invoiceFinancingApplier;
 
     @BeforeEach
     void setUp() {
+        financingProperties = new FinancingProperties();
+        meterRegistry = new SimpleMeterRegistry();
         invoiceFinancingApplier = new InvoiceFinancingApplier(
                 purchaserSelectionService,
                 calculationService,
                 invoiceRepository,
-                financingDetailsRepository
+                financingDetailsRepository,
+                statelessFinancingDetailsWriter,
+                financingProperties,
+                new FinancingMetrics(meterRegistry)
         );
     }
 
     @Test
     void shouldAttemptToFinanceInvoiceAndApplyFinancingWhenPurchaserFound() {
         // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.ENTITY);
+
         Invoice invoice = mock(Invoice.class);
-        when(invoice.getId()).thenReturn(1L);
         when(invoice.getValueInCents()).thenReturn(10_000_00L);
 
         Purchaser purchaser = Purchaser.builder()
@@ -77,21 +111,24 @@ class InvoiceFinancingApplierTest {
                 3
         );
 
-        when(purchaserSelectionService.findBestPurchaserForInvoice(any(Invoice.class), anyList(), any(LocalDate.class)))
+        when(purchaserSelectionService.findBestPurchaserForInvoice(any(Invoice.class), any(FinancingRunContext.class)))
                 .thenReturn(Optional.of(purchaserMatch));
         when(calculationService.calculateDiscountAmount(anyLong(), anyInt())).thenReturn(3_00L);
         when(invoiceRepository.save(any(Invoice.class))).thenReturn(invoice);
 
         // When
-        boolean result = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, Collections.emptyList(), LocalDate.now());
+        boolean result = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, runContext());
 
         // Then
         assertTrue(result);
 
         verify(invoice).setEarlyPaymentAmountInCents(9_997_00L); // 10_000_00 - 3_00
         verify(invoice).setDiscountedAmountInCents(3_00L);
+        verify(invoice).setFinancingStatus(InvoiceFinancingStatus.FINANCED);
         verify(invoiceRepository).save(invoice);
         verify(financingDetailsRepository).save(any(InvoiceFinancingDetails.class));
+        assertEquals(1, invoiceCount("financed", "none"));
+        assertEquals(1, meterRegistry.get(FinancingMetrics.DECISION_TIMER).timer().count());
     }
 
     @Test
@@ -99,16 +136,226 @@ class InvoiceFinancingApplierTest {
         // Given
         Invoice invoice = Invoice.builder().id(1L).build();
 
-        when(purchaserSelectionService.findBestPurchaserForInvoice(any(Invoice.class), anyList(), any(LocalDate.class)))
+        when(purchaserSelectionService.findBestPurchaserForInvoice(any(Invoice.class), any(FinancingRunContext.class)))
                 .thenReturn(Optional.empty());
+        when(purchaserSelectionService.findRejectionReason(any(Invoice.class), any(FinancingRunContext.class)))
+                .thenReturn(FinancingRejectionReason.TERM_TOO_SHORT);
 
         // When
-        boolean result = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, Collections.emptyList(), LocalDate.now());
+        boolean result = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, runContext());
 
         // Then
         assertFalse(result);
 
         verifyNoInteractions(calculationService, invoiceRepository, financingDetailsRepository);
+        assertEquals(1, invoiceCount("unfinanced", "term-too-short"));
+        assertEquals(0, invoiceCount("financed", "none"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldOnlySaveFinancingDetailsInBulkWriteMode() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.BULK);
+
+        Invoice invoice = mock(Invoice.class);
+        when(invoice.getValueInCents()).thenReturn(10_000_00L);
+
+        Purchaser purchaser = Purchaser.builder()
+                .id(1L)
+                .name("Purchaser1")
+                .build();
+
+        PurchaserFinancingResult purchaserMatch = new PurchaserFinancingResult(purchaser, 3, 30, LocalDate.now(), 3);
+
+        when(purchaserSelectionService.findBestPurchaserForInvoice(any(Invoice.class), any(FinancingRunContext.class)))
+                .thenReturn(Optional.of(purchaserMatch));
+        when(calculationService.calculateDiscountAmount(anyLong(), anyInt())).thenReturn(3_00L);
+
+        // When
+        boolean result = invoiceFinancingApplier.attemptToFinanceInvoice(invoice, runContext());
+
+        // Then
+        assertTrue(result);
+
+        ArgumentCaptor<InvoiceFinancingDetails> details = ArgumentCaptor.forClass(InvoiceFinancingDetails.class);
+        verify(financingDetailsRepository).save(details.capture());
+        assertEquals(9_997_00L, details.getValue().getEarlyPaymentAmountInCents());
+        assertEquals(3_00L, details.getValue().getDiscountedAmountInCents());
+
+        verify(invoice, never()).setEarlyPaymentAmountInCents(anyLong());
+        verify(invoice, never()).setFinancingStatus(any());
+        verifyNoInteractions(invoiceRepository);
+    }
+
+    @Test
+    void shouldApplyStagedFinancingWithSetBasedUpdateInBulkWriteMode() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.BULK);
+
+        // When
+        invoiceFinancingApplier.applyStagedFinancing(List.of(1L, 1000L));
+
+        // Then
+        verify(invoiceRepository).markFinancedFromDetails(List.of(1L, 1000L));
+    }
+
+    @Test
+    void shouldInsertFinancingDetailsThroughStatelessSessionInStatelessWriteMode() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.STATELESS);
+
+        Invoice invoice = Invoice.builder().id(1L).valueInCents(10_000_00L).build();
+        Purchaser purchaser = Purchaser.builder().id(1L).name("Purchaser1").build();
+        PurchaserFinancingResult purchaserMatch = new PurchaserFinancingResult(purchaser, 3, 30, LocalDate.now(), 3);
+        when(calculationService.calculateDiscountAmount(anyLong(), anyInt())).thenReturn(3_00L);
+
+        // When
+        invoiceFinancingApplier.applyFinancing(invoice, purchaserMatch);
+
+        // Then
+        ArgumentCaptor<InvoiceFinancingDetails> details = ArgumentCaptor.forClass(InvoiceFinancingDetails.class);
+        verify(statelessFinancingDetailsWriter).insert(details.capture());
+        assertEquals(invoice, details.getValue().getInvoice());
+        assertEquals(9_997_00L, details.getValue().getEarlyPaymentAmountInCents());
+        verifyNoInteractions(financingDetailsRepository, invoiceRepository);
+    }
+
+    @Test
+    void shouldSendStatelessInsertsBeforeSetBasedUpdate() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.STATELESS);
+
+        // When
+        invoiceFinancingApplier.applyStagedFinancing(List.of(1L, 1000L));
+
+        // Then
+        InOrder inOrder = inOrder(statelessFinancingDetailsWriter, invoiceRepository);
+        inOrder.verify(statelessFinancingDetailsWriter).flush();
+        inOrder.verify(invoiceRepository).markFinancedFromDetails(List.of(1L, 1000L));
+    }
+
+    @Test
+    void shouldNotApplyStagedFinancingInEntityWriteMode() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.ENTITY);
+
+        // When
+        invoiceFinancingApplier.applyStagedFinancing(List.of(1L, 1000L));
+
+        // Then
+        verifyNoInteractions(invoiceRepository);
+    }
+
+    @Test
+    void shouldDecideFinancingWithoutWritingIt() {
+        // Given
+        Invoice invoice = Invoice.builder().id(7L).valueInCents(10_000_00L).build();
+        Purchaser purchaser = Purchaser.builder().id(2L).name("Purchaser1").build();
+        LocalDate financingDate = LocalDate.now();
+        when(purchaserSelectionService.findBestPurchaserForInvoice(any(Invoice.class), any(FinancingRunContext.class)))
+                .thenReturn(Optional.of(new PurchaserFinancingResult(purchaser, 3, 30, financingDate, 3)));
+        when(calculationService.calculateDiscountAmount(anyLong(), anyInt())).thenReturn(3_00L);
+
+        // When
+        Optional<FinancingDecision> decision = invoiceFinancingApplier.decideFinancing(invoice, runContext());
+
+        // Then
+        assertEquals(new FinancingDecision(7L, 2L, 0, financingDate, 30, 3, 9_997_00L, 3_00L), decision.orElseThrow());
+        verifyNoInteractions(financingDetailsRepository, invoiceRepository, statelessFinancingDetailsWriter);
+        // Counted when the decision is written
+        assertEquals(0, invoiceCount("financed", "none"));
+        assertEquals(1, meterRegistry.get(FinancingMetrics.DECISION_TIMER).timer().count());
+    }
+
+    @Test
+    void shouldOnlyApplyDecisionsOfPendingInvoicesWithoutFinancingDetails() {
+        // Given
+        LocalDate financingDate = LocalDate.now();
+        List<FinancingDecision> decisions = List.of(
+                new FinancingDecision(1L, 2L, 5L, financingDate, 30, 3, 9_997_00L, 3_00L),
+                new FinancingDecision(2L, 2L, 5L, financingDate, 30, 3, 9_997_00L, 3_00L),
+                new FinancingDecision(3L, 2L, 5L, financingDate, 30, 3, 9_997_00L, 3_00L));
+        when(invoiceRepository.findPendingIdsWithoutFinancingDetails(List.of(1L, 2L, 3L))).thenReturn(List.of(2L, 3L));
+        when(invoiceRepository.markFinancedFromDetails(List.of(2L, 3L))).thenReturn(2);
+
+        // When
+        int financedCount = invoiceFinancingApplier.applyDecisions(decisions);
+
+        // Then
+        assertEquals(2, financedCount);
+        ArgumentCaptor<InvoiceFinancingDetails> details = ArgumentCaptor.forClass(InvoiceFinancingDetails.class);
+        InOrder inOrder = inOrder(statelessFinancingDetailsWriter, invoiceRepository);
+        inOrder.verify(statelessFinancingDetailsWriter, times(2)).insert(details.capture());
+        inOrder.verify(statelessFinancingDetailsWriter).flush();
+        inOrder.verify(invoiceRepository).markFinancedFromDetails(List.of(2L, 3L));
+        assertEquals(List.of(2L, 3L), details.getAllValues().stream().map(d -> d.getInvoice().getId()).toList());
+        assertEquals(2L, details.getValue().getPurchaser().getId());
+        assertEquals(3_00L, details.getValue().getDiscountedAmountInCents());
+        assertEquals(2, invoiceCount("financed", "none"));
+    }
+
+    @Test
+    void shouldWriteKernelResultsOfFinancedInvoices() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.STATELESS);
+        LocalDate financingDate = LocalDate.now();
+        Creditor creditor = Creditor.builder().id(1L).maxFinancingRateInBps(3).build();
+        Purchaser purchaser = Purchaser.builder()
+                .id(2L)
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .creditor(creditor)
+                        .annualRateInBps(40)
+                        .build())
+                .build();
+        FinancingOfferTable offers = FinancingOfferTable.build(PurchaserOfferBook.build(List.of(purchaser)));
+
+        InvoiceColumns invoices = new InvoiceColumns(2);
+        invoices.add(7L, 10_000_00L, (int) financingDate.plusDays(30).toEpochDay(), offers.creditorIndexOf(1L));
+        invoices.add(8L, 10_000_00L, (int) financingDate.plusDays(10).toEpochDay(), offers.creditorIndexOf(1L));
+        FinancingResultColumns results = new FinancingResultColumns(2);
+        new FinancingKernel().finance(invoices, offers, financingDate.toEpochDay(), results);
+        when(invoiceRepository.markFinancedFromDetails(List.of(7L))).thenReturn(1);
+
+        // When
+        int financedCount = invoiceFinancingApplier.applyKernelResults(invoices, results, offers, financingDate);
+
+        // Then
+        assertEquals(1, financedCount);
+        ArgumentCaptor<InvoiceFinancingDetails> details = ArgumentCaptor.forClass(InvoiceFinancingDetails.class);
+        InOrder inOrder = inOrder(statelessFinancingDetailsWriter, invoiceRepository);
+        inOrder.verify(statelessFinancingDetailsWriter).insert(details.capture());
+        inOrder.verify(statelessFinancingDetailsWriter).flush();
+        inOrder.verify(invoiceRepository).markFinancedFromDetails(List.of(7L));
+        assertEquals(7L, details.getValue().getInvoice().getId());
+        assertEquals(purchaser, details.getValue().getPurchaser());
+        assertEquals(financingDate, details.getValue().getFinancingDate());
+        assertEquals(30, details.getValue().getFinancingTermInDays());
+        assertEquals(3, details.getValue().getFinancingRateInBps());
+        assertEquals(3_00L, details.getValue().getDiscountedAmountInCents());
+        assertEquals(9_997_00L, details.getValue().getEarlyPaymentAmountInCents());
+        assertEquals(1, invoiceCount("financed", "none"));
+        assertEquals(1, invoiceCount("unfinanced", "term-too-short"));
+    }
+
+    @Test
+    void shouldRejectKernelResultsInEntityWriteMode() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.ENTITY);
+        FinancingOfferTable offers = FinancingOfferTable.build(PurchaserOfferBook.build(Collections.emptyList()));
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> invoiceFinancingApplier.applyKernelResults(
+                new InvoiceColumns(1), new FinancingResultColumns(1), offers, LocalDate.now()));
+        verifyNoInteractions(financingDetailsRepository, invoiceRepository, statelessFinancingDetailsWriter);
+    }
+
+    private double invoiceCount(String outcome, String reason) {
+        return meterRegistry.get(FinancingMetrics.INVOICE_COUNTER).tag("outcome", outcome).tag("reason", reason)
+                .counter().count();
+    }
+
+    private static FinancingRunContext runContext() {
+        return new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
+    }
+}
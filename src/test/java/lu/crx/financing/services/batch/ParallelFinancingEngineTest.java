@@ -0,0 +1,108 @@
+package lu.crx.financing.services.batch;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.ParallelPoolType;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.PendingInvoicePartition;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ParallelFinancingEngineTest {
+
+    @Test
+    void shouldBoundConcurrentPartitionsOnVirtualThreads() {
+        // Given
+        FinancingProperties financingProperties = new FinancingProperties();
+        financingProperties.getParallel().setPoolType(ParallelPoolType.VIRTUAL_THREADS);
+        financingProperties.getParallel().setMaxConcurrency(2);
+        InvoiceRepository invoiceRepository = mock(InvoiceRepository.class);
+        FinancingChunkProcessor chunkProcessor = mock(FinancingChunkProcessor.class);
+        ParallelFinancingEngine engine = new ParallelFinancingEngine(invoiceRepository,
+                mock(PendingInvoiceReader.class), chunkProcessor, financingProperties);
+
+        List<PendingInvoicePartition> partitions = LongStream.rangeClosed(1, 20)
+                .mapToObj(creditorId -> new PendingInvoicePartition(creditorId, 1, creditorId, creditorId))
+                .toList();
+        when(invoiceRepository.findPendingInvoicePartitionsByCreditor()).thenReturn(partitions);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(chunkProcessor.processChunk(any(), eq(false), any(FinancingRunContext.class))).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            running.decrementAndGet();
+            return FinancingChunkResult.EMPTY;
+        });
+
+        // When
+        engine.processPendingInvoices(new FinancingRunContext(LocalDate.now(),
+                PurchaserOfferBook.build(Collections.emptyList())));
+
+        // Then
+        verify(chunkProcessor, times(20)).processChunk(any(), eq(false), any(FinancingRunContext.class));
+        assertTrue(maxRunning.get() <= 2, "Ran " + maxRunning.get() + " partitions at once");
+    }
+
+    @Test
+    void shouldKeepSmallCreditorPartitionsWhole() {
+        // Given
+        List<PendingInvoicePartition> partitions = List.of(new PendingInvoicePartition(1L, 10, 5, 500));
+
+        // When
+        List<PendingInvoicePartition> result = ParallelFinancingEngine.splitPartitions(partitions, 100);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals(5, result.get(0).getFirstInvoiceId());
+        assertEquals(500, result.get(0).getLastInvoiceId());
+    }
+
+    @Test
+    void shouldSplitLargeCreditorPartitionIntoContiguousIdRanges() {
+        // Given
+        List<PendingInvoicePartition> partitions = List.of(new PendingInvoicePartition(1L, 250, 1, 1000));
+
+        // When
+        List<PendingInvoicePartition> result = ParallelFinancingEngine.splitPartitions(partitions, 100);
+
+        // Then
+        assertEquals(3, result.size());
+        assertEquals(1, result.get(0).getFirstInvoiceId());
+        assertEquals(result.get(0).getLastInvoiceId() + 1, result.get(1).getFirstInvoiceId());
+        assertEquals(result.get(1).getLastInvoiceId() + 1, result.get(2).getFirstInvoiceId());
+        assertEquals(1000, result.get(2).getLastInvoiceId());
+        result.forEach(partition -> assertEquals(1L, partition.getCreditorId()));
+    }
+
+    @Test
+    void shouldNotSplitBeyondIdSpan() {
+        // Given
+        List<PendingInvoicePartition> partitions = List.of(new PendingInvoicePartition(1L, 3, 10, 12));
+
+        // When
+        List<PendingInvoicePartition> result = ParallelFinancingEngine.splitPartitions(partitions, 1);
+
+        // Then
+        assertEquals(3, result.size());
+        assertEquals(10, result.get(0).getLastInvoiceId());
+        assertEquals(11, result.get(1).getLastInvoiceId());
+        assertEquals(12, result.get(2).getLastInvoiceId());
+    }
+}
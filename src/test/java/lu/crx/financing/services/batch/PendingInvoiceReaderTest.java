@@ -0,0 +1,196 @@
+package lu.crx.financing.services.batch;
+
+import jakarta.persistence.EntityManagerFactory;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.services.financing.FinancingOfferTable;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.InvoiceColumns;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(PendingInvoiceReader.class)
+@EnableConfigurationProperties(FinancingProperties.class)
+class PendingInvoiceReaderTest {
+
+    private static final int CREDITOR_COUNT = 5;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private PendingInvoiceReader pendingInvoiceReader;
+
+    private final List<Creditor> creditors = new ArrayList<>();
+
+    private Statistics statistics;
+
+    private long lastInvoiceId;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < CREDITOR_COUNT; i++) {
+            creditors.add(entityManager.persist(Creditor.builder()
+                    .name("Creditor" + i)
+                    .maxFinancingRateInBps(3 + i)
+                    .build()));
+        }
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        financingProperties.getWrite().setMode(new FinancingProperties.Write().getMode());
+    }
+
+    @Test
+    void shouldReadPageWithSameStatementCountRegardlessOfBacklogSize() {
+        // When
+        long smallPageStatements = countStatementsToReadNewInvoices(10, newContext());
+        long largePageStatements = countStatementsToReadNewInvoices(500, newContext());
+
+        // Then
+        // One projection query and one query for the creditors of the page, never one per creditor or debtor
+        assertEquals(2, smallPageStatements);
+        assertEquals(smallPageStatements, largePageStatements);
+    }
+
+    @Test
+    void shouldLoadCreditorsOncePerRun() {
+        // Given
+        FinancingRunContext context = newContext();
+        countStatementsToReadNewInvoices(50, context);
+
+        // When
+        long nextPageStatements = countStatementsToReadNewInvoices(50, context);
+
+        // Then
+        assertEquals(1, nextPageStatements);
+    }
+
+    @Test
+    void shouldReadOnlyColumnsNeededForFinancing() {
+        // Given
+        Debtor debtor = entityManager.persist(Debtor.builder().name("Debtor").build());
+        Invoice invoice1 = persistInvoice(creditors.get(2), debtor);
+        Invoice invoice2 = persistInvoice(creditors.get(2), debtor);
+        entityManager.flush();
+        entityManager.clear();
+
+        // When
+        List<Invoice> invoices = pendingInvoiceReader.readByIds(
+                List.of(invoice1.getId(), invoice2.getId()), newContext());
+
+        // Then
+        assertEquals(List.of(invoice1.getId(), invoice2.getId()), invoices.stream().map(Invoice::getId).toList());
+        assertEquals(5, invoices.get(0).getCreditor().getMaxFinancingRateInBps());
+        assertSame(invoices.get(0).getCreditor(), invoices.get(1).getCreditor());
+        assertEquals(invoice1.getMaturityDate(), invoices.get(0).getMaturityDate());
+        assertEquals(invoice1.getValueInCents(), invoices.get(0).getValueInCents());
+        assertNull(invoices.get(0).getDebtor());
+    }
+
+    @Test
+    void shouldFetchCreditorAndDebtorWithInvoiceEntitiesInEntityWriteMode() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.ENTITY);
+
+        // When
+        long statements = countStatementsToReadNewInvoices(100, newContext());
+
+        // Then
+        assertEquals(1, statements);
+    }
+
+    @Test
+    void shouldReadPageIntoKernelColumnsWithOneStatement() {
+        // Given
+        financingProperties.getWrite().setMode(FinancingWriteMode.ENTITY);
+        Debtor debtor = entityManager.persist(Debtor.builder().name("Debtor").build());
+        Invoice invoice1 = persistInvoice(creditors.get(0), debtor);
+        Invoice invoice2 = persistInvoice(creditors.get(1), debtor);
+        persistInvoice(creditors.get(0), debtor);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        FinancingOfferTable offers = FinancingOfferTable.build(
+                PurchaserOfferBook.build(Collections.emptyList()), List.of(creditors.get(0)));
+        InvoiceColumns invoices = new InvoiceColumns(2);
+        invoices.add(1L, 1L, 1, 0);
+
+        // When
+        int invoiceCount = pendingInvoiceReader.readColumnsAfter(invoice1.getId() - 1, invoices, offers);
+
+        // Then
+        // A page of the columns' capacity, read as projections whatever the write mode
+        assertEquals(2, invoiceCount);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(invoice1.getId(), invoices.invoiceId(0));
+        assertEquals(invoice2.getId(), invoices.invoiceId(1));
+        assertEquals(10_000_00L, invoices.valueInCents(0));
+        assertEquals(invoice1.getMaturityDate().toEpochDay(), invoices.maturityEpochDay(0));
+        assertEquals(0, invoices.creditorIndex(0));
+        assertEquals(-1, invoices.creditorIndex(1));
+    }
+
+    /**
+     * Persists invoices of all creditors, each with its own debtor, and counts the statements needed to read them.
+     */
+    private long countStatementsToReadNewInvoices(int invoiceCount, FinancingRunContext context) {
+        long afterInvoiceId = lastInvoiceId;
+        for (int i = 0; i < invoiceCount; i++) {
+            Debtor debtor = entityManager.persist(Debtor.builder().name("Debtor" + i).build());
+            lastInvoiceId = persistInvoice(creditors.get(i % CREDITOR_COUNT), debtor).getId();
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        List<Invoice> invoices = pendingInvoiceReader.readAfter(afterInvoiceId, 1000, context);
+
+        assertEquals(invoiceCount, invoices.size());
+        invoices.forEach(invoice -> invoice.getCreditor().getMaxFinancingRateInBps());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Invoice persistInvoice(Creditor creditor, Debtor debtor) {
+        return entityManager.persist(Invoice.builder()
+                .creditor(creditor)
+                .debtor(debtor)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .valueInCents(10_000_00L)
+                .build());
+    }
+
+    private static FinancingRunContext newContext() {
+        return new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
+    }
+}
@@ -0,0 +1,195 @@
+package lu.crx.financing.services.batch;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.PersistenceConfiguration;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.Purchaser;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs outside of a test transaction, to see what the writer commits.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({StatelessFinancingDetailsWriter.class, PersistenceConfiguration.class})
+@EnableConfigurationProperties(FinancingProperties.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StatelessFinancingDetailsWriterTest {
+
+    @Autowired
+    private StatelessFinancingDetailsWriter writer;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final int BATCHED_INVOICE_COUNT = 200;
+
+    private Creditor creditor;
+
+    private Purchaser purchaser;
+
+    private final List<Invoice> invoices = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            creditor = Creditor.builder().name("Creditor1").maxFinancingRateInBps(3).build();
+            entityManager.persist(creditor);
+            purchaser = Purchaser.builder().name("Purchaser1").minimumFinancingTermInDays(20).build();
+            entityManager.persist(purchaser);
+            for (int i = 0; i < 3; i++) {
+                Invoice invoice = Invoice.builder()
+                        .creditor(creditor)
+                        .maturityDate(LocalDate.now().plusDays(30))
+                        .valueInCents(10_000_00L)
+                        .build();
+                entityManager.persist(invoice);
+                invoices.add(invoice);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+
+    @Test
+    void shouldInsertWithoutManagingEntities() {
+        // When
+        int[] managedEntityCount = new int[1];
+        transactionTemplate.executeWithoutResult(status -> {
+            invoices.forEach(invoice -> writer.insert(financingDetails(invoice)));
+            writer.flush();
+            assertEquals(3L, countFinancingDetailsRows());
+            managedEntityCount[0] = entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+        });
+
+        // Then
+        assertEquals(0, managedEntityCount[0]);
+        assertEquals(3L, countFinancingDetailsRows());
+    }
+
+    @Test
+    void shouldInsertInJdbcBatches() {
+        // Given
+        List<Invoice> batchedInvoices = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < BATCHED_INVOICE_COUNT; i++) {
+                Invoice invoice = Invoice.builder()
+                        .creditor(creditor)
+                        .maturityDate(LocalDate.now().plusDays(30))
+                        .valueInCents(10_000_00L)
+                        .build();
+                entityManager.persist(invoice);
+                batchedInvoices.add(invoice);
+            }
+        });
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // When
+        transactionTemplate.executeWithoutResult(status ->
+                batchedInvoices.forEach(invoice -> writer.insert(financingDetails(invoice))));
+
+        // Then
+        assertEquals(BATCHED_INVOICE_COUNT, countFinancingDetailsRows());
+        // One statement per batch of financing.write.batch-size inserts, plus the sequence calls
+        assertTrue(statistics.getPrepareStatementCount() < 20,
+                "Expected batched inserts, but " + statistics.getPrepareStatementCount() + " statements were prepared");
+    }
+
+    @Test
+    void shouldSendPendingInsertsOnCommit() {
+        // When
+        transactionTemplate.executeWithoutResult(status ->
+                invoices.forEach(invoice -> writer.insert(financingDetails(invoice))));
+
+        // Then
+        assertEquals(3L, countFinancingDetailsRows());
+        List<Long> detailIds = jdbcTemplate.queryForList(
+                "SELECT id FROM invoice_financing_details ORDER BY id", Long.class);
+        assertEquals(3, detailIds.stream().distinct().count());
+    }
+
+    @Test
+    void shouldDiscardInsertsOnRollback() {
+        // When
+        transactionTemplate.executeWithoutResult(status -> {
+            invoices.forEach(invoice -> writer.insert(financingDetails(invoice)));
+            writer.flush();
+            status.setRollbackOnly();
+        });
+
+        // Then
+        assertEquals(0L, countFinancingDetailsRows());
+    }
+
+    @Test
+    void shouldOpenOneSessionPerTransaction() {
+        // When
+        transactionTemplate.executeWithoutResult(status -> writer.insert(financingDetails(invoices.get(0))));
+        transactionTemplate.executeWithoutResult(status -> writer.insert(financingDetails(invoices.get(1))));
+
+        // Then
+        assertEquals(2L, countFinancingDetailsRows());
+    }
+
+    @Test
+    void shouldRefuseToWriteOutsideOfTransaction() {
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> writer.insert(financingDetails(invoices.get(0))));
+    }
+
+    private long countFinancingDetailsRows() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoice_financing_details", Long.class);
+    }
+
+    private InvoiceFinancingDetails financingDetails(Invoice invoice) {
+        return InvoiceFinancingDetails.builder()
+                .invoice(invoice)
+                .purchaser(purchaser)
+                .financingDate(LocalDate.now())
+                .financingTermInDays(30)
+                .financingRateInBps(3)
+                .earlyPaymentAmountInCents(9_997_00L)
+                .discountedAmountInCents(3_00L)
+                .build();
+    }
+}
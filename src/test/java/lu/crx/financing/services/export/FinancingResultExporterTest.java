@@ -0,0 +1,252 @@
+package lu.crx.financing.services.export;
+
+import jakarta.persistence.EntityManager;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.InvoiceFinancingStatus;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.services.archive.InvoiceArchiveService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs outside of a test transaction, so that the archiving commits before the export reads it. The buffer is
+ * smaller than the exports, so that they are written in several parts.
+ */
+@DataJpaTest(properties = "financing.export.buffer-size=1KB")
+@Import({FinancingResultExporter.class, InvoiceArchiveService.class})
+@EnableConfigurationProperties(FinancingProperties.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FinancingResultExporterTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private FinancingResultExporter exporter;
+
+    @Autowired
+    private InvoiceArchiveService invoiceArchiveService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    private Path exportDirectory;
+
+    private Creditor creditor;
+
+    private Purchaser purchaser;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            creditor = Creditor.builder().name("Creditor1").maxFinancingRateInBps(5).build();
+            entityManager.persist(creditor);
+            purchaser = Purchaser.builder().name("Purchaser1").minimumFinancingTermInDays(10).build();
+            entityManager.persist(purchaser);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM archived_invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM archived_invoice");
+        jdbcTemplate.update("DELETE FROM financing_run");
+        jdbcTemplate.update("DELETE FROM invoice_financing_details");
+        jdbcTemplate.update("DELETE FROM invoice");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM creditor");
+    }
+
+    @Test
+    void shouldExportLiveAndArchivedResultsAsCsvInInvoiceOrder() throws IOException {
+        // Given
+        List<Long> archivedIds = createFinancedInvoices(10, TODAY);
+        invoiceArchiveService.archiveFinancedInvoices();
+        List<Long> liveIds = createFinancedInvoices(10, TODAY);
+        createFinancedInvoices(3, TODAY.minusDays(1));
+        createPendingInvoice();
+        Path target = exportDirectory.resolve("results.csv");
+
+        // When
+        long exportedCount = exporter.exportFinancingDates(TODAY, TODAY, FinancingExportFormat.CSV, target);
+
+        // Then
+        List<String> lines = Files.readAllLines(target);
+        assertEquals(20, exportedCount);
+        assertEquals(21, lines.size());
+        assertEquals("invoice_id,creditor_id,purchaser_id,financing_date,financing_term_in_days," +
+                "financing_rate_in_bps,value_in_cents,early_payment_amount_in_cents,discounted_amount_in_cents",
+                lines.get(0));
+        assertEquals(archivedIds.get(0) + "," + creditor.getId() + "," + purchaser.getId() + "," + TODAY +
+                ",30,1,10000,9900,100", lines.get(1));
+        List<Long> expectedIds = new ArrayList<>(archivedIds);
+        expectedIds.addAll(liveIds);
+        assertEquals(expectedIds, lines.subList(1, lines.size()).stream()
+                .map(line -> Long.parseLong(line.substring(0, line.indexOf(','))))
+                .toList());
+        assertFalse(Files.exists(exportDirectory.resolve("results.csv.part")));
+    }
+
+    @Test
+    void shouldExportResultsAsNdjson() throws IOException {
+        // Given
+        List<Long> ids = createFinancedInvoices(25, TODAY);
+        Path target = exportDirectory.resolve("results.ndjson");
+
+        // When
+        exporter.exportFinancingDates(TODAY, TODAY, FinancingExportFormat.NDJSON, target);
+
+        // Then
+        List<String> lines = Files.readAllLines(target);
+        assertEquals(25, lines.size());
+        assertEquals("{\"invoiceId\":" + ids.get(24) + ",\"creditorId\":" + creditor.getId() +
+                ",\"purchaserId\":" + purchaser.getId() + ",\"financingDate\":\"" + TODAY +
+                "\",\"financingTermInDays\":30,\"financingRateInBps\":1,\"valueInCents\":10000," +
+                "\"earlyPaymentAmountInCents\":9900,\"discountedAmountInCents\":100}", lines.get(24));
+    }
+
+    @Test
+    void shouldExportResultsAsFixedSizeBinaryRecords() throws IOException {
+        // Given
+        List<Long> ids = createFinancedInvoices(30, TODAY);
+        Path target = exportDirectory.resolve("results.bin");
+
+        // When
+        exporter.exportFinancingDates(TODAY, TODAY, FinancingExportFormat.BINARY, target);
+
+        // Then
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(target));
+        assertEquals(8 + 30 * FinancingResultFileWriter.BINARY_RECORD_SIZE, file.remaining());
+        assertEquals(FinancingResultFileWriter.BINARY_MAGIC, file.getInt());
+        assertEquals(FinancingResultFileWriter.BINARY_VERSION, file.getInt());
+        for (long id : ids) {
+            assertEquals(id, file.getLong());
+            assertEquals(creditor.getId(), file.getLong());
+            assertEquals(purchaser.getId(), file.getLong());
+            assertEquals(TODAY.toEpochDay(), file.getInt());
+            assertEquals(30, file.getInt());
+            assertEquals(1, file.getInt());
+            assertEquals(10_000L, file.getLong());
+            assertEquals(9_900L, file.getLong());
+            assertEquals(100L, file.getLong());
+        }
+    }
+
+    @Test
+    void shouldExportResultsOfTheDatesOfRun() throws IOException {
+        // Given
+        createFinancedInvoices(2, TODAY.minusDays(2));
+        List<Long> ids = createFinancedInvoices(2, TODAY.minusDays(1));
+        ids.addAll(createFinancedInvoices(2, TODAY));
+        FinancingRun run = transactionTemplate.execute(status -> {
+            FinancingRun newRun = FinancingRun.builder()
+                    .status(FinancingRunStatus.COMPLETED)
+                    .financingDate(TODAY.minusDays(1))
+                    .owner("exporter-test")
+                    .startedAt(TODAY.minusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant())
+                    .heartbeatAt(Instant.now())
+                    .finishedAt(Instant.now())
+                    .build();
+            entityManager.persist(newRun);
+            return newRun;
+        });
+        Path target = exportDirectory.resolve("run.csv");
+
+        // When
+        long exportedCount = exporter.exportRun(run.getId(), FinancingExportFormat.CSV, target);
+
+        // Then
+        assertEquals(4, exportedCount);
+        assertEquals(ids, Files.readAllLines(target).stream()
+                .skip(1)
+                .map(line -> Long.parseLong(line.substring(0, line.indexOf(','))))
+                .toList());
+        assertThrows(IllegalArgumentException.class,
+                () -> exporter.exportRun(run.getId() + 1, FinancingExportFormat.CSV, target));
+    }
+
+    @Test
+    void shouldReplacePreviousExport() throws IOException {
+        // Given
+        createFinancedInvoices(1, TODAY);
+        Path target = exportDirectory.resolve("results.csv");
+        Files.writeString(target, "a previous export, longer than the new one\n".repeat(100));
+
+        // When
+        exporter.exportFinancingDates(TODAY, TODAY, FinancingExportFormat.CSV, target);
+
+        // Then
+        assertEquals(2, Files.readAllLines(target).size());
+    }
+
+    private List<Long> createFinancedInvoices(int count, LocalDate financingDate) {
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Invoice invoice = Invoice.builder()
+                        .creditor(creditor)
+                        .maturityDate(financingDate.plusDays(30))
+                        .valueInCents(10_000L)
+                        .earlyPaymentAmountInCents(9_900L)
+                        .discountedAmountInCents(100L)
+                        .financingStatus(InvoiceFinancingStatus.FINANCED)
+                        .build();
+                entityManager.persist(invoice);
+                entityManager.persist(InvoiceFinancingDetails.builder()
+                        .invoice(invoice)
+                        .purchaser(purchaser)
+                        .financingDate(financingDate)
+                        .financingTermInDays(30)
+                        .financingRateInBps(1)
+                        .earlyPaymentAmountInCents(9_900L)
+                        .discountedAmountInCents(100L)
+                        .build());
+                ids.add(invoice.getId());
+            }
+            return ids;
+        });
+    }
+
+    private void createPendingInvoice() {
+        transactionTemplate.executeWithoutResult(status -> entityManager.persist(Invoice.builder()
+                .creditor(creditor)
+                .maturityDate(TODAY.plusDays(30))
+                .valueInCents(10_000L)
+                .build()));
+    }
+}
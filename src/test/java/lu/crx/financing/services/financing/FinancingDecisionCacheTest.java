@@ -0,0 +1,100 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FinancingDecisionCacheTest {
+
+    private FinancingDecisionCache decisionCache;
+
+    @BeforeEach
+    void setUp() {
+        decisionCache = new FinancingDecisionCache();
+    }
+
+    @Test
+    void shouldKeepFirstDecisionPerCreditorAndTerm() {
+        // Given
+        PurchaserFinancingResult match = new PurchaserFinancingResult(
+                Purchaser.builder().id(1L).build(), 3, 30, LocalDate.now(), 3.33);
+
+        // When
+        Optional<PurchaserFinancingResult> missed = decisionCache.get(1L, 30);
+        Optional<PurchaserFinancingResult> first = decisionCache.putIfAbsent(1L, 30, Optional.of(match));
+        Optional<PurchaserFinancingResult> concurrent = decisionCache.putIfAbsent(1L, 30, Optional.empty());
+        Optional<PurchaserFinancingResult> cached = decisionCache.get(1L, 30);
+
+        // Then
+        assertNull(missed);
+        assertSame(match, first.orElseThrow());
+        assertSame(match, concurrent.orElseThrow());
+        assertSame(match, cached.orElseThrow());
+        assertEquals(1, decisionCache.getHitCount());
+        assertEquals(1, decisionCache.getMissCount());
+    }
+
+    @Test
+    void shouldCacheAbsentDecisions() {
+        // When
+        decisionCache.putIfAbsent(1L, 30, Optional.empty());
+        Optional<PurchaserFinancingResult> cached = decisionCache.get(1L, 30);
+
+        // Then
+        assertFalse(cached.isPresent());
+        assertEquals(1, decisionCache.getHitCount());
+    }
+
+    @Test
+    void shouldKeepSeparateDecisionsForDifferentKeys() {
+        // When
+        decisionCache.putIfAbsent(1L, 30, Optional.empty());
+        decisionCache.putIfAbsent(1L, -30, Optional.empty());
+        decisionCache.putIfAbsent(2L, 30, Optional.empty());
+
+        // Then
+        assertNull(decisionCache.get(1L, 31));
+        assertNull(decisionCache.get(3L, 30));
+        assertEquals(0, decisionCache.getHitCount());
+        assertEquals(2, decisionCache.getMissCount());
+        assertEquals(3, decisionCache.size());
+    }
+
+    @Test
+    void shouldKeepAllDecisionsWhenTableGrows() {
+        // When
+        for (int term = 0; term < 1_000; term++) {
+            decisionCache.putIfAbsent(term % 7, term, Optional.empty());
+        }
+
+        // Then
+        assertEquals(1_000, decisionCache.size());
+        for (int term = 0; term < 1_000; term++) {
+            assertFalse(decisionCache.get(term % 7, term).isPresent());
+        }
+        assertEquals(1_000, decisionCache.getHitCount());
+    }
+
+    @Test
+    void shouldNotCacheCreditorIdsBeyondThirtyTwoBits() {
+        // Given
+        long creditorId = 1L << 32;
+
+        // When
+        decisionCache.putIfAbsent(creditorId, 30, Optional.empty());
+
+        // Then
+        assertNull(decisionCache.get(creditorId, 30));
+        assertNull(decisionCache.get(0L, 30));
+        assertEquals(0, decisionCache.size());
+    }
+}
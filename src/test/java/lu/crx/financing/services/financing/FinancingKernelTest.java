@@ -0,0 +1,182 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingResult;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.services.eligibility.PurchaserEligibilityService;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FinancingKernelTest {
+
+    private static final LocalDate FINANCING_DATE = LocalDate.of(2023, 5, 27);
+
+    private final FinancingCalculationService calculationService = new FinancingCalculationService();
+    private final PurchaserSelectionService purchaserSelectionService = new PurchaserSelectionService(
+            calculationService, new PurchaserEligibilityService(calculationService));
+    private final FinancingKernel kernel = new FinancingKernel();
+
+    @Test
+    void shouldFinanceInvoiceWithLowestRatePurchaser() {
+        // Given
+        Creditor creditor = creditor(1L, 3);
+        Purchaser purchaser1 = purchaser(1L, 10, settings(creditor, 50));
+        Purchaser purchaser2 = purchaser(2L, 10, settings(creditor, 40));
+        FinancingOfferTable offers = FinancingOfferTable.build(
+                PurchaserOfferBook.build(Arrays.asList(purchaser1, purchaser2)), List.of(creditor));
+
+        InvoiceColumns invoices = new InvoiceColumns(1);
+        invoices.add(1L, 10000, (int) FINANCING_DATE.plusDays(27).toEpochDay(), offers.creditorIndexOf(1L));
+        FinancingResultColumns results = new FinancingResultColumns(1);
+
+        // When
+        kernel.finance(invoices, offers, FINANCING_DATE.toEpochDay(), results);
+
+        // Then
+        assertEquals(1, results.getFinancedCount());
+        assertEquals(purchaser2, offers.getPurchaser(results.purchaserIndex(0)));
+        assertEquals(27, results.financingTermInDays(0));
+        assertEquals(3, results.financingRateInBps(0));
+        assertEquals(3, results.discountAmountInCents(0));
+        assertEquals(9997, results.earlyPaymentAmountInCents(0));
+    }
+
+    @Test
+    void shouldNotFinanceInvoiceAboveMaximumRateOrWithoutOffers() {
+        // Given
+        Creditor creditor = creditor(1L, 3);
+        Creditor creditorWithoutOffers = creditor(2L, 100);
+        FinancingOfferTable offers = FinancingOfferTable.build(
+                PurchaserOfferBook.build(Collections.singletonList(purchaser(1L, 10, settings(creditor, 50)))),
+                Arrays.asList(creditor, creditorWithoutOffers));
+
+        InvoiceColumns invoices = new InvoiceColumns(3);
+        invoices.add(1L, 10000, (int) FINANCING_DATE.plusDays(90).toEpochDay(), offers.creditorIndexOf(1L));
+        invoices.add(2L, 10000, (int) FINANCING_DATE.plusDays(30).toEpochDay(), offers.creditorIndexOf(2L));
+        invoices.add(3L, 10000, (int) FINANCING_DATE.plusDays(30).toEpochDay(), offers.creditorIndexOf(3L));
+        FinancingResultColumns results = new FinancingResultColumns(3);
+
+        // When
+        kernel.finance(invoices, offers, FINANCING_DATE.toEpochDay(), results);
+
+        // Then
+        assertEquals(0, results.getFinancedCount());
+        assertEquals(-1, offers.creditorIndexOf(3L));
+        for (int i = 0; i < 3; i++) {
+            assertFalse(results.isFinanced(i));
+            assertEquals(0, results.earlyPaymentAmountInCents(i));
+        }
+        assertEquals(FinancingRejectionReason.RATE_ABOVE_MAX,
+                offers.findRejectionReason(invoices.creditorIndex(0), results.financingTermInDays(0)));
+        assertEquals(FinancingRejectionReason.NO_SETTINGS,
+                offers.findRejectionReason(invoices.creditorIndex(1), results.financingTermInDays(1)));
+        assertEquals(FinancingRejectionReason.NO_SETTINGS,
+                offers.findRejectionReason(invoices.creditorIndex(2), results.financingTermInDays(2)));
+    }
+
+    @Test
+    void shouldMatchPurchaserSelectionServiceOnRandomData() {
+        // Given
+        Random random = new Random(20230527);
+        List<Creditor> creditors = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            creditors.add(creditor(id, random.nextInt(20)));
+        }
+
+        List<Purchaser> purchasers = new ArrayList<>();
+        for (long id = 1; id <= 30; id++) {
+            List<PurchaserFinancingSettings> settings = new ArrayList<>();
+            for (Creditor creditor : creditors) {
+                if (random.nextInt(3) == 0) {
+                    settings.add(settings(creditor, random.nextInt(120) - 10));
+                }
+            }
+            purchasers.add(purchaser(id, random.nextInt(60), settings.toArray(new PurchaserFinancingSettings[0])));
+        }
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(purchasers);
+        // As built by a run: only the creditors with offers get an index
+        FinancingOfferTable offers = FinancingOfferTable.build(offerBook);
+        FinancingRunContext context = new FinancingRunContext(FINANCING_DATE, offerBook);
+
+        int invoiceCount = 5000;
+        List<Invoice> invoiceList = new ArrayList<>();
+        InvoiceColumns invoices = new InvoiceColumns(invoiceCount);
+        for (long id = 1; id <= invoiceCount; id++) {
+            Invoice invoice = Invoice.builder()
+                    .id(id)
+                    .creditor(creditors.get(random.nextInt(creditors.size())))
+                    .valueInCents(random.nextInt(1_000_000) - 1000)
+                    .maturityDate(FINANCING_DATE.plusDays(random.nextInt(120) - 5))
+                    .build();
+            invoiceList.add(invoice);
+            invoices.add(id, invoice.getValueInCents(), (int) invoice.getMaturityDate().toEpochDay(),
+                    offers.creditorIndexOf(invoice.getCreditor().getId()));
+        }
+        FinancingResultColumns results = new FinancingResultColumns(invoiceCount);
+
+        // When
+        kernel.finance(invoices, offers, FINANCING_DATE.toEpochDay(), results);
+
+        // Then
+        int financedCount = 0;
+        for (int i = 0; i < invoiceCount; i++) {
+            Invoice invoice = invoiceList.get(i);
+            Optional<PurchaserFinancingResult> expected =
+                    purchaserSelectionService.findBestPurchaserForInvoice(invoice, offerBook, FINANCING_DATE);
+
+            assertEquals(expected.isPresent(), results.isFinanced(i), "invoice " + invoice.getId());
+            if (expected.isPresent()) {
+                financedCount++;
+                long discountAmount = calculationService.calculateDiscountAmount(
+                        invoice.getValueInCents(), expected.get().getFinancingRateInBps());
+
+                assertEquals(expected.get().getPurchaser(), offers.getPurchaser(results.purchaserIndex(i)));
+                assertEquals(expected.get().getFinancingTermInDays(), results.financingTermInDays(i));
+                assertEquals(expected.get().getFinancingRateInBps(), results.financingRateInBps(i));
+                assertEquals(discountAmount, results.discountAmountInCents(i));
+                assertEquals(invoice.getValueInCents() - discountAmount, results.earlyPaymentAmountInCents(i));
+            } else {
+                assertEquals(purchaserSelectionService.findRejectionReason(invoice, context),
+                        offers.findRejectionReason(invoices.creditorIndex(i), results.financingTermInDays(i)),
+                        "invoice " + invoice.getId());
+            }
+        }
+        assertEquals(financedCount, results.getFinancedCount());
+        assertTrue(financedCount > 0);
+    }
+
+    private static Creditor creditor(long id, int maxFinancingRateInBps) {
+        return Creditor.builder().id(id).name("Creditor" + id).maxFinancingRateInBps(maxFinancingRateInBps).build();
+    }
+
+    private static Purchaser purchaser(long id, int minimumFinancingTermInDays, PurchaserFinancingSettings... settings) {
+        return Purchaser.builder()
+                .id(id)
+                .name("Purchaser" + id)
+                .minimumFinancingTermInDays(minimumFinancingTermInDays)
+                .purchaserFinancingSettings(Arrays.asList(settings))
+                .build();
+    }
+
+    private static PurchaserFinancingSettings settings(Creditor creditor, int annualRateInBps) {
+        return PurchaserFinancingSettings.builder()
+                .creditor(creditor)
+                .annualRateInBps(annualRateInBps)
+                .build();
+    }
+}
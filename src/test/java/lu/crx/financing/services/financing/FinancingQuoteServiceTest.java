@@ -0,0 +1,132 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.FinancingQuote;
+import lu.crx.financing.entities.FinancingQuoteRequest;
+import lu.crx.financing.entities.FinancingRejectionReason;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.entities.ReferenceDataStamp;
+import lu.crx.financing.services.eligibility.PurchaserEligibilityService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FinancingQuoteServiceTest {
+
+    private static final Creditor CREDITOR = Creditor.builder()
+            .id(1L)
+            .name("Creditor1")
+            .maxFinancingRateInBps(3)
+            .build();
+
+    @Mock
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    private FinancingProperties financingProperties;
+
+    private FinancingQuoteService financingQuoteService;
+
+    @BeforeEach
+    void setUp() {
+        FinancingCalculationService calculationService = new FinancingCalculationService();
+        financingProperties = new FinancingProperties();
+        financingQuoteService = new FinancingQuoteService(
+                purchaserSnapshotService,
+                new PurchaserSelectionService(calculationService, new PurchaserEligibilityService(calculationService)),
+                calculationService,
+                financingProperties
+        );
+
+        when(purchaserSnapshotService.getSnapshot()).thenReturn(new PurchaserSnapshot(1, PurchaserOfferBook.build(List.of(
+                purchaser(1L, "Purchaser1", 50),
+                purchaser(2L, "Purchaser2", 40))), new ReferenceDataStamp(0, 0)));
+    }
+
+    @Test
+    void shouldQuoteLowestRatePurchaser() {
+        // When
+        FinancingQuote quote = financingQuoteService.quote(request(CREDITOR.getId(), 30));
+
+        // Then
+        assertTrue(quote.isFinanced());
+        assertEquals(2L, quote.getPurchaserId());
+        assertEquals("Purchaser2", quote.getPurchaserName());
+        assertEquals(30, quote.getFinancingTermInDays());
+        assertEquals(3, quote.getFinancingRateInBps());
+        assertEquals(9_997_00L, quote.getEarlyPaymentAmountInCents());
+        assertEquals(3_00L, quote.getDiscountAmountInCents());
+        assertNull(quote.getRejectionReason());
+    }
+
+    @Test
+    void shouldQuoteRejectionReasons() {
+        // When
+        List<FinancingQuote> quotes = financingQuoteService.quote(List.of(
+                request(99L, 30),
+                request(CREDITOR.getId(), 10),
+                request(CREDITOR.getId(), 90)));
+
+        // Then
+        assertEquals(FinancingRejectionReason.NO_SETTINGS, quotes.get(0).getRejectionReason());
+        assertEquals(FinancingRejectionReason.TERM_TOO_SHORT, quotes.get(1).getRejectionReason());
+        assertEquals(FinancingRejectionReason.RATE_ABOVE_MAX, quotes.get(2).getRejectionReason());
+        quotes.forEach(quote -> assertFalse(quote.isFinanced()));
+    }
+
+    @Test
+    void shouldReturnQuotesInRequestOrderWhenEvaluatedInParallel() {
+        // Given
+        financingProperties.getQuote().setParallelThreshold(10);
+        List<FinancingQuoteRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(request(i % 3 == 0 ? 99L : CREDITOR.getId(), 20 + i % 10));
+        }
+
+        // When
+        List<FinancingQuote> quotes = financingQuoteService.quote(requests);
+
+        // Then
+        assertEquals(requests.size(), quotes.size());
+        for (int i = 0; i < requests.size(); i++) {
+            assertSame(requests.get(i), quotes.get(i).getRequest());
+            assertEquals(i % 3 != 0, quotes.get(i).isFinanced());
+        }
+    }
+
+    private static FinancingQuoteRequest request(long creditorId, int daysToMaturity) {
+        return FinancingQuoteRequest.builder()
+                .creditorId(creditorId)
+                .valueInCents(10_000_00L)
+                .maturityDate(LocalDate.now().plusDays(daysToMaturity))
+                .build();
+    }
+
+    private static Purchaser purchaser(long id, String name, int annualRateInBps) {
+        return Purchaser.builder()
+                .id(id)
+                .name(name)
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .id(id)
+                        .creditor(CREDITOR)
+                        .annualRateInBps(annualRateInBps)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.QuarantinedInvoiceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FinancingRunServiceTest {
+
+    private static final LocalDate FINANCING_DATE = LocalDate.of(2026, 10, 17);
+
+    @Mock
+    private FinancingRunRepository financingRunRepository;
+
+    @Mock
+    private QuarantinedInvoiceRepository quarantinedInvoiceRepository;
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    private FinancingRunService financingRunService;
+
+    @BeforeEach
+    void setUp() {
+        financingRunService = new FinancingRunService(financingRunRepository, quarantinedInvoiceRepository,
+                invoiceRepository, new FinancingProperties());
+    }
+
+    @Test
+    void shouldNotStartRunWhileLatestRunIsAlive() {
+        // Given
+        when(financingRunRepository.findFirstByFinancingDateOrderByIdDesc(FINANCING_DATE))
+                .thenReturn(Optional.of(run(1L, FinancingRunStatus.RUNNING, Instant.now())));
+
+        // When
+        Optional<FinancingRun> run = financingRunService.startOrResume(1, FINANCING_DATE);
+
+        // Then
+        assertFalse(run.isPresent());
+        verify(financingRunRepository, never()).save(any());
+        verify(financingRunRepository, never())
+                .takeOver(anyLong(), any(), any(), any(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void shouldNotStartRunWhenTakeOverIsLostToLiveOwner() {
+        // Given
+        FinancingRun staleRun = run(1L, FinancingRunStatus.RUNNING, Instant.now().minus(Duration.ofHours(1)));
+        when(financingRunRepository.findFirstByFinancingDateOrderByIdDesc(FINANCING_DATE))
+                .thenReturn(Optional.of(staleRun), Optional.of(run(1L, FinancingRunStatus.RUNNING, Instant.now())));
+        when(financingRunRepository.takeOver(eq(1L), eq(FinancingRunStatus.RUNNING), eq(staleRun.getHeartbeatAt()),
+                eq(FinancingRunStatus.RUNNING), anyString(), eq(1L), any(Instant.class))).thenReturn(0);
+
+        // When
+        Optional<FinancingRun> run = financingRunService.startOrResume(1, FINANCING_DATE);
+
+        // Then
+        assertFalse(run.isPresent());
+        verify(financingRunRepository, never()).save(any());
+    }
+
+    @Test
+    void shouldStartNewRunWhenLatestRunCompleted() {
+        // Given
+        FinancingRun newRun = run(2L, FinancingRunStatus.RUNNING, Instant.now());
+        when(financingRunRepository.findFirstByFinancingDateOrderByIdDesc(FINANCING_DATE))
+                .thenReturn(Optional.of(run(1L, FinancingRunStatus.COMPLETED, Instant.now())));
+        when(financingRunRepository.save(any(FinancingRun.class))).thenReturn(newRun);
+
+        // When
+        Optional<FinancingRun> run = financingRunService.startOrResume(1, FINANCING_DATE);
+
+        // Then
+        assertSame(newRun, run.orElseThrow());
+    }
+
+    @Test
+    void shouldOnlyCountInvoiceNoLongerPendingAsProcessed() {
+        // Given
+        when(invoiceRepository.markQuarantined(7L)).thenReturn(0);
+
+        // When
+        boolean quarantined = financingRunService.quarantine(1L, 7L, true, new IllegalStateException("broken"));
+
+        // Then
+        assertFalse(quarantined);
+        verify(quarantinedInvoiceRepository, never()).save(any());
+        verify(financingRunRepository).recordChunk(eq(1L), eq(7L), eq(1L), eq(0L), eq(0L), any(Instant.class));
+    }
+
+    @Test
+    void shouldQuarantinePendingInvoice() {
+        // Given
+        when(invoiceRepository.markQuarantined(7L)).thenReturn(1);
+
+        // When
+        boolean quarantined = financingRunService.quarantine(1L, 7L, true, new IllegalStateException("broken"));
+
+        // Then
+        assertTrue(quarantined);
+        verify(quarantinedInvoiceRepository).save(any());
+        verify(financingRunRepository).recordChunk(eq(1L), eq(7L), eq(1L), eq(0L), eq(1L), any(Instant.class));
+    }
+
+    private static FinancingRun run(long id, FinancingRunStatus status, Instant heartbeatAt) {
+        return FinancingRun.builder()
+                .id(id)
+                .status(status)
+                .snapshotVersion(1)
+                .financingDate(FINANCING_DATE)
+                .owner("other-instance")
+                .startedAt(heartbeatAt)
+                .heartbeatAt(heartbeatAt)
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package lu.crx.financing.services.financing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.ReferenceDataStamp;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.services.batch.InvoiceBatchProcessor;
+import lu.crx.financing.services.batch.PendingInvoiceReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InstantFinancingServiceTest {
+
+    @Mock
+    private PendingInvoiceReader pendingInvoiceReader;
+
+    @Mock
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @Mock
+    private InvoiceBatchProcessor invoiceBatchProcessor;
+
+    private FinancingProperties financingProperties;
+
+    private InstantFinancingService instantFinancingService;
+
+    @BeforeEach
+    void setUp() {
+        financingProperties = new FinancingProperties();
+        instantFinancingService = new InstantFinancingService(
+                pendingInvoiceReader,
+                purchaserSnapshotService,
+                invoiceBatchProcessor,
+                financingProperties,
+                new FinancingMetrics(new SimpleMeterRegistry())
+        );
+    }
+
+    @Test
+    void shouldFinanceInvoiceWithPurchaserSnapshot() {
+        // Given
+        List<Invoice> pendingInvoices = List.of(Invoice.builder().id(7L).build());
+        PurchaserSnapshot snapshot = new PurchaserSnapshot(3, PurchaserOfferBook.build(Collections.emptyList()),
+                new ReferenceDataStamp(0, 0));
+
+        when(pendingInvoiceReader.readByIds(eq(List.of(7L)), any(FinancingRunContext.class))).thenReturn(pendingInvoices);
+        when(purchaserSnapshotService.getSnapshot()).thenReturn(snapshot);
+        when(invoiceBatchProcessor.processInvoiceBatch(eq(pendingInvoices), any(FinancingRunContext.class)))
+                .thenReturn(1);
+
+        // When
+        boolean financed = instantFinancingService.financeInvoice(7L);
+
+        // Then
+        assertTrue(financed);
+        ArgumentCaptor<FinancingRunContext> context = ArgumentCaptor.forClass(FinancingRunContext.class);
+        verify(invoiceBatchProcessor).processInvoiceBatch(eq(pendingInvoices), context.capture());
+        assertSame(snapshot.getOfferBook(), context.getValue().getOfferBook());
+        assertEquals(3, context.getValue().getSnapshotVersion());
+    }
+
+    @Test
+    void shouldSkipInvoicesThatAreNotPending() {
+        // Given
+        when(purchaserSnapshotService.getSnapshot())
+                .thenReturn(new PurchaserSnapshot(1, PurchaserOfferBook.build(Collections.emptyList()),
+                        new ReferenceDataStamp(0, 0)));
+        when(pendingInvoiceReader.readByIds(eq(List.of(7L, 8L)), any(FinancingRunContext.class)))
+                .thenReturn(Collections.emptyList());
+
+        // When
+        int financedInvoiceCount = instantFinancingService.financeInvoices(List.of(7L, 8L));
+
+        // Then
+        assertEquals(0, financedInvoiceCount);
+        verifyNoInteractions(invoiceBatchProcessor);
+    }
+
+    @Test
+    void shouldDoNothingForEmptyIdList() {
+        // When
+        int financedInvoiceCount = instantFinancingService.financeInvoices(Collections.emptyList());
+
+        // Then
+        assertEquals(0, financedInvoiceCount);
+        verifyNoInteractions(pendingInvoiceReader, purchaserSnapshotService, invoiceBatchProcessor);
+    }
+
+    @Test
+    void shouldRejectMoreIdsThanOnePage() {
+        // Given
+        financingProperties.getRead().setPageSize(2);
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class,
+                () -> instantFinancingService.financeInvoices(List.of(1L, 2L, 3L)));
+        verifyNoInteractions(pendingInvoiceReader);
+    }
+
+    @Test
+    void shouldReportUnfinancedInvoice() {
+        // Given
+        List<Invoice> pendingInvoices = List.of(Invoice.builder().id(7L).build());
+        when(pendingInvoiceReader.readByIds(eq(List.of(7L)), any(FinancingRunContext.class))).thenReturn(pendingInvoices);
+        when(purchaserSnapshotService.getSnapshot())
+                .thenReturn(new PurchaserSnapshot(1, PurchaserOfferBook.build(Collections.emptyList()),
+                        new ReferenceDataStamp(0, 0)));
+
+        // When
+        boolean financed = instantFinancingService.financeInvoice(7L);
+
+        // Then
+        assertFalse(financed);
+    }
+}
@@ -1,66 +1,358 @@
 package lu.crx.financing.services.financing;
 
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.FinancingWriteMode;
+import lu.crx.financing.entities.FinancingChunkResult;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.entities.FinancingRunStatus;
 import lu.crx.financing.entities.Invoice;
-import lu.crx.financing.entities.Purchaser;
-
-import lu.crx.financing.repositories.InvoiceRepository;
-import lu.crx.financing.repositories.PurchaserRepository;
-import lu.crx.financing.services.batch.InvoiceBatchProcessor;
+import lu.crx.financing.entities.ReferenceDataStamp;
+import lu.crx.financing.services.archive.InvoiceArchiveService;
+import lu.crx.financing.services.batch.FinancingChunkProcessor;
+import lu.crx.financing.services.batch.FinancingPipeline;
+import lu.crx.financing.services.batch.JournaledFinancingWorker;
+import lu.crx.financing.services.batch.KernelFinancingWorker;
+import lu.crx.financing.services.batch.LeasedFinancingWorker;
+import lu.crx.financing.services.batch.ParallelFinancingEngine;
+import lu.crx.financing.services.batch.PendingInvoiceReader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class InvoiceFinancingServiceTest {
 
+    private static final long RUN_ID = 5L;
+
     @Mock
-    private InvoiceRepository invoiceRepository;
+    private PendingInvoiceReader pendingInvoiceReader;
 
     @Mock
-    private PurchaserRepository purchaserRepository;
+    private PurchaserSnapshotService purchaserSnapshotService;
 
     @Mock
-    private InvoiceBatchProcessor invoiceBatchProcessor;
+    private FinancingRunService financingRunService;
+
+    @Mock
+    private FinancingChunkProcessor chunkProcessor;
+
+    @Mock
+    private ParallelFinancingEngine parallelFinancingEngine;
+
+    @Mock
+    private FinancingPipeline financingPipeline;
+
+    @Mock
+    private LeasedFinancingWorker leasedFinancingWorker;
+
+    @Mock
+    private JournaledFinancingWorker journaledFinancingWorker;
+
+    @Mock
+    private KernelFinancingWorker kernelFinancingWorker;
+
+    @Mock
+    private ReferenceDataCache referenceDataCache;
+
+    @Mock
+    private InvoiceArchiveService invoiceArchiveService;
+
+    private FinancingProperties financingProperties;
 
     private InvoiceFinancingService invoiceFinancingService;
 
     @BeforeEach
     void setUp() {
+        financingProperties = new FinancingProperties();
         invoiceFinancingService = new InvoiceFinancingService(
-                invoiceRepository,
-                purchaserRepository,
-                invoiceBatchProcessor
+                pendingInvoiceReader,
+                purchaserSnapshotService,
+                financingRunService,
+                chunkProcessor,
+                parallelFinancingEngine,
+                financingPipeline,
+                leasedFinancingWorker,
+                journaledFinancingWorker,
+                kernelFinancingWorker,
+                referenceDataCache,
+                invoiceArchiveService,
+                financingProperties
         );
     }
 
     @Test
-    void shouldProcessInvoiceFinancing() {
+    void shouldProcessInvoiceFinancingInChunks() {
+        // Given
+        List<Invoice> pendingInvoices = Collections.singletonList(Invoice.builder().id(1L).build());
+
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(0)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(1));
+        when(chunkProcessor.processChunk(any(), eq(true), any(FinancingRunContext.class)))
+                .thenReturn(new FinancingChunkResult(1, 1, 0, 1L));
+        when(pendingInvoiceReader.readAfter(eq(0L), eq(1000), any(FinancingRunContext.class))).thenReturn(pendingInvoices);
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        assertEquals(List.of(pendingInvoices), readChunks(1));
+        verify(financingRunService).complete(RUN_ID);
+        verify(financingRunService, never()).fail(anyLong(), any());
+        verify(referenceDataCache).publishStatistics();
+        verifyNoInteractions(parallelFinancingEngine, invoiceArchiveService);
+    }
+
+    @Test
+    void shouldReadChunksPageByPageAfterLastId() {
         // Given
-        List<Invoice> pendingInvoices = Collections.singletonList(Invoice.builder().build());
-        List<Purchaser> availablePurchasers = Collections.singletonList(Purchaser.builder().build());
-        LocalDate financingDate = LocalDate.now();
+        financingProperties.getRead().setPageSize(2);
 
-        when(invoiceRepository.findNonFinancedInvoices()).thenReturn(pendingInvoices);
-        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(availablePurchasers);
-        when(invoiceBatchProcessor.processInvoiceBatch(pendingInvoices, availablePurchasers, financingDate))
-                .thenReturn(1);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(0)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(3));
+        when(chunkProcessor.processChunk(any(), eq(true), any(FinancingRunContext.class)))
+                .thenReturn(new FinancingChunkResult(2, 1, 0, 7L))
+                .thenReturn(new FinancingChunkResult(1, 1, 0, 9L));
 
         // When
         invoiceFinancingService.processInvoiceFinancing();
 
         // Then
-        verify(invoiceRepository).findNonFinancedInvoices();
-        verify(purchaserRepository).findAllWithFinancingSettings();
-        verify(invoiceBatchProcessor).processInvoiceBatch(pendingInvoices, availablePurchasers, financingDate);
+        readChunks(2);
+        verify(pendingInvoiceReader).readAfter(eq(0L), eq(2), any(FinancingRunContext.class));
+        verify(pendingInvoiceReader).readAfter(eq(7L), eq(2), any(FinancingRunContext.class));
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldResumeAfterCheckpointOfInterruptedRun() {
+        // Given
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(42)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(42));
+        when(chunkProcessor.processChunk(any(), eq(true), any(FinancingRunContext.class)))
+                .thenReturn(FinancingChunkResult.EMPTY);
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        readChunks(1);
+        verify(pendingInvoiceReader).readAfter(eq(42L), eq(1000), any(FinancingRunContext.class));
+    }
+
+    @Test
+    void shouldMarkRunAsFailedAndRethrowWhenChunkFails() {
+        // Given
+        IllegalStateException failure = new IllegalStateException("Database unavailable");
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(0)));
+        when(chunkProcessor.processChunk(any(), anyBoolean(), any(FinancingRunContext.class))).thenThrow(failure);
+
+        // When / Then
+        assertSame(failure, assertThrows(IllegalStateException.class,
+                () -> invoiceFinancingService.processInvoiceFinancing()));
+        verify(financingRunService).fail(RUN_ID, failure);
+        verify(financingRunService, never()).complete(anyLong());
+    }
+
+    @Test
+    void shouldDelegateToParallelEngineWhenEnabled() {
+        // Given
+        financingProperties.getParallel().setEnabled(true);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(0)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(0));
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(parallelFinancingEngine).processPendingInvoices(any(FinancingRunContext.class));
+        verifyNoInteractions(chunkProcessor, financingPipeline);
+    }
+
+    @Test
+    void shouldDelegateToPipelineFromCheckpointWhenEnabled() {
+        // Given
+        financingProperties.getPipeline().setEnabled(true);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(42)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(42));
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(financingPipeline).processPendingInvoices(eq(42L), any(FinancingRunContext.class));
+        verifyNoInteractions(chunkProcessor, parallelFinancingEngine);
+    }
+
+    @Test
+    void shouldDelegateToJournaledWorkerFromCheckpointWhenEnabled() {
+        // Given
+        financingProperties.getJournal().setEnabled(true);
+        financingProperties.getPipeline().setEnabled(true);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(42)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(42));
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(journaledFinancingWorker).processPendingInvoices(eq(42L), any(FinancingRunContext.class));
+        verifyNoInteractions(chunkProcessor, financingPipeline, parallelFinancingEngine);
+    }
+
+    @Test
+    void shouldDelegateToKernelWorkerFromCheckpointWhenEnabled() {
+        // Given
+        financingProperties.getKernel().setEnabled(true);
+        financingProperties.getPipeline().setEnabled(true);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(42)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(42));
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(kernelFinancingWorker).processPendingInvoices(eq(42L), any(FinancingRunContext.class));
+        verifyNoInteractions(chunkProcessor, financingPipeline, parallelFinancingEngine);
+    }
+
+    @Test
+    void shouldIgnoreKernelInEntityWriteMode() {
+        // Given
+        financingProperties.getKernel().setEnabled(true);
+        financingProperties.getPipeline().setEnabled(true);
+        financingProperties.getWrite().setMode(FinancingWriteMode.ENTITY);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(42)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(42));
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(financingPipeline).processPendingInvoices(eq(42L), any(FinancingRunContext.class));
+        verifyNoInteractions(kernelFinancingWorker);
+    }
+
+    @Test
+    void shouldShareInvoicesThroughLeasesInNewRunWhenEnabled() {
+        // Given
+        financingProperties.getLease().setEnabled(true);
+        financingProperties.getParallel().setEnabled(true);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.start(eq(1L), any(LocalDate.class))).thenReturn(run(0));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(0));
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(leasedFinancingWorker).processPendingInvoices(any(FinancingRunContext.class));
+        verify(financingRunService, never()).startOrResume(anyLong(), any(LocalDate.class));
+        verifyNoInteractions(chunkProcessor, parallelFinancingEngine, financingPipeline);
+    }
+
+    @Test
+    void shouldNotFinanceWhileAnotherProcessHoldsTheRun() {
+        // Given
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.empty());
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(financingRunService, never()).complete(anyLong());
+        verifyNoInteractions(chunkProcessor, parallelFinancingEngine, financingPipeline, invoiceArchiveService);
+    }
+
+    @Test
+    void shouldArchiveFinancedInvoicesAfterRunWhenEnabled() {
+        // Given
+        financingProperties.getArchive().setEnabled(true);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot(1));
+        when(financingRunService.startOrResume(eq(1L), any(LocalDate.class))).thenReturn(Optional.of(run(0)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(0));
+        when(chunkProcessor.processChunk(any(), eq(true), any(FinancingRunContext.class)))
+                .thenReturn(FinancingChunkResult.EMPTY);
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        verify(invoiceArchiveService).archiveFinancedInvoices();
+    }
+
+    @Test
+    void shouldRunWithCurrentPurchaserSnapshotAndRun() {
+        // Given
+        PurchaserSnapshot snapshot = snapshot(7);
+        when(purchaserSnapshotService.getCurrentSnapshot()).thenReturn(snapshot);
+        when(financingRunService.startOrResume(eq(7L), any(LocalDate.class))).thenReturn(Optional.of(run(0)));
+        when(financingRunService.complete(RUN_ID)).thenReturn(run(0));
+        when(chunkProcessor.processChunk(any(), eq(true), any(FinancingRunContext.class)))
+                .thenReturn(FinancingChunkResult.EMPTY);
+
+        // When
+        invoiceFinancingService.processInvoiceFinancing();
+
+        // Then
+        ArgumentCaptor<FinancingRunContext> context = ArgumentCaptor.forClass(FinancingRunContext.class);
+        verify(chunkProcessor).processChunk(any(), eq(true), context.capture());
+        assertEquals(7, context.getValue().getSnapshotVersion());
+        assertEquals(RUN_ID, context.getValue().getRunId());
+        assertSame(snapshot.getOfferBook(), context.getValue().getOfferBook());
+    }
+
+    /**
+     * Reads the chunks the service asked the chunk processor for.
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<Invoice>> readChunks(int expectedChunkCount) {
+        ArgumentCaptor<Supplier<List<Invoice>>> chunkReaders = ArgumentCaptor.forClass(Supplier.class);
+        verify(chunkProcessor, times(expectedChunkCount))
+                .processChunk(chunkReaders.capture(), eq(true), any(FinancingRunContext.class));
+        return chunkReaders.getAllValues().stream().map(Supplier::get).toList();
+    }
+
+    private static FinancingRun run(long lastInvoiceId) {
+        return FinancingRun.builder()
+                .id(RUN_ID)
+                .status(FinancingRunStatus.RUNNING)
+                .lastInvoiceId(lastInvoiceId)
+                .build();
+    }
+
+    private static PurchaserSnapshot snapshot(long version) {
+        return new PurchaserSnapshot(version, PurchaserOfferBook.build(Collections.emptyList()),
+                new ReferenceDataStamp(0, 0));
+    }
+}
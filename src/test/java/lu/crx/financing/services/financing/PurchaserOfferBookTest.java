@@ -0,0 +1,132 @@
+package lu.crx.financing.services.financing;
+
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.entities.PurchaserOffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PurchaserOfferBookTest {
+
+    private final Creditor creditor1 = Creditor.builder().id(1L).name("Creditor1").maxFinancingRateInBps(3).build();
+    private final Creditor creditor2 = Creditor.builder().id(2L).name("Creditor2").maxFinancingRateInBps(3).build();
+
+    @Test
+    void shouldFindLowestRateOfferMeetingMinimumTerm() {
+        // Given
+        Purchaser shortTermExpensive = purchaser(1L, 10, settings(creditor1, 60));
+        Purchaser longTermCheap = purchaser(2L, 40, settings(creditor1, 20));
+        Purchaser midTermMid = purchaser(3L, 25, settings(creditor1, 40));
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(
+                Arrays.asList(shortTermExpensive, longTermCheap, midTermMid));
+
+        // When / Then
+        assertEquals(1L, findPurchaserId(offerBook, creditor1, 15));
+        assertEquals(3L, findPurchaserId(offerBook, creditor1, 30));
+        assertEquals(2L, findPurchaserId(offerBook, creditor1, 40));
+        assertEquals(2L, findPurchaserId(offerBook, creditor1, 365));
+    }
+
+    @Test
+    void shouldReturnEmptyWhenTermIsShorterThanEveryMinimum() {
+        // Given
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Collections.singletonList(
+                purchaser(1L, 40, settings(creditor1, 50))));
+
+        // When
+        Optional<PurchaserOffer> offer = offerBook.findLowestRateOffer(creditor1.getId(), 39);
+
+        // Then
+        assertFalse(offer.isPresent());
+    }
+
+    @Test
+    void shouldReturnEmptyForCreditorWithoutOffers() {
+        // Given
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Collections.singletonList(
+                purchaser(1L, 10, settings(creditor1, 50))));
+
+        // When
+        Optional<PurchaserOffer> offer = offerBook.findLowestRateOffer(creditor2.getId(), 30);
+
+        // Then
+        assertFalse(offer.isPresent());
+        assertFalse(offerBook.hasOffersForCreditor(creditor2.getId()));
+    }
+
+    @Test
+    void shouldPreferFirstListedPurchaserOnEqualRates() {
+        // Given
+        Purchaser first = purchaser(1L, 30, settings(creditor1, 40));
+        Purchaser second = purchaser(2L, 10, settings(creditor1, 40));
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Arrays.asList(first, second));
+
+        // When / Then
+        assertEquals(2L, findPurchaserId(offerBook, creditor1, 20));
+        assertEquals(1L, findPurchaserId(offerBook, creditor1, 30));
+    }
+
+    @Test
+    void shouldPreferFirstListedPurchaserForNonPositiveTerm() {
+        // Given
+        Purchaser expensive = purchaser(1L, 0, settings(creditor1, 90));
+        Purchaser cheap = purchaser(2L, 0, settings(creditor1, 10));
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Arrays.asList(expensive, cheap));
+
+        // When / Then
+        assertEquals(1L, findPurchaserId(offerBook, creditor1, 0));
+        assertEquals(2L, findPurchaserId(offerBook, creditor1, 1));
+    }
+
+    @Test
+    void shouldIndexOffersByCreditor() {
+        // Given
+        Purchaser purchaser1 = purchaser(1L, 10, settings(creditor1, 50), settings(creditor2, 30));
+        Purchaser purchaser2 = purchaser(2L, 10, settings(creditor1, 40), settings(creditor2, 60));
+
+        // When
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Arrays.asList(purchaser1, purchaser2));
+
+        // Then
+        assertEquals(2, offerBook.getPurchaserCount());
+        assertEquals(2, offerBook.getCreditorCount());
+        assertEquals(4, offerBook.getOfferCount());
+        assertTrue(offerBook.hasOffersForCreditor(creditor1.getId()));
+        assertEquals(2L, findPurchaserId(offerBook, creditor1, 30));
+        assertEquals(1L, findPurchaserId(offerBook, creditor2, 30));
+    }
+
+    private long findPurchaserId(PurchaserOfferBook offerBook, Creditor creditor, int financingTermInDays) {
+        return offerBook.findLowestRateOffer(creditor.getId(), financingTermInDays)
+                .orElseThrow()
+                .getPurchaser()
+                .getId();
+    }
+
+    private static Purchaser purchaser(long id, int minimumFinancingTermInDays, PurchaserFinancingSettings... settings) {
+        return Purchaser.builder()
+                .id(id)
+                .name("Purchaser" + id)
+                .minimumFinancingTermInDays(minimumFinancingTermInDays)
+                .purchaserFinancingSettings(Arrays.asList(settings))
+                .build();
+    }
+
+    private static PurchaserFinancingSettings settings(Creditor creditor, int annualRateInBps) {
+        return PurchaserFinancingSettings.builder()
+                .creditor(creditor)
+                .annualRateInBps(annualRateInBps)
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package lu.crx.financing.services.financing;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.services.eligibility.PurchaserEligibilityService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the selection of a financing run, the {@link FinancingRunContext} overload of
+ * {@code PurchaserSelectionService.findBestPurchaserForInvoice}, allocates nothing per invoice: once the decisions
+ * of the run's (creditor, term) pairs are taken and the code is compiled, it allocates less than one byte per
+ * invoice, whether a purchaser was found or not.
+ * <p>
+ * The measurement runs in a fresh JVM with escape analysis off, so that an allocation counts even when the JIT
+ * could eliminate it after inlining, as it does for a per-invoice cache key, and the type profiles left by other
+ * tests do not interfere.
+ */
+class PurchaserSelectionAllocationTest {
+
+    private static final int PURCHASER_COUNT = 400;
+    private static final int INVOICE_COUNT = 120;
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 5_000;
+    private static final LocalDate FINANCING_DATE = LocalDate.of(2023, 5, 27);
+
+    @Test
+    void shouldNotAllocatePerInvoiceInRun() throws IOException, InterruptedException {
+        // Given
+        assumeTrue(threadBean().isThreadAllocatedMemorySupported());
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-XX:-DoEscapeAnalysis",
+                "-cp", System.getProperty("java.class.path"),
+                PurchaserSelectionAllocationTest.class.getName())
+                .redirectErrorStream(true)
+                .start();
+
+        // When
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        assertTrue(process.waitFor(1, TimeUnit.MINUTES));
+
+        // Then
+        assertEquals(0, process.exitValue(), output);
+        String lastLine = output.substring(output.lastIndexOf('\n') + 1);
+        double bytesPerInvoice = Double.parseDouble(lastLine);
+        assertTrue(bytesPerInvoice < 1.0, "Allocated " + bytesPerInvoice + " bytes per invoice");
+    }
+
+    /**
+     * Prints the bytes allocated per invoice by the selection of a run.
+     */
+    public static void main(String[] args) {
+        // Debug logging off, as in production: the guarded debug calls must not box their arguments
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        FinancingCalculationService calculationService = new FinancingCalculationService();
+        PurchaserSelectionService purchaserSelectionService = new PurchaserSelectionService(
+                calculationService, new PurchaserEligibilityService(calculationService));
+
+        Creditor creditor = Creditor.builder().id(1L).name("Creditor1").maxFinancingRateInBps(5).build();
+        Creditor otherCreditor = Creditor.builder().id(2L).name("Creditor2").maxFinancingRateInBps(5).build();
+        Creditor thirdCreditor = Creditor.builder().id(3L).name("Creditor3").maxFinancingRateInBps(5).build();
+        List<Purchaser> purchasers = new ArrayList<>();
+        for (int i = 0; i < PURCHASER_COUNT; i++) {
+            // Every purchaser has two settings, so that all settings sets have the same class, as when loaded by
+            // Hibernate. Every fourth purchaser has no settings for the creditor, every fourth asks for a longer term
+            // than the invoice has, and the rates go from 30 to 79 bps, so that some of them exceed the maximum rate.
+            purchasers.add(Purchaser.builder()
+                    .id(i)
+                    .name("Purchaser" + i)
+                    .minimumFinancingTermInDays(i % 4 == 1 ? 60 : 20)
+                    .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                            .creditor(otherCreditor)
+                            .annualRateInBps(30)
+                            .build())
+                    .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                            .creditor(i % 4 == 0 ? thirdCreditor : creditor)
+                            .annualRateInBps(30 + i % 50)
+                            .build())
+                    .build());
+        }
+        // Terms from 20 to 79 days for two creditors, so that some invoices find a purchaser and the others are
+        // rejected for a too short term or a too high rate
+        Invoice[] invoices = new Invoice[INVOICE_COUNT];
+        for (int i = 0; i < INVOICE_COUNT; i++) {
+            invoices[i] = Invoice.builder()
+                    .creditor(i % 2 == 0 ? creditor : otherCreditor)
+                    .maturityDate(FINANCING_DATE.plusDays(20 + i / 2))
+                    .valueInCents(10_000_00L)
+                    .build();
+        }
+        FinancingRunContext context = new FinancingRunContext(FINANCING_DATE, PurchaserOfferBook.build(purchasers));
+
+        long threadId = Thread.currentThread().getId();
+        int foundCount = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            foundCount += select(purchaserSelectionService, invoices, context);
+        }
+
+        long allocatedBefore = threadBean().getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            foundCount += select(purchaserSelectionService, invoices, context);
+        }
+        long allocatedBytes = threadBean().getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        if (foundCount == 0 || foundCount == (WARMUP_ITERATIONS + MEASURED_ITERATIONS) * INVOICE_COUNT) {
+            throw new IllegalStateException("Found a purchaser in " + foundCount + " selections");
+        }
+        System.out.println((double) allocatedBytes / ((long) MEASURED_ITERATIONS * INVOICE_COUNT));
+    }
+
+    private static int select(PurchaserSelectionService purchaserSelectionService, Invoice[] invoices,
+                              FinancingRunContext context) {
+        int foundCount = 0;
+        for (Invoice invoice : invoices) {
+            foundCount += purchaserSelectionService.findBestPurchaserForInvoice(invoice, context).isPresent() ? 1 : 0;
+        }
+        return foundCount;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+}
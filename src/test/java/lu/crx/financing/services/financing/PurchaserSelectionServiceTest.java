@@ -6,6 +6,7 @@ import lu.crx.financing.entities.PurchaserFinancingResult;
 import lu.crx.financing.entities.PurchaserFinancingSettings;
 import lu.crx.financing.entities.Creditor;
 import lu.crx.financing.entities.Debtor;
+import lu.crx.financing.entities.FinancingRejectionReason;
 import lu.crx.financing.services.eligibility.PurchaserEligibilityService;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -23,7 +24,10 @@ import java.util.Collections;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -93,14 +97,14 @@ class PurchaserSelectionServiceTest {
 
         when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
                 .thenReturn(30);
-        when(eligibilityService.isPurchaserEligible(eq(purchaser1), eq(creditor), eq(30), eq(3)))
-                .thenReturn(true);
-        when(eligibilityService.isPurchaserEligible(eq(purchaser2), eq(creditor), eq(30), eq(3)))
-                .thenReturn(true);
-        when(eligibilityService.createFinancingResult(eq(purchaser1), eq(creditor), eq(30), eq(LocalDate.now())))
-                .thenReturn(new PurchaserFinancingResult(purchaser1, 4, 30, LocalDate.now(), 4.0));
-        when(eligibilityService.createFinancingResult(eq(purchaser2), eq(creditor), eq(30), eq(LocalDate.now())))
-                .thenReturn(new PurchaserFinancingResult(purchaser2, 3, 30, LocalDate.now(), 3.0));
+        when(eligibilityService.findAnnualRateInBps(eq(purchaser1), eq(1L))).thenReturn(50);
+        when(eligibilityService.findAnnualRateInBps(eq(purchaser2), eq(1L))).thenReturn(40);
+        when(eligibilityService.meetsMinimumFinancingTerm(any(Purchaser.class), eq(30))).thenReturn(true);
+        when(calculationService.calculateFinancingRate(eq(50), eq(30))).thenReturn(4);
+        when(calculationService.calculateFinancingRate(eq(40), eq(30))).thenReturn(3);
+        when(eligibilityService.exceedsMaxRate(eq(4), eq(3))).thenReturn(false);
+        when(eligibilityService.exceedsMaxRate(eq(3), eq(3))).thenReturn(false);
+        when(calculationService.calculateExactFinancingRate(eq(40), eq(30))).thenReturn(3.33);
 
         // When
         Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
@@ -118,10 +122,9 @@ class PurchaserSelectionServiceTest {
         assertEquals(LocalDate.now(), financingResult.getFinancingDate());
 
         verify(calculationService).calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate()));
-        verify(eligibilityService).isPurchaserEligible(eq(purchaser1), eq(creditor), eq(30), eq(3));
-        verify(eligibilityService).isPurchaserEligible(eq(purchaser2), eq(creditor), eq(30), eq(3));
-        verify(eligibilityService).createFinancingResult(eq(purchaser1), eq(creditor), eq(30), eq(LocalDate.now()));
-        verify(eligibilityService).createFinancingResult(eq(purchaser2), eq(creditor), eq(30), eq(LocalDate.now()));
+        verify(eligibilityService).findAnnualRateInBps(eq(purchaser1), eq(1L));
+        verify(eligibilityService).findAnnualRateInBps(eq(purchaser2), eq(1L));
+        verify(calculationService).calculateExactFinancingRate(eq(40), eq(30));
     }
 
     @Test
@@ -153,8 +156,10 @@ class PurchaserSelectionServiceTest {
 
         when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
                 .thenReturn(30);
-        when(eligibilityService.isPurchaserEligible(eq(purchaser), eq(creditor), eq(30), eq(2)))
-                .thenReturn(false);
+        when(eligibilityService.findAnnualRateInBps(eq(purchaser), eq(1L))).thenReturn(50);
+        when(eligibilityService.meetsMinimumFinancingTerm(eq(purchaser), eq(30))).thenReturn(true);
+        when(calculationService.calculateFinancingRate(eq(50), eq(30))).thenReturn(4);
+        when(eligibilityService.exceedsMaxRate(eq(4), eq(2))).thenReturn(true);
 
         // When
         Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
@@ -167,7 +172,7 @@ class PurchaserSelectionServiceTest {
         assertFalse(result.isPresent());
 
         verify(calculationService).calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate()));
-        verify(eligibilityService).isPurchaserEligible(eq(purchaser), eq(creditor), eq(30), eq(2));
+        verify(eligibilityService).exceedsMaxRate(eq(4), eq(2));
     }
 
     @Test
@@ -199,8 +204,8 @@ class PurchaserSelectionServiceTest {
 
         when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
                 .thenReturn(30);
-        when(eligibilityService.isPurchaserEligible(eq(purchaser), eq(creditor), eq(30), eq(50)))
-                .thenReturn(false);
+        when(eligibilityService.findAnnualRateInBps(eq(purchaser), eq(1L))).thenReturn(50);
+        when(eligibilityService.meetsMinimumFinancingTerm(eq(purchaser), eq(30))).thenReturn(false);
 
         // When
         Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
@@ -213,7 +218,8 @@ class PurchaserSelectionServiceTest {
         assertFalse(result.isPresent());
 
         verify(calculationService).calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate()));
-        verify(eligibilityService).isPurchaserEligible(eq(purchaser), eq(creditor), eq(30), eq(50));
+        verify(eligibilityService).meetsMinimumFinancingTerm(eq(purchaser), eq(30));
+        verify(calculationService, never()).calculateFinancingRate(anyInt(), anyInt());
     }
 
     @Test
@@ -239,8 +245,8 @@ class PurchaserSelectionServiceTest {
 
         when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
                 .thenReturn(30);
-        when(eligibilityService.isPurchaserEligible(eq(purchaser), eq(creditor), eq(30), eq(50)))
-                .thenReturn(false);
+        when(eligibilityService.findAnnualRateInBps(eq(purchaser), eq(1L)))
+                .thenReturn(PurchaserEligibilityService.NO_SETTINGS);
 
         // When
         Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
@@ -253,6 +259,235 @@ class PurchaserSelectionServiceTest {
         assertFalse(result.isPresent());
 
         verify(calculationService).calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate()));
-        verify(eligibilityService).isPurchaserEligible(eq(purchaser), eq(creditor), eq(30), eq(50));
+        verify(eligibilityService).findAnnualRateInBps(eq(purchaser), eq(1L));
+        verify(eligibilityService, never()).meetsMinimumFinancingTerm(any(), anyInt());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldBreakRateTiesOnExactRateThenListOrder() {
+        // Given
+        Creditor creditor = Creditor.builder()
+                .id(1L)
+                .name("Creditor1")
+                .maxFinancingRateInBps(3)
+                .build();
+
+        Invoice invoice = Invoice.builder()
+                .id(1L)
+                .creditor(creditor)
+                .build();
+
+        Purchaser higherExactRate = Purchaser.builder().id(1L).name("Purchaser1").build();
+        Purchaser lowerExactRate = Purchaser.builder().id(2L).name("Purchaser2").build();
+        Purchaser sameExactRate = Purchaser.builder().id(3L).name("Purchaser3").build();
+
+        when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
+                .thenReturn(30);
+        when(eligibilityService.findAnnualRateInBps(eq(higherExactRate), eq(1L))).thenReturn(41);
+        when(eligibilityService.findAnnualRateInBps(eq(lowerExactRate), eq(1L))).thenReturn(40);
+        when(eligibilityService.findAnnualRateInBps(eq(sameExactRate), eq(1L))).thenReturn(40);
+        when(eligibilityService.meetsMinimumFinancingTerm(any(Purchaser.class), eq(30))).thenReturn(true);
+        when(calculationService.calculateFinancingRate(anyInt(), eq(30))).thenReturn(3);
+        when(calculationService.calculateExactFinancingRate(eq(40), eq(30))).thenReturn(3.33);
+
+        // When
+        Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
+                invoice,
+                Arrays.asList(higherExactRate, lowerExactRate, sameExactRate),
+                LocalDate.now()
+        );
+
+        // Then
+        assertTrue(result.isPresent());
+        assertEquals(lowerExactRate, result.get().getPurchaser());
+        assertEquals(3.33, result.get().getExactFinancingRate());
+    }
+
+    @Test
+    void shouldFindBestPurchaserFromOfferBook() {
+        // Given
+        Creditor creditor = Creditor.builder()
+                .id(1L)
+                .name("Creditor1")
+                .maxFinancingRateInBps(3)
+                .build();
+
+        Invoice invoice = Invoice.builder()
+                .id(1L)
+                .creditor(creditor)
+                .valueInCents(10_000_00L)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .build();
+
+        Purchaser purchaser1 = Purchaser.builder()
+                .id(1L)
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSettings(new HashSet<>(Collections.singletonList(
+                        PurchaserFinancingSettings.builder()
+                                .id(1L)
+                                .creditor(creditor)
+                                .annualRateInBps(50)
+                                .build()
+                )))
+                .build();
+
+        Purchaser purchaser2 = Purchaser.builder()
+                .id(2L)
+                .name("Purchaser2")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSettings(new HashSet<>(Collections.singletonList(
+                        PurchaserFinancingSettings.builder()
+                                .id(2L)
+                                .creditor(creditor)
+                                .annualRateInBps(40)
+                                .build()
+                )))
+                .build();
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Arrays.asList(purchaser1, purchaser2));
+
+        when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
+                .thenReturn(30);
+        when(calculationService.calculateFinancingRate(eq(40), eq(30))).thenReturn(3);
+        when(calculationService.calculateExactFinancingRate(eq(40), eq(30))).thenReturn(3.33);
+        when(eligibilityService.exceedsMaxRate(eq(3), eq(3))).thenReturn(false);
+
+        // When
+        Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
+                invoice, offerBook, LocalDate.now());
+
+        // Then
+        assertTrue(result.isPresent());
+        PurchaserFinancingResult financingResult = result.get();
+        assertEquals(purchaser2.getId(), financingResult.getPurchaser().getId());
+        assertEquals(3, financingResult.getFinancingRateInBps());
+        assertEquals(30, financingResult.getFinancingTermInDays());
+        assertEquals(3.33, financingResult.getExactFinancingRate());
+    }
+
+    @Test
+    void shouldReturnEmptyOptionalWhenLowestOfferExceedsMaxRate() {
+        // Given
+        Creditor creditor = Creditor.builder()
+                .id(1L)
+                .name("Creditor1")
+                .maxFinancingRateInBps(2)
+                .build();
+
+        Invoice invoice = Invoice.builder()
+                .id(1L)
+                .creditor(creditor)
+                .build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .id(1L)
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSettings(new HashSet<>(Collections.singletonList(
+                        PurchaserFinancingSettings.builder()
+                                .id(1L)
+                                .creditor(creditor)
+                                .annualRateInBps(50)
+                                .build()
+                )))
+                .build();
+
+        PurchaserOfferBook offerBook = PurchaserOfferBook.build(Collections.singletonList(purchaser));
+
+        when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(invoice.getMaturityDate())))
+                .thenReturn(30);
+        when(calculationService.calculateFinancingRate(eq(50), eq(30))).thenReturn(4);
+        when(eligibilityService.exceedsMaxRate(eq(4), eq(2))).thenReturn(true);
+
+        // When
+        Optional<PurchaserFinancingResult> result = purchaserSelectionService.findBestPurchaserForInvoice(
+                invoice, offerBook, LocalDate.now());
+
+        // Then
+        assertFalse(result.isPresent());
+    }
+
+    @Test
+    void shouldReuseDecisionForInvoicesWithSameCreditorAndTerm() {
+        // Given
+        Creditor creditor = Creditor.builder()
+                .id(1L)
+                .name("Creditor1")
+                .maxFinancingRateInBps(3)
+                .build();
+
+        LocalDate maturityDate = LocalDate.now().plusDays(30);
+        Invoice invoice1 = Invoice.builder().id(1L).creditor(creditor).maturityDate(maturityDate).build();
+        Invoice invoice2 = Invoice.builder().id(2L).creditor(creditor).maturityDate(maturityDate).build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .id(1L)
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSettings(new HashSet<>(Collections.singletonList(
+                        PurchaserFinancingSettings.builder()
+                                .id(1L)
+                                .creditor(creditor)
+                                .annualRateInBps(40)
+                                .build()
+                )))
+                .build();
+
+        FinancingRunContext context = new FinancingRunContext(
+                LocalDate.now(), PurchaserOfferBook.build(Collections.singletonList(purchaser)));
+
+        when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(maturityDate))).thenReturn(30);
+        when(calculationService.calculateFinancingRate(eq(40), eq(30))).thenReturn(3);
+        when(calculationService.calculateExactFinancingRate(eq(40), eq(30))).thenReturn(3.33);
+        when(eligibilityService.exceedsMaxRate(eq(3), eq(3))).thenReturn(false);
+
+        // When
+        Optional<PurchaserFinancingResult> result1 = purchaserSelectionService.findBestPurchaserForInvoice(invoice1, context);
+        Optional<PurchaserFinancingResult> result2 = purchaserSelectionService.findBestPurchaserForInvoice(invoice2, context);
+
+        // Then
+        assertTrue(result1.isPresent());
+        assertEquals(result1, result2);
+        assertEquals(1, context.getDecisionCache().getMissCount());
+        assertEquals(1, context.getDecisionCache().getHitCount());
+
+        verify(calculationService).calculateFinancingRate(eq(40), eq(30));
+    }
+
+    @Test
+    void shouldExplainWhyNoPurchaserWasFound() {
+        // Given
+        Creditor creditorWithOffers = Creditor.builder().id(1L).name("Creditor1").maxFinancingRateInBps(3).build();
+        Creditor creditorWithoutOffers = Creditor.builder().id(2L).name("Creditor2").maxFinancingRateInBps(3).build();
+
+        Purchaser purchaser = Purchaser.builder()
+                .id(1L)
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSettings(new HashSet<>(Collections.singletonList(
+                        PurchaserFinancingSettings.builder()
+                                .id(1L)
+                                .creditor(creditorWithOffers)
+                                .annualRateInBps(50)
+                                .build()
+                )))
+                .build();
+
+        FinancingRunContext context = new FinancingRunContext(
+                LocalDate.now(), PurchaserOfferBook.build(Collections.singletonList(purchaser)));
+
+        LocalDate shortMaturity = LocalDate.now().plusDays(10);
+        LocalDate longMaturity = LocalDate.now().plusDays(90);
+        when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(shortMaturity))).thenReturn(10);
+        when(calculationService.calculateFinancingTerm(eq(LocalDate.now()), eq(longMaturity))).thenReturn(90);
+
+        // When / Then
+        assertEquals(FinancingRejectionReason.NO_SETTINGS, purchaserSelectionService.findRejectionReason(
+                Invoice.builder().creditor(creditorWithoutOffers).maturityDate(longMaturity).build(), context));
+        assertEquals(FinancingRejectionReason.TERM_TOO_SHORT, purchaserSelectionService.findRejectionReason(
+                Invoice.builder().creditor(creditorWithOffers).maturityDate(shortMaturity).build(), context));
+        assertEquals(FinancingRejectionReason.RATE_ABOVE_MAX, purchaserSelectionService.findRejectionReason(
+                Invoice.builder().creditor(creditorWithOffers).maturityDate(longMaturity).build(), context));
+    }
+}
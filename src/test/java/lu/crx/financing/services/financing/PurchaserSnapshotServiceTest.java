@@ -0,0 +1,217 @@
+package lu.crx.financing.services.financing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.entities.PurchaserSnapshotVersion;
+import lu.crx.financing.entities.ReferenceDataStamp;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.repositories.PurchaserRepository;
+import lu.crx.financing.repositories.PurchaserSnapshotVersionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PurchaserSnapshotServiceTest {
+
+    private static final ReferenceDataStamp STAMP = new ReferenceDataStamp(3, 12);
+
+    private static final ReferenceDataStamp CHANGED_STAMP = new ReferenceDataStamp(3, 15);
+
+    @Mock
+    private PurchaserRepository purchaserRepository;
+
+    @Mock
+    private PurchaserSnapshotVersionRepository snapshotVersionRepository;
+
+    @Mock
+    private ReferenceDataCache referenceDataCache;
+
+    private FinancingProperties financingProperties;
+
+    private PurchaserSnapshotService purchaserSnapshotService;
+
+    @BeforeEach
+    void setUp() {
+        financingProperties = new FinancingProperties();
+        purchaserSnapshotService = new PurchaserSnapshotService(purchaserRepository, snapshotVersionRepository,
+                referenceDataCache, financingProperties, new FinancingMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void shouldLoadPurchasersOnceWhileSnapshotIsFresh() {
+        // Given
+        Creditor creditor = Creditor.builder().id(1L).maxFinancingRateInBps(5).build();
+        Purchaser purchaser = Purchaser.builder()
+                .id(1L)
+                .minimumFinancingTermInDays(10)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .creditor(creditor)
+                        .annualRateInBps(50)
+                        .build())
+                .build();
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP);
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(List.of(purchaser));
+
+        // When
+        PurchaserOfferBook firstBook = purchaserSnapshotService.getOfferBook();
+        PurchaserOfferBook secondBook = purchaserSnapshotService.getOfferBook();
+
+        // Then
+        assertSame(firstBook, secondBook);
+        assertEquals(1, firstBook.getOfferCount());
+        verify(purchaserRepository).findAllWithFinancingSettings();
+        // Once before and once after the load, none for the second read
+        verify(snapshotVersionRepository, times(2)).readReferenceDataStamp();
+    }
+
+    @Test
+    void shouldCheckSnapshotOnceCheckIsExpired() {
+        // Given
+        financingProperties.getSnapshot().setTimeToLive(Duration.ZERO);
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP);
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+
+        // When
+        PurchaserOfferBook firstBook = purchaserSnapshotService.getOfferBook();
+        PurchaserOfferBook secondBook = purchaserSnapshotService.getOfferBook();
+
+        // Then
+        assertSame(firstBook, secondBook);
+        verify(snapshotVersionRepository, times(3)).readReferenceDataStamp();
+        verify(purchaserRepository).findAllWithFinancingSettings();
+    }
+
+    @Test
+    void shouldKeepSnapshotWhenReferenceDataIsUnchanged() {
+        // Given
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP);
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+        PurchaserSnapshot firstSnapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // When
+        PurchaserSnapshot secondSnapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // Then
+        assertSame(firstSnapshot, secondSnapshot);
+        verify(purchaserRepository).findAllWithFinancingSettings();
+        verify(snapshotVersionRepository).insert(eq(1L), eq(3L), eq(12L), any(Instant.class));
+    }
+
+    @Test
+    void shouldLoadNewVersionWhenReferenceDataChanged() {
+        // Given
+        when(snapshotVersionRepository.readReferenceDataStamp())
+                .thenReturn(STAMP, STAMP, CHANGED_STAMP, CHANGED_STAMP);
+        when(snapshotVersionRepository.findFirstByOrderByVersionDesc())
+                .thenReturn(Optional.empty(), Optional.of(version(1, STAMP)));
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+        PurchaserSnapshot firstSnapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // When
+        PurchaserSnapshot secondSnapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // Then
+        assertNotSame(firstSnapshot, secondSnapshot);
+        assertEquals(1, firstSnapshot.getVersion());
+        assertEquals(2, secondSnapshot.getVersion());
+        assertEquals(CHANGED_STAMP, secondSnapshot.getStamp());
+        verify(snapshotVersionRepository).insert(eq(2L), eq(3L), eq(15L), any(Instant.class));
+        verify(referenceDataCache, times(2)).evictAll();
+    }
+
+    @Test
+    void shouldLoadAgainWhenReferenceDataChangesDuringLoad() {
+        // Given
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP, CHANGED_STAMP, CHANGED_STAMP);
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+
+        // When
+        PurchaserSnapshot snapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // Then
+        assertEquals(CHANGED_STAMP, snapshot.getStamp());
+        verify(purchaserRepository, times(2)).findAllWithFinancingSettings();
+        verify(snapshotVersionRepository).insert(eq(1L), eq(3L), eq(15L), any(Instant.class));
+    }
+
+    @Test
+    void shouldReuseVersionRecordedForSameReferenceData() {
+        // Given
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP);
+        when(snapshotVersionRepository.findFirstByOrderByVersionDesc()).thenReturn(Optional.of(version(7, STAMP)));
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+
+        // When
+        PurchaserSnapshot snapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // Then
+        assertEquals(7, snapshot.getVersion());
+        verify(snapshotVersionRepository, never()).insert(anyLong(), anyLong(), anyLong(), any(Instant.class));
+    }
+
+    @Test
+    void shouldUseVersionRecordedByAnotherInstanceOnCollision() {
+        // Given
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP);
+        when(snapshotVersionRepository.findFirstByOrderByVersionDesc())
+                .thenReturn(Optional.empty(), Optional.of(version(1, STAMP)));
+        when(snapshotVersionRepository.insert(eq(1L), eq(3L), eq(12L), any(Instant.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate version"));
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+
+        // When
+        PurchaserSnapshot snapshot = purchaserSnapshotService.getCurrentSnapshot();
+
+        // Then
+        assertEquals(1, snapshot.getVersion());
+        verify(snapshotVersionRepository, times(2)).findFirstByOrderByVersionDesc();
+    }
+
+    @Test
+    void shouldReloadPurchasersOnRefresh() {
+        // Given
+        when(snapshotVersionRepository.readReferenceDataStamp()).thenReturn(STAMP);
+        when(snapshotVersionRepository.findFirstByOrderByVersionDesc())
+                .thenReturn(Optional.empty(), Optional.of(version(1, STAMP)));
+        when(purchaserRepository.findAllWithFinancingSettings()).thenReturn(Collections.emptyList());
+        PurchaserOfferBook staleBook = purchaserSnapshotService.getOfferBook();
+
+        // When
+        PurchaserSnapshot refreshed = purchaserSnapshotService.refresh();
+
+        // Then
+        assertNotSame(staleBook, refreshed.getOfferBook());
+        assertSame(refreshed.getOfferBook(), purchaserSnapshotService.getOfferBook());
+        assertEquals(1, refreshed.getVersion());
+        verify(purchaserRepository, times(2)).findAllWithFinancingSettings();
+        verify(referenceDataCache, times(2)).evictAll();
+    }
+
+    private static PurchaserSnapshotVersion version(long version, ReferenceDataStamp stamp) {
+        return new PurchaserSnapshotVersion(version, stamp.getRowCount(), stamp.getChangeNumberSum(), Instant.now());
+    }
+}
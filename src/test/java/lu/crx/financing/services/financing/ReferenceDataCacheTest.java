@@ -0,0 +1,247 @@
+package lu.crx.financing.services.financing;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.MetricsConfiguration;
+import lu.crx.financing.config.PersistenceConfiguration;
+import lu.crx.financing.config.ReferenceDataRegion;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.entities.PurchaserFinancingSettings;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.repositories.CreditorRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.CacheManager;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs outside of a test transaction: the cache is only updated when the transactions commit. The Hibernate
+ * statistics are only turned on to count the statements.
+ */
+@DataJpaTest(properties = {"financing.cache.max-entries=100",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import({PersistenceConfiguration.class, ReferenceDataCache.class, FinancingMetrics.class,
+        MetricsConfiguration.class})
+@EnableConfigurationProperties(FinancingProperties.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReferenceDataCacheTest {
+
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
+    @Autowired
+    private PurchaserRepository purchaserRepository;
+
+    @Autowired
+    private CreditorRepository creditorRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private CacheManager referenceDataCacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+
+    private Creditor creditor1;
+
+    private Creditor creditor2;
+
+    @BeforeEach
+    void setUp() throws MalformedObjectNameException {
+        creditor1 = creditorRepository.save(Creditor.builder().name("Creditor1").maxFinancingRateInBps(3).build());
+        creditor2 = creditorRepository.save(Creditor.builder().name("Creditor2").maxFinancingRateInBps(4).build());
+        purchaserRepository.save(Purchaser.builder()
+                .name("Purchaser1")
+                .minimumFinancingTermInDays(10)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .creditor(creditor1)
+                        .annualRateInBps(50)
+                        .build())
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .creditor(creditor2)
+                        .annualRateInBps(60)
+                        .build())
+                .build());
+        purchaserRepository.save(Purchaser.builder()
+                .name("Purchaser2")
+                .minimumFinancingTermInDays(20)
+                .purchaserFinancingSetting(PurchaserFinancingSettings.builder()
+                        .creditor(creditor1)
+                        .annualRateInBps(40)
+                        .build())
+                .build());
+
+        referenceDataCache.evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        clearCacheStatistics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM purchaser_purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser_financing_settings");
+        jdbcTemplate.update("DELETE FROM purchaser");
+        jdbcTemplate.update("DELETE FROM creditor");
+        referenceDataCache.evictAll();
+    }
+
+    @Test
+    void shouldLoadPurchaserGraphFromCacheOnceLoaded() {
+        // Given
+        countStatementsToLoadPurchasers();
+
+        // When
+        long statements = countStatementsToLoadPurchasers();
+
+        // Then
+        assertEquals(0, statements);
+    }
+
+    @Test
+    void shouldReadPurchaserGraphAgainAfterEviction() {
+        // Given
+        countStatementsToLoadPurchasers();
+
+        // When
+        referenceDataCache.evictAll();
+        long statements = countStatementsToLoadPurchasers();
+
+        // Then
+        assertTrue(statements > 0);
+    }
+
+    @Test
+    void shouldSeeSettingsChangedThroughHibernate() {
+        // Given
+        countStatementsToLoadPurchasers();
+
+        // When
+        transactionTemplate.executeWithoutResult(status -> entityManager
+                .createQuery("SELECT s FROM PurchaserFinancingSettings s WHERE s.annualRateInBps = 40",
+                        PurchaserFinancingSettings.class)
+                .getSingleResult()
+                .setAnnualRateInBps(45));
+
+        // Then
+        List<Integer> rates = purchaserRepository.findAllWithFinancingSettings().stream()
+                .flatMap(purchaser -> purchaser.getPurchaserFinancingSettings().stream())
+                .map(PurchaserFinancingSettings::getAnnualRateInBps)
+                .sorted()
+                .toList();
+        assertEquals(List.of(45, 50, 60), rates);
+    }
+
+    @Test
+    void shouldLoadOnlyCreditorsMissingFromCache() {
+        // Given
+        findCreditors(creditor1.getId());
+        statistics.clear();
+
+        // When
+        List<Creditor> creditors = findCreditors(creditor1.getId(), creditor2.getId());
+        long firstStatements = statistics.getPrepareStatementCount();
+        findCreditors(creditor1.getId(), creditor2.getId());
+
+        // Then
+        assertEquals(2, creditors.size());
+        assertEquals(1, firstStatements);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void shouldPublishHitRatioPerRegion() {
+        // Given
+        countStatementsToLoadPurchasers();
+        countStatementsToLoadPurchasers();
+
+        // When
+        referenceDataCache.publishStatistics();
+
+        // Then
+        ReferenceDataCacheStatistics queryStatistics = referenceDataCache.getStatistics().stream()
+                .filter(regionStatistics -> regionStatistics.region() == ReferenceDataRegion.PURCHASERS_QUERY)
+                .findFirst()
+                .orElseThrow();
+        assertEquals(1, queryStatistics.hitCount());
+        assertEquals(1, queryStatistics.missCount());
+        assertEquals(0.5, meterRegistry.get(FinancingMetrics.CACHE_HIT_RATIO_GAUGE)
+                .tag("region", ReferenceDataRegion.PURCHASERS_QUERY.getTagValue())
+                .gauge()
+                .value());
+    }
+
+    @Test
+    void shouldBoundEveryRegion() {
+        for (ReferenceDataRegion region : ReferenceDataRegion.values()) {
+            @SuppressWarnings("unchecked")
+            CaffeineConfiguration<Object, Object> configuration = referenceDataCacheManager
+                    .getCache(region.getRegionName())
+                    .getConfiguration(CaffeineConfiguration.class);
+            assertEquals(OptionalLong.of(100), configuration.getMaximumSize(), region.name());
+        }
+    }
+
+    private static void clearCacheStatistics() throws MalformedObjectNameException {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : mBeanServer.queryNames(new ObjectName("javax.cache:type=CacheStatistics,*"), null)) {
+            JMX.newMXBeanProxy(mBeanServer, name, CacheStatisticsMXBean.class).clear();
+        }
+    }
+
+    private List<Creditor> findCreditors(Long... creditorIds) {
+        return transactionTemplate.execute(status -> creditorRepository.findAllByIdCached(List.of(creditorIds)));
+    }
+
+    /**
+     * Loads the purchasers, with their settings and the creditors of the settings, as the snapshot does.
+     */
+    private long countStatementsToLoadPurchasers() {
+        long before = statistics.getPrepareStatementCount();
+        List<Purchaser> purchasers = purchaserRepository.findAllWithFinancingSettings();
+        assertEquals(2, purchasers.size());
+        purchasers.forEach(purchaser -> purchaser.getPurchaserFinancingSettings()
+                .forEach(settings -> settings.getCreditor().getMaxFinancingRateInBps()));
+        return statistics.getPrepareStatementCount() - before;
+    }
+}
@@ -0,0 +1,136 @@
+package lu.crx.financing.services.journal;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.entities.FinancingDecision;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FinancingDecisionJournalTest {
+
+    private static final int CAPACITY_IN_RECORDS = 10;
+
+    @TempDir
+    private Path directory;
+
+    private FinancingProperties financingProperties;
+
+    private FinancingDecisionJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        financingProperties = new FinancingProperties();
+        financingProperties.getJournal().setFile(directory.resolve("journal").resolve("decisions.journal"));
+        financingProperties.getJournal().setCapacity(DataSize.ofBytes(FinancingDecisionJournal.HEADER_SIZE
+                + CAPACITY_IN_RECORDS * FinancingDecisionJournal.RECORD_SIZE));
+        journal = new FinancingDecisionJournal(financingProperties);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    void shouldReadUnappliedDecisionsAfterReopening() throws IOException {
+        // Given
+        List<FinancingDecision> decisions = decisions(1, 5);
+        int position = journal.append(decisions.subList(0, 2));
+        journal.append(decisions.subList(2, 5));
+        journal.markApplied(position);
+
+        // When
+        FinancingDecisionJournal reopened = reopen();
+
+        // Then
+        assertEquals(3, reopened.getUnappliedCount());
+        assertEquals(decisions.subList(2, 5), reopened.readUnapplied(10));
+        assertEquals(decisions.subList(2, 4), reopened.readUnapplied(2));
+        reopened.markNextApplied(2);
+        assertEquals(decisions.subList(4, 5), reopen().readUnapplied(10));
+    }
+
+    @Test
+    void shouldEndJournalAtTornRecord() throws IOException {
+        // Given
+        List<FinancingDecision> decisions = decisions(1, 3);
+        journal.append(decisions);
+        journal.close();
+        try (FileChannel file = FileChannel.open(financingProperties.getJournal().getFile(),
+                StandardOpenOption.WRITE)) {
+            // Changes the amount of the second record, as a write cut short by a crash would
+            file.write(ByteBuffer.allocate(8).putLong(0, 1L),
+                    FinancingDecisionJournal.HEADER_SIZE + FinancingDecisionJournal.RECORD_SIZE + 40);
+        }
+
+        // When
+        FinancingDecisionJournal reopened = reopen();
+
+        // Then
+        assertEquals(decisions.subList(0, 1), reopened.readUnapplied(10));
+    }
+
+    @Test
+    void shouldNotReplayDecisionsFromBeforeStartingOver() throws IOException {
+        // Given
+        journal.append(decisions(1, 4));
+        journal.markNextApplied(4);
+        journal.startOver();
+        List<FinancingDecision> newDecisions = decisions(10, 1);
+        journal.append(newDecisions);
+
+        // When
+        FinancingDecisionJournal reopened = reopen();
+
+        // Then
+        assertEquals(newDecisions, reopened.readUnapplied(10));
+    }
+
+    @Test
+    void shouldOnlyStartOverOnceEverythingIsApplied() throws InterruptedException {
+        // Given
+        int position = journal.append(decisions(1, CAPACITY_IN_RECORDS));
+        assertFalse(journal.hasRoomFor(1));
+        assertThrows(IllegalStateException.class, () -> journal.append(decisions(20, 1)));
+        assertThrows(IllegalStateException.class, () -> journal.startOver());
+
+        // When
+        Thread committer = Thread.ofPlatform().start(() -> journal.markApplied(position));
+        journal.awaitApplied();
+        committer.join();
+        journal.startOver();
+
+        // Then
+        assertTrue(journal.hasRoomFor(CAPACITY_IN_RECORDS));
+        assertEquals(0, journal.getUnappliedCount());
+    }
+
+    private FinancingDecisionJournal reopen() throws IOException {
+        journal.close();
+        journal = new FinancingDecisionJournal(financingProperties);
+        return journal;
+    }
+
+    private static List<FinancingDecision> decisions(long firstInvoiceId, int count) {
+        return LongStream.range(firstInvoiceId, firstInvoiceId + count)
+                .mapToObj(invoiceId -> new FinancingDecision(invoiceId, 100 + invoiceId, 7,
+                        LocalDate.of(2026, 10, 17), 30, 4, 9_900 + invoiceId, 100 - invoiceId))
+                .toList();
+    }
+}
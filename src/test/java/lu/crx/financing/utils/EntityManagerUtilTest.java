@@ -1,12 +1,15 @@
 package lu.crx.financing.utils;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.persistence.EntityManager;
+import lu.crx.financing.metrics.FinancingMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -16,11 +19,14 @@ class EntityManagerUtilTest {
     @Mock
     private EntityManager entityManager;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private EntityManagerUtil entityManagerUtil;
 
     @BeforeEach
     void setUp() {
-        entityManagerUtil = new EntityManagerUtil(entityManager);
+        meterRegistry = new SimpleMeterRegistry();
+        entityManagerUtil = new EntityManagerUtil(entityManager, new FinancingMetrics(meterRegistry));
     }
 
     @Test
@@ -35,6 +41,7 @@ class EntityManagerUtilTest {
         verify(entityManager).flush();
         verify(entityManager).clear();
         verifyNoMoreInteractions(entityManager);
+        assertEquals(1, meterRegistry.get(FinancingMetrics.STAGE_TIMER).tag("stage", "flush").timer().count());
     }
 
     @Test
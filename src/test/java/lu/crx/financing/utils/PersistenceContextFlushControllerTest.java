@@ -0,0 +1,180 @@
+package lu.crx.financing.utils;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.config.MetricsConfiguration;
+import lu.crx.financing.entities.Creditor;
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.entities.InvoiceFinancingDetails;
+import lu.crx.financing.entities.Purchaser;
+import lu.crx.financing.metrics.FinancingMetrics;
+import lu.crx.financing.services.financing.FinancingRunContext;
+import lu.crx.financing.services.financing.PurchaserOfferBook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import({PersistenceContextFlushController.class, EntityManagerUtil.class, FinancingMetrics.class,
+        MetricsConfiguration.class})
+@EnableConfigurationProperties(FinancingProperties.class)
+class PersistenceContextFlushControllerTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private PersistenceContextFlushController flushController;
+
+    private FinancingRunContext context;
+
+    private Creditor creditor;
+
+    private Invoice invoice;
+
+    @BeforeEach
+    void setUp() {
+        financingProperties.getFlush().setCheckInterval(10);
+        financingProperties.getFlush().setMaxManagedEntities(100);
+        financingProperties.getFlush().setMaxPendingWrites(3);
+        financingProperties.getFlush().setHeapUsageThreshold(0);
+
+        context = new FinancingRunContext(LocalDate.now(), PurchaserOfferBook.build(Collections.emptyList()));
+
+        creditor = entityManager.persist(Creditor.builder().name("Creditor1").maxFinancingRateInBps(3).build());
+        invoice = entityManager.persist(Invoice.builder()
+                .creditor(creditor)
+                .maturityDate(LocalDate.now().plusDays(30))
+                .valueInCents(10_000_00L)
+                .build());
+    }
+
+    @Test
+    void shouldOnlyInspectPersistenceContextAtCheckInterval() {
+        // Given
+        financingProperties.getFlush().setMaxManagedEntities(1);
+
+        // When
+        for (int processedInBatch = 1; processedInBatch < 10; processedInBatch++) {
+            flushController.onInvoiceProcessed(processedInBatch, context);
+        }
+
+        // Then
+        assertTrue(isManaged(invoice));
+        assertEquals(0, context.getFlushCount());
+    }
+
+    @Test
+    void shouldFlushAndClearWhenTooManyEntitiesAreManaged() {
+        // Given
+        financingProperties.getFlush().setMaxManagedEntities(2);
+
+        // When
+        flushController.onInvoiceProcessed(10, context);
+
+        // Then
+        assertFalse(isManaged(invoice));
+        assertFalse(isManaged(creditor));
+        assertEquals(1, context.getFlushCount());
+    }
+
+    @Test
+    void shouldFlushWithoutClearingWhenTooManyWritesArePending() {
+        // Given
+        Purchaser purchaser = entityManager.persist(
+                Purchaser.builder().name("Purchaser1").minimumFinancingTermInDays(20).build());
+        List<Invoice> otherInvoices = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            otherInvoices.add(entityManager.persist(Invoice.builder()
+                    .creditor(creditor)
+                    .maturityDate(LocalDate.now().plusDays(30))
+                    .valueInCents(10_000_00L)
+                    .build()));
+        }
+        // identity inserts run immediately and drain the action queue, so the queued inserts come last
+        otherInvoices.forEach(otherInvoice -> entityManager.persist(financingDetails(otherInvoice, purchaser)));
+
+        // When
+        flushController.onInvoiceProcessed(10, context);
+
+        // Then
+        assertTrue(isManaged(invoice));
+        assertEquals(3L, countFinancingDetailsRows());
+        assertEquals(1, context.getFlushCount());
+    }
+
+    @Test
+    void shouldNotFlushBelowThresholds() {
+        // Given
+        Purchaser purchaser = entityManager.persist(
+                Purchaser.builder().name("Purchaser1").minimumFinancingTermInDays(20).build());
+        entityManager.persist(financingDetails(invoice, purchaser));
+
+        // When
+        flushController.onInvoiceProcessed(10, context);
+
+        // Then
+        assertTrue(isManaged(invoice));
+        assertEquals(0, context.getFlushCount());
+    }
+
+    @Test
+    void shouldFlushAndClearWhenHeapIsAboveThreshold() {
+        // Given
+        financingProperties.getFlush().setHeapUsageThreshold(1e-9);
+
+        // When
+        flushController.onInvoiceProcessed(10, context);
+
+        // Then
+        assertFalse(isManaged(invoice));
+        assertEquals(1, context.getFlushCount());
+    }
+
+    @Test
+    void shouldFlushAndClearAtPageEnd() {
+        // When
+        flushController.flushAndClear(context, 1000);
+
+        // Then
+        assertFalse(isManaged(invoice));
+        assertEquals(1, context.getFlushCount());
+    }
+
+    private boolean isManaged(Object entity) {
+        return entityManager.getEntityManager().contains(entity);
+    }
+
+    private Object countFinancingDetailsRows() {
+        return entityManager.getEntityManager()
+                .createNativeQuery("SELECT COUNT(*) FROM invoice_financing_details", Long.class)
+                .getSingleResult();
+    }
+
+    private static InvoiceFinancingDetails financingDetails(Invoice invoice, Purchaser purchaser) {
+        return InvoiceFinancingDetails.builder()
+                .invoice(invoice)
+                .purchaser(purchaser)
+                .financingDate(LocalDate.now())
+                .financingTermInDays(30)
+                .financingRateInBps(3)
+                .earlyPaymentAmountInCents(9_997_00L)
+                .discountedAmountInCents(3_00L)
+                .build();
+    }
+}